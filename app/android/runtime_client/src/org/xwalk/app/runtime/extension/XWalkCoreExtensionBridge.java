@@ -7,6 +7,8 @@ package org.xwalk.app.runtime.extension;
 import android.content.Context;
 import android.content.Intent;
 
+import java.nio.ByteBuffer;
+
 import org.xwalk.core.XWalkExtension;
 
 /**
@@ -18,6 +20,9 @@ class XWalkCoreExtensionBridge extends XWalkExtension implements XWalkRuntimeExt
     public XWalkCoreExtensionBridge(XWalkExtensionClient extension) {
         super(extension.getExtensionName(), extension.getJsApi(), extension.getEntryPoints());
         mExtension = extension;
+        if (extension.getThreadingPolicy() != XWalkExtensionClient.THREADING_EXTENSION_THREAD) {
+            setThreadingPolicy(extension.getThreadingPolicy(), extension.getMaxThreads());
+        }
     }
 
     //------------------------------------------------
@@ -27,6 +32,10 @@ class XWalkCoreExtensionBridge extends XWalkExtension implements XWalkRuntimeExt
         mExtension.onMessage(instanceID, message);
     }
 
+    public void onBinaryMessage(int instanceID, ByteBuffer message) {
+        mExtension.onBinaryMessage(instanceID, message);
+    }
+
     public String onSyncMessage(int instanceID, String message) {
         return mExtension.onSyncMessage(instanceID, message);
     }
@@ -67,6 +76,11 @@ class XWalkCoreExtensionBridge extends XWalkExtension implements XWalkRuntimeExt
         super.postMessage(instanceId, message);
     }
 
+    @Override
+    public void postBinaryMessage(int instanceId, ByteBuffer data) {
+        super.postBinaryMessage(instanceId, data);
+    }
+
     @Override
     public void broadcastMessage(String message) {
         super.broadcastMessage(message);
@@ -6,6 +6,8 @@ package org.xwalk.app.runtime.extension;
 
 import android.content.Intent;
 
+import java.nio.ByteBuffer;
+
 /**
  * This class is to encapsulate the reflection detail of
  * invoking XWalkExtension class in the shared library APK.
@@ -15,6 +17,12 @@ import android.content.Intent;
  * configuration information in extensions-config.json.
  */
 public class XWalkExtensionClient {
+    // The threading policies, see getThreadingPolicy().
+    public static final int THREADING_EXTENSION_THREAD = 0;
+    public static final int THREADING_SERIAL_PER_EXTENSION = 1;
+    public static final int THREADING_SERIAL_PER_INSTANCE = 2;
+    public static final int THREADING_CONCURRENT = 3;
+
     // The unique name for this extension.
     protected String mName;
 
@@ -81,6 +89,29 @@ public class XWalkExtensionClient {
         return mEntryPoints;
     }
 
+    /**
+     * Declare the threads to handle the messages on. By default the messages
+     * of all the extensions are handled on one shared thread, the extensions
+     * with slow handlers could override it to use their own threads:
+     * THREADING_SERIAL_PER_EXTENSION handles the messages of all the instances
+     * in order, THREADING_SERIAL_PER_INSTANCE keeps the order per instance and
+     * THREADING_CONCURRENT doesn't keep any order.
+     * It's queried once when the extension is registered.
+     * @return the threading policy.
+     */
+    public int getThreadingPolicy() {
+        return THREADING_EXTENSION_THREAD;
+    }
+
+    /**
+     * The number of threads for THREADING_SERIAL_PER_INSTANCE and
+     * THREADING_CONCURRENT.
+     * @return the maximum number of threads.
+     */
+    public int getMaxThreads() {
+        return 2;
+    }
+
     /**
      * Called when this app is onStart.
      */
@@ -134,6 +165,15 @@ public class XWalkExtensionClient {
     public void onMessage(int extensionInstanceID, String message) {
     }
 
+    /**
+     * JavaScript posts an ArrayBuffer to Java code. It's ignored unless
+     * overridden.
+     * @param extensionInstanceID the ID of extension instance where the message came from.
+     * @param message the bytes in a direct buffer, which could be kept after this returns.
+     */
+    public void onBinaryMessage(int extensionInstanceID, ByteBuffer message) {
+    }
+
     /**
      * Synchronized JavaScript calls into Java code. Similar to
      * onMessage. The only difference is it's a synchronized
@@ -157,6 +197,16 @@ public class XWalkExtensionClient {
         mExtensionContext.postMessage(this, instanceID, message);
     }
 
+    /**
+     * Post binary data to JavaScript via extension's context, which is
+     * received as an ArrayBuffer without being encoded as text.
+     * @param instanceID the ID of target extension instance.
+     * @param data the bytes from the position to the limit are posted.
+     */
+    public final void postBinaryMessage(int instanceID, ByteBuffer data) {
+        mExtensionContext.postBinaryMessage(this, instanceID, data);
+    }
+
     /**
      * Broadcast messages to JavaScript via extension's context.
      * It's used by child classes to broadcast message from Java side
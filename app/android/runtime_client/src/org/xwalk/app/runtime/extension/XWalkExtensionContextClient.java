@@ -7,6 +7,8 @@ package org.xwalk.app.runtime.extension;
 import android.app.Activity;
 import android.content.Context;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interface for extension context
  *
@@ -34,6 +36,16 @@ public interface XWalkExtensionContextClient {
      */
     public void postMessage(XWalkExtensionClient extension, int instanceId, String message);
 
+    /**
+     * Post binary data to the given extension instance.
+     *
+     * @param extension The xwalk extension
+     * @param instanceId The unique id to identify the extension instance as the
+     *                   message destination.
+     * @param data The bytes from the position to the limit are posted.
+     */
+    public void postBinaryMessage(XWalkExtensionClient extension, int instanceId, ByteBuffer data);
+
     /**
      * Broadcast a message to all extension instances.
      *
@@ -6,6 +6,8 @@ package org.xwalk.app.runtime.extension;
 
 import android.content.Intent;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interface for bridging XWalkExtension functionalities to its backend implementation.
  */
@@ -25,6 +27,15 @@ interface XWalkRuntimeExtensionBridge {
      */
     public void postMessage(int instanceId, String message);
 
+    /**
+     * Post binary data from native to a specific receiver on JavaScript side,
+     * which receives it as an ArrayBuffer.
+     *
+     * @param instanceId The extension instance id.
+     * @param data The bytes from the position to the limit are posted.
+     */
+    public void postBinaryMessage(int instanceId, ByteBuffer data);
+
     /**
      * Broadcast a message frome native side to all receivers on JavaScript side.
      *
@@ -40,6 +51,14 @@ interface XWalkRuntimeExtensionBridge {
      */
     public void onMessage(int instanceId, String message);
 
+    /**
+     * Handle an ArrayBuffer from JavaScript side to native side.
+     *
+     * @param instanceId The extension instance id.
+     * @param message The bytes received in a direct buffer.
+     */
+    public void onBinaryMessage(int instanceId, ByteBuffer message);
+
     /**
      * Handle the message from JavaScript side to native side in a synchronous way.
      *
@@ -12,13 +12,16 @@ import android.content.res.Resources;
 import android.content.res.Resources.NotFoundException;
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.Class;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -31,6 +34,9 @@ public class XWalkRuntimeExtensionManager implements XWalkExtensionContextClient
     private final static String TAG = "XWalkExtensionManager";
     private final static String EXTENSION_CONFIG_FILE = "extensions-config.json";
 
+    private final static ConcurrentHashMap<String, String> sJsFileCache =
+            new ConcurrentHashMap<String, String>();
+
     private final Context mContext;
     private final Activity mActivity;
 
@@ -80,6 +86,12 @@ public class XWalkRuntimeExtensionManager implements XWalkExtensionContextClient
         if (bridge != null) bridge.postMessage(instanceID, message);
     }
 
+    public void postBinaryMessage(XWalkExtensionClient extension, int instanceID,
+            ByteBuffer data) {
+        XWalkRuntimeExtensionBridge bridge = mExtensions.get(extension.getExtensionName());
+        if (bridge != null) bridge.postBinaryMessage(instanceID, data);
+    }
+
     public void broadcastMessage(XWalkExtensionClient extension, String message) {
         XWalkRuntimeExtensionBridge bridge = mExtensions.get(extension.getExtensionName());
         if (bridge != null) bridge.broadcastMessage(message);
@@ -175,9 +187,14 @@ public class XWalkRuntimeExtensionManager implements XWalkExtensionContextClient
         }
     }
 
-    private String getExtensionJSFileContent(Context context, String fileName, boolean fromRaw)
-            throws IOException {
-        String result = "";
+    // The runtime client can't use the loader of the core library, which may
+    // live in another class loader in shared mode, so it keeps its own cache.
+    private static String getExtensionJSFileContent(Context context, String fileName,
+            boolean fromRaw) throws IOException {
+        String key = context.getPackageName() + (fromRaw ? ":raw:" : ":") + fileName;
+        String result = sJsFileCache.get(key);
+        if (result != null) return result;
+
         InputStream inputStream = null;
         try {
             if (fromRaw) {
@@ -199,15 +216,22 @@ public class XWalkRuntimeExtensionManager implements XWalkExtensionContextClient
                 AssetManager assetManager = context.getAssets();
                 inputStream = assetManager.open(fileName);
             }
+            // available() is only a hint, so read until the end of the stream
+            // and decode the whole content at once.
             int size = inputStream.available();
-            byte[] buffer = new byte[size];
-            inputStream.read(buffer);
-            result = new String(buffer);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(size > 0 ? size : 8192);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            result = new String(output.toByteArray(), "UTF-8");
         } finally {
             if (inputStream != null) {
                 inputStream.close();
             }
         }
+        sJsFileCache.put(key, result);
         return result;
     }
 
@@ -6,7 +6,11 @@ package org.xwalk.core.internal.extensions;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.chromium.base.CalledByNative;
 import org.chromium.base.JNINamespace;
@@ -18,16 +22,200 @@ import org.chromium.base.JNINamespace;
 @JNINamespace("xwalk::extensions")
 public abstract class XWalkExtensionAndroid {
     private final static String TAG = "XWalkExtensionAndroid";
+
+    // The threading policies, see XWalkExtensionMessageDispatcher.
+    public static final int THREADING_EXTENSION_THREAD = 0;
+    public static final int THREADING_SERIAL_PER_EXTENSION = 1;
+    public static final int THREADING_SERIAL_PER_INSTANCE = 2;
+    public static final int THREADING_CONCURRENT = 3;
+
+    // The outbound policies, see XWalkExtensionOutboundQueue.
+    public static final int OUTBOUND_IMMEDIATE = 0;
+    public static final int OUTBOUND_QUEUED = 1;
+    public static final int OUTBOUND_KEEP_LATEST = 2;
+    public static final int OUTBOUND_BATCH = 3;
+
     private long mXWalkExtension;
+    private final String mName;
+    // The JavaScript API read in the background, null if it's given as is.
+    private final Future<String> mJsApi;
+    private volatile XWalkExtensionMessageDispatcher mDispatcher;
+    // Null for OUTBOUND_IMMEDIATE.
+    private volatile XWalkExtensionOutboundQueue mOutboundQueue;
+
+    private final XWalkExtensionOutboundQueue.Sender mOutboundSender =
+            new XWalkExtensionOutboundQueue.Sender() {
+        @Override
+        public void send(int instanceID, String message) {
+            if (mXWalkExtension == 0) {
+                Log.e(TAG, "Can not post a message to an invalid extension!");
+                return;
+            }
+
+            // Only the queued messages are acked by the JavaScript side.
+            nativePostQueuedMessage(mXWalkExtension, instanceID, message);
+        }
+
+        @Override
+        public void onBackpressureChanged(int instanceID, boolean behind) {
+            onOutboundBackpressure(instanceID, behind);
+        }
+    };
 
     public XWalkExtensionAndroid(String name, String jsApi) {
-        mXWalkExtension = nativeGetOrCreateExtension(name, jsApi, null);
+        this(name, jsApi, null);
     }
 
     public XWalkExtensionAndroid(String name, String jsApi, String[] entryPoints) {
+        mName = name;
+        mJsApi = null;
+        mDispatcher = new XWalkExtensionMessageDispatcher(name, THREADING_EXTENSION_THREAD, 1);
         mXWalkExtension = nativeGetOrCreateExtension(name, jsApi, entryPoints);
     }
 
+    /**
+     * The JavaScript API is only waited for when a renderer asks for it, on
+     * the IO thread, so the caller doesn't wait for it to be read.
+     */
+    public XWalkExtensionAndroid(String name, Future<String> jsApi, String[] entryPoints) {
+        mName = name;
+        mJsApi = jsApi;
+        mDispatcher = new XWalkExtensionMessageDispatcher(name, THREADING_EXTENSION_THREAD, 1);
+        mXWalkExtension = nativeGetOrCreateExtension(name, null, entryPoints);
+    }
+
+    /**
+     * Set the threads to handle the messages on, it's supposed to be called
+     * in the constructor. The messages pending with the previous policy are
+     * dropped.
+     * @param policy one of the THREADING_* policies.
+     * @param maxThreads the number of threads for THREADING_SERIAL_PER_INSTANCE
+     *        and THREADING_CONCURRENT.
+     */
+    public void setThreadingPolicy(int policy, int maxThreads) {
+        if (policy < THREADING_EXTENSION_THREAD || policy > THREADING_CONCURRENT) {
+            throw new IllegalArgumentException("Invalid threading policy: " + policy);
+        }
+        if (maxThreads <= 0) throw new IllegalArgumentException("maxThreads must be positive");
+
+        XWalkExtensionMessageDispatcher previous = mDispatcher;
+        mDispatcher = new XWalkExtensionMessageDispatcher(mName, policy, maxThreads);
+        previous.shutdown();
+    }
+
+    /**
+     * Set how the messages posted by postMessage() and postKeyedMessage() are
+     * sent, it's supposed to be called in the constructor. The messages
+     * pending with the previous policy are dropped.
+     * @param policy one of the OUTBOUND_* policies.
+     * @param highWatermark the number of the messages of an instance in
+     *        flight at most, and waiting beyond which the oldest ones are
+     *        dropped.
+     */
+    public void setOutboundPolicy(int policy, int highWatermark) {
+        if (policy < OUTBOUND_IMMEDIATE || policy > OUTBOUND_BATCH) {
+            throw new IllegalArgumentException("Invalid outbound policy: " + policy);
+        }
+        if (highWatermark <= 0) throw new IllegalArgumentException("highWatermark must be positive");
+
+        XWalkExtensionOutboundQueue previous = mOutboundQueue;
+        mOutboundQueue = policy == OUTBOUND_IMMEDIATE ?
+                null : new XWalkExtensionOutboundQueue(mOutboundSender, policy, highWatermark);
+        if (previous != null) previous.clear();
+    }
+
+    public int getOutboundPolicy() {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        return queue == null ? OUTBOUND_IMMEDIATE : queue.getPolicy();
+    }
+
+    /**
+     * @return whether the messages in flight to the instance reached the high
+     *         watermark and the JavaScript side hasn't caught up yet.
+     */
+    public boolean isOutboundBehind(int instanceID) {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        return queue != null && queue.isBehind(instanceID);
+    }
+
+    public int getOutboundPendingCount(int instanceID) {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        return queue == null ? 0 : queue.getPendingCount(instanceID);
+    }
+
+    /**
+     * @return the number of the messages sent to the instance and not handled
+     *         by the JavaScript side yet, a batch counts as one.
+     */
+    public int getOutboundInFlightCount(int instanceID) {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        return queue == null ? 0 : queue.getInFlightCount(instanceID);
+    }
+
+    public long getDroppedMessageCount() {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        return queue == null ? 0 : queue.getDroppedCount();
+    }
+
+    /**
+     * @return the number of the messages merged into others, by a later
+     *         message of the same key or into a batch.
+     */
+    public long getCoalescedMessageCount() {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        return queue == null ? 0 : queue.getCoalescedCount();
+    }
+
+    /**
+     * Called when the messages in flight to the instance reach the high
+     * watermark, and when the JavaScript side catches up afterwards. It's
+     * called on the flushing thread or the extension thread.
+     */
+    public void onOutboundBackpressure(int instanceID, boolean behind) {
+    }
+
+    public int getThreadingPolicy() {
+        return mDispatcher.getPolicy();
+    }
+
+    /**
+     * @return the number of the messages waiting for or being handled.
+     */
+    public int getPendingMessageCount() {
+        return mDispatcher.getPendingMessageCount();
+    }
+
+    /**
+     * @return the number of the messages of the instance waiting for or being
+     *         handled, only tracked with the serial threading policies.
+     */
+    public int getPendingMessageCount(int instanceID) {
+        return mDispatcher.getPendingMessageCount(instanceID);
+    }
+
+    public int getMaxPendingMessageCount() {
+        return mDispatcher.getMaxPendingMessageCount();
+    }
+
+    public long getHandledMessageCount() {
+        return mDispatcher.getHandledMessageCount();
+    }
+
+    /**
+     * @return the average time spent in onMessage() and onSyncMessage().
+     */
+    public double getAverageHandlerLatencyMillis() {
+        return mDispatcher.getAverageHandlerLatencyMillis();
+    }
+
+    public double getMaxHandlerLatencyMillis() {
+        return mDispatcher.getMaxHandlerLatencyMillis();
+    }
+
+    public String getMessageStats() {
+        return mDispatcher.getStats();
+    }
+
     protected void destroyExtension() {
         if (mXWalkExtension == 0) {
             Log.e(TAG, "The extension to be destroyed is invalid!");
@@ -36,9 +224,29 @@ public abstract class XWalkExtensionAndroid {
 
         nativeDestroyExtension(mXWalkExtension);
         mXWalkExtension = 0;
+        mDispatcher.shutdown();
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        if (queue != null) queue.clear();
     }
 
     public void postMessage(int instanceID, String message) {
+        postKeyedMessage(instanceID, null, message);
+    }
+
+    /**
+     * Post a message, which replaces the pending one of the same key with
+     * OUTBOUND_KEEP_LATEST. The key is ignored with the other policies.
+     */
+    public void postKeyedMessage(int instanceID, String key, String message) {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        if (queue == null) {
+            postMessageNow(instanceID, message);
+            return;
+        }
+        queue.post(instanceID, key, message);
+    }
+
+    private void postMessageNow(int instanceID, String message) {
         if (mXWalkExtension == 0) {
             Log.e(TAG, "Can not post a message to an invalid extension!");
             return;
@@ -47,6 +255,27 @@ public abstract class XWalkExtensionAndroid {
         nativePostMessage(mXWalkExtension, instanceID, message);
     }
 
+    /**
+     * Post the bytes from the position to the limit of the buffer, they're
+     * received as an ArrayBuffer in JS. A direct buffer is read without an
+     * extra copy. The position of the buffer is left unchanged.
+     */
+    public void postBinaryMessage(int instanceID, ByteBuffer data) {
+        if (mXWalkExtension == 0) {
+            Log.e(TAG, "Can not post a message to an invalid extension!");
+            return;
+        }
+
+        if (!data.isDirect()) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.remaining());
+            direct.put(data.duplicate());
+            direct.flip();
+            data = direct;
+        }
+        nativePostBinaryMessage(mXWalkExtension, instanceID, data, data.position(),
+                data.remaining());
+    }
+
     public void broadcastMessage(String message) {
         if (mXWalkExtension == 0) {
             Log.e(TAG, "Can not broadcast message to an invalid extension!");
@@ -56,14 +285,179 @@ public abstract class XWalkExtensionAndroid {
         nativeBroadcastMessage(mXWalkExtension, message);
     }
 
+    /**
+     * Broadcast the message only to the instances subscribed to the topic.
+     */
+    public void publishMessage(String topic, String message) {
+        if (mXWalkExtension == 0) {
+            Log.e(TAG, "Can not broadcast message to an invalid extension!");
+            return;
+        }
+
+        nativePublishMessage(mXWalkExtension, topic, message);
+    }
+
+    /**
+     * Let the instance receive the messages published to the topic. The
+     * subscriptions are dropped along with the instance.
+     */
+    public void subscribe(int instanceID, String topic) {
+        if (mXWalkExtension == 0) {
+            Log.e(TAG, "Can not subscribe to an invalid extension!");
+            return;
+        }
+
+        nativeSubscribe(mXWalkExtension, instanceID, topic);
+    }
+
+    public void unsubscribe(int instanceID, String topic) {
+        if (mXWalkExtension == 0) {
+            Log.e(TAG, "Can not unsubscribe from an invalid extension!");
+            return;
+        }
+
+        nativeUnsubscribe(mXWalkExtension, instanceID, topic);
+    }
+
     @CalledByNative
-    public abstract void onMessage(int instanceID, String message);
+    private void handleMessage(final int instanceID, final String message) {
+        mDispatcher.dispatchMessage(instanceID, new Runnable() {
+            @Override
+            public void run() {
+                onMessage(instanceID, message);
+            }
+        });
+    }
 
+    // Returns null if the reply is deferred, it's sent by sendSyncReply() then.
     @CalledByNative
+    private String handleSyncMessage(final int instanceID, int syncID, final String message) {
+        final XWalkExtensionPendingReply reply =
+                new XWalkExtensionPendingReply(this, instanceID, syncID);
+        return mDispatcher.dispatchSyncMessage(instanceID, new Callable<String>() {
+            @Override
+            public String call() {
+                onSyncMessage(instanceID, message, reply);
+                return reply.takeReplyOrDefer();
+            }
+        });
+    }
+
+    @CalledByNative
+    private void handleBinaryMessage(final int instanceID, final ByteBuffer message) {
+        mDispatcher.dispatchMessage(instanceID, new Runnable() {
+            @Override
+            public void run() {
+                onBinaryMessage(instanceID, message);
+            }
+        });
+    }
+
+    @CalledByNative
+    private String getJsApi() {
+        if (mJsApi == null) return null;
+        try {
+            return mJsApi.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to read the JavaScript API of " + mName, e.getCause());
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while reading the JavaScript API of " + mName);
+        }
+        return null;
+    }
+
+    @CalledByNative
+    private void handleMessagesAcked(int instanceID, int count) {
+        XWalkExtensionOutboundQueue queue = mOutboundQueue;
+        if (queue != null) queue.onAcked(instanceID, count);
+    }
+
+    @CalledByNative
+    private static ByteBuffer createBinaryBuffer(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    public abstract void onMessage(int instanceID, String message);
+
+    /**
+     * Called for an ArrayBuffer posted by JS. The direct buffer is owned by
+     * the extension and can be kept after this returns.
+     */
+    public void onBinaryMessage(int instanceID, ByteBuffer message) {
+        Log.w(TAG, "Binary message ignored by the extension");
+    }
+
     public abstract String onSyncMessage(int instanceID, String message);
 
+    /**
+     * Called for a sync message. The reply could be kept and completed later
+     * on any thread, so that a slow handler doesn't block the extension
+     * thread, while the JavaScript side waits for it until the timeout set by
+     * setSyncMessageTimeout(). By default it replies with onSyncMessage().
+     */
+    public void onSyncMessage(int instanceID, String message, XWalkExtensionPendingReply reply) {
+        reply.complete(onSyncMessage(instanceID, message));
+    }
+
+    /**
+     * Set how long the JavaScript side waits for a deferred reply, it's
+     * replied with timeoutReply afterwards and the late reply is dropped.
+     * @param timeoutMillis the timeout, 0 to wait forever which is the default.
+     */
+    public void setSyncMessageTimeout(long timeoutMillis, String timeoutReply) {
+        if (timeoutMillis < 0) throw new IllegalArgumentException("timeoutMillis must not be negative");
+        if (mXWalkExtension == 0) {
+            Log.e(TAG, "Can not set the timeout of an invalid extension!");
+            return;
+        }
+
+        nativeSetSyncMessageTimeout(mXWalkExtension, timeoutMillis,
+                timeoutReply == null ? "" : timeoutReply);
+    }
+
+    /**
+     * Set the latency budget of the sync messages. A sync message replied
+     * later than that is logged with the name of the extension and the
+     * duration, so is a deferred one still pending by then.
+     * @param budgetMillis the budget, 0 to disable the logging.
+     */
+    public void setSyncLatencyBudget(long budgetMillis) {
+        if (budgetMillis < 0) throw new IllegalArgumentException("budgetMillis must not be negative");
+        if (mXWalkExtension == 0) {
+            Log.e(TAG, "Can not set the latency budget of an invalid extension!");
+            return;
+        }
+
+        nativeSetSyncLatencyBudget(mXWalkExtension, budgetMillis);
+    }
+
+    void sendSyncReply(int instanceID, int syncID, String reply) {
+        if (mXWalkExtension == 0) {
+            Log.e(TAG, "Can not reply to a sync message of an invalid extension!");
+            return;
+        }
+
+        nativeSendSyncReply(mXWalkExtension, instanceID, syncID, reply);
+    }
+
     private native long nativeGetOrCreateExtension(String name, String jsApi, String[] entryPoints);
     private native void nativePostMessage(long nativeXWalkExtensionAndroid, int instanceID, String message);
+    private native void nativePostQueuedMessage(long nativeXWalkExtensionAndroid, int instanceID,
+            String message);
+    private native void nativePostBinaryMessage(long nativeXWalkExtensionAndroid, int instanceID,
+            ByteBuffer data, int offset, int length);
     private native void nativeBroadcastMessage(long nativeXWalkExtensionAndroid, String message);
+    private native void nativePublishMessage(long nativeXWalkExtensionAndroid, String topic,
+            String message);
+    private native void nativeSubscribe(long nativeXWalkExtensionAndroid, int instanceID,
+            String topic);
+    private native void nativeUnsubscribe(long nativeXWalkExtensionAndroid, int instanceID,
+            String topic);
+    private native void nativeSendSyncReply(long nativeXWalkExtensionAndroid, int instanceID,
+            int syncID, String reply);
+    private native void nativeSetSyncMessageTimeout(long nativeXWalkExtensionAndroid,
+            long timeoutMillis, String timeoutReply);
+    private native void nativeSetSyncLatencyBudget(long nativeXWalkExtensionAndroid,
+            long budgetMillis);
     private native void nativeDestroyExtension(long nativeXWalkExtensionAndroid);
 }
@@ -0,0 +1,321 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extensions;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the messages of an extension over to its own threads according to
+ * the threading policy, and keeps the statistics of the message handling.
+ *
+ * With THREADING_EXTENSION_THREAD, the messages are handled right away on
+ * the calling thread, i.e. the extension thread shared by all the
+ * extensions. The other policies let the extension thread go on with the
+ * messages of other extensions:
+ * - THREADING_SERIAL_PER_EXTENSION: one thread for the extension, the
+ *   messages of all the instances are handled in order.
+ * - THREADING_SERIAL_PER_INSTANCE: a pool of threads for the extension, the
+ *   messages of each instance are handled in order, different instances
+ *   run in parallel.
+ * - THREADING_CONCURRENT: a pool of threads for the extension, the messages
+ *   are handled in parallel without any order.
+ *
+ * A sync message still blocks the extension thread until it's handled, and
+ * it's queued after the messages sent before it by the same instance. The
+ * sync messages not handled yet on shutdown are replied with "".
+ */
+class XWalkExtensionMessageDispatcher {
+    private static final String TAG = "XWalkExtensionMessageDispatcher";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final String mName;
+    private final int mPolicy;
+    private final ThreadPoolExecutor mExecutor;
+    // The pending messages by instance, only used for the serial policies.
+    // A queue is dropped once it's drained.
+    private final Map<Integer, SerialQueue> mQueues = new HashMap<Integer, SerialQueue>();
+    // The sync messages queued and not started yet, whose callers are waiting.
+    private final Set<SyncMessageTask> mPendingSyncMessages = new HashSet<SyncMessageTask>();
+    private boolean mShutdown;
+
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+    private int mMaxPendingCount;
+    private long mHandledCount;
+    private long mHandlerTimeNanos;
+    private long mMaxHandlerTimeNanos;
+    private long mWaitTimeNanos;
+
+    private class SerialQueue {
+        private final int mInstanceID;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<Runnable>();
+        private boolean mRunning;
+
+        SerialQueue(int instanceID) {
+            mInstanceID = instanceID;
+        }
+
+        // Called with the dispatcher locked.
+        void add(Runnable task) {
+            mTasks.add(task);
+            if (!mRunning) scheduleNext();
+        }
+
+        // Called with the dispatcher locked.
+        void scheduleNext() {
+            final Runnable task = mTasks.poll();
+            mRunning = task != null;
+            if (task == null) {
+                mQueues.remove(mInstanceID);
+                return;
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        synchronized (XWalkExtensionMessageDispatcher.this) {
+                            if (!mShutdown) scheduleNext();
+                        }
+                    }
+                }
+            });
+        }
+
+        int size() {
+            return mTasks.size() + (mRunning ? 1 : 0);
+        }
+
+        int getWaitingCount() {
+            return mTasks.size();
+        }
+    }
+
+    private class SyncMessageTask extends FutureTask<Void> {
+        SyncMessageTask(Runnable task) {
+            super(task, null);
+        }
+
+        @Override
+        public void run() {
+            synchronized (XWalkExtensionMessageDispatcher.this) {
+                mPendingSyncMessages.remove(this);
+            }
+            super.run();
+        }
+    }
+
+    XWalkExtensionMessageDispatcher(String name, int policy, int maxThreads) {
+        mName = name;
+        mPolicy = policy;
+
+        if (policy == XWalkExtensionAndroid.THREADING_EXTENSION_THREAD) {
+            mExecutor = null;
+            return;
+        }
+
+        int threads = policy == XWalkExtensionAndroid.THREADING_SERIAL_PER_EXTENSION ?
+                1 : Math.max(1, maxThreads);
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "XWalkExtension-" + mName + "-" +
+                                mCount.getAndIncrement());
+                    }
+                });
+        // Don't keep the threads of the extensions which are idle.
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    int getPolicy() {
+        return mPolicy;
+    }
+
+    void dispatchMessage(int instanceID, final Runnable handler) {
+        final long queued = System.nanoTime();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runHandler(handler, queued);
+            }
+        };
+
+        if (mExecutor == null) {
+            task.run();
+            return;
+        }
+
+        synchronized (this) {
+            if (mShutdown) return;
+            onQueued();
+            if (mPolicy == XWalkExtensionAndroid.THREADING_CONCURRENT) {
+                mExecutor.execute(task);
+            } else {
+                getQueue(instanceID).add(task);
+            }
+        }
+    }
+
+    String dispatchSyncMessage(int instanceID, final Callable<String> handler) {
+        final long queued = System.nanoTime();
+        final String[] result = new String[1];
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runHandler(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            result[0] = handler.call();
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }, queued);
+            }
+        };
+
+        // The renderer is blocked anyway, so there is no need to hop to
+        // another thread unless the message has to wait for the ones before.
+        if (mExecutor == null || mPolicy == XWalkExtensionAndroid.THREADING_CONCURRENT) {
+            task.run();
+            return result[0];
+        }
+
+        SyncMessageTask future = new SyncMessageTask(task);
+        synchronized (this) {
+            if (mShutdown) return "";
+            onQueued();
+            mPendingSyncMessages.add(future);
+            getQueue(instanceID).add(future);
+        }
+        try {
+            future.get();
+        } catch (CancellationException e) {
+            Log.w(TAG, "Dropped a sync message of " + mName + " on shutdown");
+            return "";
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while waiting for a sync message of " + mName);
+            // A null result stands for a deferred reply, which never comes.
+            return "";
+        }
+        return result[0];
+    }
+
+    /**
+     * Drop the pending messages and stop the threads.
+     */
+    void shutdown() {
+        if (mExecutor == null) return;
+
+        int dropped = 0;
+        synchronized (this) {
+            mShutdown = true;
+            // The messages waiting in the serial queues, and the ones handed
+            // over to the executor but not started, never run.
+            for (SerialQueue queue : mQueues.values()) dropped += queue.getWaitingCount();
+            mQueues.clear();
+            dropped += mExecutor.shutdownNow().size();
+            mPendingCount.addAndGet(-dropped);
+
+            // Unblock the extension thread waiting for them.
+            for (SyncMessageTask future : mPendingSyncMessages) future.cancel(false);
+            mPendingSyncMessages.clear();
+        }
+        if (dropped > 0) Log.w(TAG, "Dropped " + dropped + " pending messages of " + mName);
+    }
+
+    int getPendingMessageCount() {
+        return mPendingCount.get();
+    }
+
+    synchronized int getPendingMessageCount(int instanceID) {
+        SerialQueue queue = mQueues.get(instanceID);
+        return queue == null ? 0 : queue.size();
+    }
+
+    synchronized int getMaxPendingMessageCount() {
+        return mMaxPendingCount;
+    }
+
+    synchronized long getHandledMessageCount() {
+        return mHandledCount;
+    }
+
+    synchronized double getAverageHandlerLatencyMillis() {
+        if (mHandledCount == 0) return 0;
+        return mHandlerTimeNanos / 1000000.0 / mHandledCount;
+    }
+
+    synchronized double getMaxHandlerLatencyMillis() {
+        return mMaxHandlerTimeNanos / 1000000.0;
+    }
+
+    synchronized double getAverageWaitTimeMillis() {
+        if (mHandledCount == 0) return 0;
+        return mWaitTimeNanos / 1000000.0 / mHandledCount;
+    }
+
+    synchronized String getStats() {
+        return mName + ": " + mHandledCount + " messages, " + mPendingCount.get() +
+                " pending (max " + mMaxPendingCount + "), " +
+                String.format("%.2f", getAverageHandlerLatencyMillis()) + "ms handler (max " +
+                String.format("%.2f", getMaxHandlerLatencyMillis()) + "ms), " +
+                String.format("%.2f", getAverageWaitTimeMillis()) + "ms queued";
+    }
+
+    // Called with the dispatcher locked.
+    private SerialQueue getQueue(int instanceID) {
+        SerialQueue queue = mQueues.get(instanceID);
+        if (queue == null) {
+            queue = new SerialQueue(instanceID);
+            mQueues.put(instanceID, queue);
+        }
+        return queue;
+    }
+
+    // Called with the dispatcher locked.
+    private void onQueued() {
+        int pending = mPendingCount.incrementAndGet();
+        if (pending > mMaxPendingCount) mMaxPendingCount = pending;
+    }
+
+    private void runHandler(Runnable handler, long queued) {
+        long start = System.nanoTime();
+        try {
+            handler.run();
+        } finally {
+            long end = System.nanoTime();
+            if (mExecutor != null) mPendingCount.decrementAndGet();
+            synchronized (this) {
+                mHandledCount++;
+                mWaitTimeNanos += start - queued;
+                mHandlerTimeNanos += end - start;
+                if (end - start > mMaxHandlerTimeNanos) mMaxHandlerTimeNanos = end - start;
+            }
+        }
+    }
+}
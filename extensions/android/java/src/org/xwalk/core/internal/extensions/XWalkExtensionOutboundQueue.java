@@ -0,0 +1,242 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extensions;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.json.JSONArray;
+
+/**
+ * Holds the messages posted by an extension to its instances, and sends them
+ * at most once per frame according to the outbound policy:
+ * - OUTBOUND_QUEUED sends the messages in order.
+ * - OUTBOUND_KEEP_LATEST sends only the latest message of each key posted
+ *   since the last flush, at the position of the latest one. The messages
+ *   without a key are kept as is.
+ * - OUTBOUND_BATCH sends the messages in a JSON array, so the JavaScript side
+ *   gets one message per frame.
+ *
+ * The JavaScript side acks the messages it has handled, see onAcked(). At
+ * most the high watermark of messages of an instance are in flight, the rest
+ * wait in the queue, where the ones beyond the high watermark drop the oldest.
+ * The instance is behind once the messages in flight reach the high
+ * watermark, and catches up once they're back to half of it. Only the
+ * messages sent by the queue are acked, the ones posted otherwise, e.g. the
+ * broadcast ones, aren't counted.
+ */
+class XWalkExtensionOutboundQueue {
+    private static final long FLUSH_INTERVAL_MILLIS = 16;
+
+    private static Handler sHandler;
+
+    interface Sender {
+        void send(int instanceID, String message);
+
+        void onBackpressureChanged(int instanceID, boolean behind);
+    }
+
+    private static class Pending {
+        // The keyed messages are keyed by the key, the others by a new object.
+        final LinkedHashMap<Object, String> mMessages = new LinkedHashMap<Object, String>();
+        // The messages sent and not acked yet, a batch counts as one.
+        int mInFlight;
+        boolean mBehind;
+
+        boolean isIdle() {
+            return mMessages.isEmpty() && mInFlight == 0 && !mBehind;
+        }
+    }
+
+    private final Sender mSender;
+    private final int mPolicy;
+    private final int mHighWatermark;
+    private final SparseArray<Pending> mPending = new SparseArray<Pending>();
+    private boolean mFlushScheduled;
+    private boolean mCleared;
+
+    private long mSentCount;
+    private long mDroppedCount;
+    private long mCoalescedCount;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    XWalkExtensionOutboundQueue(Sender sender, int policy, int highWatermark) {
+        mSender = sender;
+        mPolicy = policy;
+        mHighWatermark = highWatermark;
+    }
+
+    private static synchronized Handler getHandler() {
+        if (sHandler == null) {
+            HandlerThread thread = new HandlerThread("XWalkExtensionOutbound");
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        return sHandler;
+    }
+
+    int getPolicy() {
+        return mPolicy;
+    }
+
+    synchronized void post(int instanceID, String key, String message) {
+        if (mCleared) return;
+
+        Pending pending = mPending.get(instanceID);
+        if (pending == null) {
+            pending = new Pending();
+            mPending.put(instanceID, pending);
+        }
+
+        if (mPolicy == XWalkExtensionAndroid.OUTBOUND_KEEP_LATEST && key != null) {
+            // Moved to the end, a put() alone keeps the position of the old one.
+            if (pending.mMessages.remove(key) != null) mCoalescedCount++;
+            pending.mMessages.put(key, message);
+        } else {
+            pending.mMessages.put(new Object(), message);
+        }
+
+        if (pending.mMessages.size() > mHighWatermark) {
+            Iterator<Object> oldest = pending.mMessages.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+            mDroppedCount++;
+        }
+
+        scheduleFlush();
+    }
+
+    /**
+     * Called when the JavaScript side has handled the count of messages sent
+     * to the instance.
+     */
+    void onAcked(int instanceID, int count) {
+        boolean caughtUp = false;
+        synchronized (this) {
+            Pending pending = mPending.get(instanceID);
+            if (mCleared || pending == null) return;
+
+            pending.mInFlight = Math.max(0, pending.mInFlight - count);
+            if (pending.mBehind && pending.mInFlight <= mHighWatermark / 2) {
+                pending.mBehind = false;
+                caughtUp = true;
+            }
+            if (!pending.mMessages.isEmpty()) {
+                scheduleFlush();
+            } else if (pending.isIdle()) {
+                mPending.remove(instanceID);
+            }
+        }
+        if (caughtUp) mSender.onBackpressureChanged(instanceID, false);
+    }
+
+    synchronized boolean isBehind(int instanceID) {
+        Pending pending = mPending.get(instanceID);
+        return pending != null && pending.mBehind;
+    }
+
+    synchronized int getPendingCount(int instanceID) {
+        Pending pending = mPending.get(instanceID);
+        return pending == null ? 0 : pending.mMessages.size();
+    }
+
+    synchronized int getInFlightCount(int instanceID) {
+        Pending pending = mPending.get(instanceID);
+        return pending == null ? 0 : pending.mInFlight;
+    }
+
+    synchronized long getSentCount() {
+        return mSentCount;
+    }
+
+    synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * Drop the pending messages and stop flushing.
+     */
+    synchronized void clear() {
+        mCleared = true;
+        mPending.clear();
+        getHandler().removeCallbacks(mFlushRunnable);
+    }
+
+    // Called with the queue locked.
+    private void scheduleFlush() {
+        if (mFlushScheduled) return;
+        mFlushScheduled = true;
+        getHandler().postDelayed(mFlushRunnable, FLUSH_INTERVAL_MILLIS);
+    }
+
+    private void flush() {
+        List<Integer> instances = new ArrayList<Integer>();
+        List<List<String>> messages = new ArrayList<List<String>>();
+        List<Integer> becameBehind = new ArrayList<Integer>();
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mCleared) return;
+
+            for (int i = 0; i < mPending.size(); ++i) {
+                Pending pending = mPending.valueAt(i);
+                int room = mHighWatermark - pending.mInFlight;
+                if (room <= 0 || pending.mMessages.isEmpty()) continue;
+
+                // A batch takes all the messages in one.
+                if (mPolicy == XWalkExtensionAndroid.OUTBOUND_BATCH) room = Integer.MAX_VALUE;
+                List<String> sending = new ArrayList<String>();
+                Iterator<String> it = pending.mMessages.values().iterator();
+                while (it.hasNext() && sending.size() < room) {
+                    sending.add(it.next());
+                    it.remove();
+                }
+
+                if (mPolicy == XWalkExtensionAndroid.OUTBOUND_BATCH) {
+                    mCoalescedCount += sending.size() - 1;
+                    mSentCount++;
+                    pending.mInFlight++;
+                } else {
+                    mSentCount += sending.size();
+                    pending.mInFlight += sending.size();
+                }
+                if (!pending.mBehind && pending.mInFlight >= mHighWatermark) {
+                    pending.mBehind = true;
+                    becameBehind.add(mPending.keyAt(i));
+                }
+                instances.add(mPending.keyAt(i));
+                messages.add(sending);
+            }
+        }
+
+        // Reported before sending, so it comes before the acks catching up.
+        for (int instanceID : becameBehind) mSender.onBackpressureChanged(instanceID, true);
+
+        for (int i = 0; i < instances.size(); ++i) {
+            int instanceID = instances.get(i);
+            List<String> sending = messages.get(i);
+            if (mPolicy == XWalkExtensionAndroid.OUTBOUND_BATCH) {
+                mSender.send(instanceID, new JSONArray(sending).toString());
+            } else {
+                for (String message : sending) mSender.send(instanceID, message);
+            }
+        }
+    }
+}
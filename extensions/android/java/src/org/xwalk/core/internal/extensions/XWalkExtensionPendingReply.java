@@ -0,0 +1,76 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extensions;
+
+import android.util.Log;
+
+/**
+ * The reply to a sync message, which could be completed after the handler
+ * returns, on any thread. The JavaScript side is blocked until it's
+ * completed, or until the timeout of the extension.
+ *
+ * If it's completed before the handler returns, the reply is returned to
+ * the extension thread directly as onSyncMessage() did.
+ */
+public final class XWalkExtensionPendingReply {
+    private static final String TAG = "XWalkExtensionPendingReply";
+
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int DEFERRED = 2;
+    private static final int SENT = 3;
+
+    private final XWalkExtensionAndroid mExtension;
+    private final int mInstanceID;
+    private final int mSyncID;
+    private int mState = PENDING;
+    private String mReply;
+
+    XWalkExtensionPendingReply(XWalkExtensionAndroid extension, int instanceID, int syncID) {
+        mExtension = extension;
+        mInstanceID = instanceID;
+        mSyncID = syncID;
+    }
+
+    public int getInstanceID() {
+        return mInstanceID;
+    }
+
+    /**
+     * Reply to the sync message. Only the first call takes effect.
+     * @param reply the reply, null for an empty string.
+     */
+    public void complete(String reply) {
+        if (reply == null) reply = "";
+        synchronized (this) {
+            if (mState == PENDING) {
+                mState = COMPLETED;
+                mReply = reply;
+                return;
+            }
+            if (mState != DEFERRED) {
+                Log.w(TAG, "The sync message is replied more than once");
+                return;
+            }
+            mState = SENT;
+        }
+        mExtension.sendSyncReply(mInstanceID, mSyncID, reply);
+    }
+
+    public synchronized boolean isCompleted() {
+        return mState == COMPLETED || mState == SENT;
+    }
+
+    // Called when the handler returns. Returns the reply if it's completed
+    // already, otherwise null and the reply is sent once it's completed.
+    synchronized String takeReplyOrDefer() {
+        if (mState == COMPLETED) {
+            mState = SENT;
+            return mReply;
+        }
+        mState = DEFERRED;
+        return null;
+    }
+}
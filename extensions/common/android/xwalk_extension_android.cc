@@ -4,12 +4,16 @@
 
 #include "xwalk/extensions/common/android/xwalk_extension_android.h"
 
+#include <string.h>
+
 #include <vector>
 
 #include "base/android/jni_android.h"
 #include "base/android/jni_array.h"
+#include "base/android/jni_string.h"
 #include "base/bind.h"
 #include "base/logging.h"
+#include "base/message_loop/message_loop_proxy.h"
 #include "jni/XWalkExtensionAndroid_jni.h"
 #include "xwalk/extensions/common/xwalk_extension.h"
 #include "xwalk/runtime/browser/xwalk_browser_main_parts_android.h"
@@ -18,19 +22,42 @@
 namespace xwalk {
 namespace extensions {
 
+using base::android::ConvertJavaStringToUTF8;
+
+namespace {
+
+const int64 kDefaultSyncLatencyBudgetMs = 100;
+
+scoped_refptr<XWalkExtensionSharedMessage> CreateSharedMessage(JNIEnv* env,
+                                                               jstring msg) {
+  const char* str = env->GetStringUTFChars(msg, 0);
+  scoped_refptr<XWalkExtensionSharedMessage> shared_msg(
+      new XWalkExtensionSharedMessage(
+          scoped_ptr<base::Value>(new base::StringValue(str))));
+  env->ReleaseStringUTFChars(msg, str);
+  return shared_msg;
+}
+
+}  // namespace
+
 XWalkExtensionAndroid::XWalkExtensionAndroid(JNIEnv* env, jobject obj,
                                              jstring name, jstring js_api,
                                              jobjectArray js_entry_points)
     : XWalkExtension(),
+      sync_latency_budget_(
+          base::TimeDelta::FromMilliseconds(kDefaultSyncLatencyBudgetMs)),
+      javascript_api_pending_(js_api == NULL),
       java_ref_(env, obj),
       next_instance_id_(1) {
   const char *str = env->GetStringUTFChars(name, 0);
   set_name(str);
   env->ReleaseStringUTFChars(name, str);
 
-  str = env->GetStringUTFChars(js_api, 0);
-  set_javascript_api(str);
-  env->ReleaseStringUTFChars(js_api, str);
+  if (js_api) {
+    str = env->GetStringUTFChars(js_api, 0);
+    set_javascript_api(str);
+    env->ReleaseStringUTFChars(js_api, str);
+  }
 
   std::vector<std::string> entry_points;
   base::android::AppendJavaStringArrayToStringVector(
@@ -50,15 +77,44 @@ XWalkExtensionAndroid::~XWalkExtensionAndroid() {
 }
 
 bool XWalkExtensionAndroid::is_valid() {
-  if (instances_.empty() || javascript_api().empty()) {
+  if (instances_.empty() ||
+      (!javascript_api_pending_ && XWalkExtension::javascript_api().empty())) {
     return false;
   }
 
   return true;
 }
 
+std::string XWalkExtensionAndroid::javascript_api() const {
+  JNIEnv* env = base::android::AttachCurrentThread();
+  ScopedJavaLocalRef<jobject> obj;
+  {
+    base::AutoLock lock(lock_);
+    if (!javascript_api_pending_)
+      return XWalkExtension::javascript_api();
+    obj = java_ref_.get(env);
+  }
+  if (obj.is_null())
+    return std::string();
+
+  ScopedJavaLocalRef<jstring> js_api =
+      Java_XWalkExtensionAndroid_getJsApi(env, obj.obj());
+  std::string api;
+  if (!js_api.is_null())
+    api = ConvertJavaStringToUTF8(js_api);
+
+  base::AutoLock lock(lock_);
+  if (javascript_api_pending_) {
+    javascript_api_pending_ = false;
+    // Only set once, by the first call resolving it.
+    const_cast<XWalkExtensionAndroid*>(this)->set_javascript_api(api);
+  }
+  return XWalkExtension::javascript_api();
+}
+
 void XWalkExtensionAndroid::PostMessage(JNIEnv* env, jobject obj,
                                        jint instance, jstring msg) {
+  base::AutoLock lock(lock_);
   if (!is_valid()) return;
 
   InstanceMap::iterator it = instances_.find(instance);
@@ -72,16 +128,160 @@ void XWalkExtensionAndroid::PostMessage(JNIEnv* env, jobject obj,
   env->ReleaseStringUTFChars(msg, str);
 }
 
+void XWalkExtensionAndroid::PostQueuedMessage(JNIEnv* env, jobject obj,
+                                              jint instance, jstring msg) {
+  base::AutoLock lock(lock_);
+  if (!is_valid()) return;
+
+  InstanceMap::iterator it = instances_.find(instance);
+  if (it == instances_.end()) {
+    LOG(WARNING) << "Instance(" << instance << ") not found ";
+    return;
+  }
+
+  const char* str = env->GetStringUTFChars(msg, 0);
+  it->second->PostAckedMessageWrapper(str);
+  env->ReleaseStringUTFChars(msg, str);
+}
+
 void XWalkExtensionAndroid::BroadcastMessage(JNIEnv* env, jobject obj,
                                              jstring msg) {
+  base::AutoLock lock(lock_);
   if (!is_valid()) return;
 
-  const char* str = env->GetStringUTFChars(msg, 0);
+  // The message is serialized once for all the instances.
+  scoped_refptr<XWalkExtensionSharedMessage> shared_msg =
+      CreateSharedMessage(env, msg);
   for (InstanceMap::iterator it = instances_.begin();
        it != instances_.end(); ++it) {
-    it->second->PostMessageWrapper(str);
+    it->second->PostSharedMessageToJS(shared_msg);
   }
-  env->ReleaseStringUTFChars(msg, str);
+}
+
+void XWalkExtensionAndroid::PublishMessage(JNIEnv* env, jobject obj,
+                                           jstring topic, jstring msg) {
+  base::AutoLock lock(lock_);
+  if (!is_valid()) return;
+
+  TopicMap::const_iterator subscribers =
+      topics_.find(ConvertJavaStringToUTF8(env, topic));
+  if (subscribers == topics_.end()) return;
+
+  scoped_refptr<XWalkExtensionSharedMessage> shared_msg =
+      CreateSharedMessage(env, msg);
+  for (std::set<int>::const_iterator id = subscribers->second.begin();
+       id != subscribers->second.end(); ++id) {
+    InstanceMap::iterator it = instances_.find(*id);
+    if (it != instances_.end())
+      it->second->PostSharedMessageToJS(shared_msg);
+  }
+}
+
+void XWalkExtensionAndroid::Subscribe(JNIEnv* env, jobject obj,
+                                      jint instance, jstring topic) {
+  base::AutoLock lock(lock_);
+  if (instances_.find(instance) == instances_.end()) {
+    LOG(WARNING) << "Instance(" << instance << ") not found ";
+    return;
+  }
+  topics_[ConvertJavaStringToUTF8(env, topic)].insert(instance);
+}
+
+void XWalkExtensionAndroid::Unsubscribe(JNIEnv* env, jobject obj,
+                                        jint instance, jstring topic) {
+  base::AutoLock lock(lock_);
+  TopicMap::iterator it = topics_.find(ConvertJavaStringToUTF8(env, topic));
+  if (it == topics_.end()) return;
+
+  it->second.erase(instance);
+  if (it->second.empty())
+    topics_.erase(it);
+}
+
+void XWalkExtensionAndroid::PostBinaryMessage(JNIEnv* env, jobject obj,
+                                              jint instance, jobject buffer,
+                                              jint offset, jint length) {
+  base::AutoLock lock(lock_);
+  if (!is_valid()) return;
+
+  InstanceMap::iterator it = instances_.find(instance);
+  if (it == instances_.end()) {
+    LOG(WARNING) << "Instance(" << instance << ") not found ";
+    return;
+  }
+
+  const char* data =
+      static_cast<const char*>(env->GetDirectBufferAddress(buffer));
+  if (!data || offset < 0 || length < 0 ||
+      offset + length > env->GetDirectBufferCapacity(buffer)) {
+    LOG(WARNING) << "Invalid binary message for instance(" << instance << ")";
+    return;
+  }
+
+  it->second->PostBinaryMessageWrapper(data + offset, length);
+}
+
+void XWalkExtensionAndroid::SendSyncReply(JNIEnv* env, jobject obj,
+                                          jint instance, jint sync_id,
+                                          jstring reply) {
+  base::AutoLock lock(lock_);
+  if (!task_runner_.get()) return;
+
+  // The native extension lives until the process ends, see the comments in
+  // xwalk_extension_android.h.
+  task_runner_->PostTask(
+      FROM_HERE,
+      base::Bind(&XWalkExtensionAndroid::DeliverSyncReply,
+                 base::Unretained(this), instance, sync_id,
+                 ConvertJavaStringToUTF8(env, reply)));
+}
+
+void XWalkExtensionAndroid::DeliverSyncReply(int instance, int sync_id,
+                                             const std::string& reply) {
+  // The instances are only removed on this thread, so the instance found is
+  // still alive after |lock_| is released.
+  XWalkExtensionAndroidInstance* target = NULL;
+  {
+    base::AutoLock lock(lock_);
+    InstanceMap::iterator it = instances_.find(instance);
+    if (it != instances_.end())
+      target = it->second;
+  }
+  if (!target) {
+    LOG(WARNING) << "Instance(" << instance << ") not found ";
+    return;
+  }
+
+  target->ReplyToSyncMessage(sync_id, reply);
+}
+
+void XWalkExtensionAndroid::SetSyncMessageTimeout(JNIEnv* env, jobject obj,
+                                                  jlong timeout_ms,
+                                                  jstring timeout_reply) {
+  base::AutoLock lock(lock_);
+  sync_message_timeout_ = base::TimeDelta::FromMilliseconds(timeout_ms);
+  sync_message_timeout_reply_ = ConvertJavaStringToUTF8(env, timeout_reply);
+}
+
+void XWalkExtensionAndroid::SetSyncLatencyBudget(JNIEnv* env, jobject obj,
+                                                 jlong budget_ms) {
+  base::AutoLock lock(lock_);
+  sync_latency_budget_ = base::TimeDelta::FromMilliseconds(budget_ms);
+}
+
+base::TimeDelta XWalkExtensionAndroid::sync_message_timeout() {
+  base::AutoLock lock(lock_);
+  return sync_message_timeout_;
+}
+
+std::string XWalkExtensionAndroid::sync_message_timeout_reply() {
+  base::AutoLock lock(lock_);
+  return sync_message_timeout_reply_;
+}
+
+base::TimeDelta XWalkExtensionAndroid::sync_latency_budget() {
+  base::AutoLock lock(lock_);
+  return sync_latency_budget_;
 }
 
 void XWalkExtensionAndroid::DestroyExtension(JNIEnv* env, jobject obj) {
@@ -89,12 +289,15 @@ void XWalkExtensionAndroid::DestroyExtension(JNIEnv* env, jobject obj) {
   // at this point even if the corresponding Java-side object is destroyed.
   // Instead, we only reset the java reference to the Java-side object and id
   // counter. See comments in xwalk_extension_android.h.
+  base::AutoLock lock(lock_);
   java_ref_.reset();
   next_instance_id_ = 1;
 }
 
 XWalkExtensionInstance* XWalkExtensionAndroid::CreateInstance() {
   JNIEnv* env = base::android::AttachCurrentThread();
+  // |java_ref_| is rebound and reset on the Java threads.
+  base::AutoLock lock(lock_);
   ScopedJavaLocalRef<jobject> obj = java_ref_.get(env);
   if (obj.is_null()) {
     return NULL;
@@ -103,6 +306,8 @@ XWalkExtensionInstance* XWalkExtensionAndroid::CreateInstance() {
   XWalkExtensionAndroidInstance* instance =
       new XWalkExtensionAndroidInstance(this, java_ref_, next_instance_id_);
   instances_[next_instance_id_] = instance;
+  if (!task_runner_.get())
+    task_runner_ = base::MessageLoopProxy::current();
 
   next_instance_id_++;
 
@@ -114,12 +319,9 @@ XWalkExtensionInstance* XWalkExtensionAndroid::CreateInstance() {
 }
 
 void XWalkExtensionAndroid::RemoveInstance(int instance) {
-  JNIEnv* env = base::android::AttachCurrentThread();
-  ScopedJavaLocalRef<jobject> obj = java_ref_.get(env);
-  if (obj.is_null()) {
-    return;
-  }
-
+  // The instance is being deleted, so it's removed even if the Java object
+  // is gone, rather than left dangling in |instances_|.
+  base::AutoLock lock(lock_);
   InstanceMap::iterator it = instances_.find(instance);
   if (it == instances_.end()) {
     LOG(WARNING) << "Instance(" << instance << ") not found ";
@@ -127,10 +329,18 @@ void XWalkExtensionAndroid::RemoveInstance(int instance) {
   }
 
   instances_.erase(instance);
+  for (TopicMap::iterator topic = topics_.begin(); topic != topics_.end();) {
+    topic->second.erase(instance);
+    if (topic->second.empty())
+      topics_.erase(topic++);
+    else
+      ++topic;
+  }
 }
 
 void XWalkExtensionAndroid::BindToJavaObject(JNIEnv* env, jobject obj) {
   JavaObjectWeakGlobalRef ref(env, obj);
+  base::AutoLock lock(lock_);
   java_ref_ = ref;
 }
 
@@ -140,7 +350,10 @@ XWalkExtensionAndroidInstance::XWalkExtensionAndroidInstance(
     int id)
     : extension_(extension),
       java_ref_(java_ref),
-      id_(id) {
+      id_(id),
+      next_sync_id_(1),
+      pending_sync_id_(0),
+      weak_factory_(this) {
 }
 
 XWalkExtensionAndroidInstance::~XWalkExtensionAndroidInstance() {
@@ -149,6 +362,12 @@ XWalkExtensionAndroidInstance::~XWalkExtensionAndroidInstance() {
 
 void XWalkExtensionAndroidInstance::HandleMessage(
     scoped_ptr<base::Value> msg) {
+  // An ArrayBuffer posted by JS.
+  if (msg->IsType(base::Value::TYPE_BINARY)) {
+    HandleBinaryMessage(*static_cast<base::BinaryValue*>(msg.get()));
+    return;
+  }
+
   std::string value;
 
   if (!msg->GetAsString(&value)) {
@@ -163,10 +382,46 @@ void XWalkExtensionAndroidInstance::HandleMessage(
     return;
   }
 
-  Java_XWalkExtensionAndroid_onMessage(
+  Java_XWalkExtensionAndroid_handleMessage(
       env, obj.obj(), getID(), buffer.obj());
 }
 
+void XWalkExtensionAndroidInstance::HandleBinaryMessage(
+    const base::BinaryValue& msg) {
+  JNIEnv* env = base::android::AttachCurrentThread();
+  ScopedJavaLocalRef<jobject> obj = java_ref_.get(env);
+  if (obj.is_null()) {
+    LOG(ERROR) << "No valid Java object is referenced for message routing";
+    return;
+  }
+
+  // The message may be handled after this returns on the threads of the
+  // extension, so it's copied into a buffer owned by Java once, instead of
+  // being converted to a string.
+  ScopedJavaLocalRef<jobject> buffer =
+      Java_XWalkExtensionAndroid_createBinaryBuffer(env, msg.GetSize());
+  void* data = env->GetDirectBufferAddress(buffer.obj());
+  if (!data) {
+    LOG(ERROR) << "Failed to allocate a buffer of " << msg.GetSize()
+               << " bytes for the binary message";
+    return;
+  }
+  memcpy(data, msg.GetBuffer(), msg.GetSize());
+
+  Java_XWalkExtensionAndroid_handleBinaryMessage(
+      env, obj.obj(), getID(), buffer.obj());
+}
+
+void XWalkExtensionAndroidInstance::OnMessagesAcked(int count) {
+  JNIEnv* env = base::android::AttachCurrentThread();
+  ScopedJavaLocalRef<jobject> obj = java_ref_.get(env);
+  if (obj.is_null())
+    return;
+
+  Java_XWalkExtensionAndroid_handleMessagesAcked(
+      env, obj.obj(), getID(), count);
+}
+
 void XWalkExtensionAndroidInstance::HandleSyncMessage(
     scoped_ptr<base::Value> msg) {
   scoped_ptr<base::Value> ret_val(new base::StringValue(""));
@@ -185,18 +440,90 @@ void XWalkExtensionAndroidInstance::HandleSyncMessage(
     return;
   }
 
+  const int sync_id = next_sync_id_++;
+  const base::TimeTicks start = base::TimeTicks::Now();
   ScopedJavaLocalRef<jstring> buffer(env, env->NewStringUTF(value.c_str()));
   ScopedJavaLocalRef<jstring> ret =
-      Java_XWalkExtensionAndroid_onSyncMessage(
-              env, obj.obj(), getID(), buffer.obj());
+      Java_XWalkExtensionAndroid_handleSyncMessage(
+              env, obj.obj(), getID(), sync_id, buffer.obj());
+
+  // A null reply is deferred by the Java side, the JS side stays blocked
+  // until SendSyncReply() or the timeout, while this thread goes on.
+  if (ret.is_null()) {
+    pending_sync_id_ = sync_id;
+    sync_message_start_ = start;
+
+    base::TimeDelta timeout = extension_->sync_message_timeout();
+    if (timeout > base::TimeDelta()) {
+      base::MessageLoopProxy::current()->PostDelayedTask(
+          FROM_HERE,
+          base::Bind(&XWalkExtensionAndroidInstance::OnSyncMessageTimeout,
+                     weak_factory_.GetWeakPtr(), sync_id),
+          timeout);
+    }
+    base::TimeDelta budget = extension_->sync_latency_budget();
+    if (budget > base::TimeDelta()) {
+      base::MessageLoopProxy::current()->PostDelayedTask(
+          FROM_HERE,
+          base::Bind(
+              &XWalkExtensionAndroidInstance::OnSyncLatencyBudgetExceeded,
+              weak_factory_.GetWeakPtr(), sync_id),
+          budget);
+    }
+    return;
+  }
 
   const char *str = env->GetStringUTFChars(ret.obj(), 0);
   ret_val.reset(new base::StringValue(str));
   env->ReleaseStringUTFChars(ret.obj(), str);
 
+  ReportSyncMessageLatency(base::TimeTicks::Now() - start);
   SendSyncReplyToJS(ret_val.Pass());
 }
 
+void XWalkExtensionAndroidInstance::ReplyToSyncMessage(
+    int sync_id, const std::string& reply) {
+  if (sync_id != pending_sync_id_) {
+    LOG(WARNING) << "Dropped the late reply to a sync message of extension "
+                 << extension_->name() << ", instance(" << id_ << ")";
+    return;
+  }
+
+  pending_sync_id_ = 0;
+  ReportSyncMessageLatency(base::TimeTicks::Now() - sync_message_start_);
+  SendSyncReplyToJS(scoped_ptr<base::Value>(new base::StringValue(reply)));
+}
+
+void XWalkExtensionAndroidInstance::OnSyncMessageTimeout(int sync_id) {
+  if (sync_id != pending_sync_id_) return;
+
+  LOG(WARNING) << "Sync message of extension " << extension_->name()
+               << ", instance(" << id_ << ") timed out after "
+               << (base::TimeTicks::Now() - sync_message_start_).InMilliseconds()
+               << " ms";
+  ReplyToSyncMessage(sync_id, extension_->sync_message_timeout_reply());
+}
+
+void XWalkExtensionAndroidInstance::OnSyncLatencyBudgetExceeded(int sync_id) {
+  if (sync_id != pending_sync_id_) return;
+
+  LOG(WARNING) << "Sync message of extension " << extension_->name()
+               << ", instance(" << id_ << ") still pending after "
+               << (base::TimeTicks::Now() - sync_message_start_).InMilliseconds()
+               << " ms";
+}
+
+void XWalkExtensionAndroidInstance::ReportSyncMessageLatency(
+    base::TimeDelta latency) {
+  base::TimeDelta budget = extension_->sync_latency_budget();
+  if (budget <= base::TimeDelta() || latency <= budget) return;
+
+  LOG(WARNING) << "Sync message of extension " << extension_->name()
+               << ", instance(" << id_ << ") took "
+               << latency.InMilliseconds() << " ms, over the budget of "
+               << budget.InMilliseconds() << " ms";
+}
+
 static jlong GetOrCreateExtension(JNIEnv* env, jobject obj, jstring name,
                                  jstring js_api, jobjectArray js_entry_points) {
   xwalk::XWalkBrowserMainPartsAndroid* main_parts =
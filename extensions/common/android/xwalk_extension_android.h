@@ -6,6 +6,7 @@
 #define XWALK_EXTENSIONS_COMMON_ANDROID_XWALK_EXTENSION_ANDROID_H_
 
 #include <map>
+#include <set>
 #include <string>
 
 #include "base/android/jni_weak_ref.h"
@@ -13,6 +14,10 @@
 #include "base/callback.h"
 #include "base/logging.h"
 #include "base/memory/scoped_ptr.h"
+#include "base/memory/weak_ptr.h"
+#include "base/single_thread_task_runner.h"
+#include "base/synchronization/lock.h"
+#include "base/time/time.h"
 #include "xwalk/extensions/browser/xwalk_extension_service.h"
 #include "xwalk/extensions/common/xwalk_extension.h"
 
@@ -52,14 +57,42 @@ class XWalkExtensionAndroid : public XWalkExtension {
 
   // JNI interface to post message from Java to JS
   void PostMessage(JNIEnv* env, jobject obj, jint instance, jstring msg);
+  // Like PostMessage(), but the JS side acks the message once it's handled,
+  // for the messages sent by the outbound queue.
+  void PostQueuedMessage(JNIEnv* env, jobject obj, jint instance, jstring msg);
   void BroadcastMessage(JNIEnv* env, jobject obj, jstring msg);
+  // Broadcast only to the instances subscribed to |topic|.
+  void PublishMessage(JNIEnv* env, jobject obj, jstring topic, jstring msg);
+  void Subscribe(JNIEnv* env, jobject obj, jint instance, jstring topic);
+  void Unsubscribe(JNIEnv* env, jobject obj, jint instance, jstring topic);
+  // Post the |length| bytes from |offset| of the direct ByteBuffer |buffer|,
+  // which is received as an ArrayBuffer in JS.
+  void PostBinaryMessage(JNIEnv* env, jobject obj, jint instance,
+                         jobject buffer, jint offset, jint length);
+
+  // Reply to the sync message |sync_id| deferred by the Java side, it's
+  // called from any Java thread.
+  void SendSyncReply(JNIEnv* env, jobject obj, jint instance, jint sync_id,
+                     jstring reply);
+  void SetSyncMessageTimeout(JNIEnv* env, jobject obj, jlong timeout_ms,
+                             jstring timeout_reply);
+  void SetSyncLatencyBudget(JNIEnv* env, jobject obj, jlong budget_ms);
 
   void DestroyExtension(JNIEnv* env, jobject obj);
 
   XWalkExtensionInstance* CreateInstance() override;
 
+  // Without a JavaScript API given to the constructor, it's read in the
+  // background by the Java side, and waited for on the first call.
+  std::string javascript_api() const override;
+
   void RemoveInstance(int instance);
 
+  // A zero TimeDelta means no timeout or no budget.
+  base::TimeDelta sync_message_timeout();
+  std::string sync_message_timeout_reply();
+  base::TimeDelta sync_latency_budget();
+
   // Each Extension object created on Java side is backed by this native object,
   // and the native object also has a reference to Java-side object for message
   // routing from native side to Java side. However, the Java extension object
@@ -70,8 +103,27 @@ class XWalkExtensionAndroid : public XWalkExtension {
  private:
   bool is_valid();
 
+  // Called on the extension thread.
+  void DeliverSyncReply(int instance, int sync_id, const std::string& reply);
+
+  // The messages are posted from any Java thread, while the instances are
+  // created and removed on the extension thread. |lock_| guards
+  // |instances_|, |topics_|, |task_runner_| and the sync message settings,
+  // as well as |java_ref_| and the pending JavaScript API read on the IO
+  // thread.
+  mutable base::Lock lock_;
   typedef std::map<int, XWalkExtensionAndroidInstance*> InstanceMap;
   InstanceMap instances_;
+  // The ids of the instances subscribed to each topic.
+  typedef std::map<std::string, std::set<int> > TopicMap;
+  TopicMap topics_;
+  // The extension thread, where the deferred sync replies are sent.
+  scoped_refptr<base::SingleThreadTaskRunner> task_runner_;
+  base::TimeDelta sync_message_timeout_;
+  std::string sync_message_timeout_reply_;
+  base::TimeDelta sync_latency_budget_;
+  // Whether the JavaScript API is still to be asked to the Java side.
+  mutable bool javascript_api_pending_;
   // Hold a reference to Java-side extension object for message routing.
   JavaObjectWeakGlobalRef java_ref_;
   int next_instance_id_;
@@ -91,18 +143,44 @@ class XWalkExtensionAndroidInstance : public XWalkExtensionInstance {
     PostMessageToJS(scoped_ptr<base::Value>(new base::StringValue(msg)));
   }
 
+  void PostAckedMessageWrapper(const char* msg) {
+    PostAckedMessageToJS(scoped_ptr<base::Value>(new base::StringValue(msg)));
+  }
+
+  void PostBinaryMessageWrapper(const char* data, size_t size) {
+    PostMessageToJS(scoped_ptr<base::Value>(
+        base::BinaryValue::CreateWithCopiedBuffer(data, size)));
+  }
+
   int getID() {
       return id_;
   }
 
+  // Reply to the deferred sync message |sync_id| unless it's replied already,
+  // e.g. on timeout.
+  void ReplyToSyncMessage(int sync_id, const std::string& reply);
+
  private:
   void HandleMessage(scoped_ptr<base::Value> msg) override;
   void HandleSyncMessage(scoped_ptr<base::Value> msg) override;
+  void OnMessagesAcked(int count) override;
+  void HandleBinaryMessage(const base::BinaryValue& msg);
+
+  void OnSyncMessageTimeout(int sync_id);
+  // The watchdog of a deferred sync message still pending after the budget.
+  void OnSyncLatencyBudgetExceeded(int sync_id);
+  void ReportSyncMessageLatency(base::TimeDelta latency);
 
   XWalkExtensionAndroid* extension_;
   // Hold a refenerence to Java-side XWalkExtensionAndroid object.
   JavaObjectWeakGlobalRef java_ref_;
   int id_;
+  // The JS side blocks on one sync message at a time, |pending_sync_id_| is
+  // the deferred one, 0 if none.
+  int next_sync_id_;
+  int pending_sync_id_;
+  base::TimeTicks sync_message_start_;
+  base::WeakPtrFactory<XWalkExtensionAndroidInstance> weak_factory_;
 
   DISALLOW_COPY_AND_ASSIGN(XWalkExtensionAndroidInstance);
 };
@@ -5,6 +5,8 @@
 #include "xwalk/extensions/common/xwalk_extension.h"
 
 #include "base/logging.h"
+#include "ipc/ipc_message.h"
+#include "ipc/ipc_message_utils.h"
 
 namespace xwalk {
 namespace extensions {
@@ -41,6 +43,21 @@ bool XWalkExtension::RegisterPermissions(const char* perm_table) const {
   return permissions_delegate_->RegisterPermissions(name(), perm_table);
 }
 
+XWalkExtensionSharedMessage::XWalkExtensionSharedMessage(
+    scoped_ptr<base::Value> msg)
+    : serialized_(new IPC::Message()) {
+  wrapped_.Append(msg.release());
+  IPC::WriteParam(serialized_.get(), wrapped_);
+}
+
+XWalkExtensionSharedMessage::~XWalkExtensionSharedMessage() {}
+
+const base::Value& XWalkExtensionSharedMessage::value() const {
+  const base::Value* value = NULL;
+  wrapped_.Get(0, &value);
+  return *value;
+}
+
 XWalkExtensionInstance::XWalkExtensionInstance() {}
 
 XWalkExtensionInstance::~XWalkExtensionInstance() {}
@@ -50,6 +67,35 @@ void XWalkExtensionInstance::SetPostMessageCallback(
   post_message_ = callback;
 }
 
+void XWalkExtensionInstance::SetPostSharedMessageCallback(
+    const PostSharedMessageCallback& callback) {
+  post_shared_message_ = callback;
+}
+
+void XWalkExtensionInstance::PostSharedMessageToJS(
+    const scoped_refptr<XWalkExtensionSharedMessage>& msg) {
+  if (!post_shared_message_.is_null()) {
+    post_shared_message_.Run(msg);
+    return;
+  }
+  PostMessageToJS(make_scoped_ptr(msg->value().DeepCopy()));
+}
+
+void XWalkExtensionInstance::SetPostAckedMessageCallback(
+    const PostMessageCallback& callback) {
+  post_acked_message_ = callback;
+}
+
+void XWalkExtensionInstance::PostAckedMessageToJS(
+    scoped_ptr<base::Value> msg) {
+  if (!post_acked_message_.is_null()) {
+    post_acked_message_.Run(msg.Pass());
+    return;
+  }
+  PostMessageToJS(msg.Pass());
+  OnMessagesAcked(1);
+}
+
 void XWalkExtensionInstance::SetSendSyncReplyCallback(
     const SendSyncReplyCallback& callback) {
   send_sync_reply_ = callback;
@@ -8,8 +8,14 @@
 #include <string>
 #include <vector>
 #include "base/callback.h"
+#include "base/memory/ref_counted.h"
+#include "base/memory/scoped_ptr.h"
 #include "base/values.h"
 
+namespace IPC {
+class Message;
+}
+
 namespace xwalk {
 namespace extensions {
 
@@ -49,7 +55,9 @@ class XWalkExtension {
   virtual XWalkExtensionInstance* CreateInstance() = 0;
 
   std::string name() const { return name_; }
-  std::string javascript_api() const { return javascript_api_; }
+  // Virtual so that an extension could resolve its JavaScript API on the
+  // first call, which is on the IO thread when a renderer asks for it.
+  virtual std::string javascript_api() const { return javascript_api_; }
 
   // Returns a list of entry points for which the extension should be loaded
   // when accessed. Entry points are used when the extension needs to have
@@ -91,6 +99,29 @@ class XWalkExtension {
   DISALLOW_COPY_AND_ASSIGN(XWalkExtension);
 };
 
+// A message posted to several instances, e.g. a broadcast. It's immutable
+// and serialized once into the parameter of the IPC messages, which is then
+// copied into the IPC message of each instance.
+class XWalkExtensionSharedMessage
+    : public base::RefCountedThreadSafe<XWalkExtensionSharedMessage> {
+ public:
+  explicit XWalkExtensionSharedMessage(scoped_ptr<base::Value> msg);
+
+  const base::Value& value() const;
+
+  // The message wrapped in a ListValue, serialized as the IPC parameter.
+  const IPC::Message& serialized() const { return *serialized_; }
+
+ private:
+  friend class base::RefCountedThreadSafe<XWalkExtensionSharedMessage>;
+  ~XWalkExtensionSharedMessage();
+
+  base::ListValue wrapped_;
+  scoped_ptr<IPC::Message> serialized_;
+
+  DISALLOW_COPY_AND_ASSIGN(XWalkExtensionSharedMessage);
+};
+
 // XWalkExtensionInstance represents an instance of a certain extension, which
 // is created per ScriptContext created by Crosswalk (which happens for every
 // frame loaded).
@@ -110,14 +141,24 @@ class XWalkExtensionInstance {
   // can be sent after HandleSyncMessage() function returns.
   virtual void HandleSyncMessage(scoped_ptr<base::Value> msg);
 
+  // Called when the JavaScript side has handled |count| more of the messages
+  // posted by PostAckedMessageToJS(), so the instance can tell how many are
+  // still in flight.
+  virtual void OnMessagesAcked(int count) {}
+
   // Callbacks used by extension instance to communicate back to JS. These are
   // set by the extension system. Callbacks will take the ownership of the
   // message.
   typedef base::Callback<void(scoped_ptr<base::Value> msg)> PostMessageCallback;
   typedef base::Callback<void(scoped_ptr<base::Value> msg)>
       SendSyncReplyCallback;
+  typedef base::Callback<void(
+      const scoped_refptr<XWalkExtensionSharedMessage>& msg)>
+      PostSharedMessageCallback;
 
   void SetPostMessageCallback(const PostMessageCallback& callback);
+  void SetPostSharedMessageCallback(const PostSharedMessageCallback& callback);
+  void SetPostAckedMessageCallback(const PostMessageCallback& callback);
   void SetSendSyncReplyCallback(const SendSyncReplyCallback& callback);
 
   // Function to be used by extensions Instances to post messages back to
@@ -127,6 +168,18 @@ class XWalkExtensionInstance {
     post_message_.Run(msg.Pass());
   }
 
+  // Like PostMessageToJS(), but the message is shared with other instances,
+  // so it's only serialized once. Falls back to posting a copy if the
+  // extension system doesn't support it.
+  void PostSharedMessageToJS(
+      const scoped_refptr<XWalkExtensionSharedMessage>& msg);
+
+  // Like PostMessageToJS(), but OnMessagesAcked() is called once the
+  // JavaScript side has handled the message. Only these messages are acked.
+  // Falls back to posting it as usual and acking it right away if the
+  // extension system doesn't support it.
+  void PostAckedMessageToJS(scoped_ptr<base::Value> msg);
+
  protected:
   XWalkExtensionInstance();
 
@@ -137,6 +190,8 @@ class XWalkExtensionInstance {
 
  private:
   PostMessageCallback post_message_;
+  PostSharedMessageCallback post_shared_message_;
+  PostMessageCallback post_acked_message_;
   SendSyncReplyCallback send_sync_reply_;
 
   DISALLOW_COPY_AND_ASSIGN(XWalkExtensionInstance);
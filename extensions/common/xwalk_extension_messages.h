@@ -93,3 +93,15 @@ IPC_MESSAGE_CONTROL1(XWalkExtensionServerMsg_DestroyInstance,  // NOLINT(*)
 
 IPC_MESSAGE_CONTROL1(XWalkExtensionClientMsg_InstanceDestroyed,  // NOLINT(*)
                      int64_t /* instance id */)
+
+// Like XWalkExtensionClientMsg_PostMessageToJS, but the JS side acks it with
+// XWalkExtensionServerMsg_AckMessagesToJS once it's handled.
+IPC_MESSAGE_CONTROL2(XWalkExtensionClientMsg_PostAckedMessageToJS,  // NOLINT(*)
+                     int64_t /* instance id */,
+                     base::ListValue /* contents */)
+
+// Tells the server how many of the acked messages of an instance the JS side
+// has handled since the last one, so it knows how far behind the JS side is.
+IPC_MESSAGE_CONTROL2(XWalkExtensionServerMsg_AckMessagesToJS,  // NOLINT(*)
+                     int64_t /* instance id */,
+                     int /* message count */)
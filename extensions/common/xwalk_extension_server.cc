@@ -47,6 +47,8 @@ bool XWalkExtensionServer::OnMessageReceived(const IPC::Message& message) {
         OnSendSyncMessageToNative)
     IPC_MESSAGE_HANDLER(XWalkExtensionServerMsg_GetExtensions,
         OnGetExtensions)
+    IPC_MESSAGE_HANDLER(XWalkExtensionServerMsg_AckMessagesToJS,
+        OnAckMessagesToJS)
     IPC_MESSAGE_UNHANDLED(handled = false)
   IPC_END_MESSAGE_MAP()
 
@@ -80,6 +82,14 @@ void XWalkExtensionServer::OnCreateInstance(int64_t instance_id,
       base::Bind(&XWalkExtensionServer::PostMessageToJSCallback,
                  base::Unretained(this), instance_id));
 
+  instance->SetPostSharedMessageCallback(
+      base::Bind(&XWalkExtensionServer::PostSharedMessageToJSCallback,
+                 base::Unretained(this), instance_id));
+
+  instance->SetPostAckedMessageCallback(
+      base::Bind(&XWalkExtensionServer::PostAckedMessageToJSCallback,
+                 base::Unretained(this), instance_id));
+
   instance->SetSendSyncReplyCallback(
       base::Bind(&XWalkExtensionServer::SendSyncReplyToJSCallback,
                  base::Unretained(this), instance_id));
@@ -113,6 +123,15 @@ void XWalkExtensionServer::OnPostMessageToNative(int64_t instance_id,
   data.instance->HandleMessage(value.Pass());
 }
 
+void XWalkExtensionServer::OnAckMessagesToJS(int64_t instance_id, int count) {
+  InstanceMap::const_iterator it = instances_.find(instance_id);
+  // The instance may be destroyed while the ack is on its way.
+  if (it == instances_.end())
+    return;
+
+  it->second.instance->OnMessagesAcked(count);
+}
+
 void XWalkExtensionServer::Initialize(IPC::Sender* sender) {
   base::AutoLock l(sender_lock_);
   DCHECK(!sender_);
@@ -203,6 +222,38 @@ void XWalkExtensionServer::PostMessageToJSCallback(
 
   scoped_ptr<IPC::Message> message(
       new XWalkExtensionClientMsg_PostMessageToJS(instance_id, wrapped_msg));
+  SendPostMessageToJS(message.Pass());
+}
+
+void XWalkExtensionServer::PostAckedMessageToJSCallback(
+    int64_t instance_id, scoped_ptr<base::Value> msg) {
+  base::ListValue wrapped_msg;
+  wrapped_msg.Append(msg.release());
+
+  scoped_ptr<IPC::Message> message(
+      new XWalkExtensionClientMsg_PostAckedMessageToJS(instance_id,
+                                                       wrapped_msg));
+  SendPostMessageToJS(message.Pass());
+}
+
+void XWalkExtensionServer::PostSharedMessageToJSCallback(
+    int64_t instance_id,
+    const scoped_refptr<XWalkExtensionSharedMessage>& msg) {
+  // Build the same message as XWalkExtensionClientMsg_PostMessageToJS, but
+  // copy the serialized value instead of serializing it again.
+  scoped_ptr<IPC::Message> message(
+      new IPC::Message(MSG_ROUTING_CONTROL,
+                       XWalkExtensionClientMsg_PostMessageToJS::ID,
+                       IPC::Message::PRIORITY_NORMAL));
+  IPC::WriteParam(message.get(), instance_id);
+  const IPC::Message& serialized = msg->serialized();
+  message->WriteBytes(serialized.payload(),
+                      static_cast<int>(serialized.payload_size()));
+  SendPostMessageToJS(message.Pass());
+}
+
+void XWalkExtensionServer::SendPostMessageToJS(
+    scoped_ptr<IPC::Message> message) {
   if (message->size() <= kInlineMessageMaxSize) {
     Send(message.release());
     return;
@@ -90,11 +90,20 @@ class XWalkExtensionServer : public IPC::Listener,
   // Message Handlers
   void OnDestroyInstance(int64_t instance_id);
   void OnPostMessageToNative(int64_t instance_id, const base::ListValue& msg);
+  void OnAckMessagesToJS(int64_t instance_id, int count);
   void OnSendSyncMessageToNative(int64_t instance_id,
       const base::ListValue& msg, IPC::Message* ipc_reply);
 
+  void PostSharedMessageToJSCallback(
+      int64_t instance_id,
+      const scoped_refptr<XWalkExtensionSharedMessage>& msg);
+  // Send the message inline, or in shared memory if it's too large.
+  void SendPostMessageToJS(scoped_ptr<IPC::Message> message);
+
   void PostMessageToJSCallback(int64_t instance_id,
                                scoped_ptr<base::Value> msg);
+  void PostAckedMessageToJSCallback(int64_t instance_id,
+                                    scoped_ptr<base::Value> msg);
 
   void SendSyncReplyToJSCallback(int64_t instance_id,
                                  scoped_ptr<base::Value> reply);
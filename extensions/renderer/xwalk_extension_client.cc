@@ -4,6 +4,8 @@
 
 #include "xwalk/extensions/renderer/xwalk_extension_client.h"
 
+#include "base/bind.h"
+#include "base/message_loop/message_loop.h"
 #include "base/values.h"
 #include "base/numerics/safe_conversions.h"
 #include "base/stl_util.h"
@@ -15,7 +17,8 @@ namespace extensions {
 
 XWalkExtensionClient::XWalkExtensionClient()
     : sender_(0),
-      next_instance_id_(1) {  // Zero is never used for a valid instance.
+      next_instance_id_(1),  // Zero is never used for a valid instance.
+      weak_factory_(this) {
 }
 
 XWalkExtensionClient::~XWalkExtensionClient() {
@@ -45,6 +48,8 @@ bool XWalkExtensionClient::OnMessageReceived(const IPC::Message& message) {
   IPC_BEGIN_MESSAGE_MAP(XWalkExtensionClient, message)
     IPC_MESSAGE_HANDLER(XWalkExtensionClientMsg_PostMessageToJS,
         OnPostMessageToJS)
+    IPC_MESSAGE_HANDLER(XWalkExtensionClientMsg_PostAckedMessageToJS,
+        OnPostAckedMessageToJS)
     IPC_MESSAGE_HANDLER(XWalkExtensionClientMsg_PostOutOfLineMessageToJS,
         OnPostOutOfLineMessageToJS)
     IPC_MESSAGE_HANDLER(XWalkExtensionClientMsg_InstanceDestroyed,
@@ -63,21 +68,49 @@ XWalkExtensionClient::ExtensionCodePoints::~ExtensionCodePoints() {
 
 void XWalkExtensionClient::OnPostMessageToJS(int64_t instance_id,
                                              const base::ListValue& msg) {
+  DeliverMessageToJS(instance_id, msg);
+}
+
+void XWalkExtensionClient::OnPostAckedMessageToJS(int64_t instance_id,
+                                                  const base::ListValue& msg) {
+  if (!DeliverMessageToJS(instance_id, msg))
+    return;
+
+  if (pending_acks_.empty()) {
+    base::MessageLoop::current()->PostTask(FROM_HERE,
+        base::Bind(&XWalkExtensionClient::SendPendingAcks,
+                   weak_factory_.GetWeakPtr()));
+  }
+  pending_acks_[instance_id]++;
+}
+
+bool XWalkExtensionClient::DeliverMessageToJS(int64_t instance_id,
+                                              const base::ListValue& msg) {
   HandlerMap::const_iterator it = handlers_.find(instance_id);
   if (it == handlers_.end()) {
     LOG(WARNING) << "Can't PostMessage to invalid Extension instance id: "
                  << instance_id;
-    return;
+    return false;
   }
 
   // See comment in DestroyInstance() about two step destruction.
   if (!it->second)
-    return;
+    return false;
 
   const base::Value* value;
   if (!msg.Get(0, &value))
-    return;
+    return false;
   it->second->HandleMessageFromNative(*value);
+  return true;
+}
+
+void XWalkExtensionClient::SendPendingAcks() {
+  std::map<int64_t, int> acks;
+  acks.swap(pending_acks_);
+  for (std::map<int64_t, int>::const_iterator it = acks.begin();
+       it != acks.end(); ++it) {
+    Send(new XWalkExtensionServerMsg_AckMessagesToJS(it->first, it->second));
+  }
 }
 
 void XWalkExtensionClient::OnPostOutOfLineMessageToJS(
@@ -100,6 +133,8 @@ void XWalkExtensionClient::DestroyInstance(int64_t instance_id) {
     return;
   }
   Send(new XWalkExtensionServerMsg_DestroyInstance(instance_id));
+  // Nothing waits for the acks of a destroyed instance.
+  pending_acks_.erase(instance_id);
 
   // Destruction happens in two steps, first we nullify the handler in our map,
   // to indicate that destruction message was sent. If we get a new message from
@@ -121,6 +156,7 @@ void XWalkExtensionClient::OnInstanceDestroyed(int64_t instance_id) {
   // instances.
   DCHECK(!it->second);
   handlers_.erase(it);
+  pending_acks_.erase(instance_id);
 }
 
 namespace {
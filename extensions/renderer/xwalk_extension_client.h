@@ -12,6 +12,7 @@
 
 #include "base/memory/scoped_ptr.h"
 #include "base/memory/shared_memory.h"
+#include "base/memory/weak_ptr.h"
 #include "base/values.h"
 #include "ipc/ipc_listener.h"
 
@@ -74,9 +75,16 @@ class XWalkExtensionClient : public IPC::Listener {
   // Message Handlers.
   void OnInstanceDestroyed(int64_t instance_id);
   void OnPostMessageToJS(int64_t instance_id, const base::ListValue& msg);
+  void OnPostAckedMessageToJS(int64_t instance_id, const base::ListValue& msg);
   void OnPostOutOfLineMessageToJS(base::SharedMemoryHandle handle,
                                   size_t size);
 
+  // Returns false if the message is dropped, e.g. the instance is destroyed.
+  bool DeliverMessageToJS(int64_t instance_id, const base::ListValue& msg);
+
+  // Sends the acks counted since the last time, one per instance.
+  void SendPendingAcks();
+
   IPC::Sender* sender_;
   ExtensionAPIMap extension_apis_;
 
@@ -84,6 +92,12 @@ class XWalkExtensionClient : public IPC::Listener {
   HandlerMap handlers_;
 
   int64_t next_instance_id_;
+
+  // The acked messages handled by instance and not acked yet. The acks are
+  // sent once the current batch of IPC messages is handled.
+  std::map<int64_t, int> pending_acks_;
+
+  base::WeakPtrFactory<XWalkExtensionClient> weak_factory_;
 };
 
 }  // namespace extensions
@@ -29,6 +29,17 @@ class XWalkCoreWrapper implements ReflectExceptionHandler {
 
     private static final String TAG = "XWalkActivity";
 
+    // The bridge classes whose methods are resolved in the background once
+    // the core is initialized, as most of them are used by the wrappers.
+    private static final String[] PRE_RESOLVED_CLASSES = {
+        "XWalkViewBridge",
+        "XWalkUIClientBridge",
+        "XWalkResourceClientBridge",
+        "XWalkPreferencesBridge",
+        "XWalkNavigationHistoryBridge",
+        "XWalkNavigationItemBridge",
+    };
+
     private int mSdkVersion;
     private int mMinSdkVersion;
 
@@ -84,6 +95,7 @@ class XWalkCoreWrapper implements ReflectExceptionHandler {
         sProvisionalInstance = null;
 
         sInstance.initCore();
+        sInstance.preResolveBridgeClasses();
     }
 
     public static void reset(XWalkCoreWrapper coreWrapper, XWalkLibraryListener coreListener) {
@@ -129,6 +141,20 @@ class XWalkCoreWrapper implements ReflectExceptionHandler {
         }
     }
 
+    private void preResolveBridgeClasses() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (String name : PRE_RESOLVED_CLASSES) {
+                    ReflectCache.preResolve(getBridgeClass(name));
+                }
+                Log.d(TAG, ReflectCache.getStats());
+            }
+        }, "XWalkReflectCache");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
     private XWalkCoreWrapper(int minSdkVersion) {
         mSdkVersion = XWalkSdkVersion.SDK_VERSION;
         mMinSdkVersion = (minSdkVersion > 0 && minSdkVersion <= mSdkVersion) ?
@@ -301,11 +327,7 @@ class XWalkCoreWrapper implements ReflectExceptionHandler {
     }
 
     public Class<?> getBridgeClass(String name) {
-        try {
-            return mBridgeLoader.loadClass(BRIDGE_PACKAGE + "." + name);
-        } catch (ClassNotFoundException e) {
-        }
-        return null;
+        return ReflectCache.getClass(mBridgeLoader, BRIDGE_PACKAGE, name);
     }
 
     @Override
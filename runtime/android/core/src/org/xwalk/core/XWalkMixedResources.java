@@ -9,8 +9,11 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.graphics.drawable.Drawable;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 
+import java.util.HashMap;
+
 /**
  * XWalkMixedResources is used to combine the resources
  * from two different packages.
@@ -32,9 +35,28 @@ import android.util.TypedValue;
  * For R.attr and R.style, I have no confidence that it's covered.
  * But the only place use this R.attr and R.style is "select" tag
  * which is verified working well with this MixedResources.
+ *
+ * Each resource id is looked up in both packages once, and routed to the one
+ * which has it afterwards. Both packages are built with the same package id,
+ * so most ids of the library name other resources in the app. The library
+ * code still looks them up here through the app's Activity or Application,
+ * e.g. the select popup, the pickers and the Chromium code using the
+ * application context, so those ids are routed by the caller.
  */
 class XWalkMixedResources extends Resources {
+    // The package id of the app and the library, the others are shared
+    // by both, e.g. the framework resources.
+    private static final int PACKAGE_ID = 0x7f;
+
+    // Where the resource of an id is from. 0 is the default of SparseIntArray.
+    private static final int FROM_APP = 1;
+    private static final int FROM_LIBRARY = 2;
+    private static final int FROM_CALLER = 3;
+
     private Resources mLibraryResource;
+    private final SparseIntArray mSources = new SparseIntArray();
+    // The ids of "package:type/name" in the library and in the app.
+    private final HashMap<String, int[]> mIdentifiers = new HashMap<String, int[]>();
 
     private boolean isCalledInLibrary() {
         StackTraceElement[] stacks = Thread.currentThread().getStackTrace();
@@ -57,74 +79,141 @@ class XWalkMixedResources extends Resources {
         mLibraryResource = libraryResources;
     }
 
+    private boolean isFromLibrary(int id) {
+        switch (getSource(id)) {
+            case FROM_LIBRARY:
+                return true;
+            case FROM_APP:
+                return false;
+            default:
+                return isCalledInLibrary();
+        }
+    }
+
+    private int getSource(int id) {
+        // Called by the constructor of Resources before the fields are set.
+        if (mLibraryResource == null || (id >>> 24) != PACKAGE_ID) return FROM_APP;
+
+        synchronized (mSources) {
+            int source = mSources.get(id);
+            if (source != 0) return source;
+        }
+
+        String libraryName = getResourceNameOrNull(mLibraryResource, id);
+        String appName = getAppResourceNameOrNull(id);
+        int source;
+        if (libraryName == null) {
+            source = appName == null ? FROM_CALLER : FROM_APP;
+        } else if (appName == null) {
+            source = FROM_LIBRARY;
+        } else {
+            // The same package in embedded mode.
+            source = libraryName.equals(appName) ? FROM_APP : FROM_CALLER;
+        }
+
+        synchronized (mSources) {
+            mSources.put(id, source);
+        }
+        return source;
+    }
+
+    private static String getResourceNameOrNull(Resources resources, int id) {
+        try {
+            return resources.getResourceName(id);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private String getAppResourceNameOrNull(int id) {
+        try {
+            return super.getResourceName(id);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
     @Override
     public CharSequence getText(int id) throws NotFoundException {
-        boolean calledInLibrary = isCalledInLibrary();
+        boolean fromLibrary = isFromLibrary(id);
         try {
-            if (calledInLibrary) return mLibraryResource.getText(id);
+            if (fromLibrary) return mLibraryResource.getText(id);
             else return super.getText(id);
         } catch (NotFoundException e) {
-            if (calledInLibrary) return super.getText(id);
+            if (fromLibrary) return super.getText(id);
             else return mLibraryResource.getText(id);
         }
     }
 
     @Override
     public XmlResourceParser getLayout(int id) throws NotFoundException {
-        boolean calledInLibrary = isCalledInLibrary();
+        boolean fromLibrary = isFromLibrary(id);
         try {
-            if (calledInLibrary) return mLibraryResource.getLayout(id);
+            if (fromLibrary) return mLibraryResource.getLayout(id);
             else return super.getLayout(id);
         } catch (NotFoundException e) {
-            if (calledInLibrary) return super.getLayout(id);
+            if (fromLibrary) return super.getLayout(id);
             else return mLibraryResource.getLayout(id);
         }
     }
 
     @Override
     public void getValue(int id, TypedValue outValue, boolean resolveRefs) {
-        boolean calledInLibrary = isCalledInLibrary();
+        boolean fromLibrary = isFromLibrary(id);
         try {
-            if (calledInLibrary) mLibraryResource.getValue(id, outValue, resolveRefs);
+            if (fromLibrary) mLibraryResource.getValue(id, outValue, resolveRefs);
             else super.getValue(id, outValue, resolveRefs);
         } catch (NotFoundException e) {
-            if (calledInLibrary) super.getValue(id, outValue, resolveRefs);
+            if (fromLibrary) super.getValue(id, outValue, resolveRefs);
             else mLibraryResource.getValue(id, outValue, resolveRefs);
         }
     }
 
     @Override
     public void getValueForDensity(int id, int density, TypedValue outValue, boolean resolveRefs) {
-        boolean calledInLibrary = isCalledInLibrary();
+        boolean fromLibrary = isFromLibrary(id);
         try {
-            if (calledInLibrary) mLibraryResource.getValueForDensity(id, density, outValue, resolveRefs);
+            if (fromLibrary) mLibraryResource.getValueForDensity(id, density, outValue, resolveRefs);
             else super.getValueForDensity(id, density, outValue, resolveRefs);
         } catch (NotFoundException e) {
-            if (calledInLibrary) super.getValueForDensity(id, density, outValue, resolveRefs);
+            if (fromLibrary) super.getValueForDensity(id, density, outValue, resolveRefs);
             else mLibraryResource.getValueForDensity(id, density, outValue, resolveRefs);
         }
     }
 
     @Override
     public int getIdentifier(String name, String defType, String defPackage) {
-        boolean calledInLibrary = isCalledInLibrary();
-        if (calledInLibrary) {
-            int id = mLibraryResource.getIdentifier(name, defType, defPackage);
-            return id != 0 ? id : super.getIdentifier(name, defType, defPackage);
-        } else {
-            int id = super.getIdentifier(name, defType, defPackage);
-            return id != 0 ? id : mLibraryResource.getIdentifier(name, defType, defPackage);
+        String key = defPackage + ":" + defType + "/" + name;
+        int[] ids;
+        synchronized (mIdentifiers) {
+            ids = mIdentifiers.get(key);
+        }
+        if (ids == null) {
+            ids = new int[] {
+                mLibraryResource.getIdentifier(name, defType, defPackage),
+                super.getIdentifier(name, defType, defPackage)
+            };
+            synchronized (mIdentifiers) {
+                mIdentifiers.put(key, ids);
+            }
+        }
+
+        int libraryId = ids[0];
+        int appId = ids[1];
+        if (libraryId == 0 || appId == 0 || libraryId == appId) {
+            return appId != 0 ? appId : libraryId;
         }
+        return isCalledInLibrary() ? libraryId : appId;
     }
 
     @Override
     public Drawable getDrawable(int id) {
-        boolean calledInLibrary = isCalledInLibrary();
+        boolean fromLibrary = isFromLibrary(id);
         try {
-            if (calledInLibrary) return mLibraryResource.getDrawable(id);
+            if (fromLibrary) return mLibraryResource.getDrawable(id);
             else return super.getDrawable(id);
         } catch (NotFoundException e) {
-            if (calledInLibrary) return super.getDrawable(id);
+            if (fromLibrary) return super.getDrawable(id);
             else return mLibraryResource.getDrawable(id);
         }
     }
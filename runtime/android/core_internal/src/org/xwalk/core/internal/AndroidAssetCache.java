@@ -0,0 +1,192 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A byte-budgeted LRU cache of small, immutable application assets.
+ *
+ * Assets packaged in the APK can not change while the process is alive, so
+ * the content of app:// and file:///android_asset/ resources could be kept in
+ * memory and served without reopening them through the AssetManager. The
+ * cache is keyed by the normalized asset path and is disabled until a
+ * positive capacity is set through XWalkPreferencesInternal.ASSET_CACHE_SIZE.
+ *
+ * All methods are thread-safe, the cache is mostly accessed on the IO thread.
+ */
+class AndroidAssetCache {
+    private static final String TAG = "AndroidAssetCache";
+
+    // A single asset can not take more than this fraction of the whole cache,
+    // so that one big file does not flush all the small ones.
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    private static AndroidAssetCache sInstance;
+
+    private final LinkedHashMap<String, byte[]> mEntries =
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private int mCapacity = 0;
+    private int mSize = 0;
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+
+    static synchronized AndroidAssetCache getInstance() {
+        if (sInstance == null) sInstance = new AndroidAssetCache();
+        return sInstance;
+    }
+
+    /**
+     * Set the budget of the cache in bytes. 0 or a negative value disables
+     * the cache and drops all the cached entries.
+     */
+    synchronized void setCapacity(int capacity) {
+        mCapacity = Math.max(capacity, 0);
+        trimToSize(mCapacity);
+    }
+
+    synchronized int getCapacity() {
+        return mCapacity;
+    }
+
+    synchronized boolean isEnabled() {
+        return mCapacity > 0;
+    }
+
+    synchronized int getSize() {
+        return mSize;
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Get a cached asset.
+     * @param assetPath The normalized path of the asset.
+     * @return An InputStream of the asset content, or null on a cache miss.
+     */
+    InputStream get(String assetPath) {
+        byte[] data = getData(assetPath);
+        return data != null ? new ByteArrayInputStream(data) : null;
+    }
+
+    /**
+     * Put an asset into the cache if it's small enough.
+     * @param assetPath The normalized path of the asset.
+     * @param stream The opened stream of the asset. The available() of an
+     *               asset stream is the remaining length of the asset.
+     * @return An InputStream of the asset content, which is the given stream
+     *         itself if the asset is not cached.
+     */
+    InputStream put(String assetPath, InputStream stream) throws IOException {
+        int length = stream.available();
+        if (!isCacheable(length)) return stream;
+
+        byte[] data;
+        try {
+            data = readFully(stream, length);
+        } finally {
+            stream.close();
+        }
+        putData(assetPath, data);
+        return new ByteArrayInputStream(data);
+    }
+
+    /**
+     * Load the given assets into the cache on a background thread.
+     * @param context The context to get the AssetManager from.
+     * @param assetPaths The normalized paths of the assets.
+     */
+    void prewarm(Context context, List<String> assetPaths) {
+        if (!isEnabled() || assetPaths == null || assetPaths.isEmpty()) return;
+
+        final AssetManager assets = context.getAssets();
+        final List<String> paths = new ArrayList<String>(assetPaths);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String path : paths) {
+                    if (contains(path)) continue;
+                    try {
+                        put(path, assets.open(path, AssetManager.ACCESS_STREAMING)).close();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Unable to prewarm asset: " + path);
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized boolean contains(String assetPath) {
+        return mEntries.containsKey(assetPath);
+    }
+
+    private synchronized byte[] getData(String assetPath) {
+        if (mCapacity <= 0) return null;
+        byte[] data = mEntries.get(assetPath);
+        if (data != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return data;
+    }
+
+    private synchronized void putData(String assetPath, byte[] data) {
+        if (!isCacheable(data.length)) return;
+        byte[] previous = mEntries.put(assetPath, data);
+        if (previous != null) mSize -= previous.length;
+        mSize += data.length;
+        trimToSize(mCapacity);
+    }
+
+    private synchronized boolean isCacheable(int length) {
+        return mCapacity > 0 && length >= 0 && length <= mCapacity / MAX_ENTRY_FRACTION;
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Map.Entry<String, byte[]>> it = mEntries.entrySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            mSize -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    private static byte[] readFully(InputStream stream, int length) throws IOException {
+        byte[] data = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int count = stream.read(data, offset, length - offset);
+            if (count < 0) break;
+            offset += count;
+        }
+        if (offset == length) return data;
+
+        byte[] result = new byte[offset];
+        System.arraycopy(data, 0, result, 0, offset);
+        return result;
+    }
+}
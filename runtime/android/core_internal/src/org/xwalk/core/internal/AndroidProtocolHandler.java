@@ -10,11 +10,13 @@ import android.net.Uri;
 import android.util.Log;
 import android.util.TypedValue;
 
+import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.chromium.base.CalledByNative;
@@ -35,6 +37,8 @@ class AndroidProtocolHandler {
     public static final String APP_SCHEME = "app";
     private static final String APP_SRC = "www";
     private static final String SCHEME_SEPARATOR = "//";
+    // The number of bytes needed to sniff the mime type of a stream.
+    private static final int MIME_SNIFF_LENGTH = 64;
 
     /**
      * Open an InputStream for an Android resource.
@@ -101,24 +105,43 @@ class AndroidProtocolHandler {
         }
     }
 
+    /**
+     * Load the assets of the given urls into the asset cache in background.
+     * Only app:// and file:///android_asset/ urls are taken into account.
+     * @param context The context manager.
+     * @param urls The urls of the assets.
+     */
+    static void prewarmAssetCache(Context context, List<String> urls) {
+        AndroidAssetCache cache = AndroidAssetCache.getInstance();
+        if (!cache.isEnabled() || urls == null) return;
+
+        List<String> assetPaths = new ArrayList<String>();
+        for (String url : urls) {
+            Uri uri = verifyUrl(url);
+            if (uri == null) continue;
+            if (APP_SCHEME.equals(uri.getScheme())) {
+                uri = appUriToFileUri(uri);
+                if (uri == null) continue;
+            }
+            if (FILE_SCHEME.equals(uri.getScheme()) &&
+                    uri.getPath().startsWith(nativeGetAndroidAssetPath())) {
+                assetPaths.add(getAssetPath(uri));
+            }
+        }
+        cache.prewarm(context, assetPaths);
+    }
+
     static String getUrlContent(Context context, String url) throws IOException {
         InputStream stream = open(context, url);
         if (stream == null) {
             throw new RuntimeException("Failed to open the url: " + url);
         }
 
-        String content = "";
         try {
-            final int bufferSize = 1024;
-            byte[] buffer = new byte[bufferSize];
-            int actualSize = 0;
-            while ((actualSize = stream.read(buffer, 0, bufferSize)) > 0) {
-                content += new String(buffer, 0, actualSize);
-            }
+            return ContentReader.readString(stream);
         } finally {
             stream.close();
         }
-        return content;
     }
 
     private static int getFieldId(Context context, String assetType, String assetName)
@@ -190,13 +213,31 @@ class AndroidProtocolHandler {
         assert uri.getPath().startsWith(nativeGetAndroidAssetPath());
         try {
             AssetManager assets = context.getAssets();
-            return assets.open(getAssetPath(uri), AssetManager.ACCESS_STREAMING);
+            String assetPath = getAssetPath(uri);
+            AndroidAssetCache cache = AndroidAssetCache.getInstance();
+            if (!cache.isEnabled()) return openAssetStream(assets, assetPath);
+
+            InputStream stream = cache.get(assetPath);
+            if (stream != null) return stream;
+            return cache.put(assetPath, openAssetStream(assets, assetPath));
         } catch (IOException e) {
             Log.e(TAG, "Unable to open asset URL: " + uri);
             return null;
         }
     }
 
+    // Uncompressed assets are opened through their file descriptor, so that
+    // the native side could read them directly. Compressed assets can only be
+    // read through a stream.
+    private static InputStream openAssetStream(AssetManager assets, String assetPath)
+            throws IOException {
+        try {
+            return new AssetFileInputStream(assets.openFd(assetPath));
+        } catch (FileNotFoundException e) {
+            return assets.open(assetPath, AssetManager.ACCESS_STREAMING);
+        }
+    }
+
     private static InputStream openContent(Context context, Uri uri) {
         assert(uri.getScheme().equals(CONTENT_SCHEME));
         try {
@@ -233,7 +274,11 @@ class AndroidProtocolHandler {
             } else if (uri.getScheme().equals(APP_SCHEME) ||
                        uri.getScheme().equals(FILE_SCHEME) &&
                        path.startsWith(nativeGetAndroidAssetPath())) {
-                String mimeType = URLConnection.guessContentTypeFromName(path);
+                String mimeType = AssetMimeTypes.getMimeType(path);
+                if (mimeType != null) {
+                    return mimeType;
+                }
+                mimeType = URLConnection.guessContentTypeFromName(path);
                 if (mimeType != null) {
                     return mimeType;
                 }
@@ -244,12 +289,45 @@ class AndroidProtocolHandler {
         }
         // Fall back to sniffing the type from the stream.
         try {
+            if (stream instanceof AssetFileInputStream) {
+                stream = ((AssetFileInputStream) stream).getHeaderStream(MIME_SNIFF_LENGTH);
+            }
             return URLConnection.guessContentTypeFromStream(stream);
         } catch (IOException e) {
             return null;
         }
     }
 
+    /**
+     * Get the file descriptor of an asset stream opened by open().
+     * @param stream The opened input stream.
+     * @return The file descriptor, or -1 if the stream can only be read
+     *         through the InputStream interface.
+     */
+    @CalledByNative
+    public static int getAssetFd(InputStream stream) {
+        if (!(stream instanceof AssetFileInputStream)) return -1;
+        return ((AssetFileInputStream) stream).getFd();
+    }
+
+    /**
+     * Get the offset of the asset in the file returned by getAssetFd().
+     */
+    @CalledByNative
+    public static long getAssetFdOffset(InputStream stream) {
+        if (!(stream instanceof AssetFileInputStream)) return -1;
+        return ((AssetFileInputStream) stream).getStartOffset();
+    }
+
+    /**
+     * Get the length of the asset in the file returned by getAssetFd().
+     */
+    @CalledByNative
+    public static long getAssetFdLength(InputStream stream) {
+        if (!(stream instanceof AssetFileInputStream)) return -1;
+        return ((AssetFileInputStream) stream).getLength();
+    }
+
     /**
      * Get the package name of the current Activity.
      * @param context The context manager.
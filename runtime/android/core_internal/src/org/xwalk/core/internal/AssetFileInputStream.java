@@ -0,0 +1,55 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.res.AssetFileDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream of an uncompressed asset which also exposes the file
+ * descriptor of the APK and the location of the asset in it, so that the
+ * native URL request job could read the asset directly instead of pulling
+ * it through JNI chunk by chunk.
+ * See AndroidProtocolHandler.getAssetFd() and input_stream_impl.cc.
+ */
+class AssetFileInputStream extends AssetFileDescriptor.AutoCloseInputStream {
+    private final AssetFileDescriptor mDescriptor;
+
+    AssetFileInputStream(AssetFileDescriptor descriptor) throws IOException {
+        super(descriptor);
+        mDescriptor = descriptor;
+    }
+
+    int getFd() {
+        return mDescriptor.getParcelFileDescriptor().getFd();
+    }
+
+    long getStartOffset() {
+        return mDescriptor.getStartOffset();
+    }
+
+    long getLength() {
+        return mDescriptor.getLength();
+    }
+
+    /**
+     * Read the beginning of the asset without moving the stream position.
+     * It's used to sniff the content type, since this stream doesn't support
+     * mark() and reset().
+     * @param size The maximum number of bytes to read.
+     * @return A stream of the first bytes of the asset.
+     */
+    InputStream getHeaderStream(int size) throws IOException {
+        long length = getLength();
+        if (length >= 0 && length < size) size = (int) length;
+        ByteBuffer header = ByteBuffer.allocate(size);
+        getChannel().read(header, getStartOffset());
+        return new ByteArrayInputStream(header.array(), 0, header.position());
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The extension to mime type table for the resources of web applications.
+ *
+ * URLConnection.guessContentTypeFromName() loads and scans a global file name
+ * map, and doesn't know about types like .wasm, .mjs or .woff2. This table is
+ * looked up first, and could be overridden by the "xwalk_mime_types" member
+ * of the application manifest.
+ */
+class AssetMimeTypes {
+    private static final HashMap<String, String> sDefaultTypes = new HashMap<String, String>();
+    private static final ConcurrentHashMap<String, String> sOverriddenTypes =
+            new ConcurrentHashMap<String, String>();
+
+    static {
+        // Documents.
+        sDefaultTypes.put("htm", "text/html");
+        sDefaultTypes.put("html", "text/html");
+        sDefaultTypes.put("shtml", "text/html");
+        sDefaultTypes.put("xhtml", "application/xhtml+xml");
+        sDefaultTypes.put("xht", "application/xhtml+xml");
+        sDefaultTypes.put("xml", "text/xml");
+        sDefaultTypes.put("xsl", "text/xml");
+        sDefaultTypes.put("txt", "text/plain");
+        sDefaultTypes.put("css", "text/css");
+        sDefaultTypes.put("csv", "text/csv");
+        sDefaultTypes.put("vtt", "text/vtt");
+        sDefaultTypes.put("appcache", "text/cache-manifest");
+        sDefaultTypes.put("pdf", "application/pdf");
+
+        // Scripts and data.
+        sDefaultTypes.put("js", "application/javascript");
+        sDefaultTypes.put("mjs", "application/javascript");
+        sDefaultTypes.put("json", "application/json");
+        sDefaultTypes.put("map", "application/json");
+        sDefaultTypes.put("webmanifest", "application/manifest+json");
+        sDefaultTypes.put("wasm", "application/wasm");
+
+        // Images.
+        sDefaultTypes.put("png", "image/png");
+        sDefaultTypes.put("jpg", "image/jpeg");
+        sDefaultTypes.put("jpeg", "image/jpeg");
+        sDefaultTypes.put("gif", "image/gif");
+        sDefaultTypes.put("bmp", "image/bmp");
+        sDefaultTypes.put("webp", "image/webp");
+        sDefaultTypes.put("svg", "image/svg+xml");
+        sDefaultTypes.put("svgz", "image/svg+xml");
+        sDefaultTypes.put("ico", "image/x-icon");
+
+        // Fonts.
+        sDefaultTypes.put("woff", "application/font-woff");
+        sDefaultTypes.put("woff2", "font/woff2");
+        sDefaultTypes.put("ttf", "application/x-font-ttf");
+        sDefaultTypes.put("otf", "application/x-font-otf");
+        sDefaultTypes.put("eot", "application/vnd.ms-fontobject");
+
+        // Media.
+        sDefaultTypes.put("mp3", "audio/mpeg");
+        sDefaultTypes.put("m4a", "audio/mp4");
+        sDefaultTypes.put("aac", "audio/aac");
+        sDefaultTypes.put("oga", "audio/ogg");
+        sDefaultTypes.put("ogg", "audio/ogg");
+        sDefaultTypes.put("opus", "audio/ogg");
+        sDefaultTypes.put("wav", "audio/wav");
+        sDefaultTypes.put("mp4", "video/mp4");
+        sDefaultTypes.put("m4v", "video/mp4");
+        sDefaultTypes.put("ogv", "video/ogg");
+        sDefaultTypes.put("webm", "video/webm");
+        sDefaultTypes.put("3gp", "video/3gpp");
+    }
+
+    /**
+     * Get the mime type of a path by its extension.
+     * @param path The path of the resource.
+     * @return The mime type, or null if the extension is unknown.
+     */
+    static String getMimeType(String path) {
+        String extension = getExtension(path);
+        if (extension == null) return null;
+
+        String mimeType = sOverriddenTypes.get(extension);
+        if (mimeType != null) return mimeType;
+        return sDefaultTypes.get(extension);
+    }
+
+    /**
+     * Override the mime types of the given extensions.
+     * @param types The map from extensions, with or without the leading dot,
+     *              to mime types.
+     */
+    static void setOverriddenTypes(Map<String, String> types) {
+        for (Map.Entry<String, String> entry : types.entrySet()) {
+            String extension = entry.getKey();
+            String mimeType = entry.getValue();
+            if (extension == null || mimeType == null || mimeType.isEmpty()) continue;
+            if (extension.startsWith(".")) extension = extension.substring(1);
+            if (extension.isEmpty()) continue;
+            sOverriddenTypes.put(extension.toLowerCase(Locale.US), mimeType);
+        }
+    }
+
+    private static String getExtension(String path) {
+        if (path == null) return null;
+        int dot = path.lastIndexOf('.');
+        // No extension, or the dot belongs to a directory name.
+        if (dot < 0 || dot == path.length() - 1 || path.indexOf('/', dot) >= 0) return null;
+        return path.substring(dot + 1).toLowerCase(Locale.US);
+    }
+}
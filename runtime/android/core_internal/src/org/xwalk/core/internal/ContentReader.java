@@ -0,0 +1,98 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.Resources.NotFoundException;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helpers to read the whole content of a stream as a UTF-8 string.
+ *
+ * The content is read into a single buffer sized by the available bytes and
+ * decoded once, so multi-byte characters are never split between chunks. The
+ * JS API files of extensions are immutable within a process, so they are
+ * cached and shared by all the XWalkViewInternal instances.
+ */
+public class ContentReader {
+    private static final String TAG = "ContentReader";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final ConcurrentHashMap<String, String> sJsApiCache =
+            new ConcurrentHashMap<String, String>();
+
+    /**
+     * Read the remaining content of a stream and decode it as UTF-8.
+     * The stream is not closed.
+     * @param stream The stream to read.
+     * @return The decoded content.
+     */
+    public static String readString(InputStream stream) throws IOException {
+        int size = stream.available();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(
+                size > 0 ? size : DEFAULT_BUFFER_SIZE);
+        byte[] buffer = new byte[size > 0 ? Math.min(size, DEFAULT_BUFFER_SIZE * 8)
+                                          : DEFAULT_BUFFER_SIZE];
+        int count;
+        while ((count = stream.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        return new String(output.toByteArray(), UTF8);
+    }
+
+    /**
+     * Read the JS API file of an extension. The content is cached for the
+     * lifetime of the process.
+     * @param context The context to get the resources and assets from.
+     * @param fileName The path of the file in the assets.
+     * @param fromRaw Whether to look for the file in res/raw first.
+     * @return The content of the file.
+     */
+    public static String readExtensionJsApi(Context context, String fileName, boolean fromRaw)
+            throws IOException {
+        String key = context.getPackageName() + (fromRaw ? ":raw:" : ":") + fileName;
+        String content = sJsApiCache.get(key);
+        if (content != null) return content;
+
+        InputStream inputStream = null;
+        try {
+            if (fromRaw) {
+                // If fromRaw is true, Try to find js file in res/raw first.
+                // And then try to get it from assets if failed.
+                Resources resource = context.getResources();
+                String resName = (new File(fileName).getName().split("\\."))[0];
+                int resId = resource.getIdentifier(resName, "raw", context.getPackageName());
+                if (resId > 0) {
+                    try {
+                        inputStream = resource.openRawResource(resId);
+                    } catch (NotFoundException e) {
+                        Log.w(TAG, "Inputstream failed to open for R.raw." + resName +
+                                   ", try to find it in assets");
+                    }
+                }
+            }
+            if (inputStream == null) {
+                inputStream = context.getAssets().open(fileName);
+            }
+            content = readString(inputStream);
+        } finally {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+
+        sJsApiCache.put(key, content);
+        return content;
+    }
+}
@@ -0,0 +1,527 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An implementation of SharedPreferences which is kept across the process
+ * restarts, shared by all the XWalkViewInternal instances of a profile.
+ * <p/>
+ * The values are read from a ConcurrentHashMap without locking. The changes
+ * are appended to a log file on a background thread, the changes applied
+ * before the previous ones are written are coalesced into one write. The log
+ * is compacted when it grows much larger than the values it holds, and
+ * replayed on the first access. A failed write is cut off the log, so it
+ * never ends with a partial record, and commit() returns false.
+ */
+public class PersistentSharedPreferences implements SharedPreferences {
+    private static final String TAG = "PersistentSharedPreferences";
+
+    private static final String DIRECTORY_NAME = "xwalk_preferences";
+    private static final String FILE_SUFFIX = ".log";
+    private static final int FILE_VERSION = 1;
+
+    private static final byte RECORD_REMOVE = 0;
+    private static final byte RECORD_CLEAR = 1;
+    private static final byte RECORD_BOOLEAN = 2;
+    private static final byte RECORD_INT = 3;
+    private static final byte RECORD_LONG = 4;
+    private static final byte RECORD_FLOAT = 5;
+    private static final byte RECORD_STRING = 6;
+    private static final byte RECORD_STRING_SET = 7;
+
+    // The log is compacted when it has more records than this many times the
+    // number of values, plus COMPACT_MIN_RECORDS.
+    private static final int COMPACT_RATIO = 2;
+    private static final int COMPACT_MIN_RECORDS = 64;
+
+    // Stands for the removed values in the pending changes.
+    private static final Object REMOVED = new Object();
+
+    private static final Map<String, PersistentSharedPreferences> sInstances =
+            new HashMap<String, PersistentSharedPreferences>();
+
+    // Shared by all the profiles, the writes are small and rare.
+    private static final ExecutorService sWriteExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private final File mFile;
+    private final ConcurrentHashMap<String, Object> mData =
+            new ConcurrentHashMap<String, Object>();
+    private volatile boolean mLoaded = false;
+
+    // The changes not written yet, guarded by mPendingLock.
+    private final Object mPendingLock = new Object();
+    private LinkedHashMap<String, Object> mPendingChanges = new LinkedHashMap<String, Object>();
+    private boolean mPendingClear = false;
+    private Future<Boolean> mPendingWrite;
+
+    // The number of records in the log. Set on loading, then only accessed
+    // on the write thread.
+    private int mRecordCount = 0;
+
+    /**
+     * Get the preferences of a profile. The file is not read until the
+     * preferences are accessed.
+     */
+    public static PersistentSharedPreferences getInstance(Context context, String profile) {
+        synchronized (sInstances) {
+            PersistentSharedPreferences instance = sInstances.get(profile);
+            if (instance == null) {
+                // Keep the profile name from escaping the directory.
+                String fileName = profile.replace(File.separatorChar, '_') + FILE_SUFFIX;
+                File directory = new File(context.getApplicationInfo().dataDir, DIRECTORY_NAME);
+                instance = new PersistentSharedPreferences(new File(directory, fileName));
+                sInstances.put(profile, instance);
+            }
+            return instance;
+        }
+    }
+
+    PersistentSharedPreferences(File file) {
+        mFile = file;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) return;
+        synchronized (this) {
+            if (mLoaded) return;
+            mRecordCount = readLog(mFile, mData);
+            mLoaded = true;
+        }
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        ensureLoaded();
+        return Collections.unmodifiableMap(mData);
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        Object value = get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        Object value = get(key);
+        return value != null ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = get(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = get(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    private Object get(String key) {
+        ensureLoaded();
+        // Unlike HashMap, ConcurrentHashMap doesn't take null keys.
+        return key != null ? mData.get(key) : null;
+    }
+
+    @Override
+    public SharedPreferences.Editor edit() {
+        return new PersistentEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    private Future<Boolean> apply(boolean clear, Map<String, Object> changes) {
+        ensureLoaded();
+        synchronized (mPendingLock) {
+            // Update the map under the lock, so the writes are queued in the
+            // same order as the values are set.
+            if (clear) {
+                mData.clear();
+                mPendingChanges.clear();
+                mPendingClear = true;
+            }
+            for (Map.Entry<String, Object> entry : changes.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                if (value == REMOVED) {
+                    mData.remove(key);
+                } else {
+                    mData.put(key, value);
+                }
+                // Move the key to the end, so the log keeps the order.
+                mPendingChanges.remove(key);
+                mPendingChanges.put(key, value);
+            }
+
+            if (mPendingWrite == null) {
+                mPendingWrite = sWriteExecutor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return writePendingChanges();
+                    }
+                });
+            }
+            return mPendingWrite;
+        }
+    }
+
+    // Returns whether the changes are written.
+    private boolean writePendingChanges() {
+        boolean clear;
+        LinkedHashMap<String, Object> changes;
+        synchronized (mPendingLock) {
+            clear = mPendingClear;
+            changes = mPendingChanges;
+            mPendingClear = false;
+            mPendingChanges = new LinkedHashMap<String, Object>();
+            mPendingWrite = null;
+        }
+
+        int recordCount = mRecordCount + changes.size() + (clear ? 1 : 0);
+        if (recordCount > mData.size() * COMPACT_RATIO + COMPACT_MIN_RECORDS) {
+            if (compact()) return true;
+        }
+
+        RandomAccessFile file = null;
+        long offset = 0;
+        try {
+            mFile.getParentFile().mkdirs();
+            file = new RandomAccessFile(mFile, "rw");
+            offset = file.length();
+
+            // The records are appended in one write, which is cut off again
+            // if it fails.
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            if (offset == 0) out.writeInt(FILE_VERSION);
+            if (clear) out.writeByte(RECORD_CLEAR);
+            for (Map.Entry<String, Object> entry : changes.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+
+            file.seek(offset);
+            file.write(buffer.toByteArray());
+            mRecordCount = recordCount;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + mFile + ": " + e.toString());
+            if (file != null) {
+                try {
+                    file.setLength(offset);
+                } catch (IOException truncateError) {
+                    Log.e(TAG, "Failed to truncate " + mFile + ": " + truncateError.toString());
+                }
+            }
+            return false;
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    // Rewrite the log with the current values only.
+    private boolean compact() {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        int recordCount = 0;
+        try {
+            mFile.getParentFile().mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FILE_VERSION);
+            for (Map.Entry<String, Object> entry : mData.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+                ++recordCount;
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(mFile)) {
+                Log.e(TAG, "Failed to rename " + tempFile);
+                tempFile.delete();
+                return false;
+            }
+            mRecordCount = recordCount;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact " + mFile + ": " + e.toString());
+            tempFile.delete();
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, Object value)
+            throws IOException {
+        if (value == REMOVED) {
+            out.writeByte(RECORD_REMOVE);
+            out.writeUTF(key);
+        } else if (value instanceof Boolean) {
+            out.writeByte(RECORD_BOOLEAN);
+            out.writeUTF(key);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(RECORD_INT);
+            out.writeUTF(key);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(RECORD_LONG);
+            out.writeUTF(key);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(RECORD_FLOAT);
+            out.writeUTF(key);
+            out.writeFloat((Float) value);
+        } else if (value instanceof String) {
+            out.writeByte(RECORD_STRING);
+            out.writeUTF(key);
+            out.writeUTF((String) value);
+        } else {
+            @SuppressWarnings("unchecked")
+            Set<String> values = (Set<String>) value;
+            out.writeByte(RECORD_STRING_SET);
+            out.writeUTF(key);
+            out.writeInt(values.size());
+            for (String item : values) out.writeUTF(item);
+        }
+    }
+
+    /**
+     * Replay the log into the map.
+     * @return The number of records read.
+     */
+    private static int readLog(File file, Map<String, Object> data) {
+        if (!file.exists()) return 0;
+
+        DataInputStream in = null;
+        int recordCount = 0;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_VERSION) {
+                Log.w(TAG, "Unknown version of " + file);
+                return 0;
+            }
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                ++recordCount;
+                if (type == RECORD_CLEAR) {
+                    data.clear();
+                    continue;
+                }
+                String key = in.readUTF();
+                switch (type) {
+                    case RECORD_REMOVE:
+                        data.remove(key);
+                        break;
+                    case RECORD_BOOLEAN:
+                        data.put(key, in.readBoolean());
+                        break;
+                    case RECORD_INT:
+                        data.put(key, in.readInt());
+                        break;
+                    case RECORD_LONG:
+                        data.put(key, in.readLong());
+                        break;
+                    case RECORD_FLOAT:
+                        data.put(key, in.readFloat());
+                        break;
+                    case RECORD_STRING:
+                        data.put(key, in.readUTF());
+                        break;
+                    case RECORD_STRING_SET:
+                        int size = in.readInt();
+                        Set<String> values = new HashSet<String>();
+                        for (int i = 0; i < size; ++i) values.add(in.readUTF());
+                        data.put(key, Collections.unmodifiableSet(values));
+                        break;
+                    default:
+                        Log.w(TAG, "Unknown record in " + file);
+                        return recordCount;
+                }
+            }
+        } catch (FileNotFoundException e) {
+            return 0;
+        } catch (EOFException e) {
+            // The last record was cut by a crash, keep the ones before it.
+            Log.w(TAG, "Truncated " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + file + ": " + e.toString());
+        } finally {
+            closeQuietly(in);
+        }
+        return recordCount;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+    }
+
+    private class PersistentEditor implements SharedPreferences.Editor {
+
+        // All guarded by |mChanges|.
+        private boolean mClearCalled;
+        private boolean mApplyCalled;
+        private final Map<String, Object> mChanges = new LinkedHashMap<String, Object>();
+
+        private SharedPreferences.Editor put(String key, Object value) {
+            synchronized (mChanges) {
+                if (mApplyCalled) throw new IllegalStateException();
+                // Like the platform implementation, a null value removes the key.
+                mChanges.put(key, value != null ? value : REMOVED);
+                return this;
+            }
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, Set<String> values) {
+            return put(key, values != null ?
+                    Collections.unmodifiableSet(new HashSet<String>(values)) : null);
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            return put(key, null);
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            synchronized (mChanges) {
+                if (mApplyCalled) throw new IllegalStateException();
+                mClearCalled = true;
+                return this;
+            }
+        }
+
+        @Override
+        public boolean commit() {
+            try {
+                return applyChanges().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Failed to commit: " + e.toString());
+            }
+            return false;
+        }
+
+        @Override
+        public void apply() {
+            applyChanges();
+        }
+
+        private Future<Boolean> applyChanges() {
+            synchronized (mChanges) {
+                if (mApplyCalled) throw new IllegalStateException();
+                // Like InMemorySharedPreferences, ban any future use of this
+                // instance rather than reusing it.
+                mApplyCalled = true;
+                return PersistentSharedPreferences.this.apply(mClearCalled, mChanges);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The process-wide cache of the classes and members resolved by reflection.
+ *
+ * The lookups which fail are cached too, so a missing member is only
+ * searched once. The keys hold the classes and class loaders strongly, which
+ * is fine as the core library is never unloaded.
+ */
+class ReflectCache {
+    private static final int KIND_CLASS = 0;
+    private static final int KIND_METHOD = 1;
+    private static final int KIND_FIELD = 2;
+    private static final int KIND_CONSTRUCTOR = 3;
+
+    // Stands for the members not found, as the map can't hold null values.
+    private static final Object NOT_FOUND = new Object();
+
+    private static final ConcurrentHashMap<Key, Object> sCache =
+            new ConcurrentHashMap<Key, Object>();
+
+    private static final AtomicLong sHitCount = new AtomicLong();
+    private static final AtomicLong sMissCount = new AtomicLong();
+    private static final AtomicLong sResolveTimeNanos = new AtomicLong();
+
+    private static final class Key {
+        private final int mKind;
+        // The class of the members, or the class loader of the classes.
+        private final Object mOwner;
+        private final String mPackage;
+        private final String mName;
+        private final Class<?>[] mParameterTypes;
+        private final int mHash;
+
+        Key(int kind, Object owner, String packageName, String name,
+                Class<?>[] parameterTypes) {
+            mKind = kind;
+            mOwner = owner;
+            mPackage = packageName;
+            mName = name;
+            mParameterTypes = parameterTypes;
+
+            int hash = kind;
+            hash = 31 * hash + System.identityHashCode(owner);
+            hash = 31 * hash + (packageName != null ? packageName.hashCode() : 0);
+            hash = 31 * hash + (name != null ? name.hashCode() : 0);
+            hash = 31 * hash + Arrays.hashCode(parameterTypes);
+            mHash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof Key)) return false;
+            Key other = (Key) object;
+            return mHash == other.mHash && mKind == other.mKind && mOwner == other.mOwner &&
+                    equals(mPackage, other.mPackage) && equals(mName, other.mName) &&
+                    Arrays.equals(mParameterTypes, other.mParameterTypes);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    public static Class<?> getClass(ClassLoader loader, String packageName, String name) {
+        if (loader == null) return null;
+
+        Key key = new Key(KIND_CLASS, loader, packageName, name, null);
+        Object cached = sCache.get(key);
+        if (cached != null) return (Class<?>) hit(cached);
+
+        long start = System.nanoTime();
+        Class<?> clazz = null;
+        try {
+            clazz = loader.loadClass(packageName + "." + name);
+        } catch (ClassNotFoundException e) {
+        }
+        return (Class<?>) put(key, clazz, start);
+    }
+
+    public static Method getMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        if (clazz == null) return null;
+
+        Key key = new Key(KIND_METHOD, clazz, null, name, parameterTypes);
+        Object cached = sCache.get(key);
+        if (cached != null) return (Method) hit(cached);
+
+        long start = System.nanoTime();
+        Method method = null;
+        try {
+            method = clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            for (Class<?> parent = clazz; parent != null; parent = parent.getSuperclass()) {
+                try {
+                    method = parent.getDeclaredMethod(name, parameterTypes);
+                    method.setAccessible(true);
+                    break;
+                } catch (NoSuchMethodException e2) {
+                }
+            }
+        }
+        return (Method) put(key, method, start);
+    }
+
+    public static Field getField(Class<?> clazz, String name) {
+        if (clazz == null) return null;
+
+        Key key = new Key(KIND_FIELD, clazz, null, name, null);
+        Object cached = sCache.get(key);
+        if (cached != null) return (Field) hit(cached);
+
+        long start = System.nanoTime();
+        Field field = null;
+        try {
+            field = clazz.getField(name);
+        } catch (NoSuchFieldException e) {
+            try {
+                field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+            } catch (NoSuchFieldException e2) {
+            }
+        }
+        return (Field) put(key, field, start);
+    }
+
+    public static Constructor<?> getConstructor(Class<?> clazz, Class<?>... parameterTypes) {
+        if (clazz == null) return null;
+
+        Key key = new Key(KIND_CONSTRUCTOR, clazz, null, null, parameterTypes);
+        Object cached = sCache.get(key);
+        if (cached != null) return (Constructor<?>) hit(cached);
+
+        long start = System.nanoTime();
+        Constructor<?> constructor = null;
+        try {
+            constructor = clazz.getConstructor(parameterTypes);
+        } catch (NoSuchMethodException e) {
+            try {
+                constructor = clazz.getDeclaredConstructor(parameterTypes);
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e2) {
+            }
+        }
+        return (Constructor<?>) put(key, constructor, start);
+    }
+
+    /**
+     * Resolve all the public methods of a class in one pass, so that the
+     * lookups of them afterwards are hits. Could be called on any thread.
+     */
+    public static void preResolve(Class<?> clazz) {
+        if (clazz == null) return;
+
+        long start = System.nanoTime();
+        HashMap<Key, Method> methods = new HashMap<Key, Method>();
+        HashSet<Key> ambiguous = new HashSet<Key>();
+        for (Method method : clazz.getMethods()) {
+            Key key = new Key(KIND_METHOD, clazz, null, method.getName(),
+                    method.getParameterTypes());
+            // Leave the methods overridden with a covariant return type to
+            // getMethod(), which knows which one to pick.
+            if (methods.put(key, method) != null) ambiguous.add(key);
+        }
+        for (Map.Entry<Key, Method> entry : methods.entrySet()) {
+            if (!ambiguous.contains(entry.getKey())) {
+                sCache.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        sResolveTimeNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    public static long getHitCount() {
+        return sHitCount.get();
+    }
+
+    public static long getMissCount() {
+        return sMissCount.get();
+    }
+
+    /**
+     * @return The total time spent on the lookups which missed the cache and
+     *         on the pre-resolution, in nanoseconds.
+     */
+    public static long getResolveTimeNanos() {
+        return sResolveTimeNanos.get();
+    }
+
+    public static String getStats() {
+        return "ReflectCache: " + sCache.size() + " entries, " + getHitCount() + " hits, " +
+                getMissCount() + " misses, " + (getResolveTimeNanos() / 1000) + "us resolving";
+    }
+
+    private static Object hit(Object cached) {
+        sHitCount.incrementAndGet();
+        return cached == NOT_FOUND ? null : cached;
+    }
+
+    private static Object put(Key key, Object value, long start) {
+        sMissCount.incrementAndGet();
+        sResolveTimeNanos.addAndGet(System.nanoTime() - start);
+        Object previous = sCache.putIfAbsent(key, value != null ? value : NOT_FOUND);
+        if (previous != null) return previous == NOT_FOUND ? null : previous;
+        return value;
+    }
+}
@@ -32,15 +32,7 @@ class ReflectConstructor {
 
         if (mClass == null) return false;
 
-        try {
-            mConstructor = mClass.getConstructor(mParameterTypes);
-        } catch (NoSuchMethodException e) {
-            try {
-                mConstructor = mClass.getDeclaredConstructor(mParameterTypes);
-                mConstructor.setAccessible(true);
-            } catch (NoSuchMethodException e2) {
-            }
-        }
+        mConstructor = ReflectCache.getConstructor(mClass, mParameterTypes);
         return mConstructor != null;
     }
 
@@ -36,15 +36,7 @@ class ReflectField {
 
         if (mClass == null) return false;
 
-        try {
-            mField = mClass.getField(mName);
-        } catch (NoSuchFieldException e) {
-            try {
-                mField = mClass.getDeclaredField(mName);
-                mField.setAccessible(true);
-            } catch (NoSuchFieldException e2) {
-            }
-        }
+        mField = ReflectCache.getField(mClass, mName);
         return mField != null;
     }
 
@@ -42,19 +42,7 @@ class ReflectMethod {
 
         if (mClass == null) return false;
 
-        try {
-            mMethod = mClass.getMethod(mName, mParameterTypes);
-        } catch (NoSuchMethodException e) {
-            for (Class<?> parent = mClass; parent != null; parent = parent.getSuperclass()) {
-                try {
-                    mMethod = parent.getDeclaredMethod(mName, mParameterTypes);
-                    mMethod.setAccessible(true);
-                    break;
-                } catch (NoSuchMethodException e2) {
-                }
-            }
-        }
-
+        mMethod = ReflectCache.getMethod(mClass, mName, mParameterTypes);
         return mMethod != null;
     }
 
@@ -16,7 +16,6 @@
 
 package org.xwalk.core.internal;
 
-import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -162,8 +161,8 @@ public class XWalkClient {
         layout.addView(userNameEditText);
         layout.addView(passwordEditText);
 
-        final Activity curActivity = mXWalkView.getActivity();
-        AlertDialog.Builder httpAuthDialog = new AlertDialog.Builder(curActivity);
+        // The context of the view uses the resources of the library.
+        AlertDialog.Builder httpAuthDialog = new AlertDialog.Builder(mContext);
         httpAuthDialog.setTitle(R.string.http_auth_title)
                 .setView(layout)
                 .setCancelable(false)
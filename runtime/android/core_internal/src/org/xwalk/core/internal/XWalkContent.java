@@ -26,6 +26,11 @@ import android.widget.FrameLayout;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.chromium.base.CalledByNative;
 import org.chromium.base.JNINamespace;
@@ -46,6 +51,9 @@ import org.chromium.content_public.browser.navigation_controller.UserAgentOverri
 import org.chromium.media.MediaPlayerBridge;
 import org.chromium.ui.base.ActivityWindowAndroid;
 import org.chromium.ui.gfx.DeviceDisplayInfo;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 @JNINamespace("xwalk")
 /**
@@ -72,6 +80,14 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
     private WebContents mWebContents;
     private boolean mIsLoaded = false;
 
+    private int mSaveStateMode = XWalkViewInternal.SAVE_STATE_MODE_BUNDLE;
+    // The files the state is saved into, and whether they hold all the
+    // entries of the current native contents for saving incrementally.
+    private XWalkStateStore mStateStore;
+    private boolean mStateStoreFilled;
+    // The files being read for restoring the state.
+    private XWalkStateStore mPendingRestore;
+
     long mNativeContent;
     long mNativeWebContents;
 
@@ -109,7 +125,10 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
         // Initialize mWindow which is needed by content
         mWindow = new ActivityWindowAndroid(xwView.getActivity());
 
-        SharedPreferences sharedPreferences = new InMemorySharedPreferences();
+        // The permissions are kept across the restarts, shared by the views
+        // of the same profile.
+        SharedPreferences sharedPreferences = PersistentSharedPreferences.getInstance(context,
+                XWalkPreferencesInternal.getStringValue(XWalkPreferencesInternal.PROFILE_NAME));
         mGeolocationPermissions = new XWalkGeolocationPermissions(sharedPreferences);
 
         MediaPlayerBridge.setResourceLoadingFilter(
@@ -147,6 +166,8 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
                 FrameLayout.LayoutParams.MATCH_PARENT));
 
         mNativeContent = newNativeContent;
+        mStateStoreFilled = false;
+        mPendingRestore = null;
 
         // The native side object has been bound to this java instance, so now is the time to
         // bind all the native->java relationships.
@@ -209,7 +230,24 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
         mContentViewCore.onShow();
     }
 
+    /**
+     * Replace the native contents, destroyed or not, with new ones, so that
+     * nothing of the pages loaded before is kept. Used by XWalkViewPool to
+     * recycle the views.
+     */
+    void recycle() {
+        if (mNativeContent != 0) destroy();
+        mContentViewCore = null;
+        mIsLoaded = false;
+
+        setNativeContent(nativeInit());
+        XWalkPreferencesInternal.load(this);
+    }
+
     void doLoadUrl(String url, String content) {
+        // Loading a page explicitly wins over the state still being restored.
+        mPendingRestore = null;
+
         // Handle the same url loading by parameters.
         if (url != null && !url.isEmpty() &&
                 TextUtils.equals(url, mWebContents.getUrl())) {
@@ -503,32 +541,102 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
         if (!nativeSetManifest(mNativeContent, baseUrl, content)) {
             throw new RuntimeException("Failed to parse the manifest file: " + url);
         }
+        readManifestExtras(baseUrl, content);
         mIsLoaded = true;
     }
 
+    // Read the members of the manifest which are only used by the Java side.
+    private void readManifestExtras(String baseUrl, String manifest) {
+        JSONObject json;
+        try {
+            json = new JSONObject(manifest);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to parse the manifest: " + e.getMessage());
+            return;
+        }
+
+        // The mime types of the extensions overridden by the application.
+        JSONObject mimeTypes = json.optJSONObject(MIME_TYPES_KEY);
+        if (mimeTypes != null) {
+            Map<String, String> types = new HashMap<String, String>();
+            Iterator<String> it = mimeTypes.keys();
+            while (it.hasNext()) {
+                String extension = it.next();
+                types.put(extension, mimeTypes.optString(extension));
+            }
+            AssetMimeTypes.setOverriddenTypes(types);
+        }
+
+        // Load the listed assets into the asset cache, so that they are not
+        // read from the APK on first use.
+        JSONArray assets = json.optJSONArray(PREWARM_ASSETS_KEY);
+        if (assets != null && AndroidAssetCache.getInstance().isEnabled()) {
+            List<String> urls = new ArrayList<String>();
+            for (int i = 0; i < assets.length(); i++) {
+                String path = assets.optString(i);
+                if (path == null || path.isEmpty()) continue;
+                urls.add(path.startsWith("/") ? baseUrl + path.substring(1) : baseUrl + path);
+            }
+            AndroidProtocolHandler.prewarmAssetCache(mXWalkView.getActivity(), urls);
+        }
+    }
+
     public XWalkNavigationHistoryInternal getNavigationHistory() {
         if (mNativeContent == 0) return null;
 
         return new XWalkNavigationHistoryInternal(mXWalkView, mNavigationController.getNavigationHistory());
     }
 
+    private static final String PREWARM_ASSETS_KEY = "xwalk_prewarm_assets";
+    private static final String MIME_TYPES_KEY = "xwalk_mime_types";
+
     public static final String SAVE_RESTORE_STATE_KEY = "XWALKVIEW_STATE";
 
-    public XWalkNavigationHistoryInternal saveState(Bundle outState) {
-        if (mNativeContent == 0 || outState == null) return null;
+    public static final String SAVE_RESTORE_STATE_FILE_KEY = "XWALKVIEW_STATE_FILE";
+
+    void setSaveStateMode(int mode) {
+        mSaveStateMode = mode;
+        mStateStoreFilled = false;
+    }
+
+    public boolean saveState(Bundle outState) {
+        if (mNativeContent == 0 || outState == null) return false;
+
+        if (mSaveStateMode != XWalkViewInternal.SAVE_STATE_MODE_BUNDLE) {
+            return saveStateToFile(outState);
+        }
 
         byte[] state = nativeGetState(mNativeContent);
-        if (state == null) return null;
+        if (state == null) return false;
 
         outState.putByteArray(SAVE_RESTORE_STATE_KEY, state);
-        return getNavigationHistory();
+        return true;
+    }
+
+    private boolean saveStateToFile(Bundle outState) {
+        int[] ids = nativeGetStateEntryIds(mNativeContent);
+        if (ids == null || ids.length == 0) return false;
+
+        if (mStateStore == null) mStateStore = XWalkStateStore.create(getContext());
+        boolean changedOnly = mSaveStateMode == XWalkViewInternal.SAVE_STATE_MODE_INCREMENTAL &&
+                mStateStoreFilled && !mStateStore.needsFullSave();
+        byte[][] entries = nativeGetStateEntries(mNativeContent, changedOnly);
+        if (entries == null) return false;
+
+        mStateStore.save(nativeGetStateCurrentEntryIndex(mNativeContent), ids, entries);
+        mStateStoreFilled = true;
+        outState.putString(SAVE_RESTORE_STATE_FILE_KEY, mStateStore.getHandle());
+        return true;
     }
 
-    public XWalkNavigationHistoryInternal restoreState(Bundle inState) {
-        if (mNativeContent == 0 || inState == null) return null;
+    public boolean restoreState(Bundle inState) {
+        if (mNativeContent == 0 || inState == null) return false;
+
+        String handle = inState.getString(SAVE_RESTORE_STATE_FILE_KEY);
+        if (handle != null) return restoreStateFromFile(handle);
 
         byte[] state = inState.getByteArray(SAVE_RESTORE_STATE_KEY);
-        if (state == null) return null;
+        if (state == null) return false;
 
         boolean result = nativeSetState(mNativeContent, state);
 
@@ -540,7 +648,46 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
             mContentsClientBridge.onUpdateTitle(mWebContents.getTitle());
         }
 
-        return result ? getNavigationHistory() : null;
+        return result;
+    }
+
+    // The files are read in the background, the state is restored when
+    // they're ready unless another page is loaded before.
+    private boolean restoreStateFromFile(String handle) {
+        final XWalkStateStore store = XWalkStateStore.fromHandle(getContext(), handle);
+        if (store == null || !store.exists()) return false;
+
+        // The files may be restored by other views too, so they're only read,
+        // the entries are copied into the files of this view.
+        mPendingRestore = store;
+        store.load(new XWalkStateStore.LoadCallback() {
+            @Override
+            public void onLoaded(int currentIndex, byte[][] entries) {
+                if (mPendingRestore != store || mNativeContent == 0) return;
+                mPendingRestore = null;
+                if (entries == null) return;
+
+                if (nativeSetStateEntries(mNativeContent, entries, currentIndex)) {
+                    copyStateEntries(currentIndex, entries);
+                    mContentsClientBridge.onUpdateTitle(mWebContents.getTitle());
+                }
+            }
+        });
+        return true;
+    }
+
+    // Save all the restored entries into the files of this view, so the next
+    // incremental save only writes the ones changed since.
+    private void copyStateEntries(int currentIndex, byte[][] entries) {
+        mStateStoreFilled = false;
+        if (mSaveStateMode == XWalkViewInternal.SAVE_STATE_MODE_BUNDLE) return;
+
+        int[] ids = nativeGetStateEntryIds(mNativeContent);
+        if (ids == null || ids.length != entries.length) return;
+
+        if (mStateStore == null) mStateStore = XWalkStateStore.create(getContext());
+        mStateStore.save(currentIndex, ids, entries);
+        mStateStoreFilled = true;
     }
 
     boolean hasEnteredFullscreen() {
@@ -767,6 +914,16 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
             if (mSettings != null) {
                 mSettings.setSupportMultipleWindows(value.getBooleanValue());
             }
+        } else if (key.equals(XWalkPreferencesInternal.ASSET_CACHE_SIZE)) {
+            AndroidAssetCache.getInstance().setCapacity(value.getIntegerValue());
+        }
+    }
+
+    @Override
+    public void onKeyValuesChanged(Map<String, XWalkPreferencesInternal.PreferenceValue> values) {
+        for (Map.Entry<String, XWalkPreferencesInternal.PreferenceValue> entry :
+                values.entrySet()) {
+            onKeyValueChanged(entry.getKey(), entry.getValue());
         }
     }
 
@@ -802,5 +959,10 @@ class XWalkContent extends FrameLayout implements XWalkPreferencesInternal.KeyVa
             long nativeXWalkContent, boolean value, String requestingFrame);
     private native byte[] nativeGetState(long nativeXWalkContent);
     private native boolean nativeSetState(long nativeXWalkContent, byte[] state);
+    private native int[] nativeGetStateEntryIds(long nativeXWalkContent);
+    private native int nativeGetStateCurrentEntryIndex(long nativeXWalkContent);
+    private native byte[][] nativeGetStateEntries(long nativeXWalkContent, boolean changedOnly);
+    private native boolean nativeSetStateEntries(
+            long nativeXWalkContent, byte[][] entries, int selectedEntry);
     private native void nativeSetBackgroundColor(long nativeXWalkContent, int color);
 }
@@ -131,6 +131,22 @@ abstract class XWalkContentsClient extends ContentViewClient {
 
     public abstract void onLoadResource(String url);
 
+    /**
+     * @return Whether onResourceLoadStarted() has to be called. If not, it's not posted from
+     *         the IO thread at all. May be called on any thread.
+     */
+    public boolean needsOnResourceLoadStarted() {
+        return true;
+    }
+
+    /**
+     * @return Whether onLoadResource() has to be called. If not, it's not posted from the IO
+     *         thread at all. May be called on any thread.
+     */
+    public boolean needsOnLoadResource() {
+        return true;
+    }
+
     public abstract boolean shouldOverrideUrlLoading(String url);
 
     public abstract void onUnhandledKeyEvent(KeyEvent event);
@@ -24,6 +24,8 @@ import android.webkit.ConsoleMessage;
 import android.webkit.ValueCallback;
 import android.webkit.WebResourceResponse;
 
+import java.lang.reflect.InvocationTargetException;
+
 import org.chromium.base.CalledByNative;
 import org.chromium.base.JNINamespace;
 import org.chromium.base.ThreadUtils;
@@ -43,6 +45,10 @@ class XWalkContentsClientBridge extends XWalkContentsClient
     private static final int NEW_XWALKVIEW_CREATED = 100;
     private static final int NEW_ICON_DOWNLOAD     = 101;
 
+    private static final String INTERNAL_PACKAGE = "org.xwalk.core.internal";
+    private static final String INTERNAL_SUFFIX = "Internal";
+    private static final String WRAPPER_PACKAGE = "org.xwalk.core";
+
     private XWalkViewInternal mXWalkView;
     private XWalkUIClientInternal mXWalkUIClient;
     private XWalkResourceClientInternal mXWalkResourceClient;
@@ -55,6 +61,9 @@ class XWalkContentsClientBridge extends XWalkContentsClient
     private XWalkNavigationHandler mNavigationHandler;
     private XWalkNotificationService mNotificationService;
     private Handler mUiThreadHandler;
+    // Whether the clients override the callbacks sent for every resource.
+    private volatile boolean mNeedsOnResourceLoadStarted = true;
+    private volatile boolean mNeedsOnLoadResource = true;
 
     /** State recording variables */
     // For fullscreen state.
@@ -136,9 +145,80 @@ class XWalkContentsClientBridge extends XWalkContentsClient
         // If it's null, use Crosswalk implementation.
         if (client != null) {
             mXWalkResourceClient = client;
-            return;
+        } else {
+            mXWalkResourceClient = new XWalkResourceClientInternal(mXWalkView);
+        }
+        mNeedsOnResourceLoadStarted = isOverridden(mXWalkResourceClient,
+                XWalkResourceClientInternal.class, "onLoadStarted",
+                XWalkViewInternal.class, String.class);
+    }
+
+    // Whether the class of the client overrides the given method of the base class.
+    private static boolean isOverridden(Object client, Class<?> baseClass, String name,
+            Class<?>... parameterTypes) {
+        if (client == null) return false;
+
+        // The client of the app comes wrapped in the generated bridge, which
+        // overrides all the API methods, so look at the wrapper instead.
+        Object wrapper = getWrapper(client);
+        if (wrapper != null) {
+            return isWrapperOverridden(wrapper, baseClass, name, parameterTypes);
         }
-        mXWalkResourceClient = new XWalkResourceClientInternal(mXWalkView);
+
+        try {
+            return client.getClass().getMethod(name, parameterTypes).getDeclaringClass()
+                    != baseClass;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    private static Object getWrapper(Object client) {
+        try {
+            return client.getClass().getMethod("getWrapper").invoke(client);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    // The wrapper of "org.xwalk.core.internal.FooInternal" is "org.xwalk.core.Foo".
+    private static String getWrapperClassName(Class<?> internalClass) {
+        String name = internalClass.getName();
+        if (!name.startsWith(INTERNAL_PACKAGE) || !name.endsWith(INTERNAL_SUFFIX)) return name;
+        return WRAPPER_PACKAGE + name.substring(INTERNAL_PACKAGE.length(),
+                name.length() - INTERNAL_SUFFIX.length());
+    }
+
+    private static boolean isWrapperOverridden(Object wrapper, Class<?> baseClass, String name,
+            Class<?>... parameterTypes) {
+        try {
+            ClassLoader loader = wrapper.getClass().getClassLoader();
+            Class<?>[] wrapperTypes = new Class<?>[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; ++i) {
+                wrapperTypes[i] = parameterTypes[i].isPrimitive() ? parameterTypes[i] :
+                        loader.loadClass(getWrapperClassName(parameterTypes[i]));
+            }
+            return !wrapper.getClass().getMethod(name, wrapperTypes).getDeclaringClass()
+                    .getName().equals(getWrapperClassName(baseClass));
+        } catch (ClassNotFoundException e) {
+            return true;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public boolean needsOnResourceLoadStarted() {
+        return mNeedsOnResourceLoadStarted;
+    }
+
+    @Override
+    public boolean needsOnLoadResource() {
+        return mNeedsOnLoadResource;
     }
 
 
@@ -155,6 +235,8 @@ class XWalkContentsClientBridge extends XWalkContentsClient
 
     public void setXWalkClient(XWalkClient client) {
         mXWalkClient = client;
+        mNeedsOnLoadResource = isOverridden(client, XWalkClient.class,
+                "onLoadResource", XWalkViewInternal.class, String.class);
     }
 
     public void setNavigationHandler(XWalkNavigationHandler handler) {
@@ -339,6 +421,8 @@ class XWalkContentsClientBridge extends XWalkContentsClient
 
     @Override
     public void onPageFinished(String url) {
+        // The resources should be started before the page is finished.
+        getCallbackHelper().deliverResourceEvents();
         if (!isOwnerActivityRunning()) return;
         if (mPageLoadListener != null) mPageLoadListener.onPageFinished(url);
         if (mXWalkUIClient != null) {
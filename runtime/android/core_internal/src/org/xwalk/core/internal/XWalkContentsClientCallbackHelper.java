@@ -9,6 +9,9 @@ import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.chromium.content.browser.ContentViewCore;
 
 /**
@@ -16,6 +19,10 @@ import org.chromium.content.browser.ContentViewCore;
  *
  * Most callbacks do no go through here, but get forwarded to XWalkContentsClient directly. The
  * messages processed here may originate from the IO or UI thread.
+ *
+ * onResourceLoadStarted and onLoadResource are sent for every subresource from the IO thread.
+ * They are queued and delivered together once per frame, instead of one message each. They are not posted at all if the client doesn't handle them. The queued
+ * events are always delivered before any other callback, so the order is kept.
  */
 class XWalkContentsClientCallbackHelper {
 
@@ -66,24 +73,39 @@ class XWalkContentsClientCallbackHelper {
         }
     }
 
-    private final static int MSG_ON_LOAD_RESOURCE = 1;
+    private final static int MSG_DELIVER_RESOURCE_EVENTS = 1;
     private final static int MSG_ON_PAGE_STARTED = 2;
     private final static int MSG_ON_DOWNLOAD_START = 3;
     private final static int MSG_ON_RECEIVED_LOGIN_REQUEST = 4;
     private final static int MSG_ON_RECEIVED_ERROR = 5;
-    private final static int MSG_ON_RESOURCE_LOAD_STARTED = 6;
+
+    // The delay before the queued resource events are delivered, about a frame.
+    private final static long RESOURCE_EVENTS_DELAY_MS = 16;
+
+    private static class ResourceEvent {
+        final boolean mIsLoadStarted;
+        final String mUrl;
+
+        ResourceEvent(boolean isLoadStarted, String url) {
+            mIsLoadStarted = isLoadStarted;
+            mUrl = url;
+        }
+    }
 
     private final XWalkContentsClient mContentsClient;
 
+    private final ConcurrentLinkedQueue<ResourceEvent> mResourceEvents =
+            new ConcurrentLinkedQueue<ResourceEvent>();
+    private final AtomicBoolean mResourceEventsScheduled = new AtomicBoolean(false);
+
     private final Handler mHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message msg) {
+            deliverResourceEvents();
             switch(msg.what) {
-                case MSG_ON_LOAD_RESOURCE: {
-                    final String url = (String) msg.obj;
-                    mContentsClient.onLoadResource(url);
+                case MSG_DELIVER_RESOURCE_EVENTS:
+                    // Already delivered above.
                     break;
-                }
                 case MSG_ON_PAGE_STARTED: {
                     final String url = (String) msg.obj;
                     mContentsClient.onPageStarted(url);
@@ -106,11 +128,6 @@ class XWalkContentsClientCallbackHelper {
                             info.mFailingUrl);
                     break;
                 }
-                case MSG_ON_RESOURCE_LOAD_STARTED: {
-                    final String url = (String) msg.obj;
-                    mContentsClient.onResourceLoadStarted(url);
-                    break;
-                }
                 default:
                     throw new IllegalStateException(
                             "XWalkContentsClientCallbackHelper: unhandled message " + msg.what);
@@ -122,8 +139,34 @@ class XWalkContentsClientCallbackHelper {
         mContentsClient = contentsClient;
     }
 
+    /**
+     * Deliver the queued resource events right away. Must be called on the UI thread, before
+     * calling a client callback which should come after them.
+     */
+    public void deliverResourceEvents() {
+        mResourceEventsScheduled.set(false);
+        ResourceEvent event;
+        while ((event = mResourceEvents.poll()) != null) {
+            if (event.mIsLoadStarted) {
+                mContentsClient.onResourceLoadStarted(event.mUrl);
+            } else {
+                mContentsClient.onLoadResource(event.mUrl);
+            }
+        }
+    }
+
+    private void postResourceEvent(boolean isLoadStarted, String url) {
+        mResourceEvents.offer(new ResourceEvent(isLoadStarted, url));
+        // Only the first event since the last delivery schedules one.
+        if (mResourceEventsScheduled.compareAndSet(false, true)) {
+            mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_DELIVER_RESOURCE_EVENTS),
+                    RESOURCE_EVENTS_DELAY_MS);
+        }
+    }
+
     public void postOnLoadResource(String url) {
-        mHandler.sendMessage(mHandler.obtainMessage(MSG_ON_LOAD_RESOURCE, url));
+        if (!mContentsClient.needsOnLoadResource()) return;
+        postResourceEvent(false, url);
     }
 
     public void postOnPageStarted(String url) {
@@ -148,6 +191,7 @@ class XWalkContentsClientCallbackHelper {
     }
 
     public void postOnResourceLoadStarted(String url) {
-        mHandler.sendMessage(mHandler.obtainMessage(MSG_ON_RESOURCE_LOAD_STARTED, url));
+        if (!mContentsClient.needsOnResourceLoadStarted()) return;
+        postResourceEvent(true, url);
     }
 }
@@ -63,19 +63,11 @@ class XWalkCoreBridge implements ReflectExceptionHandler {
     }
 
     public Class<?> getWrapperClass(String name) {
-        try {
-            return mWrapperLoader.loadClass(WRAPPER_PACKAGE + "." + name);
-        } catch (ClassNotFoundException e) {
-        }
-        return null;
+        return ReflectCache.getClass(mWrapperLoader, WRAPPER_PACKAGE, name);
     }
 
     public Class<?> getBridgeClass(String name) {
-        try {
-            return mBridgeLoader.loadClass(BRIDGE_PACKAGE + "." + name);
-        } catch (ClassNotFoundException e) {
-        }
-        return null;
+        return ReflectCache.getClass(mBridgeLoader, BRIDGE_PACKAGE, name);
     }
 
     @Override
@@ -4,13 +4,67 @@
 
 package org.xwalk.core.internal;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
 import org.xwalk.core.internal.extensions.XWalkExtensionAndroid;
+import org.xwalk.core.internal.extensions.XWalkExtensionPendingReply;
 
 /**
  * This class represents an extension and could be implemented by callers.
  */
 @XWalkAPI
 public abstract class XWalkExtensionInternal extends XWalkExtensionAndroid {
+    /**
+     * Handle the messages on the thread shared by all the extensions as default.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int THREADING_EXTENSION_THREAD = 0;
+    /**
+     * Handle the messages of all the instances in order on a thread of the extension.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int THREADING_SERIAL_PER_EXTENSION = 1;
+    /**
+     * Handle the messages of each instance in order on a pool of threads of the extension.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int THREADING_SERIAL_PER_INSTANCE = 2;
+    /**
+     * Handle the messages in parallel on a pool of threads of the extension.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int THREADING_CONCURRENT = 3;
+
+    /**
+     * Send the posted messages right away as default.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int OUTBOUND_IMMEDIATE = 0;
+    /**
+     * Send the posted messages in order at most once per frame.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int OUTBOUND_QUEUED = 1;
+    /**
+     * Send only the latest message of each key at most once per frame.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int OUTBOUND_KEEP_LATEST = 2;
+    /**
+     * Send the posted messages in a JSON array once per frame.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int OUTBOUND_BATCH = 3;
+
     /**
      * Constructor with name and javascript API.
      * @param name  the exposed namespace.
@@ -36,6 +90,75 @@ public abstract class XWalkExtensionInternal extends XWalkExtensionAndroid {
         super(name, jsApi, entryPoints);
     }
 
+    /**
+     * Constructor with the javascript API being read in the background, for
+     * the built-in extensions.
+     */
+    protected XWalkExtensionInternal(String name, Future<String> jsApi, String[] entryPoints) {
+        super(name, jsApi, entryPoints);
+    }
+
+    /**
+     * Set the threads to handle the messages on, so that a slow extension
+     * doesn't hold up the messages of the others. It's supposed to be called
+     * in the constructor. A sync message still blocks the JavaScript side
+     * until it's handled.
+     * @param policy one of THREADING_EXTENSION_THREAD, THREADING_SERIAL_PER_EXTENSION,
+     *        THREADING_SERIAL_PER_INSTANCE and THREADING_CONCURRENT.
+     * @param maxThreads the size of the pool for THREADING_SERIAL_PER_INSTANCE
+     *        and THREADING_CONCURRENT.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void setThreadingPolicy(int policy, int maxThreads) {
+        super.setThreadingPolicy(policy, maxThreads);
+    }
+
+    /**
+     * Get the number of the messages waiting for or being handled.
+     * @return the number of the pending messages.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public int getPendingMessageCount() {
+        return super.getPendingMessageCount();
+    }
+
+    /**
+     * Get the statistics of the message handling, such as the pending
+     * messages and the time spent in the handlers.
+     * @return the statistics in a readable string.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public String getMessageStats() {
+        return super.getMessageStats();
+    }
+
+    /**
+     * Set how long the JavaScript side waits for a reply deferred by
+     * onSyncMessageAsync(). The sync message is replied with timeoutReply
+     * afterwards, and the late reply is dropped.
+     * @param timeoutMillis the timeout, 0 to wait forever which is the default.
+     * @param timeoutReply the reply on timeout.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void setSyncMessageTimeout(long timeoutMillis, String timeoutReply) {
+        super.setSyncMessageTimeout(timeoutMillis, timeoutReply);
+    }
+
+    /**
+     * Set the latency budget of the sync messages. The sync messages replied
+     * later than that are logged with the duration, 100 milliseconds by default.
+     * @param budgetMillis the budget, 0 to disable the logging.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void setSyncLatencyBudget(long budgetMillis) {
+        super.setSyncLatencyBudget(budgetMillis);
+    }
+
     /**
      * Destroy an extension.
      */
@@ -54,6 +177,109 @@ public abstract class XWalkExtensionInternal extends XWalkExtensionAndroid {
         super.postMessage(instanceID, message);
     }
 
+    /**
+     * Send binary data to an instance, which receives it as an ArrayBuffer.
+     * Unlike postMessage(), the data isn't encoded as text on the way.
+     * @param instanceID the id of instance.
+     * @param data the bytes from the position to the limit are sent. Use a
+     *             direct buffer to avoid an extra copy.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void postBinaryMessage(int instanceID, ByteBuffer data) {
+        super.postBinaryMessage(instanceID, data);
+    }
+
+    /**
+     * Send message to an instance, which replaces the pending message of the
+     * same key with OUTBOUND_KEEP_LATEST.
+     * @param instanceID the id of instance.
+     * @param key the key of the message, such as the type of the sensor data.
+     * @param message the message.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void postKeyedMessage(int instanceID, String key, String message) {
+        super.postKeyedMessage(instanceID, key, message);
+    }
+
+    /**
+     * Set how the messages are sent to the instances, so that the messages
+     * posted at a high frequency don't pile up on the JavaScript side. The
+     * queued messages are sent at most once per frame, and only while the
+     * messages not handled by the JavaScript side yet are below the high
+     * watermark. The oldest ones are dropped beyond the high watermark. It's
+     * supposed to be called in the constructor.
+     * @param policy one of OUTBOUND_IMMEDIATE, OUTBOUND_QUEUED,
+     *        OUTBOUND_KEEP_LATEST and OUTBOUND_BATCH.
+     * @param highWatermark the maximum number of the messages of an instance
+     *        in flight, and of the ones waiting.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void setOutboundPolicy(int policy, int highWatermark) {
+        super.setOutboundPolicy(policy, highWatermark);
+    }
+
+    /**
+     * Tell whether the messages not handled yet by the JavaScript side of an
+     * instance reached the high watermark.
+     * @param instanceID the id of instance.
+     * @return true if the instance is behind.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public boolean isOutboundBehind(int instanceID) {
+        return super.isOutboundBehind(instanceID);
+    }
+
+    /**
+     * Notify the extension that the messages not handled yet by the
+     * JavaScript side of an instance reached the high watermark, or that it
+     * has caught up with half of them afterwards. It could be used to lower
+     * the rate of the messages.
+     * @param instanceID the id of instance.
+     * @param behind whether the instance is behind.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void onOutboundBackpressure(int instanceID, boolean behind) {
+        super.onOutboundBackpressure(instanceID, behind);
+    }
+
+    /**
+     * Get the number of the messages sent to an instance and not handled by
+     * the JavaScript side yet, a batch counts as one message.
+     * @param instanceID the id of instance.
+     * @return the number of the messages in flight.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public int getOutboundInFlightCount(int instanceID) {
+        return super.getOutboundInFlightCount(instanceID);
+    }
+
+    /**
+     * Get the number of the messages dropped beyond the high watermark.
+     * @return the number of the dropped messages.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public long getDroppedMessageCount() {
+        return super.getDroppedMessageCount();
+    }
+
+    /**
+     * Get the number of the messages replaced by a later message of the same
+     * key, or merged into a batch.
+     * @return the number of the coalesced messages.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public long getCoalescedMessageCount() {
+        return super.getCoalescedMessageCount();
+    }
+
     /**
      * Broadcast message to all extension instances.
      * @param message the message.
@@ -64,6 +290,40 @@ public abstract class XWalkExtensionInternal extends XWalkExtensionAndroid {
         super.broadcastMessage(message);
     }
 
+    /**
+     * Broadcast message to the extension instances subscribed to the topic.
+     * @param topic the topic of the message.
+     * @param message the message.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void publishMessage(String topic, String message) {
+        super.publishMessage(topic, message);
+    }
+
+    /**
+     * Let an instance receive the messages published to the topic, until
+     * it's unsubscribed or gone.
+     * @param instanceID the id of instance.
+     * @param topic the topic to subscribe to.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void subscribe(int instanceID, String topic) {
+        super.subscribe(instanceID, topic);
+    }
+
+    /**
+     * Stop sending the messages published to the topic to an instance.
+     * @param instanceID the id of instance.
+     * @param topic the topic to unsubscribe from.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void unsubscribe(int instanceID, String topic) {
+        super.unsubscribe(instanceID, topic);
+    }
+
     /**
      * Notify the extension that the async message is received.
      * @param instanceID the id of instance.
@@ -73,6 +333,19 @@ public abstract class XWalkExtensionInternal extends XWalkExtensionAndroid {
     @XWalkAPI
     public abstract void onMessage(int instanceID, String message);
 
+    /**
+     * Notify the extension that an ArrayBuffer is received. It's ignored
+     * unless overridden.
+     * @param instanceID the id of instance.
+     * @param message the received bytes in a direct buffer, which could be
+     *                kept after this returns.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void onBinaryMessage(int instanceID, ByteBuffer message) {
+        super.onBinaryMessage(instanceID, message);
+    }
+
     /**
      * Notify the extension that the sync message is received.
      * @param instanceID the id of instance.
@@ -81,4 +354,25 @@ public abstract class XWalkExtensionInternal extends XWalkExtensionAndroid {
      */
     @XWalkAPI
     public abstract String onSyncMessage(int instanceID, String message);
+
+    /**
+     * Notify the extension that the sync message is received. The reply
+     * could be kept and completed later on any thread, so that a slow
+     * handler doesn't block the thread of the extension. It replies with
+     * onSyncMessage() unless overridden.
+     * @param instanceID the id of instance.
+     * @param message the received message.
+     * @param reply the reply to complete.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void onSyncMessageAsync(int instanceID, String message,
+            XWalkExtensionSyncReplyInternal reply) {
+        reply.complete(onSyncMessage(instanceID, message));
+    }
+
+    @Override
+    public void onSyncMessage(int instanceID, String message, XWalkExtensionPendingReply reply) {
+        onSyncMessageAsync(instanceID, message, new XWalkExtensionSyncReplyHandlerInternal(reply));
+    }
 }
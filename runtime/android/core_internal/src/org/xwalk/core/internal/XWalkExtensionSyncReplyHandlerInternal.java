@@ -0,0 +1,28 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import org.xwalk.core.internal.extensions.XWalkExtensionPendingReply;
+
+@XWalkAPI(impl = XWalkExtensionSyncReplyInternal.class, createInternally = true)
+public class XWalkExtensionSyncReplyHandlerInternal implements XWalkExtensionSyncReplyInternal {
+    private final XWalkExtensionPendingReply mReply;
+
+    XWalkExtensionSyncReplyHandlerInternal(XWalkExtensionPendingReply reply) {
+        mReply = reply;
+    }
+
+    // Never use this constructor.
+    // It is only used in XWalkExtensionSyncReplyHandlerBridge.
+    XWalkExtensionSyncReplyHandlerInternal() {
+        mReply = null;
+    }
+
+    @Override
+    @XWalkAPI
+    public void complete(String reply) {
+        if (mReply != null) mReply.complete(reply);
+    }
+}
@@ -0,0 +1,24 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+/**
+ * This interface is used when XWalkExtensionInternal receives a sync message
+ * which takes time to handle. The extension could keep the object and reply
+ * later with complete(), so that the thread of the extension isn't blocked.
+ * The JavaScript side waits for the reply until it's completed or the sync
+ * message times out.
+ */
+@XWalkAPI(instance = XWalkExtensionSyncReplyHandlerInternal.class)
+public interface XWalkExtensionSyncReplyInternal {
+    /**
+     * Reply to the sync message. It could be called on any thread, only the
+     * first call takes effect.
+     * @param reply the reply to the JavaScript side.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void complete(String reply);
+}
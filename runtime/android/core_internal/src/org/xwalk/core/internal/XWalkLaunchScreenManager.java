@@ -23,9 +23,11 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.Shader.TileMode;
 import android.hardware.SensorManager;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.Display;
 import android.view.Gravity;
@@ -69,6 +71,21 @@ public class XWalkLaunchScreenManager
     private boolean mCustomHideLaunchScreen;
     private int mCurrentOrientation;
     private OrientationEventListener mOrientationListener;
+    private String mImageBorderList;
+
+    // The foreground images prepared for each orientation and the sizes being
+    // prepared for, only accessed on the UI thread.
+    private final SparseArray<LaunchScreenImage> mLaunchScreenImages =
+            new SparseArray<LaunchScreenImage>();
+    private final SparseArray<Point> mPreparingSizes = new SparseArray<Point>();
+    private boolean mNoForegroundImage;
+
+    // The decoded foreground image, shared by the orientations.
+    private final Object mImageLock = new Object();
+    private Bitmap mImage;
+    private int mSampleSize = 1;
+    private boolean mImageDecoded;
+    private int mMaxScreenSize;
 
     private enum ReadyWhenType {
         FIRST_PAINT,
@@ -84,6 +101,30 @@ public class XWalkLaunchScreenManager
         NONE
     }
 
+    /**
+     * The foreground image sliced for one orientation. The bitmaps are
+     * prepared on a background thread, the layout is created from them on
+     * the UI thread when it's shown for the first time.
+     */
+    private static class LaunchScreenImage {
+        // The size of the screen the image is prepared for.
+        final Point size;
+        int topBorder;
+        int rightBorder;
+        int leftBorder;
+        int bottomBorder;
+        // The whole image, when no border is specified.
+        Bitmap image;
+        // The 9 sections from top left to bottom right, null if not shown.
+        final Bitmap[] sections = new Bitmap[9];
+        final BorderModeType[] modes = new BorderModeType[9];
+        RelativeLayout layout;
+
+        LaunchScreenImage(Point size) {
+            this.size = size;
+        }
+    }
+
     public XWalkLaunchScreenManager(Context context, XWalkViewInternal xwView) {
         mXWalkView = xwView;
         mLibContext = context;
@@ -126,13 +167,27 @@ public class XWalkLaunchScreenManager
                 mLaunchScreenDialog.setOnDismissListener(XWalkLaunchScreenManager.this);
                 // Set background
                 mLaunchScreenDialog.getWindow().setBackgroundDrawable(bgDrawable);
-                // Set foreground image
-                RelativeLayout root = getLaunchScreenLayout(imageBorderList);
-                // The root layout can be null when there is no 'image' provided in the manifest.
-                // We can just display the background instead of no launch screen dialog displayed.
-                if (root != null) mLaunchScreenDialog.setContentView(root);
+                // Show the background right away, the foreground image is
+                // decoded and sliced on a background thread and set when ready.
+                // There is no foreground when no 'image' is provided in the manifest.
                 mLaunchScreenDialog.show();
 
+                Point size = new Point();
+                mActivity.getWindowManager().getDefaultDisplay().getSize(size);
+                synchronized (mImageLock) {
+                    mMaxScreenSize = Math.max(size.x, size.y);
+                    mImageDecoded = false;
+                }
+                mImageBorderList = imageBorderList;
+                mNoForegroundImage = false;
+                mCurrentOrientation = getScreenOrientation();
+                updateLaunchScreenLayout(mCurrentOrientation);
+                // Prepare the other orientation too, so that rotating the
+                // screen doesn't need to slice the image again.
+                int otherOrientation = mCurrentOrientation == Configuration.ORIENTATION_PORTRAIT ?
+                        Configuration.ORIENTATION_LANDSCAPE : Configuration.ORIENTATION_PORTRAIT;
+                prepareLaunchScreenImage(otherOrientation, getLaunchScreenSize(otherOrientation));
+
                 // Change the layout depends on the orientation change.
                 mOrientationListener = new OrientationEventListener(mActivity,
                         SensorManager.SENSOR_DELAY_NORMAL) {
@@ -140,11 +195,10 @@ public class XWalkLaunchScreenManager
                         if (mLaunchScreenDialog == null || !mLaunchScreenDialog.isShowing()) {
                             return;
                         }
-		        int orientation = getScreenOrientation();
+                        int orientation = getScreenOrientation();
                         if (orientation != mCurrentOrientation) {
-                            RelativeLayout root = getLaunchScreenLayout(imageBorderList);
-                            if (root == null) return;
-                            mLaunchScreenDialog.setContentView(root);
+                            mCurrentOrientation = orientation;
+                            updateLaunchScreenLayout(orientation);
                         }
                     }
                 };
@@ -171,6 +225,14 @@ public class XWalkLaunchScreenManager
     public void onDismiss(DialogInterface dialog) {
         mOrientationListener.disable();
         mOrientationListener = null;
+
+        // Release the bitmaps, the tasks still running find nothing to do.
+        mLaunchScreenImages.clear();
+        mPreparingSizes.clear();
+        synchronized (mImageLock) {
+            mImage = null;
+            mImageDecoded = true;
+        }
     }
 
     @Override
@@ -198,41 +260,156 @@ public class XWalkLaunchScreenManager
         return orientation;
     }
 
-    private RelativeLayout getLaunchScreenLayout(String imageBorderList) {
+    /**
+     * Show the foreground image for the orientation if it's prepared, or
+     * prepare it on a background thread and show it when ready.
+     */
+    private void updateLaunchScreenLayout(int orientation) {
+        if (mNoForegroundImage) return;
+
+        Point size = getLaunchScreenSize(orientation);
+        LaunchScreenImage image = mLaunchScreenImages.get(orientation);
+        if (image != null && image.size.equals(size)) {
+            showLaunchScreenImage(image);
+            return;
+        }
+        Point preparingSize = mPreparingSizes.get(orientation);
+        if (preparingSize == null || !preparingSize.equals(size)) {
+            prepareLaunchScreenImage(orientation, size);
+        }
+    }
+
+    private void prepareLaunchScreenImage(final int orientation, final Point size) {
+        final String imageBorder = getImageBorder(mImageBorderList, orientation);
+        mPreparingSizes.put(orientation, size);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final LaunchScreenImage image = parseImageBorder(imageBorder, size);
+                mActivity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLaunchScreenImagePrepared(orientation, image);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLaunchScreenImagePrepared(int orientation, LaunchScreenImage image) {
+        if (mLaunchScreenDialog == null || !mLaunchScreenDialog.isShowing()) return;
+        if (image == null) {
+            // The image can be null when there is no 'image' provided in the manifest.
+            // We can just display the background instead of no launch screen dialog displayed.
+            mNoForegroundImage = true;
+            return;
+        }
+
+        // Drop the images prepared for a stale screen size.
+        Point preparingSize = mPreparingSizes.get(orientation);
+        if (preparingSize == null || !preparingSize.equals(image.size)) return;
+        mPreparingSizes.remove(orientation);
+        mLaunchScreenImages.put(orientation, image);
+        if (orientation == mCurrentOrientation) showLaunchScreenImage(image);
+    }
+
+    private void showLaunchScreenImage(LaunchScreenImage image) {
+        if (image.layout == null) image.layout = createLaunchScreenLayout(image);
+        mLaunchScreenDialog.setContentView(image.layout);
+    }
+
+    /**
+     * Get the size of the screen for the orientation. The size for the other
+     * orientation than the current one is estimated by swapping the width
+     * and height, it's checked again when the screen is rotated.
+     */
+    private Point getLaunchScreenSize(int orientation) {
+        Display display = mActivity.getWindowManager().getDefaultDisplay();
+        Point size = new Point();
+        display.getSize(size);
+        if ((size.x < size.y) != (orientation == Configuration.ORIENTATION_PORTRAIT)) {
+            size.set(size.y, size.x);
+        }
+
+        // For non fullscreen, the height should substract status bar height
+        if ((mActivity.getWindow().getAttributes().flags &
+             WindowManager.LayoutParams.FLAG_FULLSCREEN) == 0) {
+            size.y -= getStatusBarHeight();
+        }
+        return size;
+    }
+
+    /**
+     * Decode the foreground image once for all the orientations. It's sampled
+     * down when it's at least twice as large as the screen in both dimensions,
+     * so that a huge image doesn't cost the memory and time to decode it fully.
+     * Called on a background thread.
+     * @return The decoded image, or null if there is no image.
+     */
+    private Bitmap decodeImage() {
+        synchronized (mImageLock) {
+            if (mImageDecoded) return mImage;
+            mImageDecoded = true;
+
+            int imgResId = mActivity.getResources().getIdentifier(
+                           "launchscreen_img", "drawable", mActivity.getPackageName());
+            if (imgResId == 0) return null;
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(mActivity.getResources(), imgResId, options);
+            int sampleSize = 1;
+            while (options.outWidth / (sampleSize * 2) >= mMaxScreenSize &&
+                    options.outHeight / (sampleSize * 2) >= mMaxScreenSize) {
+                sampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            mImage = BitmapFactory.decodeResource(mActivity.getResources(), imgResId, options);
+            if (mImage == null) return null;
+
+            // Let the sampled image and the sections sliced from it, which
+            // inherit the density, take the same room on the screen as the
+            // full image.
+            if (sampleSize > 1) mImage.setDensity(mImage.getDensity() / sampleSize);
+            mSampleSize = sampleSize;
+            return mImage;
+        }
+    }
+
+    private String getImageBorder(String imageBorderList, int orientation) {
         // Parse the borders depends on orientation.
         // imageBorderList format:"[default];[landscape];[portrait]"
         String[] borders = imageBorderList.split(";");
         // When there is no borders defined, display with no borders.
-        if (borders.length < 1) return parseImageBorder("");
-        int orientation = getScreenOrientation();
-        mCurrentOrientation = orientation;
+        if (borders.length < 1) return "";
         if (borders.length >= 2 && orientation == Configuration.ORIENTATION_LANDSCAPE) {
             if (borders[1].equals("empty")) {
                 // Has launch_screen.landscape configured, but no image_border set.
                 // Display the iamge with no borders.
-                return parseImageBorder("");
+                return "";
             } else if (borders[1].isEmpty()) {
                 // No launch_screen.landscape configured.
                 // Use launch_screen.default.
-                return parseImageBorder(borders[0]);
+                return borders[0];
             } else {
-                return parseImageBorder(borders[1]);
+                return borders[1];
             }
         } else if (borders.length == 3 && orientation == Configuration.ORIENTATION_PORTRAIT) {
             if (borders[2].equals("empty")) {
                 // Has launch_screen.portrait configured, but no image_border set.
                 // Display the iamge with no borders.
-                return parseImageBorder("");
+                return "";
             } else if (borders[2].isEmpty()) {
                 // No launch_screen.portrait configured.
                 // Use launch_screen.default.
-                return parseImageBorder(borders[0]);
+                return borders[0];
             } else {
-                return parseImageBorder(borders[2]);
+                return borders[2];
             }
         }
 
-        return parseImageBorder(borders[0]);
+        return borders[0];
     }
 
     private int getSuitableSize(int maxSize, int divider) {
@@ -256,8 +433,10 @@ public class XWalkLaunchScreenManager
     }
 
     /**
-     * Get each section from 9-piece format image depends on the spec defined
+     * Get each section from 9-piece format image depends on the spec defined.
+     * Called on a background thread.
      * @param img The foreground image.
+     * @param sampleSize The sample size the foreground image is decoded with.
      * @param x The position where the section start.
      * @param y The position where the section start.
      * @param width The width of the section.
@@ -265,10 +444,10 @@ public class XWalkLaunchScreenManager
      * @param mode The border type for this section.
      * @param maxWidth When mode == ROUND, this will be used.
      * @param maxHeight When mode == ROUND, this will be used.
-     * @return The ImageView for this section.
+     * @return The bitmap for this section.
      */
-    private ImageView getSubImageView(Bitmap img, int x, int y, int width, int height,
-                                      BorderModeType mode, int maxWidth, int maxHeight) {
+    private Bitmap getSubImage(Bitmap img, int sampleSize, int x, int y, int width, int height,
+                               BorderModeType mode, int maxWidth, int maxHeight) {
         if (img == null) return null;
 
         if (width <= 0 || height <= 0) return null;
@@ -279,23 +458,41 @@ public class XWalkLaunchScreenManager
         if (!imgRect.contains(subRect)) return null;
 
         Bitmap subImage = Bitmap.createBitmap(img, x, y, width, height);
-        ImageView subImageView = new ImageView(mActivity);
-        BitmapDrawable drawable;
+        if (mode != BorderModeType.ROUND && mode != BorderModeType.REPEAT) return subImage;
+
+        // The repeated sections are tiled at the size of the bitmap, bring the
+        // ones sliced from a sampled image back to the size on the screen.
+        int originW = width * sampleSize;
+        int originH = height * sampleSize;
+        int newW = originW;
+        int newH = originH;
         if (mode == BorderModeType.ROUND) {
-            int originW = subImage.getWidth();
-            int originH = subImage.getHeight();
-            int newW = originW;
-            int newH = originH;
             // Scale down the sub image to let the last image not cropped when it's repeated.
             if (maxWidth > 0) newW = getSuitableSize(maxWidth, originW);
             if (maxHeight > 0) newH = getSuitableSize(maxHeight, originH);
-            // recreate the new scaled bitmap.
-            Bitmap resizedBitmap = Bitmap.createScaledBitmap(subImage, newW, newH, true);
-            // Treat as repeat mode.
-            subImage = resizedBitmap;
-            mode = BorderModeType.REPEAT;
         }
-        if (mode == BorderModeType.REPEAT) {
+        if (newW == width && newH == height) return subImage;
+        // recreate the new scaled bitmap.
+        Bitmap resizedBitmap = Bitmap.createScaledBitmap(subImage, newW, newH, true);
+        resizedBitmap.setDensity(img.getDensity() * sampleSize);
+        return resizedBitmap;
+    }
+
+    /**
+     * Create the view for a section prepared by getSubImage().
+     * @param image The prepared foreground image.
+     * @param index The index of the section, from 0 for top left to 8 for bottom right.
+     * @return The ImageView for this section, or null if it's not shown.
+     */
+    private ImageView getSubImageView(LaunchScreenImage image, int index) {
+        Bitmap subImage = image.sections[index];
+        if (subImage == null) return null;
+
+        ImageView subImageView = new ImageView(mActivity);
+        BorderModeType mode = image.modes[index];
+        BitmapDrawable drawable;
+        // The round sections are scaled by getSubImage(), treat as repeat mode.
+        if (mode == BorderModeType.REPEAT || mode == BorderModeType.ROUND) {
             drawable = new BitmapDrawable(mActivity.getResources(), subImage);
             drawable.setTileModeXY(TileMode.REPEAT, TileMode.REPEAT);
             subImageView.setImageDrawable(drawable);
@@ -320,7 +517,14 @@ public class XWalkLaunchScreenManager
         return 25;
     }
 
-    private RelativeLayout parseImageBorder(String imageBorder) {
+    /**
+     * Parse the image border and slice the foreground image as it defines.
+     * Called on a background thread.
+     * @param imageBorder The image border for the orientation.
+     * @param size The size of the screen for the orientation.
+     * @return The prepared image, or null if there is no foreground image.
+     */
+    private LaunchScreenImage parseImageBorder(String imageBorder, Point size) {
         int topBorder = 0;
         int rightBorder = 0;
         int leftBorder = 0;
@@ -388,12 +592,77 @@ public class XWalkLaunchScreenManager
         }
 
         // Get foreground image
-        int imgResId = mActivity.getResources().getIdentifier(
-                       "launchscreen_img", "drawable", mActivity.getPackageName());
-        if (imgResId == 0) return null;
-        Bitmap img = BitmapFactory.decodeResource(mActivity.getResources(), imgResId);
+        Bitmap img;
+        int sampleSize;
+        synchronized (mImageLock) {
+            img = decodeImage();
+            sampleSize = mSampleSize;
+        }
         if (img == null) return null;
 
+        LaunchScreenImage image = new LaunchScreenImage(size);
+        image.topBorder = topBorder;
+        image.rightBorder = rightBorder;
+        image.leftBorder = leftBorder;
+        image.bottomBorder = bottomBorder;
+
+        // If no border specified, display the foreground image centered horizontally and vertically.
+        if (borders.size() == 0) {
+            image.image = img;
+            return image;
+        }
+
+        // Slice the 9 sections as spec defined. The borders are in the pixels
+        // of the screen, while the sections are in the pixels of the image.
+        BorderModeType[] sectionModes = {
+            BorderModeType.NONE, horizontalMode, BorderModeType.NONE,
+            verticalMode, BorderModeType.NONE, verticalMode,
+            BorderModeType.NONE, horizontalMode, BorderModeType.NONE
+        };
+        System.arraycopy(sectionModes, 0, image.modes, 0, sectionModes.length);
+        int imgTop = topBorder / sampleSize;
+        int imgRight = rightBorder / sampleSize;
+        int imgLeft = leftBorder / sampleSize;
+        int imgBottom = bottomBorder / sampleSize;
+        int imgMiddleWidth = img.getWidth() - imgLeft - imgRight;
+        int imgMiddleHeight = img.getHeight() - imgTop - imgBottom;
+        int maxWidth = size.x - leftBorder - rightBorder;
+        int maxHeight = size.y - topBorder - bottomBorder;
+
+        // Image section-1 top left
+        image.sections[0] = getSubImage(img, sampleSize, 0, 0, imgLeft, imgTop,
+                sectionModes[0], 0, 0);
+        // Image section-2 top
+        image.sections[1] = getSubImage(img, sampleSize, imgLeft, 0, imgMiddleWidth, imgTop,
+                sectionModes[1], maxWidth, 0);
+        // Image section-3 top right
+        image.sections[2] = getSubImage(img, sampleSize, img.getWidth() - imgRight, 0,
+                imgRight, imgTop, sectionModes[2], 0, 0);
+        // Image section-4 left
+        image.sections[3] = getSubImage(img, sampleSize, 0, imgTop, imgLeft, imgMiddleHeight,
+                sectionModes[3], 0, maxHeight);
+        // Image section-5 middle
+        image.sections[4] = getSubImage(img, sampleSize, imgLeft, imgTop, imgMiddleWidth,
+                imgMiddleHeight, sectionModes[4], 0, 0);
+        // Image section-6 right
+        image.sections[5] = getSubImage(img, sampleSize, img.getWidth() - imgRight, imgTop,
+                imgRight, imgMiddleHeight, sectionModes[5], 0, maxHeight);
+        // Image section-7 bottom left
+        image.sections[6] = getSubImage(img, sampleSize, 0, img.getHeight() - imgBottom,
+                imgLeft, imgBottom, sectionModes[6], 0, 0);
+        // Image section-8 bottom
+        image.sections[7] = getSubImage(img, sampleSize, imgLeft, img.getHeight() - imgBottom,
+                imgMiddleWidth, imgBottom, sectionModes[7], maxWidth, 0);
+        // Image section-9 bottom right
+        image.sections[8] = getSubImage(img, sampleSize, img.getWidth() - imgRight,
+                img.getHeight() - imgBottom, imgRight, imgBottom, sectionModes[8], 0, 0);
+        return image;
+    }
+
+    /**
+     * Create the layout of the prepared foreground image. Called on the UI thread.
+     */
+    private RelativeLayout createLaunchScreenLayout(LaunchScreenImage image) {
         RelativeLayout root = new RelativeLayout(mActivity);
         root.setLayoutParams(new RelativeLayout.LayoutParams(
                 ViewGroup.LayoutParams.MATCH_PARENT,
@@ -402,9 +671,9 @@ public class XWalkLaunchScreenManager
         ImageView subImageView;
 
         // If no border specified, display the foreground image centered horizontally and vertically.
-        if (borders.size() == 0) {
+        if (image.image != null) {
             subImageView = new ImageView(mActivity);
-            subImageView.setImageBitmap(img);
+            subImageView.setImageBitmap(image.image);
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
                     RelativeLayout.LayoutParams.WRAP_CONTENT);
@@ -414,20 +683,13 @@ public class XWalkLaunchScreenManager
         }
 
         // Create the 9-piece layout as spec defined.
-
-        // Get Screen width and height.
-        Display display = mActivity.getWindowManager().getDefaultDisplay();
-        Point size = new Point();
-        display.getSize(size);
-
-        // For non fullscreen, the height should substract status bar height
-        if ((mActivity.getWindow().getAttributes().flags &
-             WindowManager.LayoutParams.FLAG_FULLSCREEN) == 0) {
-            size.y -= getStatusBarHeight();
-        }
+        int topBorder = image.topBorder;
+        int rightBorder = image.rightBorder;
+        int leftBorder = image.leftBorder;
+        int bottomBorder = image.bottomBorder;
 
         // Image section-1 top left
-        subImageView = getSubImageView(img, 0, 0, leftBorder, topBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image, 0);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -438,8 +700,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-2 top
-        subImageView = getSubImageView(img, leftBorder, 0, img.getWidth() - leftBorder
-                - rightBorder, topBorder, horizontalMode, size.x - leftBorder - rightBorder, 0);
+        subImageView = getSubImageView(image, 1);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.MATCH_PARENT,
@@ -452,8 +713,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-3 top right
-        subImageView = getSubImageView(img, img.getWidth() - rightBorder, 0,
-                rightBorder, topBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image, 2);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -464,8 +724,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-4 left
-        subImageView = getSubImageView(img, 0, topBorder, leftBorder, img.getHeight()
-                - topBorder - bottomBorder, verticalMode, 0, size.y - topBorder - bottomBorder);
+        subImageView = getSubImageView(image, 3);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -478,8 +737,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-5 middle
-        subImageView = getSubImageView(img, leftBorder, topBorder, img.getWidth() - leftBorder - rightBorder,
-                img.getHeight() - topBorder - bottomBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image, 4);
         if (subImageView != null) {
             subImageView.setScaleType(ScaleType.FIT_XY);
             params = new RelativeLayout.LayoutParams(
@@ -493,9 +751,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-6 right
-        subImageView = getSubImageView(img, img.getWidth() - rightBorder, topBorder, rightBorder,
-                img.getHeight() - topBorder - bottomBorder, verticalMode, 0,
-                size.y - topBorder - bottomBorder);
+        subImageView = getSubImageView(image, 5);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -508,8 +764,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-7 bottom left
-        subImageView = getSubImageView(img, 0, img.getHeight() - bottomBorder,
-                leftBorder, bottomBorder, BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image, 6);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -520,9 +775,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-8 bottom
-        subImageView = getSubImageView(img, leftBorder, img.getHeight() - bottomBorder,
-                img.getWidth() - leftBorder - rightBorder, bottomBorder, horizontalMode,
-                size.x - leftBorder - rightBorder, 0);
+        subImageView = getSubImageView(image, 7);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.MATCH_PARENT,
@@ -535,9 +788,7 @@ public class XWalkLaunchScreenManager
         }
 
         // Image section-9 bottom right
-        subImageView = getSubImageView(img, img.getWidth() - rightBorder,
-                img.getHeight() - bottomBorder, rightBorder, bottomBorder,
-	        BorderModeType.NONE, 0, 0);
+        subImageView = getSubImageView(image, 8);
         if (subImageView != null) {
             params = new RelativeLayout.LayoutParams(
                     RelativeLayout.LayoutParams.WRAP_CONTENT,
@@ -7,14 +7,16 @@ package org.xwalk.core.internal;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * This class represents the preferences and could be set by callers.
- * It is not thread-safe and must be called on the UI thread.
- * Afterwards, the preference could be read from all threads and can impact
- * all XWalkViewInternal instances.
+ * It should be called on the UI thread, as the XWalkViewInternal instances
+ * are notified of the changes on the calling thread.
+ * The preferences could be read from all threads without blocking and can
+ * impact all XWalkViewInternal instances.
  */
 @XWalkAPI(noInstance = true)
 public class XWalkPreferencesInternal {
@@ -59,11 +61,30 @@ public class XWalkPreferencesInternal {
             if (mType != PREFERENCE_TYPE_STRING) return null;
             return (String) mValue;
         }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof PreferenceValue)) return false;
+            PreferenceValue other = (PreferenceValue) object;
+            return mType == other.mType && mValue.equals(other.mValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mType + mValue.hashCode();
+        }
     }
 
-    private static HashMap<String, PreferenceValue> sPrefMap = new HashMap<String, PreferenceValue>();
+    // The preferences are read from any thread without locking. The map is
+    // never modified once published, the setters replace it with a copy under
+    // sLock instead.
+    private static volatile Map<String, PreferenceValue> sPrefMap;
+    private static final Object sLock = new Object();
+    // Serializes the notifications, so that the listeners see the changes in
+    // order even if the setters are called on several threads.
+    private static final Object sNotifyLock = new Object();
     // Here we use WeakReference to make sure the KeyValueChangeListener instance
-    // can be GC-ed to avoid memory leaking issue.
+    // can be GC-ed to avoid memory leaking issue. Guarded by sLock.
     private static ArrayList<WeakReference<KeyValueChangeListener> > sListeners =
             new ArrayList<WeakReference<KeyValueChangeListener> >();
     private static ReferenceQueue<KeyValueChangeListener> sRefQueue =
@@ -140,6 +161,16 @@ public class XWalkPreferencesInternal {
     @XWalkAPI
     public static final String PROFILE_NAME = "profile-name";
 
+    /**
+     * The key string to set the size in bytes of the in-memory cache for
+     * the application assets loaded by app:// and file:///android_asset/
+     * urls. Only small assets are kept in the cache. Default value is 0,
+     * which disables the cache.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final String ASSET_CACHE_SIZE = "asset-cache-size";
+
     /**
      * The key string to enable/disable javascript.
      * TODO(wang16): Remove this after cordova removes its dependency.
@@ -153,15 +184,18 @@ public class XWalkPreferencesInternal {
     static final String ENABLE_EXTENSIONS = "enable-extensions";
 
     static {
-        sPrefMap.put(REMOTE_DEBUGGING, new PreferenceValue(false));
-        sPrefMap.put(ANIMATABLE_XWALK_VIEW, new PreferenceValue(true));
-        sPrefMap.put(ENABLE_JAVASCRIPT, new PreferenceValue(true));
-        sPrefMap.put(JAVASCRIPT_CAN_OPEN_WINDOW, new PreferenceValue(true));
-        sPrefMap.put(
+        HashMap<String, PreferenceValue> prefMap = new HashMap<String, PreferenceValue>();
+        prefMap.put(REMOTE_DEBUGGING, new PreferenceValue(false));
+        prefMap.put(ANIMATABLE_XWALK_VIEW, new PreferenceValue(true));
+        prefMap.put(ENABLE_JAVASCRIPT, new PreferenceValue(true));
+        prefMap.put(JAVASCRIPT_CAN_OPEN_WINDOW, new PreferenceValue(true));
+        prefMap.put(
                 ALLOW_UNIVERSAL_ACCESS_FROM_FILE, new PreferenceValue(false));
-        sPrefMap.put(SUPPORT_MULTIPLE_WINDOWS, new PreferenceValue(false));
-        sPrefMap.put(ENABLE_EXTENSIONS, new PreferenceValue(true));
-        sPrefMap.put(PROFILE_NAME, new PreferenceValue("Default"));
+        prefMap.put(SUPPORT_MULTIPLE_WINDOWS, new PreferenceValue(false));
+        prefMap.put(ENABLE_EXTENSIONS, new PreferenceValue(true));
+        prefMap.put(PROFILE_NAME, new PreferenceValue("Default"));
+        prefMap.put(ASSET_CACHE_SIZE, new PreferenceValue(0));
+        sPrefMap = Collections.unmodifiableMap(prefMap);
     }
 
     /**
@@ -172,19 +206,8 @@ public class XWalkPreferencesInternal {
      * @since 1.0
      */
     @XWalkAPI
-    public static synchronized void setValue(String key, boolean enabled) throws RuntimeException {
-        checkKey(key);
-        // If the listener list is not empty, we consider the preference is
-        // loaded by Crosswalk and taken effect already.
-        if (key == ANIMATABLE_XWALK_VIEW && !sListeners.isEmpty()) {
-            throw new RuntimeException("Warning: the preference key " + key +
-                    " can not be set if the preference is already loaded by Crosswalk");
-        }
-        if (sPrefMap.get(key).getBooleanValue() != enabled) {
-            PreferenceValue v = new PreferenceValue(enabled);
-            sPrefMap.put(key, v);
-            onKeyValueChanged(key, v);
-        }
+    public static void setValue(String key, boolean enabled) throws RuntimeException {
+        setValues(new String[] { key }, new Object[] { enabled });
     }
 
     /**
@@ -195,19 +218,8 @@ public class XWalkPreferencesInternal {
      * @since 3.0
      */
     @XWalkAPI
-    public static synchronized void setValue(String key, int value) throws RuntimeException {
-        checkKey(key);
-        // If the listener list is not empty, we consider the preference is
-        // loaded by Crosswalk and taken effect already.
-        if (key == ANIMATABLE_XWALK_VIEW && !sListeners.isEmpty()) {
-            throw new RuntimeException("Warning: the preference key " + key +
-                    " can not be set if the preference is already loaded by Crosswalk");
-        }
-        if (sPrefMap.get(key).getIntegerValue() != value) {
-            PreferenceValue v = new PreferenceValue(value);
-            sPrefMap.put(key, v);
-            onKeyValueChanged(key, v);
-        }
+    public static void setValue(String key, int value) throws RuntimeException {
+        setValues(new String[] { key }, new Object[] { value });
     }
 
     /**
@@ -218,19 +230,56 @@ public class XWalkPreferencesInternal {
      * @since 3.0
      */
     @XWalkAPI
-    public static synchronized void setValue(String key, String value) throws RuntimeException {
-        checkKey(key);
-        // If the listener list is not empty, we consider the preference is
-        // loaded by Crosswalk and taken effect already.
-        if (key == ANIMATABLE_XWALK_VIEW && !sListeners.isEmpty()) {
-            throw new RuntimeException("Warning: the preference key " + key +
-                    " can not be set if the preference is already loaded by Crosswalk");
+    public static void setValue(String key, String value) throws RuntimeException {
+        if (value == null) {
+            getPreferenceValue(key);
+            return;
+        }
+        setValues(new String[] { key }, new Object[] { value });
+    }
+
+    /**
+     * Set several preference values into Crosswalk at once. The listeners,
+     * e.g. the XWalkView instances, are notified once for all the changes.
+     * An exception will be thrown if one of the keys is not valid or one of
+     * the values is not a Boolean, an Integer or a String, and then none of
+     * the values is set.
+     * @param keys the string names of the keys.
+     * @param values the values, in the same order as the keys.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static void setValues(String[] keys, Object[] values) throws RuntimeException {
+        if (keys.length != values.length) {
+            throw new RuntimeException("Warning: the number of preference keys and values " +
+                    "don't match.");
         }
-        if (value != null && !value.equals(sPrefMap.get(key).getStringValue())) {
-            PreferenceValue v = new PreferenceValue(value);
-            sPrefMap.put(key, v);
-            onKeyValueChanged(key, v);
+
+        ArrayList<String> changedKeys = new ArrayList<String>();
+        synchronized (sLock) {
+            removeEnqueuedReference();
+            HashMap<String, PreferenceValue> prefMap =
+                    new HashMap<String, PreferenceValue>(sPrefMap);
+            for (int i = 0; i < keys.length; ++i) {
+                String key = keys[i];
+                checkKey(prefMap, key);
+                // If the listener list is not empty, we consider the preference is
+                // loaded by Crosswalk and taken effect already.
+                if (key == ANIMATABLE_XWALK_VIEW && !sListeners.isEmpty()) {
+                    throw new RuntimeException("Warning: the preference key " + key +
+                            " can not be set if the preference is already loaded by Crosswalk");
+                }
+
+                PreferenceValue value = createValue(key, values[i]);
+                if (!value.equals(prefMap.get(key))) {
+                    prefMap.put(key, value);
+                    if (!changedKeys.contains(key)) changedKeys.add(key);
+                }
+            }
+            if (changedKeys.isEmpty()) return;
+            sPrefMap = Collections.unmodifiableMap(prefMap);
         }
+        onKeyValuesChanged(changedKeys);
     }
 
     /**
@@ -242,9 +291,8 @@ public class XWalkPreferencesInternal {
      * @deprecated
      */
     @XWalkAPI
-    public static synchronized boolean getValue(String key) throws RuntimeException {
-        checkKey(key);
-        return sPrefMap.get(key).getBooleanValue();
+    public static boolean getValue(String key) throws RuntimeException {
+        return getPreferenceValue(key).getBooleanValue();
     }
 
     /**
@@ -255,9 +303,8 @@ public class XWalkPreferencesInternal {
      * @since 3.0
      */
     @XWalkAPI
-    public static synchronized boolean getBooleanValue(String key) throws RuntimeException {
-        checkKey(key);
-        return sPrefMap.get(key).getBooleanValue();
+    public static boolean getBooleanValue(String key) throws RuntimeException {
+        return getPreferenceValue(key).getBooleanValue();
     }
 
     /**
@@ -268,9 +315,8 @@ public class XWalkPreferencesInternal {
      * @since 3.0
      */
     @XWalkAPI
-    public static synchronized int getIntegerValue(String key) throws RuntimeException {
-        checkKey(key);
-        return sPrefMap.get(key).getIntegerValue();
+    public static int getIntegerValue(String key) throws RuntimeException {
+        return getPreferenceValue(key).getIntegerValue();
     }
 
     /**
@@ -281,64 +327,109 @@ public class XWalkPreferencesInternal {
      * @since 3.0
      */
     @XWalkAPI
-    public static synchronized String getStringValue(String key) throws RuntimeException {
-        checkKey(key);
-        return sPrefMap.get(key).getStringValue();
+    public static String getStringValue(String key) throws RuntimeException {
+        return getPreferenceValue(key).getStringValue();
     }
 
-    static synchronized void load(KeyValueChangeListener listener) {
+    static void load(KeyValueChangeListener listener) {
         // Load current settings for initialization of a listener implementor.
-        for (Map.Entry<String, PreferenceValue> entry : sPrefMap.entrySet()) {
-            listener.onKeyValueChanged(entry.getKey(), entry.getValue());
+        // The notifications are held until the listener gets them all.
+        synchronized (sNotifyLock) {
+            registerListener(listener);
+            listener.onKeyValuesChanged(sPrefMap);
         }
-
-        registerListener(listener);
     }
 
-    static synchronized void unload(KeyValueChangeListener listener) {
+    static void unload(KeyValueChangeListener listener) {
         unregisterListener(listener);
     }
 
     // Listen to value changes.
     interface KeyValueChangeListener {
         public void onKeyValueChanged(String key, PreferenceValue value);
+
+        /**
+         * Called once for several changes, e.g. on loading or on setValues().
+         */
+        public void onKeyValuesChanged(Map<String, PreferenceValue> values);
     }
 
-    private static synchronized void registerListener(KeyValueChangeListener listener) {
-        removeEnqueuedReference();
-        WeakReference<KeyValueChangeListener> weakListener =
-                new WeakReference<KeyValueChangeListener>(listener, sRefQueue);
-        sListeners.add(weakListener);
+    private static void registerListener(KeyValueChangeListener listener) {
+        synchronized (sLock) {
+            removeEnqueuedReference();
+            WeakReference<KeyValueChangeListener> weakListener =
+                    new WeakReference<KeyValueChangeListener>(listener, sRefQueue);
+            sListeners.add(weakListener);
+        }
     }
 
-    private static synchronized void unregisterListener(KeyValueChangeListener listener) {
-        removeEnqueuedReference();
-        for (WeakReference<KeyValueChangeListener> weakListener : sListeners) {
-            if (weakListener.get() == listener) {
-                sListeners.remove(weakListener);
-                break;
+    private static void unregisterListener(KeyValueChangeListener listener) {
+        synchronized (sLock) {
+            removeEnqueuedReference();
+            for (WeakReference<KeyValueChangeListener> weakListener : sListeners) {
+                if (weakListener.get() == listener) {
+                    sListeners.remove(weakListener);
+                    break;
+                }
             }
         }
     }
 
-    private static void onKeyValueChanged(String key, PreferenceValue value) {
-        for (WeakReference<KeyValueChangeListener> weakListener : sListeners) {
-            KeyValueChangeListener listener = weakListener.get();
-            if (listener != null) listener.onKeyValueChanged(key, value);
+    private static void onKeyValuesChanged(ArrayList<String> keys) {
+        ArrayList<KeyValueChangeListener> listeners = new ArrayList<KeyValueChangeListener>();
+        synchronized (sLock) {
+            for (WeakReference<KeyValueChangeListener> weakListener : sListeners) {
+                KeyValueChangeListener listener = weakListener.get();
+                if (listener != null) listeners.add(listener);
+            }
         }
-    }
 
-    private static void checkKey(String key) throws RuntimeException {
-        removeEnqueuedReference();
-        if (!sPrefMap.containsKey(key)) {
-            throw new RuntimeException("Warning: the preference key " + key +
-                    " is not supported by Crosswalk.");
+        synchronized (sNotifyLock) {
+            // Send the current values rather than the ones set by the caller,
+            // in case another thread set them again and notified first.
+            Map<String, PreferenceValue> prefMap = sPrefMap;
+            for (KeyValueChangeListener listener : listeners) {
+                if (keys.size() == 1) {
+                    String key = keys.get(0);
+                    listener.onKeyValueChanged(key, prefMap.get(key));
+                } else {
+                    HashMap<String, PreferenceValue> values =
+                            new HashMap<String, PreferenceValue>();
+                    for (String key : keys) values.put(key, prefMap.get(key));
+                    listener.onKeyValuesChanged(values);
+                }
+            }
         }
     }
 
+    private static PreferenceValue getPreferenceValue(String key) throws RuntimeException {
+        PreferenceValue value = sPrefMap.get(key);
+        if (value == null) throwInvalidKey(key);
+        return value;
+    }
+
+    private static PreferenceValue createValue(String key, Object value) throws RuntimeException {
+        if (value instanceof Boolean) return new PreferenceValue((Boolean) value);
+        if (value instanceof Integer) return new PreferenceValue((Integer) value);
+        if (value instanceof String) return new PreferenceValue((String) value);
+        throw new RuntimeException("Warning: the value of the preference key " + key +
+                " is not a boolean, an integer or a string.");
+    }
+
+    private static void checkKey(Map<String, PreferenceValue> prefMap, String key)
+            throws RuntimeException {
+        if (!prefMap.containsKey(key)) throwInvalidKey(key);
+    }
+
+    private static void throwInvalidKey(String key) throws RuntimeException {
+        throw new RuntimeException("Warning: the preference key " + key +
+                " is not supported by Crosswalk.");
+    }
+
     /**
      * Internal method to keep track of weak references and remove the enqueued
      * references from listener list by polling the reference queue.
+     * Must be called with sLock held.
      */
     @SuppressWarnings("unchecked")
     private static void removeEnqueuedReference() {
@@ -70,6 +70,16 @@ public class XWalkSettings {
 
     // A flag to avoid sending superfluous synchronization messages.
     private boolean mIsUpdateWebkitPrefsMessagePending = false;
+    // The nesting level of beginUpdate(). While it's positive, the changes
+    // are held until the outermost commit().
+    private int mUpdateBatchDepth = 0;
+    private boolean mIsBatchPrefsUpdatePending = false;
+    private boolean mIsBatchUserAgentUpdatePending = false;
+    // Whether the setters called off the UI thread return without waiting for
+    // the changes to reach the native side.
+    private boolean mAsyncUpdatesEnabled = false;
+    // The number of times the webkit preferences were pushed to native.
+    private int mWebkitPreferencesUpdateCount = 0;
     // Custom handler that queues messages to call native code on the UI thread.
     private final EventHandler mEventHandler;
 
@@ -114,8 +124,35 @@ public class XWalkSettings {
             }
         }
 
+        private void updateUserAgentLocked() {
+            assert Thread.holdsLock(mXWalkSettingsLock);
+            if (mUpdateBatchDepth > 0) {
+                mIsBatchUserAgentUpdatePending = true;
+                return;
+            }
+            Runnable r = new Runnable() {
+                @Override
+                public void run() {
+                    if (mNativeXWalkSettings != 0) {
+                        nativeUpdateUserAgent(mNativeXWalkSettings);
+                    }
+                }
+            };
+            if (mAsyncUpdatesEnabled && mHandler != null) {
+                // The user agent is read on the UI thread, so the latest one
+                // is sent even if it's set again before the task runs.
+                ThreadUtils.runOnUiThread(r);
+            } else {
+                maybeRunOnUiThreadBlocking(r);
+            }
+        }
+
         private void updateWebkitPreferencesLocked() {
             assert Thread.holdsLock(mXWalkSettingsLock);
+            if (mUpdateBatchDepth > 0) {
+                mIsBatchPrefsUpdatePending = true;
+                return;
+            }
             if (mNativeXWalkSettings == 0) return;
             if (mHandler == null) return;
             if (ThreadUtils.runningOnUiThread()) {
@@ -127,6 +164,9 @@ public class XWalkSettings {
                 }
                 mIsUpdateWebkitPrefsMessagePending = true;
                 mHandler.sendMessage(Message.obtain(null, UPDATE_WEBKIT_PREFERENCES));
+                // The preferences are read when the message is handled, so
+                // the changes made until then go with it.
+                if (mAsyncUpdatesEnabled) return;
                 // We must block until the settings have been sync'd to native to
                 // ensure that they have taken effect.
                 try {
@@ -179,6 +219,62 @@ public class XWalkSettings {
         mNativeXWalkSettings = 0;
     }
 
+    /**
+     * Start a batch of changes. The changes made until the matching commit()
+     * are pushed to the native side at once, instead of once per setter.
+     * The calls could be nested, the changes are pushed on the outermost
+     * commit().
+     */
+    public void beginUpdate() {
+        synchronized (mXWalkSettingsLock) {
+            ++mUpdateBatchDepth;
+        }
+    }
+
+    /**
+     * End a batch of changes started by beginUpdate(). Off the UI thread, it
+     * blocks until the changes take effect, unless the asynchronous updates
+     * are enabled.
+     */
+    public void commit() {
+        synchronized (mXWalkSettingsLock) {
+            if (mUpdateBatchDepth == 0) {
+                throw new IllegalStateException("commit() called without beginUpdate()");
+            }
+            if (--mUpdateBatchDepth > 0) return;
+
+            boolean updateUserAgent = mIsBatchUserAgentUpdatePending;
+            boolean updatePrefs = mIsBatchPrefsUpdatePending;
+            mIsBatchUserAgentUpdatePending = false;
+            mIsBatchPrefsUpdatePending = false;
+            if (updateUserAgent) mEventHandler.updateUserAgentLocked();
+            if (updatePrefs) mEventHandler.updateWebkitPreferencesLocked();
+        }
+    }
+
+    /**
+     * Set whether the setters called off the UI thread, and commit(), return
+     * right after posting the changes to the UI thread, instead of waiting
+     * until they take effect. The changes are still applied in order.
+     */
+    public void setAsyncUpdatesEnabled(boolean enabled) {
+        synchronized (mXWalkSettingsLock) {
+            mAsyncUpdatesEnabled = enabled;
+        }
+    }
+
+    public boolean getAsyncUpdatesEnabled() {
+        synchronized (mXWalkSettingsLock) {
+            return mAsyncUpdatesEnabled;
+        }
+    }
+
+    public int getWebkitPreferencesUpdateCountForTesting() {
+        synchronized (mXWalkSettingsLock) {
+            return mWebkitPreferencesUpdateCount;
+        }
+    }
+
     public void setAllowScriptsToCloseWindows(boolean allow) {
         synchronized (mXWalkSettingsLock) {
             if (mAllowScriptsToCloseWindows != allow) {
@@ -608,14 +704,7 @@ public class XWalkSettings {
                 mUserAgent = ua;
             }
             if (!oldUserAgent.equals(mUserAgent)) {
-                mEventHandler.maybeRunOnUiThreadBlocking(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (mNativeXWalkSettings != 0) {
-                            nativeUpdateUserAgent(mNativeXWalkSettings);
-                        }
-                    }
-                });
+                mEventHandler.updateUserAgentLocked();
             }
         }
     }
@@ -654,6 +743,7 @@ public class XWalkSettings {
         if (mNativeXWalkSettings != 0) {
             ThreadUtils.assertOnUiThread();
             nativeUpdateWebkitPreferences(mNativeXWalkSettings);
+            ++mWebkitPreferencesUpdateCount;
         }
     }
 
@@ -0,0 +1,249 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.chromium.base.ThreadUtils;
+
+/**
+ * The files under the application cache directory holding the navigation
+ * state of a XWalkContent, so that the Bundle only holds the handle of them.
+ *
+ * Each navigation entry is compressed into a file named by its unique id,
+ * and a small manifest lists the entries in order. Saving incrementally only
+ * writes the entries changed since the last save, the others are kept from
+ * the files written before. All the file operations run on a background
+ * thread in order.
+ */
+class XWalkStateStore {
+    private static final String TAG = "XWalkStateStore";
+
+    private static final String STATE_DIR = "xwalk_state";
+    private static final String MANIFEST_FILE = "manifest";
+    private static final String ENTRY_FILE_PREFIX = "entry_";
+    private static final int MANIFEST_VERSION = 1;
+    // The states not touched for a week are not going to be restored.
+    private static final long STALE_AGE_MILLIS = 7 * 24 * 3600 * 1000L;
+
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+    private static boolean sStaleStatesDeleted;
+
+    private final String mHandle;
+    private final File mDir;
+    // Set when a save fails, so that the next one writes all the entries.
+    private volatile boolean mNeedsFullSave;
+
+    interface LoadCallback {
+        /**
+         * Called on the UI thread.
+         * @param currentIndex The index of the current entry.
+         * @param entries The entries in order, or null if the state is broken.
+         */
+        void onLoaded(int currentIndex, byte[][] entries);
+    }
+
+    private XWalkStateStore(Context context, String handle) {
+        mHandle = handle;
+        mDir = new File(new File(context.getCacheDir(), STATE_DIR), handle);
+    }
+
+    static XWalkStateStore create(Context context) {
+        deleteStaleStates(context);
+        return new XWalkStateStore(context, UUID.randomUUID().toString());
+    }
+
+    /**
+     * @return The store of the handle, or null if it's not a valid handle.
+     */
+    static XWalkStateStore fromHandle(Context context, String handle) {
+        // The handle comes from the Bundle, don't let it point elsewhere.
+        if (handle == null || !handle.matches("[0-9a-f-]+")) return null;
+        return new XWalkStateStore(context, handle);
+    }
+
+    String getHandle() {
+        return mHandle;
+    }
+
+    boolean needsFullSave() {
+        return mNeedsFullSave;
+    }
+
+    /**
+     * Write the state in the background.
+     * @param currentIndex The index of the current entry.
+     * @param ids The unique ids of the entries in order.
+     * @param entries The entries in order, null for the ones not changed
+     *        since the last save.
+     */
+    void save(final int currentIndex, final int[] ids, final byte[][] entries) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(currentIndex, ids, entries);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to save the state: " + e.getMessage());
+                    mNeedsFullSave = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the state in the background, after the pending saves are done.
+     */
+    void load(final LoadCallback callback) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int currentIndex = -1;
+                byte[][] entries = null;
+                try {
+                    DataInputStream input = new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(new File(mDir, MANIFEST_FILE))));
+                    try {
+                        if (input.readInt() != MANIFEST_VERSION) throw new IOException("version");
+                        currentIndex = input.readInt();
+                        entries = new byte[input.readInt()][];
+                        for (int i = 0; i < entries.length; ++i) {
+                            entries[i] = readEntry(input.readInt());
+                        }
+                    } finally {
+                        input.close();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to load the state: " + e.getMessage());
+                    entries = null;
+                }
+
+                final int loadedIndex = currentIndex;
+                final byte[][] loadedEntries = entries;
+                ThreadUtils.postOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(loadedIndex, loadedEntries);
+                    }
+                });
+            }
+        });
+    }
+
+    boolean exists() {
+        return new File(mDir, MANIFEST_FILE).exists();
+    }
+
+    private void write(int currentIndex, int[] ids, byte[][] entries) throws IOException {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) throw new IOException("mkdirs");
+
+        boolean full = true;
+        HashSet<String> entryFiles = new HashSet<String>();
+        for (int i = 0; i < ids.length; ++i) {
+            File file = getEntryFile(ids[i]);
+            entryFiles.add(file.getName());
+            if (entries[i] != null) {
+                writeEntry(file, entries[i]);
+            } else if (!file.exists()) {
+                throw new IOException("Missing " + file.getName());
+            } else {
+                full = false;
+            }
+        }
+
+        // Replace the manifest at once, the files of the entries dropped from
+        // the history are deleted after that.
+        File tmpFile = new File(mDir, MANIFEST_FILE + ".tmp");
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            output.writeInt(MANIFEST_VERSION);
+            output.writeInt(currentIndex);
+            output.writeInt(ids.length);
+            for (int id : ids) output.writeInt(id);
+        } finally {
+            output.close();
+        }
+        if (!tmpFile.renameTo(new File(mDir, MANIFEST_FILE))) throw new IOException("rename");
+        if (full) mNeedsFullSave = false;
+
+        File[] files = mDir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(ENTRY_FILE_PREFIX) && !entryFiles.contains(name)) file.delete();
+        }
+    }
+
+    private File getEntryFile(int id) {
+        return new File(mDir, ENTRY_FILE_PREFIX + id);
+    }
+
+    private static void writeEntry(File file, byte[] entry) throws IOException {
+        OutputStream output = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            output.write(entry);
+        } finally {
+            output.close();
+        }
+    }
+
+    private byte[] readEntry(int id) throws IOException {
+        InputStream input = new GZIPInputStream(new FileInputStream(getEntryFile(id)));
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) output.write(buffer, 0, count);
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    // Delete the states of the views which are gone, once per process.
+    private static synchronized void deleteStaleStates(Context context) {
+        if (sStaleStatesDeleted) return;
+        sStaleStatesDeleted = true;
+
+        final File root = new File(context.getCacheDir(), STATE_DIR);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] dirs = root.listFiles();
+                if (dirs == null) return;
+                long now = System.currentTimeMillis();
+                for (File dir : dirs) {
+                    File manifest = new File(dir, MANIFEST_FILE);
+                    if (now - manifest.lastModified() < STALE_AGE_MILLIS) continue;
+                    File[] files = dir.listFiles();
+                    if (files != null) {
+                        for (File file : files) file.delete();
+                    }
+                    dir.delete();
+                }
+            }
+        });
+    }
+}
@@ -177,6 +177,28 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
     @XWalkAPI
     public static final int RELOAD_IGNORE_CACHE = 1;
 
+    /**
+     * Save the state into the Bundle passed to saveState() as default.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int SAVE_STATE_MODE_BUNDLE = 0;
+    /**
+     * Save the state into files under the application cache directory, the
+     * Bundle only holds a handle of them. It keeps the Bundle small for the
+     * long navigation history, the files are written in the background.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int SAVE_STATE_MODE_FILE = 1;
+    /**
+     * Like SAVE_STATE_MODE_FILE, but only write the navigation entries
+     * changed since the last save of this view.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public static final int SAVE_STATE_MODE_INCREMENTAL = 2;
+
     /**
      * Constructor for inflating via XML.
      * @param context  a Context object used to access application assets.
@@ -297,7 +319,8 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
             final String message =
                     context.getString(R.string.cpu_arch_mismatch_message, missingArch);
 
-            AlertDialog.Builder builder = new AlertDialog.Builder(activity);
+            // The context of the view uses the resources of the library.
+            AlertDialog.Builder builder = new AlertDialog.Builder(context);
             builder.setTitle(R.string.cpu_arch_mismatch_title)
                     .setMessage(message)
                     .setOnCancelListener(new DialogInterface.OnCancelListener() {
@@ -360,21 +383,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
                         FrameLayout.LayoutParams.MATCH_PARENT,
                         FrameLayout.LayoutParams.MATCH_PARENT));
 
-
-        // Set default XWalkClientImpl.
-        setXWalkClient(new XWalkClient(this));
-        // Set default XWalkWebChromeClient and DownloadListener. The default actions
-        // are provided via the following clients if special actions are not needed.
-        setXWalkWebChromeClient(new XWalkWebChromeClient(this));
-
-        // Set with internal implementation. Could be overwritten by embedders'
-        // setting.
-        setUIClient(new XWalkUIClientInternal(this));
-        setResourceClient(new XWalkResourceClientInternal(this));
-
-        setDownloadListener(new XWalkDownloadListenerImpl(context));
-        setNavigationHandler(new XWalkNavigationHandlerImpl(context));
-        setNotificationService(new XWalkNotificationServiceImpl(context, this));
+        setDefaultClients(context);
 
         if (!CommandLine.getInstance().hasSwitch("disable-xwalk-extensions")) {
             BuiltinXWalkExtensions.load(context, getActivity());
@@ -396,6 +405,45 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
         }
     }
 
+    private void setDefaultClients(Context context) {
+        // Set default XWalkClientImpl.
+        setXWalkClient(new XWalkClient(this));
+        // Set default XWalkWebChromeClient and DownloadListener. The default actions
+        // are provided via the following clients if special actions are not needed.
+        setXWalkWebChromeClient(new XWalkWebChromeClient(this));
+
+        // Set with internal implementation. Could be overwritten by embedders'
+        // setting.
+        setUIClient(new XWalkUIClientInternal(this));
+        setResourceClient(new XWalkResourceClientInternal(this));
+
+        setDownloadListener(new XWalkDownloadListenerImpl(context));
+        setNavigationHandler(new XWalkNavigationHandlerImpl(context));
+        setNotificationService(new XWalkNotificationServiceImpl(context, this));
+    }
+
+    /**
+     * Reset this view, destroyed or not, to the state of a newly created one,
+     * so that it can be handed out again by XWalkViewPool. The native contents
+     * are replaced and the clients set by embedders are dropped.
+     * @return false if the view failed to initialize and can't be recycled.
+     */
+    boolean recycle() {
+        if (mContent == null) return false;
+        checkThreadSafety();
+
+        mContent.recycle();
+        if (mActivityStateListener == null) {
+            mActivityStateListener = new XWalkActivityStateListener(this);
+            ApplicationStatus.registerStateListenerForActivity(
+                    mActivityStateListener, getActivity());
+        }
+        setDefaultClients(mContext);
+        mFilePathCallback = null;
+        mIsHidden = false;
+        return true;
+    }
+
     /**
      * Load a web page/app from a given base URL or a content.
      * If url is null or empty and content is null or empty, then this function
@@ -707,6 +755,7 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
      * Save current internal state of this XWalkViewInternal. This can help restore this state
      * afterwards restoring.
      * @param outState the saved state for restoring.
+     * @see #setSaveStateMode(int)
      * @since 1.0
      */
     @XWalkAPI
@@ -719,14 +768,32 @@ public class XWalkViewInternal extends android.widget.FrameLayout {
     /**
      * Restore the state from the saved bundle data.
      * @param inState the state saved from saveState().
-     * @return true if it can restore the state.
+     * @return true if it can restore the state. The state saved into files
+     *         is restored asynchronously, unless a page is loaded before.
      * @since 1.0
      */
     @XWalkAPI
     public boolean restoreState(Bundle inState) {
         if (mContent == null) return false;
-        if (mContent.restoreState(inState) != null) return true;
-        return false;
+        return mContent.restoreState(inState);
+    }
+
+    /**
+     * Set where saveState() saves the state, the state saved in any mode
+     * can be restored by restoreState().
+     * @param mode one of SAVE_STATE_MODE_BUNDLE, SAVE_STATE_MODE_FILE and
+     *        SAVE_STATE_MODE_INCREMENTAL.
+     * @since 6.0
+     */
+    @XWalkAPI
+    public void setSaveStateMode(int mode) {
+        if (mode != SAVE_STATE_MODE_BUNDLE && mode != SAVE_STATE_MODE_FILE &&
+                mode != SAVE_STATE_MODE_INCREMENTAL) {
+            throw new IllegalArgumentException("Invalid save state mode: " + mode);
+        }
+        if (mContent == null) return;
+        checkThreadSafety();
+        mContent.setSaveStateMode(mode);
     }
 
     /**
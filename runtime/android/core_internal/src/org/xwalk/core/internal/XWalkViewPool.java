@@ -0,0 +1,261 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import java.util.ArrayDeque;
+
+import org.chromium.base.ActivityState;
+import org.chromium.base.ApplicationStatus;
+import org.chromium.base.ApplicationStatus.ActivityStateListener;
+
+/**
+ * A pool of spare XWalkViewInternal instances for an activity.
+ *
+ * <p>Creating a XWalkViewInternal initializes the native contents, the content
+ * views and the settings synchronously on the UI thread, which is noticeable
+ * when opening a new tab or popup. The pool creates the spare views while the
+ * UI thread is idle, one per idle pass, so that {@link #acquire()} hands them
+ * out at no cost. The views given back by {@link #release(XWalkViewInternal)}
+ * get new native contents during idle time and are handed out again.</p>
+ *
+ * <p>All the methods must be called on the UI thread.</p>
+ *
+ * <pre>
+ *   mPool = new XWalkViewPool(this, this, 2);
+ *   ...
+ *   XWalkViewInternal view = mPool.acquire();
+ *   mContainer.addView(view);
+ *   ...
+ *   mPool.release(view);
+ * </pre>
+ */
+public class XWalkViewPool {
+    private static final String WARM_UP_URL = "about:blank";
+
+    private final Context mContext;
+    private final Activity mActivity;
+    private final int mCapacity;
+    private boolean mWarmUpRenderer;
+    private boolean mDestroyed;
+
+    // The views ready to be handed out, and the released ones waiting to get
+    // new native contents.
+    private final ArrayDeque<XWalkViewInternal> mSpareViews = new ArrayDeque<XWalkViewInternal>();
+    private final ArrayDeque<XWalkViewInternal> mReleasedViews =
+            new ArrayDeque<XWalkViewInternal>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mRecycleCount;
+    private int mCreateCount;
+    private long mCreateTimeNanos;
+
+    private boolean mIdleHandlerAdded;
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            mIdleHandlerAdded = fillOnce();
+            return mIdleHandlerAdded;
+        }
+    };
+
+    private final ActivityStateListener mActivityStateListener = new ActivityStateListener() {
+        @Override
+        public void onActivityStateChange(Activity activity, int newState) {
+            if (newState != ActivityState.DESTROYED) return;
+            // The views destroy themselves along with the activity.
+            mSpareViews.clear();
+            mReleasedViews.clear();
+            destroy();
+        }
+    };
+
+    /**
+     * Create a pool and start filling it when the UI thread is idle.
+     * @param context a Context object used to access application assets.
+     * @param activity the activity for the views.
+     * @param capacity the number of spare views to keep.
+     */
+    public XWalkViewPool(Context context, Activity activity, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        checkThreadSafety();
+
+        mContext = context;
+        mActivity = activity;
+        mCapacity = capacity;
+        ApplicationStatus.registerStateListenerForActivity(mActivityStateListener, activity);
+        scheduleFill();
+    }
+
+    /**
+     * Let the spare views load a blank page, so that each of them has a
+     * renderer process started when it's handed out. Such views have a
+     * navigation entry already, so they can't be used for popup windows.
+     * It only applies to the views prepared afterwards.
+     * @param enabled whether to start the renderer processes in advance.
+     */
+    public void setWarmUpRenderer(boolean enabled) {
+        mWarmUpRenderer = enabled;
+    }
+
+    /**
+     * Hand out a spare view, or create one if the pool is empty.
+     * @return the view, which is not attached to any parent.
+     */
+    public XWalkViewInternal acquire() {
+        checkThreadSafety();
+        if (mDestroyed) throw new IllegalStateException("The pool is destroyed");
+
+        XWalkViewInternal view = mSpareViews.poll();
+        if (view != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+            view = createView();
+        }
+        scheduleFill();
+        return view;
+    }
+
+    /**
+     * Give a view back to the pool. It's destroyed right away and removed from
+     * its parent, then recycled during idle time if the pool isn't full.
+     * The view must not be used by the caller any more.
+     * @param view the view to release.
+     */
+    public void release(XWalkViewInternal view) {
+        checkThreadSafety();
+        if (view == null || mSpareViews.contains(view) || mReleasedViews.contains(view)) {
+            return;
+        }
+
+        ViewParent parent = view.getParent();
+        if (parent instanceof ViewGroup) ((ViewGroup) parent).removeView(view);
+        view.onDestroy();
+
+        // Only the views of the same activity could be handed out again.
+        if (mDestroyed || view.getActivity() != mActivity || mActivity.isFinishing() ||
+                mSpareViews.size() + mReleasedViews.size() >= mCapacity) {
+            return;
+        }
+        mReleasedViews.add(view);
+        scheduleFill();
+    }
+
+    /**
+     * Destroy the spare views and stop filling the pool. It's called when the
+     * activity is destroyed.
+     */
+    public void destroy() {
+        checkThreadSafety();
+        if (mDestroyed) return;
+        mDestroyed = true;
+
+        if (mIdleHandlerAdded) {
+            Looper.myQueue().removeIdleHandler(mIdleHandler);
+            mIdleHandlerAdded = false;
+        }
+        ApplicationStatus.unregisterActivityStateListener(mActivityStateListener);
+        for (XWalkViewInternal view : mSpareViews) view.onDestroy();
+        mSpareViews.clear();
+        mReleasedViews.clear();
+    }
+
+    /**
+     * @return the number of the views ready to be handed out.
+     */
+    public int getSpareCount() {
+        return mSpareViews.size();
+    }
+
+    /**
+     * @return the number of the acquisitions served by a spare view.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of the acquisitions which had to create a view.
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of the released views handed out again.
+     */
+    public int getRecycleCount() {
+        return mRecycleCount;
+    }
+
+    /**
+     * @return the average time to create a view, in milliseconds.
+     */
+    public double getAverageCreationTimeMillis() {
+        if (mCreateCount == 0) return 0;
+        return mCreateTimeNanos / 1000000.0 / mCreateCount;
+    }
+
+    public String getStats() {
+        return "XWalkViewPool: " + mSpareViews.size() + "/" + mCapacity + " spare, " +
+                mHitCount + " hits, " + mMissCount + " misses, " + mRecycleCount +
+                " recycled, " + String.format("%.1f", getAverageCreationTimeMillis()) +
+                "ms to create a view";
+    }
+
+    // Prepare one view per idle pass to keep the UI thread responsive.
+    // Returns whether there is more to do.
+    private boolean fillOnce() {
+        if (mDestroyed) return false;
+
+        XWalkViewInternal view = mReleasedViews.poll();
+        if (view != null) {
+            if (view.recycle()) {
+                mRecycleCount++;
+                warmUp(view);
+                mSpareViews.add(view);
+            }
+        } else if (mSpareViews.size() < mCapacity) {
+            view = createView();
+            warmUp(view);
+            mSpareViews.add(view);
+        }
+        return !mReleasedViews.isEmpty() || mSpareViews.size() < mCapacity;
+    }
+
+    private void scheduleFill() {
+        if (mIdleHandlerAdded || mDestroyed) return;
+        Looper.myQueue().addIdleHandler(mIdleHandler);
+        mIdleHandlerAdded = true;
+    }
+
+    private XWalkViewInternal createView() {
+        long start = System.nanoTime();
+        XWalkViewInternal view = new XWalkViewInternal(mContext, mActivity);
+        mCreateTimeNanos += System.nanoTime() - start;
+        mCreateCount++;
+        return view;
+    }
+
+    private void warmUp(XWalkViewInternal view) {
+        if (mWarmUpRenderer) view.load(WARM_UP_URL, null);
+    }
+
+    private static void checkThreadSafety() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new RuntimeException(
+                    "XWalkViewPool methods must be called on the UI thread. Called on thread '" +
+                    Thread.currentThread().getName() + "'.");
+        }
+    }
+}
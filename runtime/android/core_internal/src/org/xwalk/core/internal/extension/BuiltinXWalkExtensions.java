@@ -4,11 +4,15 @@
 
 package org.xwalk.core.internal.extension;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+import org.xwalk.core.internal.ContentReader;
 import org.xwalk.core.internal.XWalkExtensionInternal;
 import org.xwalk.core.internal.extension.api.contacts.Contacts;
 import org.xwalk.core.internal.extension.api.device_capabilities.DeviceCapabilities;
@@ -18,113 +22,115 @@ import org.xwalk.core.internal.extension.api.presentation.PresentationExtension;
 
 import android.app.Activity;
 import android.content.Context;
-import android.content.res.AssetManager;
-import android.content.res.Resources;
-import android.content.res.Resources.NotFoundException;
+import android.os.AsyncTask;
 import android.util.Log;
 
 public class BuiltinXWalkExtensions {
     private static final String TAG = "BuiltinXWalkExtension";
     private static HashMap<String, XWalkExtensionInternal> sBuiltinExtensions =
             new HashMap<String, XWalkExtensionInternal>();
+    // The time in milliseconds spent to create each built-in extension.
+    private static LinkedHashMap<String, Long> sInitTimes = new LinkedHashMap<String, Long>();
 
-    public static void load(Context context, Activity activity) {
-        // Create all built-in extension instances here.
-        {
-            String jsApiContent = "";
-            try {
-                jsApiContent = getExtensionJSFileContent(
-                        context, PresentationExtension.JS_API_PATH, true);
-                sBuiltinExtensions.put(PresentationExtension.JS_API_PATH,
-                        new PresentationExtension(jsApiContent, activity));
-            } catch (IOException e) {
-                Log.w(TAG, "Failed to read JS API file: " + PresentationExtension.JS_API_PATH);
-            }
+    public static void load(final Context context, Activity activity) {
+        // Read all the JS API files in parallel in background. They are only
+        // waited for when a renderer asks for them, on the IO thread, or when
+        // an extension is created, never on the UI thread.
+        String[] jsApiPaths = {
+            PresentationExtension.JS_API_PATH,
+            LaunchScreenExtension.JS_API_PATH,
+            Contacts.JS_API_PATH,
+            DeviceCapabilities.JS_API_PATH,
+            Messaging.JS_API_PATH,
+        };
+        HashMap<String, Future<String>> jsApiContents = new HashMap<String, Future<String>>();
+        for (final String path : jsApiPaths) {
+            FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return getExtensionJSFileContent(context, path, true);
+                }
+            });
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+            jsApiContents.put(path, task);
         }
 
+        // The Presentation extension notifies the display availability
+        // without being asked, so it's created once its JS API is read.
         {
-            String jsApiContent = "";
-            try {
-                jsApiContent = getExtensionJSFileContent(
-                        context, LaunchScreenExtension.JS_API_PATH, true);
-                sBuiltinExtensions.put(LaunchScreenExtension.JS_API_PATH,
-                        new LaunchScreenExtension(jsApiContent, activity));
-            } catch (IOException e) {
-                Log.w(TAG, "Failed to read JS API file: " + LaunchScreenExtension.JS_API_PATH);
-            }
+            final LazyXWalkExtension extension = new LazyXWalkExtension(PresentationExtension.NAME,
+                    jsApiContents.get(PresentationExtension.JS_API_PATH), null, activity,
+                    new LazyXWalkExtension.Factory() {
+                        @Override
+                        public XWalkExtensionInternal create(String jsApi, Activity activity) {
+                            return new PresentationExtension(jsApi, activity);
+                        }
+                    });
+            sBuiltinExtensions.put(PresentationExtension.JS_API_PATH, extension);
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    extension.createExtension();
+                }
+            });
         }
 
-        {
-            String jsApiContent = "";
-            try {
-                jsApiContent = getExtensionJSFileContent(
-                        context, Contacts.JS_API_PATH, true);
-                sBuiltinExtensions.put(Contacts.JS_API_PATH,
-                        new Contacts(jsApiContent, activity));
-            } catch(IOException e) {
-                Log.w(TAG, "Failed to read JS API file: " + Contacts.JS_API_PATH);
-            }
-        }
+        // The other extensions only do work when asked by JavaScript, so
+        // only their JavaScript API is registered now.
+        sBuiltinExtensions.put(LaunchScreenExtension.JS_API_PATH, new LazyXWalkExtension(
+                LaunchScreenExtension.NAME, jsApiContents.get(LaunchScreenExtension.JS_API_PATH),
+                LaunchScreenExtension.JS_ENTRY_POINTS, activity,
+                new LazyXWalkExtension.Factory() {
+                    @Override
+                    public XWalkExtensionInternal create(String jsApi, Activity activity) {
+                        return new LaunchScreenExtension(jsApi, activity);
+                    }
+                }));
 
-        {
-            String jsApiContent = "";
-            try {
-                jsApiContent = getExtensionJSFileContent(
-                        context, DeviceCapabilities.JS_API_PATH, true);
-                sBuiltinExtensions.put(DeviceCapabilities.JS_API_PATH,
-                        new DeviceCapabilities(jsApiContent, activity));
-            } catch(IOException e) {
-                Log.w(TAG, "Failed to read JS API file: " + DeviceCapabilities.JS_API_PATH);
-            }
-        }
+        sBuiltinExtensions.put(Contacts.JS_API_PATH, new LazyXWalkExtension(
+                Contacts.NAME, jsApiContents.get(Contacts.JS_API_PATH), null, activity,
+                new LazyXWalkExtension.Factory() {
+                    @Override
+                    public XWalkExtensionInternal create(String jsApi, Activity activity) {
+                        return new Contacts(jsApi, activity);
+                    }
+                }));
 
-        {
-            String jsApiContent = "";
-            try {
-                jsApiContent = getExtensionJSFileContent(
-                        context, Messaging.JS_API_PATH, true);
-                sBuiltinExtensions.put(Messaging.JS_API_PATH,
-                        new Messaging(jsApiContent, activity));
-            } catch(IOException e) {
-                Log.w(TAG, "Failed to read JS API file: " + Messaging.JS_API_PATH);
-            }
-        }
+        sBuiltinExtensions.put(DeviceCapabilities.JS_API_PATH, new LazyXWalkExtension(
+                DeviceCapabilities.NAME, jsApiContents.get(DeviceCapabilities.JS_API_PATH), null,
+                activity,
+                new LazyXWalkExtension.Factory() {
+                    @Override
+                    public XWalkExtensionInternal create(String jsApi, Activity activity) {
+                        return new DeviceCapabilities(jsApi, activity);
+                    }
+                }));
+
+        sBuiltinExtensions.put(Messaging.JS_API_PATH, new LazyXWalkExtension(
+                Messaging.NAME, jsApiContents.get(Messaging.JS_API_PATH), null, activity,
+                new LazyXWalkExtension.Factory() {
+                    @Override
+                    public XWalkExtensionInternal create(String jsApi, Activity activity) {
+                        return new Messaging(jsApi, activity);
+                    }
+                }));
+    }
+
+    /**
+     * Get the time in milliseconds spent to create each built-in extension
+     * which has been created so far.
+     */
+    public static synchronized Map<String, Long> getInitTimes() {
+        return new LinkedHashMap<String, Long>(sInitTimes);
     }
 
+    static synchronized void reportInitTime(String name, long time) {
+        Log.d(TAG, "Created extension " + name + " in " + time + " ms");
+        sInitTimes.put(name, time);
+    }
 
     private static String getExtensionJSFileContent(Context context, String fileName, boolean fromRaw)
             throws IOException {
-        String result = "";
-        InputStream inputStream = null;
-        try {
-            if (fromRaw) {
-                // If fromRaw is true, Try to find js file in res/raw first.
-                // And then try to get it from assets if failed.
-                Resources resource = context.getResources();
-                String resName = (new File(fileName).getName().split("\\."))[0];
-                int resId = resource.getIdentifier(resName, "raw", context.getPackageName());
-                if (resId > 0) {
-                    try {
-                        inputStream = resource.openRawResource(resId);
-                    } catch (NotFoundException e) {
-                        Log.w(TAG, "Inputstream failed to open for R.raw." + resName +
-                                   ", try to find it in assets");
-                    }
-                }
-            }
-            if (inputStream == null) {
-                AssetManager assetManager = context.getAssets();
-                inputStream = assetManager.open(fileName);
-            }
-            int size = inputStream.available();
-            byte[] buffer = new byte[size];
-            inputStream.read(buffer);
-            result = new String(buffer);
-        } finally {
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        }
-        return result;
+        return ContentReader.readExtensionJsApi(context, fileName, fromRaw);
     }
 }
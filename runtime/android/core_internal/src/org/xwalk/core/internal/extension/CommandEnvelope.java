@@ -0,0 +1,126 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The command envelope of a message sent by the JavaScript API of a built-in
+ * extension, e.g. {"cmd": "find", "asyncCallId": 3, ...}.
+ *
+ * Only the "cmd" and "asyncCallId" members are read when the message is
+ * parsed, with a streaming JsonReader which skips the other members without
+ * building them. The payload with all the members is only built on the first
+ * call of getPayload(), so the messages routed by their command alone never
+ * build it.
+ */
+public class CommandEnvelope {
+    private static final String TAG = "CommandEnvelope";
+
+    public static final String CMD = "cmd";
+    public static final String ASYNC_CALL_ID = "asyncCallId";
+
+    private final String mMessage;
+    private final String mCommand;
+    private final String mAsyncCallId;
+    // Built on the first call of getPayload().
+    private JSONObject mPayload;
+
+    private CommandEnvelope(String message, String command, String asyncCallId) {
+        mMessage = message;
+        mCommand = command;
+        mAsyncCallId = asyncCallId;
+    }
+
+    /**
+     * Parse the envelope of a message. The message must be well-formed, the
+     * members other than the envelope ones are checked when they're skipped.
+     * @param message The message from JavaScript.
+     * @return The envelope, or null if the message is empty or not a JSON
+     *         object with a "cmd" member.
+     */
+    public static CommandEnvelope parse(String message) {
+        if (message == null || message.isEmpty()) return null;
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        try {
+            String command = null;
+            String asyncCallId = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() != JsonToken.NULL &&
+                        (name.equals(CMD) || name.equals(ASYNC_CALL_ID))) {
+                    // Numbers are read as their string form too.
+                    String value = reader.nextString();
+                    if (name.equals(CMD)) {
+                        command = value;
+                    } else {
+                        asyncCallId = value;
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (command == null) {
+                Log.e(TAG, "No command in message: " + message);
+                return null;
+            }
+            return new CommandEnvelope(message, command, asyncCallId);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to parse message: " + e.toString());
+        } catch (IllegalStateException e) {
+            // Thrown by JsonReader on unexpected tokens.
+            Log.e(TAG, "Failed to parse message: " + e.toString());
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing to do with a string reader.
+            }
+        }
+        return null;
+    }
+
+    public String getCommand() {
+        return mCommand;
+    }
+
+    /**
+     * @return The id of the asynchronous call, or null if there is none.
+     */
+    public String getAsyncCallId() {
+        return mAsyncCallId;
+    }
+
+    /**
+     * @return All the members of the message, the envelope ones as strings.
+     *         It's built on the first call, an empty object if the message
+     *         can't be parsed by JSONObject.
+     */
+    public synchronized JSONObject getPayload() {
+        if (mPayload != null) return mPayload;
+
+        try {
+            mPayload = new JSONObject(mMessage);
+            mPayload.put(CMD, mCommand);
+            if (mAsyncCallId != null) mPayload.put(ASYNC_CALL_ID, mAsyncCallId);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to parse message: " + e.toString());
+            mPayload = new JSONObject();
+        }
+        return mPayload;
+    }
+}
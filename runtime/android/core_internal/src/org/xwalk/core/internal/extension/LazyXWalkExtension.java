@@ -0,0 +1,225 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.extension;
+
+import android.app.Activity;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.chromium.base.ActivityState;
+import org.chromium.base.ApplicationStatus;
+import org.chromium.base.ThreadUtils;
+import org.xwalk.core.internal.XWalkExtensionInternal;
+import org.xwalk.core.internal.XWalkExtensionSyncReplyInternal;
+
+/**
+ * A proxy of a built-in extension. It registers the JavaScript API up front,
+ * so that the API is exposed to the pages as usual, but the Java extension
+ * object, which may have expensive setup, is only created on the first
+ * message sent from JavaScript. The JavaScript API is read in the background,
+ * and only waited for when a renderer asks for it.
+ *
+ * The extension object is created on the UI thread, as the built-in
+ * extensions were created there before. The creation is posted rather than
+ * waited for, so the thread of the extension never blocks on the UI thread,
+ * and the messages received meanwhile are queued and delivered in order on a
+ * background thread once it's created. Once created, it's bound to the native
+ * extension, so instances created afterwards talk to it directly, while the
+ * existing instances keep going through this proxy.
+ */
+class LazyXWalkExtension extends XWalkExtensionInternal {
+    private static final String TAG = "LazyXWalkExtension";
+
+    interface Factory {
+        XWalkExtensionInternal create(String jsApi, Activity activity);
+    }
+
+    // A message received before the extension is created.
+    private abstract static class PendingCall {
+        abstract void deliver(XWalkExtensionInternal extension);
+
+        // Called if the extension failed to be created.
+        void drop() {
+        }
+    }
+
+    private final String mName;
+    private final Future<String> mJsApi;
+    private final Activity mActivity;
+    private final Factory mFactory;
+    private final List<PendingCall> mPendingCalls = new ArrayList<PendingCall>();
+    private boolean mCreating;
+    private boolean mFailed;
+    // Set once the messages queued before are delivered.
+    private volatile XWalkExtensionInternal mExtension;
+
+    LazyXWalkExtension(String name, Future<String> jsApi, String[] entryPoints,
+            Activity activity, Factory factory) {
+        super(name, jsApi, entryPoints);
+        mName = name;
+        mJsApi = jsApi;
+        mActivity = activity;
+        mFactory = factory;
+    }
+
+    /**
+     * Post the creation of the extension object to the UI thread unless it's
+     * created or posted already. It's called on any thread but the UI thread,
+     * and only waits for the JavaScript API.
+     */
+    void createExtension() {
+        synchronized (this) {
+            if (mCreating || mExtension != null) return;
+            mCreating = true;
+        }
+
+        // Read by now as the JavaScript side has sent a message, otherwise
+        // it's waited for here rather than on the UI thread.
+        final String jsApi;
+        try {
+            jsApi = mJsApi.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to read the JavaScript API of " + mName, e.getCause());
+            onCreationFailed();
+            return;
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while reading the JavaScript API of " + mName);
+            onCreationFailed();
+            return;
+        }
+
+        ThreadUtils.postOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final XWalkExtensionInternal extension;
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    extension = mFactory.create(jsApi, mActivity);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to create extension " + mName, e);
+                    onCreationFailed();
+                    return;
+                }
+                BuiltinXWalkExtensions.reportInitTime(mName,
+                        SystemClock.elapsedRealtime() - start);
+
+                // The extension missed the state changes of the activity
+                // before it's created, so replay the current one.
+                if (extension instanceof XWalkExtensionWithActivityStateListener &&
+                        ApplicationStatus.getStateForActivity(mActivity) ==
+                                ActivityState.RESUMED) {
+                    ((XWalkExtensionWithActivityStateListener) extension)
+                            .onActivityStateChange(mActivity, ActivityState.RESUMED);
+                }
+
+                // The messages could be slow to handle, so they're delivered
+                // off the UI thread.
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverPendingCalls(extension);
+                    }
+                });
+            }
+        });
+    }
+
+    // The calls queued meanwhile are delivered before mExtension is set, so
+    // they come before the ones delivered directly.
+    private void deliverPendingCalls(XWalkExtensionInternal extension) {
+        while (true) {
+            PendingCall call;
+            synchronized (this) {
+                if (mPendingCalls.isEmpty()) {
+                    mExtension = extension;
+                    return;
+                }
+                call = mPendingCalls.remove(0);
+            }
+            call.deliver(extension);
+        }
+    }
+
+    private void onCreationFailed() {
+        List<PendingCall> calls;
+        synchronized (this) {
+            mFailed = true;
+            calls = new ArrayList<PendingCall>(mPendingCalls);
+            mPendingCalls.clear();
+        }
+        for (PendingCall call : calls) call.drop();
+    }
+
+    // Deliver the call right away once the extension is created, otherwise
+    // queue it.
+    private void deliver(PendingCall call) {
+        XWalkExtensionInternal extension = mExtension;
+        if (extension != null) {
+            call.deliver(extension);
+            return;
+        }
+
+        boolean failed;
+        synchronized (this) {
+            extension = mExtension;
+            failed = mFailed;
+            if (extension == null && !failed) mPendingCalls.add(call);
+        }
+        if (extension != null) {
+            call.deliver(extension);
+        } else if (failed) {
+            call.drop();
+        } else {
+            createExtension();
+        }
+    }
+
+    @Override
+    public void onMessage(final int instanceID, final String message) {
+        deliver(new PendingCall() {
+            @Override
+            void deliver(XWalkExtensionInternal extension) {
+                extension.onMessage(instanceID, message);
+            }
+        });
+    }
+
+    /**
+     * Only called directly, the sync messages from JavaScript go through
+     * onSyncMessageAsync(), which waits for the extension to be created.
+     */
+    @Override
+    public String onSyncMessage(int instanceID, String message) {
+        XWalkExtensionInternal extension = mExtension;
+        if (extension == null) {
+            Log.w(TAG, "Extension " + mName + " is not created yet");
+            return "";
+        }
+        return extension.onSyncMessage(instanceID, message);
+    }
+
+    @Override
+    public void onSyncMessageAsync(final int instanceID, final String message,
+            final XWalkExtensionSyncReplyInternal reply) {
+        deliver(new PendingCall() {
+            @Override
+            void deliver(XWalkExtensionInternal extension) {
+                extension.onSyncMessageAsync(instanceID, message, reply);
+            }
+
+            @Override
+            void drop() {
+                // Unblock the JavaScript side.
+                reply.complete("");
+            }
+        });
+    }
+}
@@ -8,13 +8,11 @@ import android.content.ContentResolver;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.os.Handler;
-import android.provider.ContactsContract;
+import android.os.HandlerThread;
 import android.provider.ContactsContract.RawContacts;
 import android.util.Log;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -22,17 +20,61 @@ import org.json.JSONObject;
 
 /**
  * This class observes changes of the contacts data table and fire events when necessary.
+ *
+ * The ids and versions of the raw contacts are kept in a snapshot of primitive
+ * arrays. On changes, a new snapshot is read with one query and compared with
+ * the previous one on a worker thread. The changes come in bursts while an
+ * account is syncing, so the comparison is delayed until the burst ends.
  */
 public class ContactEventListener extends ContentObserver {
     private static final String TAG = "ContactsEventListener";
 
+    // The delay after the last change notification before the changes are
+    // computed, in milliseconds.
+    private static final long UPDATE_DELAY = 500;
+
+    private static final String[] RAW_CONTACT_PROJECTION = new String[] {
+        RawContacts._ID, RawContacts.CONTACT_ID, RawContacts.VERSION
+    };
+
     private final Contacts mContacts;
     private final ContentResolver mResolver;
 
-    private boolean mIsListening = false;
-    private HashMap<String, String> mRawID2ContactIDMaps;
-    private HashMap<String, String> mRawID2VersionMaps;
-    private HashSet<String> mContactIDs;
+    private volatile boolean mIsListening = false;
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+    // Only accessed on the worker thread.
+    private Snapshot mSnapshot;
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            notifyChanges();
+        }
+    };
+
+    // The raw contacts sorted by their ids, with their contact ids and
+    // versions in the parallel arrays, and the sorted distinct contact ids.
+    private static class Snapshot {
+        final long[] mRawIds;
+        final long[] mContactIds;
+        final int[] mVersions;
+        final long[] mSortedContactIds;
+
+        Snapshot(long[] rawIds, long[] contactIds, int[] versions) {
+            mRawIds = rawIds;
+            mContactIds = contactIds;
+            mVersions = versions;
+
+            long[] sorted = contactIds.clone();
+            Arrays.sort(sorted);
+            mSortedContactIds = dedupe(sorted, sorted.length);
+        }
+
+        boolean hasContact(long contactId) {
+            return Arrays.binarySearch(mSortedContactIds, contactId) >= 0;
+        }
+    }
 
     public ContactEventListener(Handler handler, Contacts instance, ContentResolver resolver) {
         super(handler);
@@ -44,53 +86,55 @@ public class ContactEventListener extends ContentObserver {
     public void onChange(boolean selfChange) {
         super.onChange(selfChange);
         if (!mIsListening) return;
-        notifyChanges(false);
+        scheduleUpdate(UPDATE_DELAY);
     }
 
-    protected void startListening() {
+    protected synchronized void startListening() {
         if (mIsListening) return;
         mIsListening = true;
-        mContactIDs = getAllContactIDs();
-        readAllRawContactInfo();
+        mWorkerThread = new HandlerThread(TAG);
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSnapshot = readSnapshot();
+            }
+        });
     }
 
     protected void onResume() {
         if (!mIsListening) return;
-        notifyChanges(true);
+        // The observer was unregistered while paused, so compare right away.
+        scheduleUpdate(0);
     }
 
-    private void notifyChanges(boolean bResume) {
-        try {
-            JSONObject jsonOutput = new JSONObject();
-            HashSet<String> contactIDs = getAllContactIDs();
+    protected synchronized void onDestroy() {
+        mIsListening = false;
+        if (mWorkerThread == null) return;
+        mWorkerHandler.removeCallbacks(mUpdateRunnable);
+        mWorkerThread.quit();
+        mWorkerThread = null;
+        mWorkerHandler = null;
+    }
 
-            if (bResume || contactIDs.size() > mContactIDs.size()) {
-                // Calculate the added ids.
-                HashSet<String> addedIDs = getDiffSet(contactIDs, mContactIDs);
-                if (!bResume || addedIDs.size() > 0) {
-                    jsonOutput.put("added", convertSet2JSONArray(addedIDs));
-                }
-            } else if (bResume || contactIDs.size() < mContactIDs.size()) {
-                // Calculate the removed ids.
-                HashSet<String> removedIDs = getDiffSet(mContactIDs, contactIDs);
-                if (!bResume || contactIDs.size() < 0) {
-                    jsonOutput.put("removed", convertSet2JSONArray(removedIDs));
-                }
-            } else {
-                // Calculate the modified ids.
-                HashSet<String> commonIDs = bResume ? getIntersectSet(mContactIDs, contactIDs) : contactIDs;
-                HashSet<String> modifiedIDs = compareAllRawContactInfo(commonIDs);
-                if (modifiedIDs.size() != 0) {
-                    jsonOutput.put("modified", convertSet2JSONArray(modifiedIDs));
-                }
-            }
+    private synchronized void scheduleUpdate(long delay) {
+        if (mWorkerHandler == null) return;
+        mWorkerHandler.removeCallbacks(mUpdateRunnable);
+        mWorkerHandler.postDelayed(mUpdateRunnable, delay);
+    }
 
-            notifyContactChanged(jsonOutput);
-            mContactIDs = contactIDs;
-            readAllRawContactInfo();
-        } catch (JSONException e) {
-            Log.e(TAG, "notifyChanges: " + e.toString());
+    private void notifyChanges() {
+        Snapshot snapshot = readSnapshot();
+        if (snapshot == null) return;
+        if (mSnapshot != null) {
+            try {
+                notifyContactChanged(getChanges(mSnapshot, snapshot));
+            } catch (JSONException e) {
+                Log.e(TAG, "notifyChanges: " + e.toString());
+            }
         }
+        mSnapshot = snapshot;
     }
 
     private void notifyContactChanged(JSONObject outObject) {
@@ -105,100 +149,102 @@ public class ContactEventListener extends ContentObserver {
         }
     }
 
-    private JSONArray convertSet2JSONArray(HashSet<String> set) {
-        JSONArray jsonArray = new JSONArray();
-        Iterator<String> iterator = set.iterator();
-        while (iterator.hasNext()) {
-            jsonArray.put(iterator.next());
-        }
-        return jsonArray;
-    }
-
-    private HashSet<String> getAllContactIDs() {
+    private Snapshot readSnapshot() {
         Cursor c = null;
         try {
-            c = mResolver.query(ContactsContract.Contacts.CONTENT_URI, null, null, null, null);
-            HashSet<String> contactIDs = new HashSet<String>();
-            while (c.moveToNext()) {
-                String contactID = c.getString(c.getColumnIndex(ContactsContract.Contacts._ID));
-                contactIDs.add(contactID);
+            c = mResolver.query(RawContacts.CONTENT_URI, RAW_CONTACT_PROJECTION,
+                    RawContacts.DELETED + "=0 AND " + RawContacts.CONTACT_ID + " IS NOT NULL",
+                    null, RawContacts._ID);
+            if (c == null) return null;
+            int count = c.getCount();
+            long[] rawIds = new long[count];
+            long[] contactIds = new long[count];
+            int[] versions = new int[count];
+            int i = 0;
+            while (i < count && c.moveToNext()) {
+                rawIds[i] = c.getLong(0);
+                contactIds[i] = c.getLong(1);
+                versions[i] = c.getInt(2);
+                ++i;
             }
-            return contactIDs;
+            return new Snapshot(rawIds, contactIds, versions);
         } catch (SecurityException e) {
-            Log.e(TAG, "getAllContactIDs: " + e.toString());
+            Log.e(TAG, "readSnapshot: " + e.toString());
             return null;
         } finally {
             if (c != null) c.close();
         }
     }
 
-    private HashSet<String> getIntersectSet(HashSet<String> setA, HashSet<String> setB) {
-        HashSet<String> resultSet = new HashSet<String>();
-        resultSet.addAll(setA);
-        resultSet.retainAll(setB);
-        return resultSet;
-    }
-
-    private HashSet<String> getDiffSet(HashSet<String> setA, HashSet<String> setB) {
-        HashSet<String> resultSet = new HashSet<String>();
-        resultSet.addAll(setA);
-        resultSet.removeAll(setB);
-        return resultSet;
-    }
-
-    private void readAllRawContactInfo() {
-        Cursor c = null;
-        try {
-            c = mResolver.query(RawContacts.CONTENT_URI, null, null, null, null);
-            mRawID2ContactIDMaps = new HashMap<String, String>();
-            mRawID2VersionMaps = new HashMap<String, String>();
-            while (c.moveToNext()) {
-                String contactID = c.getString(c.getColumnIndex(RawContacts.CONTACT_ID));
-                String rawContactID = c.getString(c.getColumnIndex(RawContacts._ID));
-                String version = c.getString(c.getColumnIndex(RawContacts.VERSION));
-                mRawID2ContactIDMaps.put(rawContactID, contactID);
-                mRawID2VersionMaps.put(rawContactID, version);
-            }
-        } catch (SecurityException e) {
-            Log.e(TAG, "readAllRawContactInfo: " + e.toString());
-        } finally {
-            if (c != null) c.close();
+    private JSONObject getChanges(Snapshot oldSnapshot, Snapshot newSnapshot)
+            throws JSONException {
+        JSONArray added = new JSONArray();
+        for (long contactId : newSnapshot.mSortedContactIds) {
+            if (!oldSnapshot.hasContact(contactId)) added.put(String.valueOf(contactId));
+        }
+        JSONArray removed = new JSONArray();
+        for (long contactId : oldSnapshot.mSortedContactIds) {
+            if (!newSnapshot.hasContact(contactId)) removed.put(String.valueOf(contactId));
         }
-    }
 
-    private HashSet<String> compareAllRawContactInfo(HashSet<String> commonSet) {
-        HashSet<String> contactIDs = null;
-        HashMap<String, String> compareMaps = null;
-        Cursor c = null;
-        try {
-            c = mResolver.query(RawContacts.CONTENT_URI, null, null, null, null);
-            contactIDs = new HashSet<String>();
-            compareMaps = new HashMap<String, String>();
-            while (c.moveToNext()) {
-                String rawContactID = c.getString(c.getColumnIndex(RawContacts._ID));
-                String version = c.getString(c.getColumnIndex(RawContacts.VERSION));
-                compareMaps.put(rawContactID, version);
+        // Walk both snapshots by raw contact id. A contact existing in both is
+        // modified if one of its raw contacts is added, removed, moved to
+        // another contact or has a new version.
+        long[] modified = new long[16];
+        int modifiedCount = 0;
+        int i = 0;
+        int j = 0;
+        int oldCount = oldSnapshot.mRawIds.length;
+        int newCount = newSnapshot.mRawIds.length;
+        while (i < oldCount || j < newCount) {
+            long oldContactId = -1;
+            long newContactId = -1;
+            if (j == newCount ||
+                    (i < oldCount && oldSnapshot.mRawIds[i] < newSnapshot.mRawIds[j])) {
+                oldContactId = oldSnapshot.mContactIds[i++];
+            } else if (i == oldCount || newSnapshot.mRawIds[j] < oldSnapshot.mRawIds[i]) {
+                newContactId = newSnapshot.mContactIds[j++];
+            } else {
+                if (oldSnapshot.mVersions[i] != newSnapshot.mVersions[j] ||
+                        oldSnapshot.mContactIds[i] != newSnapshot.mContactIds[j]) {
+                    oldContactId = oldSnapshot.mContactIds[i];
+                    newContactId = newSnapshot.mContactIds[j];
+                }
+                ++i;
+                ++j;
             }
-        } catch (SecurityException e) {
-            Log.e(TAG, "compareAllRawContactInfo: " + e.toString());
-            return null;
-        } finally {
-            if (c != null) c.close();
-        }
 
-        Iterator<String> iterator = compareMaps.keySet().iterator();
-        while (iterator.hasNext()) {
-            String rawContactID = iterator.next();
-            String newVersion = compareMaps.get(rawContactID);
-            String oldVersion = mRawID2VersionMaps.get(rawContactID);
-            if (oldVersion == null || !newVersion.equals(oldVersion)) {
-                String contactID = mRawID2ContactIDMaps.get(rawContactID);
-                if (contactID != null && commonSet.contains(contactID)) {
-                    contactIDs.add(contactID);
+            for (long contactId : new long[] { oldContactId, newContactId }) {
+                if (contactId < 0 || !oldSnapshot.hasContact(contactId) ||
+                        !newSnapshot.hasContact(contactId)) {
+                    continue;
+                }
+                if (modifiedCount == modified.length) {
+                    modified = Arrays.copyOf(modified, modifiedCount * 2);
                 }
+                modified[modifiedCount++] = contactId;
             }
         }
+        Arrays.sort(modified, 0, modifiedCount);
+        modified = dedupe(modified, modifiedCount);
+
+        JSONObject changes = new JSONObject();
+        if (added.length() > 0) changes.put("added", added);
+        if (removed.length() > 0) changes.put("removed", removed);
+        if (modified.length > 0) {
+            JSONArray modifiedIds = new JSONArray();
+            for (long contactId : modified) modifiedIds.put(String.valueOf(contactId));
+            changes.put("modified", modifiedIds);
+        }
+        return changes;
+    }
 
-        return contactIDs;
+    // Remove the duplicates from the first count elements of a sorted array.
+    private static long[] dedupe(long[] sorted, int count) {
+        int size = 0;
+        for (int i = 0; i < count; ++i) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) sorted[size++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, size);
     }
 }
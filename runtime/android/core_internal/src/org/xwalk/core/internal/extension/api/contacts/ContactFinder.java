@@ -6,8 +6,10 @@ package org.xwalk.core.internal.extension.api.contacts;
 
 import android.content.ContentResolver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
+import android.provider.ContactsContract;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.CommonDataKinds.Email;
 import android.provider.ContactsContract.CommonDataKinds.Event;
@@ -21,12 +23,15 @@ import android.provider.ContactsContract.CommonDataKinds.Photo;
 import android.provider.ContactsContract.CommonDataKinds.StructuredName;
 import android.provider.ContactsContract.CommonDataKinds.StructuredPostal;
 import android.provider.ContactsContract.CommonDataKinds.Website;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,10 +47,47 @@ public class ContactFinder {
     private ContactUtils mUtils;
     private static final String TAG = "ContactFinder";
 
+    // The maximum number of contacts in one page. The ids of a page are bound
+    // to one "IN (...)" clause, and SQLite allows 999 arguments at most.
+    static final int MAX_PAGE_SIZE = 500;
+    // The number of rows read by one query while collecting the contact ids.
+    private static final int ID_QUERY_CHUNK_SIZE = 500;
+
+    private static final String[] ID_PROJECTION = new String[] { Data.CONTACT_ID };
+    // The columns read by readRow(), instead of all the columns of the view.
+    private static final String[] DATA_PROJECTION = createDataProjection();
+
+    private Map<String, String> mGroupTitles;
+    private int mLastUpdatedIndex = -1;
+
+    /**
+     * Receives the results of find() page by page.
+     */
+    public interface PageCallback {
+        /**
+         * @param contacts The contacts of this page.
+         * @param isLast Whether this is the last page.
+         */
+        void onPage(JSONArray contacts, boolean isLast);
+    }
+
     public ContactFinder(ContentResolver resolver) {
         mUtils = new ContactUtils(resolver);
     }
 
+    private static String[] createDataProjection() {
+        List<String> columns = new ArrayList<String>(Arrays.asList(
+                Data.CONTACT_ID, Data.MIMETYPE, Data.IS_SUPER_PRIMARY,
+                Data.DATA1, Data.DATA2, Data.DATA3, Data.DATA4, Data.DATA5, Data.DATA6,
+                Data.DATA15));
+        // Read the last updated time along with the data, rather than querying
+        // it for each contact.
+        if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2) {
+            columns.add(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP);
+        }
+        return columns.toArray(new String[columns.size()]);
+    }
+
     public static class FindOption {
         public String mWhere;
         public String[] mWhereArgs;
@@ -74,6 +116,7 @@ public class ContactFinder {
         public JSONArray aImpp;
         public String anniversary;
         public String gender;
+        public boolean hasData;
         public JSONObject ensurePut(long id) {
             JSONObject o = new JSONObject();
             try {
@@ -177,157 +220,281 @@ public class ContactFinder {
         return array;
     }
 
-    private Set<String> getContactIds(FindOption findOption) {
-        Set<String> ids = null;
+    // Read the rows of contacts ordered by contact id, at most
+    // ID_QUERY_CHUNK_SIZE rows per query. Each query continues after the last
+    // id of the previous one, so the provider never has to build the whole
+    // result set, and the search stops as soon as the limit is reached.
+    private List<String> getContactIdsByKeyset(FindOption findOption, long limit) {
+        List<String> ids = new ArrayList<String>();
+        long lastId = -1;
+        while (ids.size() < limit) {
+            List<String> args = new ArrayList<String>();
+            String where = Data.CONTACT_ID + " > ?";
+            args.add(String.valueOf(lastId));
+            if (findOption.mWhere != null) {
+                where += " AND (" + findOption.mWhere + ")";
+                args.addAll(Arrays.asList(findOption.mWhereArgs));
+            }
+
+            int rows = 0;
+            Cursor c = null;
+            try {
+                c = mUtils.mResolver.query(getLimitedUri(ID_QUERY_CHUNK_SIZE), ID_PROJECTION,
+                        where, args.toArray(new String[args.size()]), Data.CONTACT_ID);
+                if (c == null) return null;
+                while (c.moveToNext()) {
+                    ++rows;
+                    long id = c.getLong(0);
+                    // The rows of one contact are adjacent.
+                    if (id == lastId) continue;
+                    lastId = id;
+                    ids.add(String.valueOf(id));
+                    if (ids.size() >= limit) break;
+                }
+            } catch (SecurityException e) {
+                Log.e(TAG, "getContactIdsByKeyset: " + e.toString());
+                return null;
+            } finally {
+                if (c != null) c.close();
+            }
+            if (rows < ID_QUERY_CHUNK_SIZE) break;
+        }
+        return ids;
+    }
+
+    // Read the ids by the rows of the sorting field, ID_QUERY_CHUNK_SIZE rows
+    // per query. Each query continues after the sort key of the last row of
+    // the previous one, which ends with the row id to break the ties, and
+    // only the ids of a chunk are checked against the filter. As before, the
+    // contacts without the sorting field come after the sorted ones.
+    private List<String> getSortedContactIds(FindOption findOption, List<String> sortColumns,
+            boolean descending, String sortByMimeType, long limit) {
+        // The null values are sorted as empty strings, so they can be compared.
+        List<String> keys = new ArrayList<String>();
+        for (String column : sortColumns) keys.add("IFNULL(" + column + ", '')");
+        keys.add(Data._ID);
+        String direction = descending ? " DESC" : " ASC";
+        String sortOrder = TextUtils.join(direction + ", ", keys) + direction;
+
+        List<String> columns = new ArrayList<String>();
+        columns.add(Data.CONTACT_ID);
+        columns.addAll(sortColumns);
+        columns.add(Data._ID);
+        String[] projection = columns.toArray(new String[columns.size()]);
+
+        Set<String> ids = new LinkedHashSet<String>();
+        String[] lastKey = null;
+        while (ids.size() < limit) {
+            List<String> args = new ArrayList<String>();
+            String where = Data.MIMETYPE + " = ?";
+            args.add(sortByMimeType);
+            if (lastKey != null) {
+                where += " AND (" + getKeysetSelection(keys, descending, lastKey, args) + ")";
+            }
+
+            Set<String> chunk = new LinkedHashSet<String>();
+            int rows = 0;
+            Cursor c = null;
+            try {
+                c = mUtils.mResolver.query(getLimitedUri(ID_QUERY_CHUNK_SIZE), projection,
+                        where, args.toArray(new String[args.size()]), sortOrder);
+                if (c == null) return null;
+                while (c.moveToNext()) {
+                    ++rows;
+                    chunk.add(c.getString(0));
+                }
+                if (rows > 0 && c.moveToLast()) {
+                    lastKey = new String[keys.size()];
+                    for (int i = 0; i < lastKey.length; ++i) {
+                        String value = c.getString(i + 1);
+                        lastKey[i] = (value != null) ? value : "";
+                    }
+                }
+            } catch (SecurityException e) {
+                Log.e(TAG, "getSortedContactIds: " + e.toString());
+                return null;
+            } finally {
+                if (c != null) c.close();
+            }
+
+            Set<String> matched = chunk;
+            if (findOption.mWhere != null && !chunk.isEmpty()) {
+                matched = getMatchedContactIds(findOption, chunk);
+                if (matched == null) return null;
+            }
+            for (String id : chunk) {
+                if (ids.size() >= limit) break;
+                if (matched.contains(id)) ids.add(id);
+            }
+            if (rows < ID_QUERY_CHUNK_SIZE) break;
+        }
+
+        if (ids.size() < limit) {
+            // At most ids.size() of the first |limit| matching ids are in
+            // already, so they're enough to fill up to the limit.
+            List<String> matchedIds = getContactIdsByKeyset(findOption, limit);
+            if (matchedIds == null) return null;
+            for (String id : matchedIds) {
+                if (ids.size() >= limit) break;
+                ids.add(id);
+            }
+        }
+        return new ArrayList<String>(ids);
+    }
+
+    // The rows after |lastKey| in the order of |keys|, e.g.
+    // "k1 > ? OR (k1 = ? AND k2 > ?)". The arguments are added to |args|.
+    private static String getKeysetSelection(List<String> keys, boolean descending,
+            String[] lastKey, List<String> args) {
+        String comparison = descending ? " < ?" : " > ?";
+        List<String> terms = new ArrayList<String>();
+        for (int i = 0; i < keys.size(); ++i) {
+            String term = "";
+            for (int j = 0; j < i; ++j) {
+                term += keys.get(j) + " = ? AND ";
+                args.add(lastKey[j]);
+            }
+            term += keys.get(i) + comparison;
+            args.add(lastKey[i]);
+            terms.add("(" + term + ")");
+        }
+        return TextUtils.join(" OR ", terms);
+    }
+
+    // Return the ids among |contactIds| which match the filter of the option.
+    private Set<String> getMatchedContactIds(FindOption findOption, Set<String> contactIds) {
+        List<String> args = new ArrayList<String>(contactIds);
+        String where = Data.CONTACT_ID + " IN (" +
+                ContactUtils.makeQuestionMarkList(contactIds.size()) + ") AND (" +
+                findOption.mWhere + ")";
+        args.addAll(Arrays.asList(findOption.mWhereArgs));
+
+        Set<String> matched = new HashSet<String>();
         Cursor c = null;
         try {
-            c = mUtils.mResolver.query(Data.CONTENT_URI, null, findOption.mWhere,
-                                       findOption.mWhereArgs, findOption.mSortOrder);
-            ids = new HashSet<String>();
-            while (c.moveToNext()) {
-                ids.add(String.valueOf(c.getLong(c.getColumnIndex(Data.CONTACT_ID))));
-            }
-            return ids;
+            c = mUtils.mResolver.query(Data.CONTENT_URI, ID_PROJECTION,
+                    where, args.toArray(new String[args.size()]), null);
+            if (c == null) return null;
+            while (c.moveToNext()) matched.add(c.getString(0));
         } catch (SecurityException e) {
-            Log.e(TAG, "getContactIds: " + e.toString());
+            Log.e(TAG, "getMatchedContactIds: " + e.toString());
             return null;
         } finally {
             if (c != null) c.close();
         }
+        return matched;
+    }
+
+    private static Uri getLimitedUri(int limit) {
+        return Data.CONTENT_URI.buildUpon()
+                .appendQueryParameter(ContactsContract.LIMIT_PARAM_KEY, String.valueOf(limit))
+                .build();
     }
 
     /**
-     * Generate a string to be used as sort order by SQL clause
+     * Get the columns to sort by, e.g. "StructuredName.GIVEN_NAME".
      * @param sortBy e.g. "givenNames", "phoneNumbers"
-     * @param sortOrder e.g. "descending"
-     * @return Data name with SQL clause: "StructuredName.GIVEN_NAME DESC, Phone.NUMBER DESC"
+     * @return The columns of the valid fields, null if there's none.
      */
-    private String getSortOrder(List<String> sortBy, String sortOrder) {
-        if (sortOrder == null) return null;
-
-        String suffix = "";
-        if (sortOrder.equals("ascending")) {
-            suffix = " ASC";
-        } else if (sortOrder.equals("descending")) {
-            suffix = " DESC";
-        }
-
-        String order = "";
+    private List<String> getSortColumns(List<String> sortBy) {
+        List<String> columns = new ArrayList<String>();
         for (String s : sortBy) {
             Pair<String, String> fields = ContactConstants.contactDataMap.get(s);
-            if (fields == null) continue;
-            order += fields.first + suffix + ",";
+            if (fields == null || fields.first == null || columns.contains(fields.first)) {
+                continue;
+            }
+            columns.add(fields.first);
         }
-        return (order != "") ? order.substring(0, order.length()-1) : null;
+        return columns.isEmpty() ? null : columns;
     }
 
-    //TODO(hdq): Currently this function doesn't support multi-column sorting.
-    private JSONArray getContacts(
-            Set<String> contactIds, String sortOrder, String sortByMimeType, Long resultsLimit) {
-        // Get all records of given contactIds.
-        // For example, sort by ascending:
-        // -----------------------------
-        // id  data           mimetype
-        // -----------------------------
-        // 60  +34600000000   phone_v2
-        // 59  +34698765432   phone_v2
-        // 59  David1 Smith   name
-        // 60  David2 Smith   name
-        String where = null;
-        String[] whereArgs = null;
-        JSONArray returnArray = new JSONArray();
-        if (contactIds.size() != 0) {
-            where = Data.CONTACT_ID + " in (" + ContactUtils.makeQuestionMarkList(contactIds) + ")";
-            whereArgs = contactIds.toArray(new String[contactIds.size()]);
+    private void readRow(ContactData d, Cursor c) {
+        d.hasData = true;
+        if (d.lastUpdated == null && mLastUpdatedIndex >= 0) {
+            d.lastUpdated = ContactUtils.timeConvertToJS(c.getLong(mLastUpdatedIndex));
         }
-        else
-            return returnArray;
-        Cursor c = null;
-        Map<Long, ContactData> dataMap = null;
-        try {
-            c = mUtils.mResolver.query(Data.CONTENT_URI, null, where, whereArgs, sortOrder);
-            dataMap = new LinkedHashMap<Long, ContactData>();
-
-            // Read contact IDs to build the array by sortOrder.
-            if (sortOrder != null) {
-                while (c.moveToNext()) {
-                    // We should only check for mimetype of sorting field.
-                    // As e.g. above, sort by phone number: [60, 59], by name: [59, 60]
-                    String mime = c.getString(c.getColumnIndex(Data.MIMETYPE));
-                    if (!mime.equals(sortByMimeType)) continue;
-                    long id = c.getLong(c.getColumnIndex(Data.CONTACT_ID));
-                    if (!dataMap.containsKey(id)) dataMap.put(id, new ContactData());
-                }
-                c.moveToFirst();
+        String mime = c.getString(c.getColumnIndex(Data.MIMETYPE));
+        if (mime.equals(StructuredName.CONTENT_ITEM_TYPE)) {
+            d.oName = addString(d.oName, c, "displayName", StructuredName.DISPLAY_NAME);
+            d.oName = addArrayTop(d.oName, c, "honorificPrefixes", StructuredName.PREFIX);
+            d.oName = addArrayTop(d.oName, c, "givenNames", StructuredName.GIVEN_NAME);
+            d.oName = addArrayTop(d.oName, c, "additionalNames", StructuredName.MIDDLE_NAME);
+            d.oName = addArrayTop(d.oName, c, "familyNames", StructuredName.FAMILY_NAME);
+            d.oName = addArrayTop(d.oName, c, "honorificSuffixes", StructuredName.SUFFIX);
+        } else if (mime.equals(Nickname.CONTENT_ITEM_TYPE)) {
+            d.oName = addArrayTop(d.oName, c, "nicknames", Nickname.NAME);
+        } else if (mime.equals(Email.CONTENT_ITEM_TYPE)) {
+            d.aEmails = addTypeArray(d.aEmails, c, Email.DATA,
+                                     ContactConstants.emailTypeMap,
+                                     ContactConstants.emailTypeValuesMap);
+        } else if (mime.equals(Photo.CONTENT_ITEM_TYPE)) {
+            d.aPhotos = addString(d.aPhotos, c, Photo.PHOTO);
+        } else if (mime.equals(Website.CONTENT_ITEM_TYPE)) {
+            d.aUrls = addTypeArray(d.aUrls, c, Website.DATA,
+                                   ContactConstants.websiteTypeMap,
+                                   ContactConstants.websiteTypeValuesMap);
+        } else if (mime.equals(GroupMembership.CONTENT_ITEM_TYPE)) {
+            String groupId = c.getString(c.getColumnIndex(GroupMembership.GROUP_ROW_ID));
+            String title = (mGroupTitles != null) ? mGroupTitles.get(groupId)
+                                                  : mUtils.getGroupTitle(groupId);
+            if (title != null) {
+                if (d.aCategories == null) d.aCategories = new JSONArray();
+                d.aCategories.put(title);
+            }
+        } else if (mime.equals(StructuredPostal.CONTENT_ITEM_TYPE)) {
+            d.aAddresses = addTypeArray(d.aAddresses, c, StructuredPostal.DATA,
+                                        ContactConstants.addressTypeMap,
+                                        ContactConstants.addressTypeValuesMap);
+        } else if (mime.equals(Phone.CONTENT_ITEM_TYPE)) {
+            d.aNumbers = addTypeArray(d.aNumbers, c, Phone.DATA,
+                                      ContactConstants.phoneTypeMap,
+                                      ContactConstants.phoneTypeValuesMap);
+        } else if (mime.equals(Organization.CONTENT_ITEM_TYPE)) {
+            d.aOrganizations = addString(d.aOrganizations, c, Organization.COMPANY);
+            d.aJobTitles = addString(d.aJobTitles, c, Organization.TITLE);
+        } else if (mime.equals(Event.CONTENT_ITEM_TYPE)) {
+            int type = Integer.valueOf(c.getString(c.getColumnIndex(Event.TYPE)));
+            if (type == Event.TYPE_BIRTHDAY) {
+                d.birthday = c.getString(c.getColumnIndex(Event.START_DATE));
+            } else if (type == Event.TYPE_ANNIVERSARY) {
+                d.anniversary = c.getString(c.getColumnIndex(Event.START_DATE));
             }
+        } else if (mime.equals(Note.CONTENT_ITEM_TYPE)) {
+            d.aNotes = addString(d.aNotes, c, Note.NOTE);
+        } else if (mime.equals(Im.CONTENT_ITEM_TYPE)) {
+            d.aImpp = addTypeArray(d.aImpp, c, Im.DATA, ContactConstants.imTypeMap,
+                                   ContactConstants.imTypeValuesMap);
+        } else if (mime.equals(ContactConstants.CUSTOM_MIMETYPE_GENDER)) {
+            d.gender = c.getString(c.getColumnIndex(Data.DATA1));
+        }
+    }
 
-            // Read details of each contacts
+    // Read the details of one page of contacts with a single query, and
+    // return them in the order of the given ids.
+    private JSONArray getContactsPage(List<String> contactIds) {
+        String where = Data.CONTACT_ID + " in (" +
+                ContactUtils.makeQuestionMarkList(contactIds.size()) + ")";
+        String[] whereArgs = contactIds.toArray(new String[contactIds.size()]);
+        Map<Long, ContactData> dataMap = new HashMap<Long, ContactData>();
+        Cursor c = null;
+        try {
+            c = mUtils.mResolver.query(Data.CONTENT_URI, DATA_PROJECTION, where, whereArgs, null);
+            if (c == null) return null;
+            mLastUpdatedIndex = (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2) ?
+                    c.getColumnIndex(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP) : -1;
             while (c.moveToNext()) {
                 long id = c.getLong(c.getColumnIndex(Data.CONTACT_ID));
-                if (!dataMap.containsKey(id)) dataMap.put(id, new ContactData());
                 ContactData d = dataMap.get(id);
-                if (d.lastUpdated == null && VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2) {
-                    d.lastUpdated = mUtils.getLastUpdated(id);
-                }
-                String mime = c.getString(c.getColumnIndex(Data.MIMETYPE));
-                if (mime.equals(StructuredName.CONTENT_ITEM_TYPE)) {
-                    d.oName = addString(d.oName, c, "displayName", StructuredName.DISPLAY_NAME);
-                    d.oName = addArrayTop(d.oName, c, "honorificPrefixes", StructuredName.PREFIX);
-                    d.oName = addArrayTop(d.oName, c, "givenNames", StructuredName.GIVEN_NAME);
-                    d.oName = addArrayTop(d.oName, c, "additionalNames", StructuredName.MIDDLE_NAME);
-                    d.oName = addArrayTop(d.oName, c, "familyNames", StructuredName.FAMILY_NAME);
-                    d.oName = addArrayTop(d.oName, c, "honorificSuffixes", StructuredName.SUFFIX);
-                } else if (mime.equals(Nickname.CONTENT_ITEM_TYPE)) {
-                    d.oName = addArrayTop(d.oName, c, "nicknames", Nickname.NAME);
-                } else if (mime.equals(Email.CONTENT_ITEM_TYPE)) {
-                    d.aEmails = addTypeArray(d.aEmails, c, Email.DATA,
-                                             ContactConstants.emailTypeMap,
-                                             ContactConstants.emailTypeValuesMap);
-                } else if (mime.equals(Photo.CONTENT_ITEM_TYPE)) {
-                    d.aPhotos = addString(d.aPhotos, c, Photo.PHOTO);
-                } else if (mime.equals(Website.CONTENT_ITEM_TYPE)) {
-                    d.aUrls = addTypeArray(d.aUrls, c, Website.DATA,
-                                           ContactConstants.websiteTypeMap,
-                                           ContactConstants.websiteTypeValuesMap);
-                } else if (mime.equals(GroupMembership.CONTENT_ITEM_TYPE)) {
-                    String title = mUtils.getGroupTitle(
-                            c.getString(c.getColumnIndex(GroupMembership.GROUP_ROW_ID)));
-                    if (title != null) {
-                        if (d.aCategories == null) d.aCategories = new JSONArray();
-                        d.aCategories.put(title);
-                    }
-                } else if (mime.equals(StructuredPostal.CONTENT_ITEM_TYPE)) {
-                    d.aAddresses = addTypeArray(d.aAddresses, c, StructuredPostal.DATA,
-                                                ContactConstants.addressTypeMap,
-                                                ContactConstants.addressTypeValuesMap);
-                } else if (mime.equals(Phone.CONTENT_ITEM_TYPE)) {
-                    d.aNumbers = addTypeArray(d.aNumbers, c, Phone.DATA,
-                                              ContactConstants.phoneTypeMap,
-                                              ContactConstants.phoneTypeValuesMap);
-                } else if (mime.equals(Organization.CONTENT_ITEM_TYPE)) {
-                    d.aOrganizations = addString(d.aOrganizations, c, Organization.COMPANY);
-                } else if (mime.equals(Organization.CONTENT_ITEM_TYPE)) {
-                    d.aJobTitles = addString(d.aJobTitles, c, Organization.TITLE);
-                } else if (mime.equals(Event.CONTENT_ITEM_TYPE)) {
-                    int type = Integer.valueOf(c.getString(c.getColumnIndex(Event.TYPE)));
-                    if (type == Event.TYPE_BIRTHDAY) {
-                        d.birthday = c.getString(c.getColumnIndex(Event.START_DATE));
-                    } else if (type == Event.TYPE_ANNIVERSARY) {
-                        d.anniversary = c.getString(c.getColumnIndex(Event.START_DATE));
-                    }
-                } else if (mime.equals(Note.CONTENT_ITEM_TYPE)) {
-                    d.aNotes = addString(d.aNotes, c, Note.NOTE);
-                } else if (mime.equals(Im.CONTENT_ITEM_TYPE)) {
-                    d.aImpp = addTypeArray(d.aImpp, c, Im.DATA, ContactConstants.imTypeMap,
-                                           ContactConstants.imTypeValuesMap);
-                } else if (mime.equals(ContactConstants.CUSTOM_MIMETYPE_GENDER)) {
-                    d.gender = c.getString(c.getColumnIndex(Data.DATA1));
+                if (d == null) {
+                    d = new ContactData();
+                    dataMap.put(id, d);
                 }
+                readRow(d, c);
             }
         } catch (Exception e) {
             if (e instanceof NumberFormatException || e instanceof SecurityException) {
-                Log.e(TAG, "getContacts: " + e.toString());
-                return new JSONArray();
+                Log.e(TAG, "getContactsPage: " + e.toString());
+                return null;
             } else {
                 throw new RuntimeException(e);
             }
@@ -335,11 +502,13 @@ public class ContactFinder {
             if (c != null) c.close();
         }
 
-        int i = 0;
-        for (Map.Entry<Long, ContactData> entry : dataMap.entrySet()) {
-            if (resultsLimit != null && ++i > resultsLimit) break;
-            JSONObject o = entry.getValue().ensurePut(entry.getKey());
-            returnArray.put(o);
+        JSONArray returnArray = new JSONArray();
+        for (String contactId : contactIds) {
+            long id = Long.parseLong(contactId);
+            ContactData d = dataMap.get(id);
+            // The contact was removed after its id was read.
+            if (d == null || !d.hasData) continue;
+            returnArray.put(d.ensurePut(id));
         }
         return returnArray;
     }
@@ -384,16 +553,73 @@ public class ContactFinder {
         }
     }
 
-    public JSONArray find(String findString) {
-        Set<String> ids = getContactIds(createFindIDOption(findString));
-        if (ids == null) return new JSONArray();
+    /**
+     * Find the contacts, and deliver the results in pages.
+     *
+     * Only the ids of the matching contacts are read first, with the limit
+     * applied while reading, then the details are read page by page. This
+     * blocks on the contacts provider, so call it from a worker thread.
+     *
+     * @param findString The ContactFindOptions in JSON.
+     * @param pageSize The maximum number of contacts in one page.
+     * @param callback Called for each page, at least once.
+     */
+    public void find(String findString, int pageSize, PageCallback callback) {
+        FindOption findOption = createFindIDOption(findString);
+        if (findOption == null) {
+            callback.onPage(new JSONArray(), true);
+            return;
+        }
+
         ContactJson findJson = new ContactJson(findString);
         List<String> sortBy = findJson.getStringArray("sortBy");
-        String order = getSortOrder(sortBy, findJson.getString("sortOrder"));
-        String orderMimeType = (order == null) ? null :
-                ContactConstants.contactDataMap.get(sortBy.get(0)).second;
+        String sortOrder = findJson.getString("sortOrder");
+        List<String> sortColumns = (sortOrder == null) ? null : getSortColumns(sortBy);
+        Pair<String, String> sortField = (sortColumns == null) ? null :
+                ContactConstants.contactDataMap.get(sortBy.get(0));
+        // The ids are read in the ascending order of contact id anyway.
+        if (sortField != null && sortField.second == null) sortField = null;
+        long limit = Long.MAX_VALUE;
         String resultsLimit = findJson.getString("resultsLimit");
-        Long resultsLimitLong = (resultsLimit == null) ? null : Long.valueOf(resultsLimit);
-        return getContacts(ids, order, orderMimeType, resultsLimitLong);
+        if (resultsLimit != null) {
+            try {
+                limit = Long.parseLong(resultsLimit);
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "find - Invalid resultsLimit: " + resultsLimit);
+            }
+        }
+
+        List<String> ids = (sortField == null) ? getContactIdsByKeyset(findOption, limit) :
+                getSortedContactIds(findOption, sortColumns, sortOrder.equals("descending"),
+                        sortField.second, limit);
+        if (ids == null || ids.isEmpty()) {
+            callback.onPage(new JSONArray(), true);
+            return;
+        }
+
+        pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        mGroupTitles = mUtils.getGroupTitles();
+        for (int start = 0; start < ids.size(); start += pageSize) {
+            int end = Math.min(start + pageSize, ids.size());
+            JSONArray page = getContactsPage(ids.subList(start, end));
+            if (page == null) {
+                callback.onPage(new JSONArray(), true);
+                return;
+            }
+            callback.onPage(page, end == ids.size());
+        }
+    }
+
+    public JSONArray find(String findString) {
+        final JSONArray results = new JSONArray();
+        find(findString, MAX_PAGE_SIZE, new PageCallback() {
+            @Override
+            public void onPage(JSONArray contacts, boolean isLast) {
+                for (int i = 0; i < contacts.length(); ++i) {
+                    results.put(contacts.opt(i));
+                }
+            }
+        });
+        return results;
     }
 }
@@ -21,6 +21,7 @@ import android.util.Log;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -48,11 +49,20 @@ public class ContactUtils {
      * @return A list of question marks to be used in SQL clause, e.g. "?,?,?"
      */
     public static String makeQuestionMarkList(Set<String> strings) {
-        String ret = "";
-        for (int i = 0; i < strings.size(); ++i) {
-            ret += "?,";
+        return makeQuestionMarkList(strings.size());
+    }
+
+    /**
+     * @param count e.g. 3
+     * @return A list of question marks to be used in SQL clause, e.g. "?,?,?"
+     */
+    public static String makeQuestionMarkList(int count) {
+        StringBuilder ret = new StringBuilder(count * 2);
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) ret.append(',');
+            ret.append('?');
         }
-        return ret.substring(0, ret.length()-1);
+        return ret.toString();
     }
 
     public boolean hasID(String id) {
@@ -247,6 +257,30 @@ public class ContactUtils {
         }
     }
 
+    /**
+     * Read the titles of all visible groups with one query.
+     * @return The map from group ids to titles, or null on failure.
+     */
+    public Map<String, String> getGroupTitles() {
+        final String selection = Groups.DELETED + "=? and " + Groups.GROUP_VISIBLE + "=?";
+        Cursor c = null;
+        try {
+            c = mResolver.query(Groups.CONTENT_URI, new String[]{Groups._ID, Groups.TITLE},
+                                selection, new String[]{"0", "1"}, null);
+            if (c == null) return null;
+            Map<String, String> titles = new HashMap<String, String>();
+            while (c.moveToNext()) {
+                titles.put(c.getString(0), c.getString(1));
+            }
+            return titles;
+        } catch (SecurityException e) {
+            Log.e(TAG, "getGroupTitles: " + e.toString());
+            return null;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
     public String getEnsuredGroupId(String groupTitle) {
         String groupId = getGroupId(groupTitle);
         if (groupId == null) {
@@ -306,7 +340,7 @@ public class ContactUtils {
      * @param long e.g. 61
      * @return string e.g. "1969-12-31T00:01:01Z"
      */
-    private String timeConvertToJS(long seconds) {
+    static String timeConvertToJS(long seconds) {
         final SimpleDateFormat df =
                 new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", java.util.Locale.getDefault());
         return df.format(new java.util.Date(seconds));
@@ -18,22 +18,28 @@ import android.provider.ContactsContract.RawContacts;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.chromium.base.ActivityState;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import org.xwalk.core.internal.extension.CommandEnvelope;
 import org.xwalk.core.internal.extension.XWalkExtensionWithActivityStateListener;
 
 public class Contacts extends XWalkExtensionWithActivityStateListener {
     public static final String JS_API_PATH = "jsapi/contacts_api.js";
 
     private static final String TAG = "Contacts";
-    private static final String NAME = "xwalk.experimental.contacts";
+    public static final String NAME = "xwalk.experimental.contacts";
 
     private final ContactEventListener mObserver;
     private final ContentResolver mResolver;
+    // Finding contacts may take seconds with a large address book, so it runs
+    // on a worker thread, one find at a time.
+    private final ExecutorService mFindExecutor = Executors.newSingleThreadExecutor();
 
     public Contacts(String jsApiContent, Activity activity) {
         super(NAME, jsApiContent, activity);
@@ -50,10 +56,11 @@ public class Contacts extends XWalkExtensionWithActivityStateListener {
 
     @Override
     public void onMessage(int instanceID, String message) {
-        if (message.isEmpty()) return;
+        CommandEnvelope envelope = CommandEnvelope.parse(message);
+        if (envelope == null) return;
         try {
-            JSONObject jsonInput = new JSONObject(message);
-            String cmd = jsonInput.getString("cmd");
+            JSONObject jsonInput = envelope.getPayload();
+            String cmd = envelope.getCommand();
             if (cmd.equals("addEventListener")) {
                 mObserver.startListening();
                 return;
@@ -64,10 +71,9 @@ public class Contacts extends XWalkExtensionWithActivityStateListener {
                 ContactSaver saver = new ContactSaver(mResolver);
                 jsonOutput.put("data", saver.save(jsonInput.getString("contact")));
             } else if (cmd.equals("find")) {
-                ContactFinder finder = new ContactFinder(mResolver);
                 String options = jsonInput.has("options") ? jsonInput.getString("options") : null;
-                JSONArray results = finder.find(options);
-                jsonOutput.put("data", results);
+                handleFind(instanceID, jsonInput.getString("asyncCallId"), options);
+                return;
             } else if (cmd.equals("remove")) {
                 ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
                 String[] args = new String[] { jsonInput.getString("contactId") };
@@ -97,6 +103,54 @@ public class Contacts extends XWalkExtensionWithActivityStateListener {
         }
     }
 
+    // Find contacts on the worker thread. If the "pageSize" option is given,
+    // the results are posted in pages, otherwise in one message.
+    private void handleFind(final int instanceID, final String asyncCallId, final String options) {
+        if (mFindExecutor.isShutdown()) return;
+        mFindExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ContactFinder finder = new ContactFinder(mResolver);
+                int pageSize = getPageSize(options);
+                if (pageSize <= 0) {
+                    postFindResult(instanceID, asyncCallId, finder.find(options), true);
+                    return;
+                }
+                finder.find(options, pageSize, new ContactFinder.PageCallback() {
+                    @Override
+                    public void onPage(JSONArray contacts, boolean isLast) {
+                        postFindResult(instanceID, asyncCallId, contacts, isLast);
+                    }
+                });
+            }
+        });
+    }
+
+    private static int getPageSize(String options) {
+        String pageSize = new ContactJson(options).getString("pageSize");
+        if (pageSize == null) return 0;
+        try {
+            return Integer.parseInt(pageSize);
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Invalid pageSize: " + pageSize);
+            return 0;
+        }
+    }
+
+    private void postFindResult(int instanceID, String asyncCallId,
+            JSONArray contacts, boolean isLast) {
+        try {
+            JSONObject jsonOutput = new JSONObject();
+            jsonOutput.put("asyncCallId", asyncCallId);
+            // Only the last page settles the promise in JavaScript.
+            if (!isLast) jsonOutput.put("reply", "findPage");
+            jsonOutput.put("data", contacts);
+            this.postMessage(instanceID, jsonOutput.toString());
+        } catch (JSONException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
     // Remove all contacts.
     private void handleClear() {
         Cursor c = null;
@@ -123,8 +177,12 @@ public class Contacts extends XWalkExtensionWithActivityStateListener {
                 mResolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, mObserver);
                 break;
             case ActivityState.PAUSED:
+                mResolver.unregisterContentObserver(mObserver);
+                break;
             case ActivityState.DESTROYED:
                 mResolver.unregisterContentObserver(mObserver);
+                mObserver.onDestroy();
+                mFindExecutor.shutdownNow();
                 break;
             default:
                 break;
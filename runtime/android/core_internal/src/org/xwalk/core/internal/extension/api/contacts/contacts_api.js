@@ -17,14 +17,16 @@ var g_listeners = [];
 g_listeners[0] = null;
 var g_next_listener_id = 1;
 
-function AsyncCall(resolve, reject) {
+function AsyncCall(resolve, reject, onpage) {
   this.resolve = resolve;
   this.reject = reject;
+  this.onpage = onpage;
+  this.pages = null;
 }
 
-function createPromise(msg) {
+function createPromise(msg, onpage) {
   var promise = new Promise(function(resolve, reject) {
-    g_async_calls[g_next_async_call_id] = new AsyncCall(resolve, reject);
+    g_async_calls[g_next_async_call_id] = new AsyncCall(resolve, reject, onpage);
   });
   msg.asyncCallId = g_next_async_call_id;
   extension.postMessage(JSON.stringify(msg));
@@ -60,6 +62,19 @@ extension.setMessageListener(function(json) {
     return;
   }
 
+  var call = g_async_calls[msg.asyncCallId];
+  // The results of a paginated find come in pages, only the last one doesn't
+  // have the 'findPage' reply.
+  if (msg.reply == 'findPage') {
+    call.pages = (call.pages || []).concat(msg.data);
+    if (typeof call.onpage === 'function') call.onpage(msg.data);
+    return;
+  }
+  if (Array.isArray(msg.data)) {
+    if (typeof call.onpage === 'function') call.onpage(msg.data);
+    if (call.pages) msg.data = call.pages.concat(msg.data);
+  }
+
   if (msg.data) {
     if (!msg.data.hasOwnProperty("error") || !msg.data.error) {
       g_async_calls[msg.asyncCallId].resolve(msg.data);
@@ -81,11 +96,15 @@ exports.save = function(contact) {
   return createPromise(msg);
 }
 
+// If options.pageSize is given, the results are sent in pages of that size,
+// and options.onpage, if any, is called with each page. The promise is still
+// resolved with all the results.
 exports.find = function(options) {
   var msg = {};
   msg['cmd'] = 'find';
   msg['options'] = options;
-  return createPromise(msg);
+  var onpage = (options && options.pageSize) ? options.onpage : null;
+  return createPromise(msg, onpage);
 };
 
 exports.remove = function(contactId) {
@@ -9,6 +9,7 @@ import android.content.Context;
 import android.provider.ContactsContract;
 import android.util.Log;
 
+import org.xwalk.core.internal.extension.CommandEnvelope;
 import org.xwalk.core.internal.extension.XWalkExtensionWithActivityStateListener;
 
 import org.chromium.base.ActivityState;
@@ -19,7 +20,7 @@ public class DeviceCapabilities extends XWalkExtensionWithActivityStateListener
     public static final String JS_API_PATH = "jsapi/device_capabilities_api.js";
 
     private static final String TAG = "DeviceCapabilities";
-    private static final String NAME = "xwalk.experimental.system";
+    public static final String NAME = "xwalk.experimental.system";
 
     private DeviceCapabilitiesCPU mCPU;
     private DeviceCapabilitiesCodecs mCodecs;
@@ -39,16 +40,21 @@ public class DeviceCapabilities extends XWalkExtensionWithActivityStateListener
         mStorage = new DeviceCapabilitiesStorage(this, activity);
     }
 
-    private void handleMessage(int instanceID, String message) {
+    private void handleMessage(int instanceID, CommandEnvelope envelope) {
         try {
-            JSONObject jsonInput = new JSONObject(message);
-            String cmd = jsonInput.getString("cmd");
+            String cmd = envelope.getCommand();
 
             if (cmd.equals("addEventListener")) {
+                JSONObject jsonInput = envelope.getPayload();
                 String eventName = jsonInput.getString("eventName");
-                handleAddEventListener(eventName);
+                handleAddEventListener(instanceID, eventName, jsonInput);
+            } else if (cmd.equals("removeEventListener")) {
+                String eventName = envelope.getPayload().getString("eventName");
+                handleRemoveEventListener(instanceID, eventName);
             } else {
-                String asyncCallId = jsonInput.getString("asyncCallId");
+                // The info requests carry nothing but the envelope.
+                String asyncCallId = envelope.getAsyncCallId();
+                if (asyncCallId == null) throw new JSONException("No value for asyncCallId");
                 handleGetDeviceInfo(instanceID, asyncCallId, cmd);
             }
         } catch (JSONException e) {
@@ -57,19 +63,27 @@ public class DeviceCapabilities extends XWalkExtensionWithActivityStateListener
     }
 
     private void handleGetDeviceInfo(int instanceID, String asyncCallId, String cmd) {
+        JSONObject data = null;
+        if (cmd.equals("getCPUInfo")) {
+            // Replied by mCPU, possibly later.
+            mCPU.requestInfo(instanceID, asyncCallId);
+            return;
+        } else if (cmd.equals("getCodecsInfo")) {
+            data = mCodecs.getInfo();
+        } else if (cmd.equals("getDisplayInfo")) {
+            data = mDisplay.getInfo();
+        } else if (cmd.equals("getMemoryInfo")) {
+            data = mMemory.getInfo();
+        } else if (cmd.equals("getStorageInfo")) {
+            data = mStorage.getInfo();
+        }
+        postDeviceInfo(instanceID, asyncCallId, data);
+    }
+
+    protected void postDeviceInfo(int instanceID, String asyncCallId, JSONObject data) {
         try {
             JSONObject jsonOutput = new JSONObject();
-            if (cmd.equals("getCPUInfo")) {
-                jsonOutput.put("data", mCPU.getInfo());
-            } else if (cmd.equals("getCodecsInfo")) {
-                jsonOutput.put("data", mCodecs.getInfo());
-            } else if (cmd.equals("getDisplayInfo")) {
-                jsonOutput.put("data", mDisplay.getInfo());
-            } else if (cmd.equals("getMemoryInfo")) {
-                jsonOutput.put("data", mMemory.getInfo());
-            } else if (cmd.equals("getStorageInfo")) {
-                jsonOutput.put("data", mStorage.getInfo());
-            }
+            if (data != null) jsonOutput.put("data", data);
             jsonOutput.put("asyncCallId", asyncCallId);
             this.postMessage(instanceID, jsonOutput.toString());
         } catch (JSONException e) {
@@ -77,9 +91,19 @@ public class DeviceCapabilities extends XWalkExtensionWithActivityStateListener
         }
     }
 
-    private void handleAddEventListener(String eventName) {
+    private void handleAddEventListener(int instanceID, String eventName, JSONObject jsonInput) {
         if (eventName.equals("storageattach") || eventName.equals("storagedetach")) {
             mStorage.registerListener();
+        } else if (eventName.equals("cpuload")) {
+            mCPU.registerListener(instanceID,
+                    jsonInput.optLong("interval", DeviceCapabilitiesCPU.DEFAULT_SAMPLE_INTERVAL));
+        }
+    }
+
+    // Sent once the instance has no listener of the event left.
+    private void handleRemoveEventListener(int instanceID, String eventName) {
+        if (eventName.equals("cpuload")) {
+            mCPU.unregisterListener(instanceID);
         }
     }
 
@@ -101,8 +125,9 @@ public class DeviceCapabilities extends XWalkExtensionWithActivityStateListener
 
     @Override
     public void onMessage(int instanceID, String message) {
-        if (!message.isEmpty()) {
-            handleMessage(instanceID, message);
+        CommandEnvelope envelope = CommandEnvelope.parse(message);
+        if (envelope != null) {
+            handleMessage(instanceID, envelope);
         }
     }
 
@@ -110,14 +135,17 @@ public class DeviceCapabilities extends XWalkExtensionWithActivityStateListener
     public void onActivityStateChange(Activity activity, int newState) {
         switch (newState) {
             case ActivityState.RESUMED:
+                mCPU.onResume();
                 mDisplay.onResume();
                 mStorage.onResume();
                 break;
             case ActivityState.PAUSED:
+                mCPU.onPause();
                 mDisplay.onPause();
                 mStorage.onPause();
                 break;
             case ActivityState.DESTROYED:
+                mCPU.onDestroy();
                 mDisplay.onDestroy();
                 mStorage.onDestroy();
                 break;
@@ -4,23 +4,106 @@
 
 package org.xwalk.core.internal.extension.api.device_capabilities;
 
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.io.RandomAccessFile;
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+/**
+ * The CPU load is sampled from /proc/stat on a background thread, and a
+ * rolling window of the samples is kept, so that getInfo() returns the
+ * latest load right away instead of measuring it for one second on the
+ * thread which delivers the extension messages. Until the window has two
+ * samples, requestInfo() replies from the sampler thread once the load is
+ * measured over MIN_SAMPLE_INTERVAL since the first one.
+ */
 class DeviceCapabilitiesCPU {
     private static final String SYSTEM_INFO_STAT_FILE = "/proc/stat";
     private static final String TAG = "DeviceCapabilitiesCPU";
 
+    // The default interval between two samples, in milliseconds.
+    static final long DEFAULT_SAMPLE_INTERVAL = 1000;
+    private static final long MIN_SAMPLE_INTERVAL = 100;
+    // The number of samples kept in the window, the load is computed between
+    // the oldest and the newest one.
+    private static final int WINDOW_SIZE = 4;
+    // Without a listener, the sampler stops if getInfo() is not called for
+    // this long, in milliseconds.
+    private static final long IDLE_TIMEOUT = 10000;
+
     private DeviceCapabilities mDeviceCapabilities;
 
     private int mCoreNum = 0;
     private String mCPUArch = "Unknown";
+
+    // Accessed on the sampler thread and the message thread.
+    private final Object mLock = new Object();
+    private final LinkedList<Sample> mWindow = new LinkedList<Sample>();
+    // The instances listening to the load.
+    private final Set<Integer> mListeners = new HashSet<Integer>();
     private double mCPULoad = 0.0;
+    private double[] mCoreLoads = new double[0];
+
+    private HandlerThread mSamplerThread;
+    private Handler mSamplerHandler;
+    private long mSampleInterval = DEFAULT_SAMPLE_INTERVAL;
+    private long mLastRequestTime = 0;
+    private boolean mIsSampling = false;
+    private volatile boolean mIsListening = false;
+    private boolean mIsPaused = false;
+
+    // The cumulative time of all cpus (index 0) and of each core.
+    private static class Sample {
+        final long mTime;
+        final long[] mTotal;
+        final long[] mUsed;
+
+        Sample(long[] total, long[] used) {
+            mTime = SystemClock.elapsedRealtime();
+            mTotal = total;
+            mUsed = used;
+        }
+    }
+
+    private final Runnable mFirstSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Sample sample = readSample();
+            if (sample != null) addSample(sample);
+        }
+    };
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Sample sample = readSample();
+            if (sample != null) addSample(sample);
+
+            boolean isListening;
+            synchronized (mLock) {
+                isListening = mIsListening;
+                boolean isIdle = SystemClock.elapsedRealtime() - mLastRequestTime > IDLE_TIMEOUT;
+                if (mSamplerHandler != null && !mIsPaused && (isListening || !isIdle)) {
+                    mSamplerHandler.postDelayed(this, mSampleInterval);
+                } else {
+                    mIsSampling = false;
+                }
+            }
+            if (isListening) notifyLoadChanged();
+        }
+    };
 
     public DeviceCapabilitiesCPU(DeviceCapabilities instance) {
         mDeviceCapabilities = instance;
@@ -30,14 +113,59 @@ class DeviceCapabilitiesCPU {
         mCPUArch = System.getProperty("os.arch");
     }
 
+    /**
+     * Return the latest load, which is 0 until the window has two samples.
+     */
     public JSONObject getInfo() {
-        getCPULoad();
+        synchronized (mLock) {
+            mLastRequestTime = SystemClock.elapsedRealtime();
+        }
+        startSampling();
+        return buildInfo();
+    }
+
+    /**
+     * Reply the info to the request of the instance, right away unless the
+     * load is still to be measured.
+     */
+    public void requestInfo(final int instanceID, final String asyncCallId) {
+        JSONObject info = getInfo();
+        synchronized (mLock) {
+            if (mWindow.size() < 2 && mSamplerHandler != null) {
+                // The first sample is taken before this runs if it's still
+                // pending, both are posted to the sampler thread.
+                long delay = MIN_SAMPLE_INTERVAL;
+                if (!mWindow.isEmpty()) {
+                    delay = mWindow.getFirst().mTime + MIN_SAMPLE_INTERVAL
+                            - SystemClock.elapsedRealtime();
+                }
+                mSamplerHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        measureFirstLoads();
+                        mDeviceCapabilities.postDeviceInfo(instanceID, asyncCallId, buildInfo());
+                    }
+                }, Math.max(0, delay));
+                return;
+            }
+        }
+        mDeviceCapabilities.postDeviceInfo(instanceID, asyncCallId, info);
+    }
+
+    private JSONObject buildInfo() {
+        double load;
+        double[] coreLoads;
+        synchronized (mLock) {
+            load = mCPULoad;
+            coreLoads = mCoreLoads;
+        }
 
         JSONObject out = new JSONObject();
         try {
             out.put("numOfProcessors", mCoreNum);
             out.put("archName", mCPUArch);
-            out.put("load", mCPULoad);
+            out.put("load", load);
+            out.put("cores", getCoreLoadsJSON(coreLoads));
         } catch (JSONException e) {
             return mDeviceCapabilities.setErrorMessage(e.toString());
         }
@@ -46,48 +174,204 @@ class DeviceCapabilitiesCPU {
     }
 
     /**
-     * The algorithm here can be found at:
-     * http://stackoverflow.com/questions/3017162/how-to-get-total-cpu-usage-in-linux-c
+     * Start to broadcast the CPU load at the given interval.
+     * @param instanceID The instance listening to the load.
+     * @param interval The interval in milliseconds.
      */
-    private boolean getCPULoad() {
-        try {
-            RandomAccessFile file = new RandomAccessFile(SYSTEM_INFO_STAT_FILE, "r");
-            String line = file.readLine();
+    public void registerListener(int instanceID, long interval) {
+        synchronized (mLock) {
+            mSampleInterval = Math.max(interval, MIN_SAMPLE_INTERVAL);
+            mListeners.add(instanceID);
+            mIsListening = true;
+        }
+        startSampling();
+    }
 
-            String[] arrs = line.split("\\s+");
-            long total1 = 0;
-            for (int i = 1; i < arrs.length; ++i) {
-                total1 += Long.parseLong(arrs[i]);
-            }
-            // arrs[4] is the time spent in idle tasks.
-            long used1 = total1 - Long.parseLong(arrs[4]);
-            try {
-                Thread.sleep(1000);
-            } catch (Exception e) {
-                mCPULoad = 0.0;
-                return false;
+    /**
+     * Stop broadcasting the CPU load once no instance listens to it. The
+     * sampler stops after IDLE_TIMEOUT then.
+     * @param instanceID The instance not listening to the load any more.
+     */
+    public void unregisterListener(int instanceID) {
+        synchronized (mLock) {
+            mListeners.remove(instanceID);
+            mIsListening = !mListeners.isEmpty();
+        }
+    }
+
+    public void onResume() {
+        synchronized (mLock) {
+            mIsPaused = false;
+        }
+        // Keep broadcasting the load if there is a listener, otherwise wait
+        // for the next request.
+        if (mIsListening) startSampling();
+    }
+
+    public void onPause() {
+        synchronized (mLock) {
+            mIsPaused = true;
+            mIsSampling = false;
+            if (mSamplerHandler != null) mSamplerHandler.removeCallbacks(mSampleRunnable);
+        }
+    }
+
+    public void onDestroy() {
+        synchronized (mLock) {
+            mListeners.clear();
+            mIsListening = false;
+            mIsSampling = false;
+            if (mSamplerThread == null) return;
+            mSamplerHandler.removeCallbacks(mSampleRunnable);
+            mSamplerHandler = null;
+            mSamplerThread.quit();
+            mSamplerThread = null;
+        }
+    }
+
+    private void startSampling() {
+        synchronized (mLock) {
+            if (mSamplerThread == null) {
+                mSamplerThread = new HandlerThread(TAG);
+                mSamplerThread.start();
+                mSamplerHandler = new Handler(mSamplerThread.getLooper());
+
+                // Take the first sample right now, so the load could be
+                // computed on the next request.
+                mSamplerHandler.post(mFirstSampleRunnable);
             }
+            if (mIsSampling || mIsPaused) return;
+            mIsSampling = true;
+            mSamplerHandler.postDelayed(mSampleRunnable, mSampleInterval);
+        }
+    }
+
+    // Called on the sampler thread, MIN_SAMPLE_INTERVAL after the first
+    // sample. Takes the second one unless the sampler already did.
+    private void measureFirstLoads() {
+        synchronized (mLock) {
+            if (mWindow.size() >= 2) return;
+        }
 
-            file.seek(0);
-            line = file.readLine();
-            file.close();
+        Sample sample = readSample();
+        if (sample != null) addSample(sample);
+    }
+
+    private void addSample(Sample sample) {
+        synchronized (mLock) {
+            // Taken before the latest one by another thread, which is enough.
+            if (!mWindow.isEmpty() && sample.mTime < mWindow.getLast().mTime) return;
+            mWindow.add(sample);
+            while (mWindow.size() > WINDOW_SIZE) mWindow.removeFirst();
+            computeLoads(mWindow.getFirst(), mWindow.getLast());
+        }
+    }
+
+    // Must be called with mLock held.
+    private void computeLoads(Sample from, Sample to) {
+        int count = Math.min(from.mTotal.length, to.mTotal.length);
+        if (count == 0) return;
+
+        mCPULoad = getLoad(from, to, 0);
+        double[] coreLoads = new double[count - 1];
+        for (int i = 1; i < count; ++i) {
+            coreLoads[i - 1] = getLoad(from, to, i);
+        }
+        mCoreLoads = coreLoads;
+    }
+
+    private static double getLoad(Sample from, Sample to, int index) {
+        // The core was offline when one of the samples was taken.
+        if (from.mTotal[index] < 0 || to.mTotal[index] < 0) return 0.0;
+        long total = to.mTotal[index] - from.mTotal[index];
+        long used = to.mUsed[index] - from.mUsed[index];
+        if (total <= 0) return 0.0;
+        return Math.max(0.0, Math.min(1.0, (double) used / total));
+    }
 
-            arrs = line.split("\\s+");
-            long total2 = 0;
-            for (int i = 1; i < arrs.length; ++i) {
-                total2 += Long.parseLong(arrs[i]);
+    private static JSONArray getCoreLoadsJSON(double[] coreLoads) throws JSONException {
+        JSONArray cores = new JSONArray();
+        for (double coreLoad : coreLoads) {
+            JSONObject core = new JSONObject();
+            core.put("load", coreLoad);
+            cores.put(core);
+        }
+        return cores;
+    }
+
+    // Called on the sampler thread, it doesn't count as a request.
+    private void notifyLoadChanged() {
+        Integer[] listeners;
+        synchronized (mLock) {
+            listeners = mListeners.toArray(new Integer[mListeners.size()]);
+        }
+        if (listeners.length == 0) return;
+
+        String message;
+        try {
+            JSONObject out = new JSONObject();
+            out.put("reply", "updateCPULoad");
+            out.put("eventName", "cpuload");
+            out.put("data", buildInfo());
+            message = out.toString();
+        } catch (JSONException e) {
+            mDeviceCapabilities.printErrorMessage(e);
+            return;
+        }
+
+        // Only the instances listening to the load get it.
+        for (int instanceID : listeners) {
+            mDeviceCapabilities.postMessage(instanceID, message);
+        }
+    }
+
+    /**
+     * Read the cumulative cpu time of all cpus and of each core.
+     * The algorithm here can be found at:
+     * http://stackoverflow.com/questions/3017162/how-to-get-total-cpu-usage-in-linux-c
+     */
+    private static Sample readSample() {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(SYSTEM_INFO_STAT_FILE));
+            ArrayList<long[]> values = new ArrayList<long[]>();
+            String line;
+            // The "cpu" line comes first, followed by one "cpuN" line per
+            // online core. Offline cores are missing.
+            while ((line = reader.readLine()) != null && line.startsWith("cpu")) {
+                String[] arrs = line.split("\\s+");
+                int index = arrs[0].length() == 3 ? 0 : Integer.parseInt(arrs[0].substring(3)) + 1;
+                long total = 0;
+                for (int i = 1; i < arrs.length; ++i) {
+                    total += Long.parseLong(arrs[i]);
+                }
+                while (values.size() <= index) values.add(null);
+                // arrs[4] is the time spent in idle tasks.
+                values.set(index, new long[] { total, total - Long.parseLong(arrs[4]) });
             }
-            // arrs[4] is the time spent in idle tasks.
-            long used2 = total2 - Long.parseLong(arrs[4]);
-            if (total2 == total1) {
-                mCPULoad = 0.0;
-            } else {
-                mCPULoad = (double) (used2 - used1) / (total2 - total1);
+
+            long[] total = new long[values.size()];
+            long[] used = new long[values.size()];
+            for (int i = 0; i < values.size(); ++i) {
+                long[] value = values.get(i);
+                total[i] = value != null ? value[0] : -1;
+                used[i] = value != null ? value[1] : -1;
             }
+            return new Sample(total, used);
         } catch (IOException e) {
-            mCPULoad = 0.0;
-            return false;
+            Log.w(TAG, "Failed to read " + SYSTEM_INFO_STAT_FILE);
+            return null;
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Failed to parse " + SYSTEM_INFO_STAT_FILE);
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Nothing to do.
+                }
+            }
         }
-        return true;
     }
 }
@@ -92,6 +92,15 @@ function _createConstClone(obj) {
 extension.setMessageListener(function(json) {
   var msg = JSON.parse(json);
 
+  if (msg.reply == 'updateCPULoad') {
+    for (var id in g_listeners) {
+      if (g_listeners[id]['eventName'] === msg.eventName) {
+        g_listeners[id]['callback'](_createConstClone(msg.data));
+      }
+    }
+    return;
+  }
+
   if (msg.reply == 'attachStorage' ||
       msg.reply == 'detachStorage' ||
       msg.reply == 'connectDisplay' ||
@@ -122,7 +131,7 @@ extension.setMessageListener(function(json) {
   delete g_async_calls[msg.asyncCallId];
 });
 
-function _addEventListener(isOn, eventName, callback) {
+function _addEventListener(isOn, eventName, callback, interval) {
   if (typeof eventName !== 'string') {
     console.log("Invalid parameters of eventName!");
     return -1;
@@ -182,6 +191,9 @@ function _addEventListener(isOn, eventName, callback) {
       'cmd': 'addEventListener',
       'eventName': listener.eventName
     };
+    // The interval in milliseconds of the 'cpuload' events.
+    if (typeof interval === 'number')
+      msg.interval = interval;
     extension.postMessage(JSON.stringify(msg));
   }
 
@@ -212,8 +224,28 @@ Object.defineProperty(exports, 'ondisplaydisconnect', {
   }
 });
 
-exports.addEventListener = function(eventName, callback) {
-  return _addEventListener(false, eventName, callback);
+exports.addEventListener = function(eventName, callback, interval) {
+  return _addEventListener(false, eventName, callback, interval);
+};
+
+exports.removeEventListener = function(listener_id) {
+  var listener = g_listeners[listener_id];
+  if (listener == null) {
+    console.log("Invalid listener id!");
+    return;
+  }
+  delete g_listeners[listener_id];
+
+  // Tell the native side once the last listener of the event is gone.
+  for (var id in g_listeners) {
+    if (g_listeners[id]['eventName'] === listener.eventName)
+      return;
+  }
+  var msg = {
+    'cmd': 'removeEventListener',
+    'eventName': listener.eventName
+  };
+  extension.postMessage(JSON.stringify(msg));
 };
 
 var _sendSyncMessage = function(msg) {
@@ -17,8 +17,8 @@ import org.xwalk.core.internal.XWalkLaunchScreenManager;
 public class LaunchScreenExtension extends XWalkExtensionInternal {
     public final static String JS_API_PATH = "jsapi/launch_screen_api.js";
 
-    private final static String NAME = "xwalk.launchscreen";
-    private final static String[] JS_ENTRY_POINTS = {
+    public final static String NAME = "xwalk.launchscreen";
+    public final static String[] JS_ENTRY_POINTS = {
         "window.screen.show"
     };
 
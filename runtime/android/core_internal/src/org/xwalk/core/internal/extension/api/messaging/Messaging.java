@@ -11,6 +11,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.database.Cursor;  
 import android.net.Uri; 
+import android.util.Log;
 
 import java.util.Date;
 import java.util.HashMap;
@@ -22,6 +23,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.xwalk.core.internal.extension.api.messaging.MessagingManager;
 import org.xwalk.core.internal.extension.api.messaging.MessagingSmsManager;
+import org.xwalk.core.internal.extension.CommandEnvelope;
 import org.xwalk.core.internal.extension.XWalkExtensionWithActivityStateListener;
 
 interface Command {
@@ -31,7 +33,9 @@ interface Command {
 public class Messaging extends XWalkExtensionWithActivityStateListener {
     public static final String JS_API_PATH = "jsapi/messaging_api.js";
 
-    private static final String NAME = "xwalk.experimental.messaging";
+    public static final String NAME = "xwalk.experimental.messaging";
+
+    private static final String TAG = "Messaging";
 
     private static HashMap<String, Command> sMethodMap = new HashMap<String, Command>();
 
@@ -40,6 +44,12 @@ public class Messaging extends XWalkExtensionWithActivityStateListener {
     private boolean isIntentFiltersRegistered = false;
 
     private void initMethodMap() {
+        // Sent by JavaScript when the first event listener is added. Nothing
+        // to do, the SMS events are listened to once the extension is created.
+        sMethodMap.put("msg_addEventListener", new Command() {
+            public void runCommand(int instanceID, JSONObject jsonMsg) {
+            };
+        });
         sMethodMap.put("msg_smsSend", new Command() {
             public void runCommand(int instanceID, JSONObject jsonMsg) {
                 mSmsManager.onSmsSend(instanceID, jsonMsg); 
@@ -60,6 +70,11 @@ public class Messaging extends XWalkExtensionWithActivityStateListener {
                 mMessagingManager.onMsgFindMessages(instanceID, jsonMsg);
             };
         });
+        sMethodMap.put("msg_countMessages", new Command() {
+            public void runCommand(int instanceID, JSONObject jsonMsg) {
+                mMessagingManager.onMsgCountMessages(instanceID, jsonMsg);
+            };
+        });
         sMethodMap.put("msg_getMessage", new Command() {
             public void runCommand(int instanceID, JSONObject jsonMsg) {
                 mMessagingManager.onMsgGetMessage(instanceID, jsonMsg);
@@ -87,19 +102,6 @@ public class Messaging extends XWalkExtensionWithActivityStateListener {
         });
     }
 
-    private String getCommandString(String message) {
-        if (message.isEmpty()) {
-            return "";
-        }
-
-        try {
-            return new JSONObject(message).getString("cmd");
-        } catch(Exception e) {
-            e.printStackTrace();
-            return "";
-        }
-    }
-
     public Messaging(String jsApiContent, Activity activity) {
         super(NAME, jsApiContent, activity);
         mSmsManager = new MessagingSmsManager(activity, this);
@@ -114,13 +116,15 @@ public class Messaging extends XWalkExtensionWithActivityStateListener {
 
     @Override
     public void onMessage(int instanceID, String message) {
-        Command command = sMethodMap.get(getCommandString(message));
+        CommandEnvelope envelope = CommandEnvelope.parse(message);
+        if (null == envelope) return;
 
+        Command command = sMethodMap.get(envelope.getCommand());
         if (null != command) {
             try {
-                command.runCommand(instanceID, new JSONObject(message));
+                command.runCommand(instanceID, envelope.getPayload());
             } catch(Exception e) {
-                e.printStackTrace();
+                Log.e(TAG, "Failed to run " + envelope.getCommand() + ": " + e.toString());
                 return;
             }
         }
@@ -128,7 +132,8 @@ public class Messaging extends XWalkExtensionWithActivityStateListener {
 
     @Override
     public String onSyncMessage(int instanceID, String message) {
-        if (getCommandString(message).equals("msg_smsServiceId")) {
+        CommandEnvelope envelope = CommandEnvelope.parse(message);
+        if (null != envelope && envelope.getCommand().equals("msg_smsServiceId")) {
             return mSmsManager.getServiceIds();
         }
         return "";
@@ -142,6 +147,8 @@ public class Messaging extends XWalkExtensionWithActivityStateListener {
         } else if (newState == ActivityState.STARTED && !isIntentFiltersRegistered) {
             mSmsManager.registerIntentFilters();
             isIntentFiltersRegistered = true;
+        } else if (newState == ActivityState.DESTROYED) {
+            mMessagingManager.onDestroy();
         }
     }
 }
@@ -16,6 +16,18 @@ import org.xwalk.core.internal.extension.api.messaging.MessagingSmsConstMaps;
 import org.xwalk.core.internal.extension.api.messaging.MessagingSmsConsts;
 
 public class MessagingHelpers {
+    // The columns read by SmsMessageCursor2Json().
+    public static final String[] SMS_PROJECTION = new String[] {
+        MessagingSmsConsts.ID,
+        MessagingSmsConsts.THREAD_ID,
+        MessagingSmsConsts.ADDRESS,
+        MessagingSmsConsts.DATE,
+        MessagingSmsConsts.READ,
+        MessagingSmsConsts.BODY,
+        MessagingSmsConsts.TYPE,
+        MessagingSmsConsts.STATUS
+    };
+
     private static String buildSqlClause(boolean hasAnd, String condition, String column) {
         String clause = hasAnd ? " AND " : ""; 
         clause += String.format(condition, column);
@@ -97,26 +109,60 @@ public class MessagingHelpers {
         return new Object[]{filterString, argsStringList.toArray(new String[argsStringList.size()])};
     }
 
-    public static String buildSqlFilterOptionString(JSONObject filterOption) {
-        String filterOptionString = "";
+    /**
+     * @return The column to sort the messages by, the date by default.
+     */
+    public static String getSortColumn(JSONObject filterOption) {
+        String column = null;
+        if (filterOption != null && filterOption.has("sortBy")) {
+            column = MessagingSmsConstMaps.smsTableColumnDict.get(filterOption.optString("sortBy"));
+        }
+        return (column != null) ? column : MessagingSmsConsts.DATE;
+    }
 
-        try {
-            if (filterOption.has("sortBy")) {
-                filterOptionString += " " +
-                    MessagingSmsConstMaps.smsTableColumnDict.get(filterOption.getString("sortBy"));
-            }
+    /**
+     * @return Whether to sort in descending order. Without any sorting option,
+     *         the newest messages come first, like the default of the provider.
+     */
+    public static boolean isDescending(JSONObject filterOption) {
+        if (filterOption == null) return true;
+        if (filterOption.has("sortOrder")) {
+            return "DESC".equals(MessagingSmsConstMaps.sortOrderDict.get(
+                    filterOption.optString("sortOrder")));
+        }
+        return !filterOption.has("sortBy");
+    }
 
-            if (filterOption.has("sortOrder")) {
-                filterOptionString += " " + 
-                    MessagingSmsConstMaps.sortOrderDict.get(filterOption.getString("sortOrder"));
-            }
+    /**
+     * Build the sort order with the limit and offset of the query.
+     * The message id is always the last sort column, so that the order is
+     * stable and could be continued from a keyset cursor.
+     * @param filterOption The options of findMessages().
+     * @param ignoreOffset Whether to ignore the offset, e.g. when a keyset
+     *                     cursor is used instead.
+     * @return e.g. "date DESC, _id DESC LIMIT 20 OFFSET 40"
+     */
+    public static String buildSqlFilterOptionString(JSONObject filterOption, boolean ignoreOffset) {
+        String column = getSortColumn(filterOption);
+        String order = isDescending(filterOption) ? " DESC" : " ASC";
+        String filterOptionString = column + order;
+        if (!column.equals(MessagingSmsConsts.ID)) {
+            filterOptionString += ", " + MessagingSmsConsts.ID + order;
+        }
+        if (filterOption == null) return filterOptionString;
 
-            if (filterOption.has("limit")) {
-                filterOptionString += " LIMIT " + filterOption.getString("limit");
+        try {
+            boolean hasLimit = filterOption.has("limit");
+            if (hasLimit) {
+                filterOptionString += " LIMIT " + filterOption.getLong("limit");
+            }
+            if (filterOption.has("offset") && !ignoreOffset) {
+                // SQLite doesn't allow OFFSET without LIMIT.
+                if (!hasLimit) filterOptionString += " LIMIT -1";
+                filterOptionString += " OFFSET " + filterOption.getLong("offset");
             }
         } catch (JSONException e) {
             e.printStackTrace();
-            return "";
         }
 
         return filterOptionString;
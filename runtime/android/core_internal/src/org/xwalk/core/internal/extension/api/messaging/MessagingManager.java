@@ -21,7 +21,12 @@ import android.util.Log;
 
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -37,6 +42,14 @@ public class MessagingManager {
     private final Activity mMainActivity;
     private final Messaging mMessagingHandler;
 
+    // The default and maximum numbers of messages posted to JavaScript in
+    // one message by findMessages().
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // The queries run on a worker thread, in the order they are received.
+    private final ExecutorService mQueryExecutor = Executors.newSingleThreadExecutor();
+
     MessagingManager(Activity activity, Messaging messaging) {
         mMainActivity = activity;
         mMessagingHandler = messaging;
@@ -50,6 +63,14 @@ public class MessagingManager {
         queryMessage(instanceID, jsonMsg);
     }
 
+    public void onMsgCountMessages(int instanceID, JSONObject jsonMsg) {
+        queryMessage(instanceID, jsonMsg);
+    }
+
+    void onDestroy() {
+        mQueryExecutor.shutdownNow();
+    }
+
     public void onMsgDeleteMessage(int instanceID, JSONObject jsonMsg) {
         operation(instanceID, jsonMsg);
     }
@@ -74,7 +95,7 @@ public class MessagingManager {
         }
     }
 
-    private void queryMessage(int instanceID, JSONObject jsonMsg) {
+    private void queryMessage(final int instanceID, JSONObject jsonMsg) {
         String asyncCallId = null, msgType = null, cmd = null, messageID = null;
         JSONObject filter = null, filterOption = null;
         
@@ -97,7 +118,7 @@ public class MessagingManager {
                 msgType = eventBody.getString("type");
             }
         } catch (JSONException e) {
-            e.printStackTrace();
+            Log.e(TAG, e.toString());
             return;
         }
 
@@ -106,60 +127,191 @@ public class MessagingManager {
             return;
         }
 
-        ContentResolver cr = mMainActivity.getContentResolver();
-        Uri contentUri = getUri(msgType);
+        final Uri contentUri = getUri(msgType);
         String sqlString = null;
         String[] sqlArgs = null;
-        String sqlOption = null;
 
-        if (cmd.equals("msg_findMessages")) {
-            Object[] retValue = MessagingHelpers.buildSqlFilterString(filter);
-            sqlString = (String)retValue[0];
-            sqlArgs = (String[])retValue[1];
-            sqlOption = MessagingHelpers.buildSqlFilterOptionString(filterOption);
-        } else {
+        if (cmd.equals("msg_getMessage")) {
             sqlString = String.format("%s = ?", MessagingSmsConsts.ID);
             sqlArgs = new String[]{messageID};
+        } else {
+            Object[] retValue = (null != filter) ?
+                    MessagingHelpers.buildSqlFilterString(filter) : new Object[]{null, new String[0]};
+            if (retValue == null) return;
+            sqlString = (String)retValue[0];
+            sqlArgs = (String[])retValue[1];
         }
 
-        Cursor cursor = cr.query(contentUri, null, sqlString, sqlArgs, sqlOption);
+        // TODO:(shawn) Pending on Android MMS related api get public. 
+        // MMS is implemented in native messaging app, but they are not exposed as public APIs.
+        // We ever tired to backport ~60 files with MMS feature supporting. Considering the pros and 
+        // cons, we would rather break the MMS feature than doing the ugly backport.
+        final boolean isMms = msgType.equals("mms");
+        final String finalAsyncCallId = asyncCallId, finalCmd = cmd, where = sqlString;
+        final String[] whereArgs = sqlArgs;
+        final JSONObject options = filterOption;
+        if (mQueryExecutor.isShutdown()) return;
+        mQueryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (finalCmd.equals("msg_countMessages")) {
+                    countMessages(instanceID, finalAsyncCallId, finalCmd,
+                            contentUri, where, whereArgs, isMms);
+                } else {
+                    findMessages(instanceID, finalAsyncCallId, finalCmd,
+                            contentUri, where, whereArgs, options, isMms);
+                }
+            }
+        });
+    }
 
-        JSONObject jsonMsgRet = null;
-        JSONArray results = null;
-        try {
-            jsonMsgRet = new JSONObject();
-            results = new JSONArray(); 
-            jsonMsgRet.put("asyncCallId", asyncCallId);
-            jsonMsgRet.put("cmd", cmd + "_ret");
-            JSONObject jsData = new JSONObject();
-            jsonMsgRet.put("data", jsData);
-            jsData.put("error", false);
-            JSONObject jsBody = new JSONObject();
-            jsData.put("body", jsBody);
-            jsBody.put("results", results);
-        } catch (JSONException e) {
-            e.printStackTrace();
+    // Query the messages and post them in pages of at most "pageSize"
+    // messages. Only the last page is posted with the "_ret" command, along
+    // with a keyset cursor to continue after its last message.
+    private void findMessages(int instanceID, String asyncCallId, String cmd, Uri contentUri,
+            String where, String[] whereArgs, JSONObject filterOption, boolean isMms) {
+        if (isMms) {
+            postResults(instanceID, asyncCallId, cmd, new JSONArray(), true, null);
             return;
         }
-        
+
+        int pageSize = DEFAULT_PAGE_SIZE;
+        JSONObject keyset = null;
+        String sortColumn = MessagingHelpers.getSortColumn(filterOption);
+        boolean descending = MessagingHelpers.isDescending(filterOption);
+        boolean hasKeyset = sortColumn.equals(MessagingSmsConsts.DATE) ||
+                sortColumn.equals(MessagingSmsConsts.ID);
+        if (filterOption != null) {
+            int size = filterOption.optInt("pageSize", DEFAULT_PAGE_SIZE);
+            pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+            keyset = hasKeyset ? filterOption.optJSONObject("cursor") : null;
+        }
+
+        List<String> args = new ArrayList<String>(Arrays.asList(whereArgs));
+        if (keyset != null) {
+            String op = descending ? " < ?" : " > ?";
+            String keysetClause;
+            if (sortColumn.equals(MessagingSmsConsts.DATE)) {
+                keysetClause = String.format("(%s%s OR (%s = ? AND %s%s))",
+                        MessagingSmsConsts.DATE, op, MessagingSmsConsts.DATE,
+                        MessagingSmsConsts.ID, op);
+                String date = String.valueOf(keyset.optLong("date"));
+                args.add(date);
+                args.add(date);
+            } else {
+                keysetClause = MessagingSmsConsts.ID + op;
+            }
+            args.add(String.valueOf(keyset.optLong("id")));
+            where = (where == null || where.isEmpty()) ?
+                    keysetClause : "(" + where + ") AND " + keysetClause;
+        }
+        String sortOrder = MessagingHelpers.buildSqlFilterOptionString(
+                filterOption, keyset != null);
+
+        ContentResolver cr = mMainActivity.getContentResolver();
+        Cursor cursor = null;
+        JSONObject nextCursor = null;
         try {
-            if (msgType.equals("mms")) {
-                // TODO:(shawn) Pending on Android MMS related api get public. 
-                // MMS is implemented in native messaging app, but they are not exposed as public APIs.
-                // We ever tired to backport ~60 files with MMS feature supporting. Considering the pros and 
-                // cons, we would rather break the MMS feature than doing the ugly backport.
-            } else if (cursor.getCount() > 0) {
+            cursor = cr.query(contentUri, MessagingHelpers.SMS_PROJECTION, where,
+                    args.toArray(new String[args.size()]), sortOrder);
+            JSONArray results = new JSONArray();
+            if (cursor != null) {
+                int idIndex = cursor.getColumnIndex(MessagingSmsConsts.ID);
+                int dateIndex = cursor.getColumnIndex(MessagingSmsConsts.DATE);
                 while (cursor.moveToNext()) {
                     JSONObject jsonSmsObj = MessagingHelpers.SmsMessageCursor2Json(cursor);
                     if (null != jsonSmsObj) {
                         results.put(jsonSmsObj);
                     }
+                    if (cursor.isLast()) {
+                        if (hasKeyset) {
+                            nextCursor = new JSONObject();
+                            nextCursor.put("date", cursor.getLong(dateIndex));
+                            nextCursor.put("id", cursor.getLong(idIndex));
+                        }
+                    } else if (results.length() >= pageSize) {
+                        postResults(instanceID, asyncCallId, cmd, results, false, null);
+                        results = new JSONArray();
+                    }
                 }
             }
+            postResults(instanceID, asyncCallId, cmd, results, true, nextCursor);
+        } catch (SecurityException e) {
+            Log.e(TAG, "findMessages: " + e.toString());
+            postError(instanceID, asyncCallId, cmd, e.toString());
+        } catch (JSONException e) {
+            Log.e(TAG, e.toString());
         } finally {
-            cursor.close();
+            if (cursor != null) cursor.close();
         }
-        
+    }
+
+    private void countMessages(int instanceID, String asyncCallId, String cmd, Uri contentUri,
+            String where, String[] whereArgs, boolean isMms) {
+        long count = 0;
+        if (!isMms) {
+            ContentResolver cr = mMainActivity.getContentResolver();
+            Cursor cursor = null;
+            try {
+                try {
+                    cursor = cr.query(contentUri, new String[] { "COUNT(*)" },
+                            where, whereArgs, null);
+                    if (cursor != null && cursor.moveToFirst()) count = cursor.getLong(0);
+                } catch (IllegalArgumentException e) {
+                    // The provider doesn't accept the aggregate projection, so
+                    // count the rows of the ids instead.
+                    if (cursor != null) cursor.close();
+                    cursor = cr.query(contentUri, new String[] { MessagingSmsConsts.ID },
+                            where, whereArgs, null);
+                    if (cursor != null) count = cursor.getCount();
+                }
+            } catch (SecurityException e) {
+                Log.e(TAG, "countMessages: " + e.toString());
+                postError(instanceID, asyncCallId, cmd, e.toString());
+                return;
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+        }
+
+        try {
+            JSONObject jsBody = new JSONObject();
+            jsBody.put("count", count);
+            postMessage(instanceID, asyncCallId, cmd + "_ret", false, jsBody);
+        } catch (JSONException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
+    private void postResults(int instanceID, String asyncCallId, String cmd,
+            JSONArray results, boolean isLast, JSONObject nextCursor) {
+        try {
+            JSONObject jsBody = new JSONObject();
+            jsBody.put("results", results);
+            if (nextCursor != null) jsBody.put("cursor", nextCursor);
+            postMessage(instanceID, asyncCallId, cmd + (isLast ? "_ret" : "_page"), false, jsBody);
+        } catch (JSONException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
+    private void postError(int instanceID, String asyncCallId, String cmd, String error) {
+        try {
+            postMessage(instanceID, asyncCallId, cmd + "_ret", true, error);
+        } catch (JSONException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
+    private void postMessage(int instanceID, String asyncCallId, String cmd,
+            boolean error, Object body) throws JSONException {
+        JSONObject jsonMsgRet = new JSONObject();
+        jsonMsgRet.put("asyncCallId", asyncCallId);
+        jsonMsgRet.put("cmd", cmd);
+        JSONObject jsData = new JSONObject();
+        jsonMsgRet.put("data", jsData);
+        jsData.put("error", error);
+        jsData.put("body", body);
         mMessagingHandler.postMessage(instanceID, jsonMsgRet.toString());
     }
 
@@ -182,7 +334,7 @@ public class MessagingManager {
             }
             msgType = eventBody.getString("type");
         } catch (JSONException e) {
-            e.printStackTrace();
+            Log.e(TAG, e.toString());
             return;
         }
 
@@ -221,7 +373,7 @@ public class MessagingManager {
             }
             jsonMsgRet.put("cmd", cmd + "_ret");
         } catch (JSONException e) {
-            e.printStackTrace();
+            Log.e(TAG, e.toString());
             return;
         }
 
@@ -5,6 +5,7 @@
 var g_next_async_call_id = 0;
 var g_async_calls = [];
 var g_listeners = [];
+var g_listening = false;
 
 // Preserve 6 spaces to hold onreceived, onsent, ondeliverysuccess,
 // ondeliveryerror, onserviceadded and onserviceremoved's
@@ -14,6 +15,7 @@ var g_next_async_call_id = 6;
 function AsyncCall(resolve, reject) {
   this.resolve = resolve;
   this.reject = reject;
+  this.results = null;
 }
 
 function createPromise(msg) {
@@ -176,6 +178,13 @@ function _addEventListener(isOn, eventName, callback) {
       g_listeners[listener_id] = listener;
     }
 
+  // The native side may not be listening to the SMS events before it gets
+  // the first message, so tell it once there is a listener.
+  if (!g_listening) {
+    g_listening = true;
+    extension.postMessage(JSON.stringify({ cmd: "msg_addEventListener" }));
+  }
+
   return listener_id;
 }
 
@@ -222,33 +231,45 @@ MessagingCursor.prototype.previous = function() {
   return ret;
 }
 
+// The results of findMessages() come in pages, the last one comes with the
+// "msg_findMessages_ret" command.
+function handleFindMessagesPage(msgObj) {
+  var call = g_async_calls[msgObj.asyncCallId];
+  call.results = (call.results || []).concat(msgObj.data.body.results);
+}
+
 function handleFindMessages(msgObj) {
+  var call = g_async_calls[msgObj.asyncCallId];
   if (msgObj.data.error) {
-    if (_isFunction(g_promises[msgObj.asyncCallId].reject)) {
-      g_promises[msgObj.asyncCallId].reject(msgObj.data.body);
+    if (_isFunction(call.reject)) {
+      call.reject(msgObj.data.body);
     }
   } else {
-    if (_isFunction(g_promises[msgObj.asyncCallId].resolve)) {
-      var cursor = new MessagingCursor(msgObj.data.body.results);
-      g_promises[msgObj.asyncCallId].resolve(cursor);
+    if (_isFunction(call.resolve)) {
+      var results = msgObj.data.body.results;
+      if (call.results) results = call.results.concat(results);
+      var cursor = new MessagingCursor(results);
+      // Pass it as options.cursor to find the messages after the last one.
+      cursor.nextCursor = msgObj.data.body.cursor || null;
+      call.resolve(cursor);
     }
   }
 
-  delete g_promises[msgObj.asyncCallId];
+  delete g_async_calls[msgObj.asyncCallId];
 }
 
 function handlePromise(msgObj) {
   if (msgObj.data.error) {
-    if (_isFunction(g_promises[msgObj.asyncCallId].reject)) {
-      g_promises[msgObj.asyncCallId].reject(msgObj.data.body);
+    if (_isFunction(g_async_calls[msgObj.asyncCallId].reject)) {
+      g_async_calls[msgObj.asyncCallId].reject(msgObj.data.body);
     }
   } else {
-    if (_isFunction(g_promises[msgObj.asyncCallId].resolve)) {
-      g_promises[msgObj.asyncCallId].resolve(msgObj.data.body);
+    if (_isFunction(g_async_calls[msgObj.asyncCallId].resolve)) {
+      g_async_calls[msgObj.asyncCallId].resolve(msgObj.data.body);
     }
   }
 
-  delete g_promises[msgObj.asyncCallId];
+  delete g_async_calls[msgObj.asyncCallId];
 }
 
 extension.setMessageListener(function(json) {
@@ -264,6 +285,10 @@ extension.setMessageListener(function(json) {
       handleEvent(_msg);
       break;
     }
+    case "msg_findMessages_page": {
+      handleFindMessagesPage(_msg);
+      break;
+    }
     case "msg_findMessages_ret": {
       handleFindMessages(_msg);
       break;
@@ -271,6 +296,7 @@ extension.setMessageListener(function(json) {
     case "msg_smsSend_ret":
     case "msg_smsClear_ret":
     case "msg_smsSegmentInfo_ret":
+    case "msg_countMessages_ret":
     case "msg_getMessage_ret":
     case "msg_deleteMessage_ret":
     case "msg_deleteConversation_ret":
@@ -284,6 +310,9 @@ extension.setMessageListener(function(json) {
   }
 });
 
+// Besides sortBy, sortOrder and limit, the options could have an offset, or
+// the nextCursor of a previous result as cursor, to find the next messages.
+// The results are sent in pages of options.pageSize messages.
 exports.findMessages = function(filter, options) {
   var _msg = {
     cmd: "msg_findMessages",
@@ -295,6 +324,17 @@ exports.findMessages = function(filter, options) {
   return createPromise(_msg);
 }
 
+// Resolved with { count: <number of the matching messages> }.
+exports.countMessages = function(filter) {
+  var _msg = {
+    cmd: "msg_countMessages",
+    data: {
+      filter: filter
+    }
+  }
+  return createPromise(_msg);
+}
+
 exports.findConversations = function(groupBy, filter, options) {
   // TODO:(shawn) Spec is not ready for this part.
 }
@@ -167,6 +167,19 @@ AndroidStreamReaderURLRequestJobDelegateImpl::OpenInputStream(
     DLOG(ERROR) << "Unable to open input stream for Android URL";
     return scoped_ptr<InputStream>();
   }
+
+  // Uncompressed assets are read directly from the file descriptor.
+  int fd = xwalk::Java_AndroidProtocolHandler_getAssetFd(env, stream.obj());
+  if (!ClearException(env) && fd != -1) {
+    int64_t offset = xwalk::Java_AndroidProtocolHandler_getAssetFdOffset(
+        env, stream.obj());
+    int64_t length = xwalk::Java_AndroidProtocolHandler_getAssetFdLength(
+        env, stream.obj());
+    if (!ClearException(env) && offset >= 0 && length >= 0) {
+      return make_scoped_ptr<InputStream>(
+          new InputStreamImpl(stream, fd, offset, length));
+    }
+  }
   return make_scoped_ptr<InputStream>(new InputStreamImpl(stream));
 }
 
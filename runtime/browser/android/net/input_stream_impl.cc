@@ -4,6 +4,8 @@
 
 #include "xwalk/runtime/browser/android/net/input_stream_impl.h"
 
+#include <unistd.h>
+
 #include <algorithm>
 
 #include "base/android/jni_android.h"
@@ -14,6 +16,7 @@
 #pragma GCC diagnostic ignored "-Wunused-function"
 #include "jni/InputStream_jni.h"
 #pragma GCC diagnostic pop
+#include "base/posix/eintr_wrapper.h"
 #include "net/base/io_buffer.h"
 
 using base::android::AttachCurrentThread;
@@ -42,12 +45,26 @@ const InputStreamImpl* InputStreamImpl::FromInputStream(
 // TODO(shouqun): Use unsafe version for all Java_InputStream methods in this
 // file once BUG 157880 is fixed and implement graceful exception handling.
 
-InputStreamImpl::InputStreamImpl() {
+InputStreamImpl::InputStreamImpl()
+    : fd_(-1), offset_(0), length_(0), position_(0) {
 }
 
 InputStreamImpl::InputStreamImpl(const JavaRef<jobject>& stream)
-    : jobject_(stream) {
+    : jobject_(stream), fd_(-1), offset_(0), length_(0), position_(0) {
+  DCHECK(!stream.is_null());
+}
+
+InputStreamImpl::InputStreamImpl(const JavaRef<jobject>& stream,
+                                 int fd, int64_t offset, int64_t length)
+    : jobject_(stream),
+      fd_(fd),
+      offset_(offset),
+      length_(length),
+      position_(0) {
   DCHECK(!stream.is_null());
+  DCHECK_GE(fd, 0);
+  DCHECK_GE(offset, 0);
+  DCHECK_GE(length, 0);
 }
 
 InputStreamImpl::~InputStreamImpl() {
@@ -56,6 +73,12 @@ InputStreamImpl::~InputStreamImpl() {
 }
 
 bool InputStreamImpl::BytesAvailable(int* bytes_available) const {
+  if (fd_ != -1) {
+    *bytes_available = static_cast<int>(
+        std::min<int64_t>(length_ - position_, kint32max));
+    return true;
+  }
+
   JNIEnv* env = AttachCurrentThread();
   int bytes = Java_InputStream_available(env, jobject_.obj());
   if (ClearException(env))
@@ -65,6 +88,14 @@ bool InputStreamImpl::BytesAvailable(int* bytes_available) const {
 }
 
 bool InputStreamImpl::Skip(int64_t n, int64_t* bytes_skipped) {
+  if (fd_ != -1) {
+    if (n < 0)
+      return false;
+    *bytes_skipped = std::min(n, length_ - position_);
+    position_ += *bytes_skipped;
+    return true;
+  }
+
   JNIEnv* env = AttachCurrentThread();
   int bytes = Java_InputStream_skip(env, jobject_.obj(), n);
   if (ClearException(env))
@@ -76,6 +107,22 @@ bool InputStreamImpl::Skip(int64_t n, int64_t* bytes_skipped) {
 }
 
 bool InputStreamImpl::Read(net::IOBuffer* dest, int length, int* bytes_read) {
+  if (fd_ != -1) {
+    // Read straight into |dest|, the size of a read is not limited by the
+    // JNI transfer buffer.
+    *bytes_read = 0;
+    const int64_t read_size = std::min<int64_t>(length, length_ - position_);
+    if (read_size <= 0)
+      return true;
+    ssize_t byte_count = HANDLE_EINTR(pread(
+        fd_, dest->data(), read_size, offset_ + position_));
+    if (byte_count < 0)
+      return false;
+    position_ += byte_count;
+    *bytes_read = static_cast<int>(byte_count);
+    return true;
+  }
+
   JNIEnv* env = AttachCurrentThread();
   if (!buffer_.obj()) {
     // Allocate transfer buffer.
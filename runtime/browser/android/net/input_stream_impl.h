@@ -26,6 +26,11 @@ class InputStreamImpl : public InputStream {
   // |stream| should be an instance of the InputStream Java class.
   // |stream| can't be null.
   explicit InputStreamImpl(const base::android::JavaRef<jobject>& stream);
+  // |fd| is a file descriptor owned by |stream|, and the content of the
+  // stream is the |length| bytes starting at |offset| in the file. Reads
+  // are done directly from |fd| without going through JNI.
+  InputStreamImpl(const base::android::JavaRef<jobject>& stream,
+                  int fd, int64_t offset, int64_t length);
   ~InputStreamImpl() override;
 
   // Gets the underlying Java object. Guaranteed non-NULL.
@@ -44,6 +49,12 @@ class InputStreamImpl : public InputStream {
   base::android::ScopedJavaGlobalRef<jobject> jobject_;
   base::android::ScopedJavaGlobalRef<jbyteArray> buffer_;
 
+  // Direct file access, only valid if |fd_| is not -1.
+  int fd_;
+  int64_t offset_;
+  int64_t length_;
+  int64_t position_;
+
   DISALLOW_COPY_AND_ASSIGN(InputStreamImpl);
 };
 
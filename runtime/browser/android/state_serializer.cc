@@ -38,6 +38,39 @@ namespace {
 // future if we ever decide to support restoring from older versions.
 const uint32 AW_STATE_VERSION = 20130814;
 
+// Restore the navigation controller of |web_contents| from the entries, which
+// are taken by the controller.
+void RestoreNavigationController(
+    int selected_entry,
+    ScopedVector<content::NavigationEntry>* restored_entries,
+    content::WebContents* web_contents) {
+  // |web_contents| takes ownership of these entries after this call.
+  content::NavigationController& controller = web_contents->GetController();
+  controller.Restore(
+      selected_entry,
+      content::NavigationController::RESTORE_LAST_SESSION_EXITED_CLEANLY,
+      &restored_entries->get());
+  DCHECK_EQ(0u, restored_entries->size());
+
+  if (controller.GetActiveEntry()) {
+    // Set up the file access rights for the selected navigation entry.
+    // TODO(joth): This is duplicated from chrome/.../session_restore.cc and
+    // should be shared e.g. in  NavigationController. http://crbug.com/68222
+    const int id = web_contents->GetRenderProcessHost()->GetID();
+    const content::PageState& page_state =
+        controller.GetActiveEntry()->GetPageState();
+    const std::vector<base::FilePath>& file_paths =
+        page_state.GetReferencedFiles();
+    for (std::vector<base::FilePath>::const_iterator file = file_paths.begin();
+         file != file_paths.end(); ++file) {
+      content::ChildProcessSecurityPolicy::GetInstance()->GrantReadFile(id,
+                                                                        *file);
+    }
+  }
+
+  controller.LoadIfNecessary();
+}
+
 }  // namespace
 
 bool WriteToPickle(const content::WebContents& web_contents,
@@ -106,32 +139,47 @@ bool RestoreFromPickle(PickleIterator* iterator,
     restored_entries[i]->SetPageID(i);
   }
 
-  // |web_contents| takes ownership of these entries after this call.
-  content::NavigationController& controller = web_contents->GetController();
-  controller.Restore(
-      selected_entry,
-      content::NavigationController::RESTORE_LAST_SESSION_EXITED_CLEANLY,
-      &restored_entries.get());
-  DCHECK_EQ(0u, restored_entries.size());
+  RestoreNavigationController(selected_entry, &restored_entries, web_contents);
+  return true;
+}
 
-  if (controller.GetActiveEntry()) {
-    // Set up the file access rights for the selected navigation entry.
-    // TODO(joth): This is duplicated from chrome/.../session_restore.cc and
-    // should be shared e.g. in  NavigationController. http://crbug.com/68222
-    const int id = web_contents->GetRenderProcessHost()->GetID();
-    const content::PageState& page_state =
-        controller.GetActiveEntry()->GetPageState();
-    const std::vector<base::FilePath>& file_paths =
-        page_state.GetReferencedFiles();
-    for (std::vector<base::FilePath>::const_iterator file = file_paths.begin();
-         file != file_paths.end(); ++file) {
-      content::ChildProcessSecurityPolicy::GetInstance()->GrantReadFile(id,
-                                                                        *file);
-    }
-  }
+bool WriteNavigationEntryWithHeaderToPickle(
+    const content::NavigationEntry& entry,
+    Pickle* pickle) {
+  DCHECK(pickle);
 
-  controller.LoadIfNecessary();
+  if (!internal::WriteHeaderToPickle(pickle))
+    return false;
+
+  return internal::WriteNavigationEntryToPickle(entry, pickle);
+}
+
+bool RestoreFromEntryPickles(const std::vector<const Pickle*>& pickles,
+                             int selected_entry,
+                             content::WebContents* web_contents) {
+  DCHECK(web_contents);
+
+  const int entry_count = static_cast<int>(pickles.size());
+  if (selected_entry < -1)
+    return false;
+  if (selected_entry >= entry_count)
+    return false;
+
+  ScopedVector<content::NavigationEntry> restored_entries;
+  for (int i = 0; i < entry_count; ++i) {
+    PickleIterator iterator(*pickles[i]);
+    if (!internal::RestoreHeaderFromPickle(&iterator))
+      return false;
+
+    restored_entries.push_back(content::NavigationEntry::Create());
+    if (!internal::RestoreNavigationEntryFromPickle(&iterator,
+                                                    restored_entries[i]))
+      return false;
+
+    restored_entries[i]->SetPageID(i);
+  }
 
+  RestoreNavigationController(selected_entry, &restored_entries, web_contents);
   return true;
 }
 
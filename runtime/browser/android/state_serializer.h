@@ -5,6 +5,8 @@
 #ifndef XWALK_RUNTIME_BROWSER_ANDROID_STATE_SERIALIZER_H_
 #define XWALK_RUNTIME_BROWSER_ANDROID_STATE_SERIALIZER_H_
 
+#include <vector>
+
 #include "base/compiler_specific.h"
 
 class Pickle;
@@ -30,6 +32,20 @@ bool WriteToPickle(const content::WebContents& web_contents,
 bool RestoreFromPickle(PickleIterator* iterator,
                        content::WebContents* web_contents) WARN_UNUSED_RESULT;
 
+// Write a navigation entry to a pickle of its own, so that the entries can be
+// saved separately. The pickle starts with the same header as above.
+bool WriteNavigationEntryWithHeaderToPickle(
+    const content::NavigationEntry& entry,
+    Pickle* pickle) WARN_UNUSED_RESULT;
+
+// Restore a WebContents from the pickles written by the function above, in
+// the order of the entries. |web_contents| will not be modified if function
+// returns false.
+bool RestoreFromEntryPickles(const std::vector<const Pickle*>& pickles,
+                             int selected_entry,
+                             content::WebContents* web_contents)
+    WARN_UNUSED_RESULT;
+
 
 namespace internal {
 // Functions below are individual helper functiosn called by functions above.
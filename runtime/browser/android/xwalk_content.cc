@@ -13,13 +13,16 @@
 #include "base/android/jni_array.h"
 #include "base/android/jni_string.h"
 #include "base/base_paths_android.h"
+#include "base/hash.h"
 #include "base/json/json_reader.h"
 #include "base/json/json_writer.h"
+#include "base/memory/scoped_vector.h"
 #include "base/path_service.h"
 #include "base/pickle.h"
 #include "content/public/browser/browser_context.h"
 #include "content/public/browser/browser_thread.h"
 #include "content/public/browser/devtools_agent_host.h"
+#include "content/public/browser/navigation_entry.h"
 #include "content/public/browser/render_process_host.h"
 #include "content/public/browser/render_view_host.h"
 #include "content/public/browser/web_contents.h"
@@ -409,6 +412,75 @@ jboolean XWalkContent::SetState(JNIEnv* env, jobject obj, jbyteArray state) {
   return RestoreFromPickle(&iterator, web_contents_.get());
 }
 
+ScopedJavaLocalRef<jintArray> XWalkContent::GetStateEntryIds(JNIEnv* env,
+                                                             jobject obj) {
+  const content::NavigationController& controller =
+      web_contents_->GetController();
+  std::vector<int> ids;
+  for (int i = 0; i < controller.GetEntryCount(); ++i)
+    ids.push_back(controller.GetEntryAtIndex(i)->GetUniqueID());
+  return base::android::ToJavaIntArray(env, ids);
+}
+
+jint XWalkContent::GetStateCurrentEntryIndex(JNIEnv* env, jobject obj) {
+  return web_contents_->GetController().GetCurrentEntryIndex();
+}
+
+ScopedJavaLocalRef<jobjectArray> XWalkContent::GetStateEntries(
+    JNIEnv* env,
+    jobject obj,
+    jboolean changed_only) {
+  const content::NavigationController& controller =
+      web_contents_->GetController();
+  const int entry_count = controller.GetEntryCount();
+  ScopedJavaLocalRef<jclass> byte_array_clazz(env, env->FindClass("[B"));
+  jobjectArray entries =
+      env->NewObjectArray(entry_count, byte_array_clazz.obj(), NULL);
+
+  // Only the entries still in the history are kept in the new hashes.
+  std::map<int, uint32> hashes;
+  for (int i = 0; i < entry_count; ++i) {
+    const content::NavigationEntry* entry = controller.GetEntryAtIndex(i);
+    Pickle pickle;
+    if (!WriteNavigationEntryWithHeaderToPickle(*entry, &pickle))
+      return ScopedJavaLocalRef<jobjectArray>(env, NULL);
+
+    const int id = entry->GetUniqueID();
+    const uint32 hash = base::Hash(static_cast<const char*>(pickle.data()),
+                                   pickle.size());
+    hashes[id] = hash;
+    std::map<int, uint32>::const_iterator saved = saved_entry_hashes_.find(id);
+    if (changed_only && saved != saved_entry_hashes_.end() &&
+        saved->second == hash) {
+      continue;
+    }
+
+    ScopedJavaLocalRef<jbyteArray> bytes = base::android::ToJavaByteArray(
+        env, reinterpret_cast<const uint8*>(pickle.data()), pickle.size());
+    env->SetObjectArrayElement(entries, i, bytes.obj());
+  }
+  saved_entry_hashes_.swap(hashes);
+  return ScopedJavaLocalRef<jobjectArray>(env, entries);
+}
+
+jboolean XWalkContent::SetStateEntries(JNIEnv* env,
+                                       jobject obj,
+                                       jobjectArray entries,
+                                       jint selected_entry) {
+  std::vector<std::string> entry_data;
+  base::android::JavaArrayOfByteArrayToStringVector(env, entries, &entry_data);
+
+  ScopedVector<Pickle> pickles;
+  std::vector<const Pickle*> pickle_ptrs;
+  for (size_t i = 0; i < entry_data.size(); ++i) {
+    pickles.push_back(new Pickle(entry_data[i].data(), entry_data[i].size()));
+    pickle_ptrs.push_back(pickles.back());
+  }
+
+  return RestoreFromEntryPickles(pickle_ptrs, selected_entry,
+                                 web_contents_.get());
+}
+
 static jlong Init(JNIEnv* env, jobject obj) {
   scoped_ptr<WebContents> web_contents(content::WebContents::Create(
       content::WebContents::CreateParams(
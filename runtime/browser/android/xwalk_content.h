@@ -7,6 +7,7 @@
 #define XWALK_RUNTIME_BROWSER_ANDROID_XWALK_CONTENT_H_
 
 #include <list>
+#include <map>
 #include <utility>
 
 #include "base/android/jni_weak_ref.h"
@@ -54,6 +55,20 @@ class XWalkContent {
   base::android::ScopedJavaLocalRef<jbyteArray> GetState(JNIEnv* env,
                                                          jobject obj);
   jboolean SetState(JNIEnv* env, jobject obj, jbyteArray state);
+  // Save and restore the navigation entries separately, so that the state
+  // could be saved incrementally. GetStateEntries() leaves null for the
+  // entries not changed since the last call if |changed_only| is true.
+  base::android::ScopedJavaLocalRef<jintArray> GetStateEntryIds(JNIEnv* env,
+                                                                jobject obj);
+  jint GetStateCurrentEntryIndex(JNIEnv* env, jobject obj);
+  base::android::ScopedJavaLocalRef<jobjectArray> GetStateEntries(
+      JNIEnv* env,
+      jobject obj,
+      jboolean changed_only);
+  jboolean SetStateEntries(JNIEnv* env,
+                           jobject obj,
+                           jobjectArray entries,
+                           jint selected_entry);
 
   XWalkRenderViewHostExt* render_view_host_ext() {
     return render_view_host_ext_.get();
@@ -91,6 +106,8 @@ class XWalkContent {
   scoped_ptr<XWalkContentsClientBridge> contents_client_bridge_;
   scoped_ptr<content::WebContents> web_contents_;
   scoped_ptr<XWalkContent> pending_contents_;
+  // The hashes of the entries returned by GetStateEntries(), by unique id.
+  std::map<int, uint32> saved_entry_hashes_;
 
   // GURL is supplied by the content layer as requesting frame.
   // Callback is supplied by the content layer, and is invoked with the result
@@ -0,0 +1,25 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.content.res.Resources;
+import android.util.TypedValue;
+
+/**
+ * Looks up the resources from a class of the library package, like the
+ * library code does through the resources of the app's Activity.
+ */
+public class LibraryResourcesCaller {
+    public static TypedValue getValue(Resources resources, int id) {
+        TypedValue value = new TypedValue();
+        resources.getValue(id, value, true);
+        return value;
+    }
+
+    public static int getIdentifier(Resources resources, String name, String defType,
+            String defPackage) {
+        return resources.getIdentifier(name, defType, defPackage);
+    }
+}
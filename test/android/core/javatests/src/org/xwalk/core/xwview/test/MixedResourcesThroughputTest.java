@@ -0,0 +1,183 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.xwview.test;
+
+import android.content.res.Resources;
+import android.content.res.Resources.NotFoundException;
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.TypedValue;
+
+import java.lang.reflect.Constructor;
+
+import org.chromium.base.test.util.Feature;
+import org.xwalk.core.internal.xwview.test.LibraryResourcesCaller;
+
+/**
+ * Check the routing of XWalkMixedResources between two packages built with
+ * the same package id, with this test package as the app and the shell as
+ * the library, and measure the lookups per second compared with walking the
+ * stack on each lookup, which it did before routing by the resource id.
+ */
+public class MixedResourcesThroughputTest extends XWalkViewTestBase {
+    private static final int LOOKUP_COUNT = 20000;
+    // The best of the rounds is compared, to keep out the noise.
+    private static final int ROUNDS = 3;
+    private static final int PACKAGE_ID = 0x7f;
+    private static final int MAX_TYPE = 0x20;
+    private static final int MAX_ENTRY = 0x100;
+
+    private static Resources createMixedResources(Resources base, Resources library)
+            throws Exception {
+        Constructor<?> constructor = Class.forName("org.xwalk.core.XWalkMixedResources")
+                .getDeclaredConstructor(Resources.class, Resources.class);
+        constructor.setAccessible(true);
+        return (Resources) constructor.newInstance(base, library);
+    }
+
+    // The check made on each lookup before.
+    private static boolean isCalledInLibrary() {
+        StackTraceElement[] stacks = Thread.currentThread().getStackTrace();
+        for (StackTraceElement stack : stacks) {
+            String className = stack.getClassName();
+            if (className.startsWith("org.chromium") ||
+                    className.startsWith("org.xwalk.core.internal")) {
+                return true;
+            } else if (className.startsWith("org.xwalk.core") &&
+                    !className.endsWith("XWalkMixedResources")) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static TypedValue getValueOrNull(Resources resources, int id) {
+        try {
+            TypedValue value = new TypedValue();
+            resources.getValue(id, value, true);
+            return value;
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private static void assertSameValue(TypedValue expected, TypedValue actual) {
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.data, actual.data);
+        assertEquals(String.valueOf(expected.string), String.valueOf(actual.string));
+    }
+
+    private static String getResourceNameOrNull(Resources resources, int id) {
+        try {
+            return resources.getResourceName(id);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    // Returns the first id naming different resources in both packages, or
+    // only found in the library if onlyInLibrary.
+    private static int findId(Resources app, Resources library, boolean onlyInLibrary) {
+        for (int type = 1; type < MAX_TYPE; ++type) {
+            for (int entry = 0; entry < MAX_ENTRY; ++entry) {
+                int id = (PACKAGE_ID << 24) | (type << 16) | entry;
+                if (getValueOrNull(library, id) == null) continue;
+                String appName = getResourceNameOrNull(app, id);
+                if (onlyInLibrary ? appName == null :
+                        appName != null && getValueOrNull(app, id) != null &&
+                        !appName.equals(library.getResourceName(id))) {
+                    return id;
+                }
+            }
+        }
+        return 0;
+    }
+
+    @LargeTest
+    @Feature({"MixedResourcesThroughput"})
+    public void testRouting() throws Throwable {
+        Resources app = getInstrumentation().getContext().getResources();
+        Resources library = getActivity().getResources();
+        Resources mixed = createMixedResources(app, library);
+
+        // An id of both packages goes to the package of the caller.
+        int colliding = findId(app, library, false);
+        assertTrue(colliding != 0);
+        for (int i = 0; i < 2; ++i) {
+            assertSameValue(getValueOrNull(app, colliding), getValueOrNull(mixed, colliding));
+            assertSameValue(getValueOrNull(library, colliding),
+                    LibraryResourcesCaller.getValue(mixed, colliding));
+        }
+
+        // An id only found in the library goes to it from any caller.
+        int libraryOnly = findId(app, library, true);
+        assertTrue(libraryOnly != 0);
+        for (int i = 0; i < 2; ++i) {
+            assertSameValue(getValueOrNull(library, libraryOnly),
+                    getValueOrNull(mixed, libraryOnly));
+            assertSameValue(getValueOrNull(library, libraryOnly),
+                    LibraryResourcesCaller.getValue(mixed, libraryOnly));
+        }
+
+        String packageName = getInstrumentation().getContext().getPackageName();
+        int appId = app.getIdentifier("mixed_resources_test_first", "string", packageName);
+        assertTrue(appId != 0);
+        assertEquals(appId,
+                mixed.getIdentifier("mixed_resources_test_first", "string", packageName));
+        assertEquals(appId, LibraryResourcesCaller.getIdentifier(
+                mixed, "mixed_resources_test_first", "string", packageName));
+        assertEquals(0, mixed.getIdentifier("no_such_resource", "string", packageName));
+
+        // A name of the library package resolves in the library.
+        String libraryPackage = getActivity().getPackageName();
+        String name = library.getResourceEntryName(colliding);
+        String type = library.getResourceTypeName(colliding);
+        int libraryId = library.getIdentifier(name, type, libraryPackage);
+        assertEquals(colliding, libraryId);
+        assertEquals(libraryId,
+                LibraryResourcesCaller.getIdentifier(mixed, name, type, libraryPackage));
+    }
+
+    // The ids found in one package only are routed without walking the
+    // stack, once they're looked up.
+    @LargeTest
+    @Feature({"MixedResourcesThroughput", "Perf"})
+    public void testGetValueThroughput() throws Throwable {
+        Resources app = getInstrumentation().getContext().getResources();
+        Resources library = getActivity().getResources();
+        Resources mixed = createMixedResources(app, library);
+        int libraryOnly = findId(app, library, true);
+        assertTrue(libraryOnly != 0);
+        TypedValue value = new TypedValue();
+
+        long mixedTime = Long.MAX_VALUE;
+        long stackWalkTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < LOOKUP_COUNT; ++i) {
+                mixed.getValue(libraryOnly, value, true);
+            }
+            mixedTime = Math.min(mixedTime, SystemClock.elapsedRealtime() - start);
+            assertSameValue(getValueOrNull(library, libraryOnly), value);
+
+            start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < LOOKUP_COUNT; ++i) {
+                // Falls back to the other package, like the lookups did.
+                boolean fromLibrary = isCalledInLibrary();
+                try {
+                    (fromLibrary ? library : app).getValue(libraryOnly, value, true);
+                } catch (NotFoundException e) {
+                    (fromLibrary ? app : library).getValue(libraryOnly, value, true);
+                }
+            }
+            stackWalkTime = Math.min(stackWalkTime, SystemClock.elapsedRealtime() - start);
+        }
+
+        assertTrue("getValue: mixed " + (LOOKUP_COUNT * 1000L / Math.max(1, mixedTime)) +
+                " lookups/s, stack walk " +
+                (LOOKUP_COUNT * 1000L / Math.max(1, stackWalkTime)) + " lookups/s",
+                mixedTime < stackWalkTime);
+    }
+}
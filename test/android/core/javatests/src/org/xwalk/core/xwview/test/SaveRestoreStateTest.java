@@ -115,6 +115,16 @@ public class SaveRestoreStateTest extends XWalkViewTestBase {
         });
     }
 
+    private void waitForRestoredHistory(final int size) throws Throwable {
+        // The state saved into files is restored asynchronously.
+        assertTrue(pollOnUiThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mRestoreXWalkView.getNavigationHistory().size() == size;
+            }
+        }));
+    }
+
     @SmallTest
     @Feature({"SaveRestoreState"})
     public void testSaveRestoreStateWithTitle() throws Throwable {
@@ -167,4 +177,71 @@ public class SaveRestoreStateTest extends XWalkViewTestBase {
         });
         assertFalse(result);
     }
+
+    @SmallTest
+    @Feature({"SaveRestoreState"})
+    public void testSaveRestoreStateToFile() throws Throwable {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mXWalkView.setSaveStateMode(XWalkView.SAVE_STATE_MODE_FILE);
+            }
+        });
+        setServerResponseAndLoad(NUM_NAVIGATIONS);
+        saveAndRestoreStateOnUiThread();
+        waitForRestoredHistory(NUM_NAVIGATIONS);
+        checkHistoryItemList(mRestoreXWalkView);
+    }
+
+    @SmallTest
+    @Feature({"SaveRestoreState"})
+    public void testSaveRestoreStateIncrementally() throws Throwable {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mXWalkView.setSaveStateMode(XWalkView.SAVE_STATE_MODE_INCREMENTAL);
+            }
+        });
+        setServerResponseAndLoad(NUM_NAVIGATIONS - 1);
+        final Bundle bundle = new Bundle();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(mXWalkView.saveState(bundle));
+            }
+        });
+
+        // The second save only writes the new entry into the same files.
+        String html = CommonResources.makeHtmlPageFrom(
+                "<title>" + TITLES[NUM_NAVIGATIONS - 1] + "</title>", "");
+        mUrls[NUM_NAVIGATIONS - 1] = mWebServer.setResponse(
+                PATHS[NUM_NAVIGATIONS - 1], html, null);
+        loadUrlSync(mUrls[NUM_NAVIGATIONS - 1]);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Bundle newBundle = new Bundle();
+                assertTrue(mXWalkView.saveState(newBundle));
+                assertEquals(bundle.getString("XWALKVIEW_STATE_FILE"),
+                        newBundle.getString("XWALKVIEW_STATE_FILE"));
+                assertTrue(mRestoreXWalkView.restoreState(newBundle));
+            }
+        });
+        waitForRestoredHistory(NUM_NAVIGATIONS);
+        checkHistoryItemList(mRestoreXWalkView);
+    }
+
+    @SmallTest
+    @Feature({"SaveRestoreState"})
+    public void testRestoreFromInvalidStateFileFails() throws Throwable {
+        final Bundle invalidState = new Bundle();
+        invalidState.putString("XWALKVIEW_STATE_FILE", "../invalid");
+        boolean result = runTestOnUiThreadAndGetResult(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mXWalkView.restoreState(invalidState);
+            }
+        });
+        assertFalse(result);
+    }
 }
@@ -0,0 +1,226 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.xwview.test;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.webkit.ValueCallback;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.chromium.base.test.util.Feature;
+import org.xwalk.core.XWalkPreferences;
+import org.xwalk.core.XWalkView;
+
+/**
+ * Check the wrapper calls against the calls through the ReflectMethods of the
+ * wrapper, which it makes in shared mode. When the reflection layer is
+ * generated in embedded mode, the wrapper calls the bridge directly unless
+ * they are loaded by different class loaders, so it doesn't need the
+ * ReflectMethods at all.
+ */
+public class WrapperDirectCallTest extends XWalkViewTestBase {
+    private static final String GET_URL = "getUrlMethod";
+    private static final String EVALUATE_JAVASCRIPT =
+            "evaluateJavascriptStringValueCallbackMethod";
+    private static final int CALL_COUNT = 20000;
+    // The best of the rounds is compared, to keep out the noise.
+    private static final int ROUNDS = 3;
+
+    private static Object getBridge(Object wrapper) throws Exception {
+        Method method = wrapper.getClass().getDeclaredMethod("getBridge");
+        method.setAccessible(true);
+        return method.invoke(wrapper);
+    }
+
+    private static boolean isDirectCall(XWalkView view) throws Exception {
+        Field field = Class.forName("org.xwalk.core.XWalkSdkVersion")
+                .getDeclaredField("EMBEDDED_MODE");
+        field.setAccessible(true);
+        return field.getBoolean(null) &&
+                getBridge(view).getClass().getClassLoader() == XWalkView.class.getClassLoader();
+    }
+
+    private static Field getReflectMethodField(Object wrapper, String name) throws Exception {
+        Field field = wrapper.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    // Calls the bridge the way the wrapper does in shared mode.
+    private static Object invokeReflectMethod(Object wrapper, String name, Object... args)
+            throws Exception {
+        Object reflectMethod = getReflectMethodField(wrapper, name).get(wrapper);
+        Method method = reflectMethod.getClass().getMethod("invoke", Object[].class);
+        method.setAccessible(true);
+        return method.invoke(reflectMethod, (Object) args);
+    }
+
+    // Replaces a ReflectMethod of the wrapper with an unbound one, which throws
+    // UnsupportedOperationException if it's invoked. Returns the original one.
+    private static Object unbindReflectMethod(Object wrapper, String name) throws Exception {
+        Field field = getReflectMethodField(wrapper, name);
+        Object reflectMethod = field.get(wrapper);
+        Constructor<?> constructor = field.getType().getDeclaredConstructor();
+        constructor.setAccessible(true);
+        field.set(wrapper, constructor.newInstance());
+        return reflectMethod;
+    }
+
+    private static void restoreReflectMethod(Object wrapper, String name, Object reflectMethod)
+            throws Exception {
+        getReflectMethodField(wrapper, name).set(wrapper, reflectMethod);
+    }
+
+    private static ValueCallback<String> createCallback(final AtomicReference<String> result) {
+        return new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                result.set(value);
+            }
+        };
+    }
+
+    @MediumTest
+    @Feature({"WrapperDirectCall"})
+    public void testGetUrl() throws Throwable {
+        loadAssetFile("index.html");
+        runTestOnUiThreadAndGetResult(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                XWalkView view = getXWalkView();
+                String url = view.getUrl();
+                assertNotNull(url);
+                assertEquals(url, invokeReflectMethod(view, GET_URL));
+
+                Object reflectMethod = unbindReflectMethod(view, GET_URL);
+                try {
+                    if (isDirectCall(view)) {
+                        assertEquals(url, view.getUrl());
+                    } else {
+                        try {
+                            view.getUrl();
+                            fail("The wrapper should call the bridge through reflection");
+                        } catch (UnsupportedOperationException e) {
+                        }
+                    }
+                } finally {
+                    restoreReflectMethod(view, GET_URL, reflectMethod);
+                }
+                assertEquals(url, view.getUrl());
+                return null;
+            }
+        });
+    }
+
+    @MediumTest
+    @Feature({"WrapperDirectCall"})
+    public void testEvaluateJavascript() throws Throwable {
+        loadAssetFile("index.html");
+        final AtomicReference<String> wrapperResult = new AtomicReference<String>();
+        final AtomicReference<String> reflectResult = new AtomicReference<String>();
+        runTestOnUiThreadAndGetResult(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                XWalkView view = getXWalkView();
+                invokeReflectMethod(view, EVALUATE_JAVASCRIPT, "1 + 1",
+                        createCallback(reflectResult));
+
+                boolean directCall = isDirectCall(view);
+                Object reflectMethod = unbindReflectMethod(view, EVALUATE_JAVASCRIPT);
+                try {
+                    view.evaluateJavascript("1 + 1", createCallback(wrapperResult));
+                    assertTrue("The wrapper should call the bridge through reflection",
+                            directCall);
+                } catch (UnsupportedOperationException e) {
+                    assertFalse(directCall);
+                } finally {
+                    restoreReflectMethod(view, EVALUATE_JAVASCRIPT, reflectMethod);
+                }
+                if (!directCall) {
+                    view.evaluateJavascript("1 + 1", createCallback(wrapperResult));
+                }
+                return null;
+            }
+        });
+
+        assertTrue(pollOnUiThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return wrapperResult.get() != null && reflectResult.get() != null;
+            }
+        }));
+        assertEquals("2", reflectResult.get());
+        assertEquals(reflectResult.get(), wrapperResult.get());
+    }
+
+    @MediumTest
+    @Feature({"WrapperDirectCall"})
+    public void testPreferences() throws Throwable {
+        final String key = XWalkPreferences.SUPPORT_MULTIPLE_WINDOWS;
+        final boolean value = XWalkPreferences.getValue(key);
+        Method method = Class.forName("org.xwalk.core.internal.XWalkPreferencesBridge",
+                true, XWalkView.class.getClassLoader())
+                .getMethod("getValue", String.class);
+
+        try {
+            // Both paths see the changes made through the wrapper.
+            for (boolean enabled : new boolean[] {!value, value}) {
+                XWalkPreferences.setValue(key, enabled);
+                assertEquals(enabled, XWalkPreferences.getValue(key));
+                assertEquals(enabled, ((Boolean) method.invoke(null, key)).booleanValue());
+            }
+        } finally {
+            XWalkPreferences.setValue(key, value);
+        }
+    }
+
+    // XWalkPreferences.getValue() does little more than a lookup, so the cost
+    // of the call itself shows. In shared mode, the wrapper calls the bridge
+    // through the same Method.invoke() as the reflection path.
+    @LargeTest
+    @Feature({"WrapperDirectCall", "Perf"})
+    public void testPreferencesThroughput() throws Throwable {
+        final String key = XWalkPreferences.REMOTE_DEBUGGING;
+        Class<?> bridgeClass = Class.forName("org.xwalk.core.internal.XWalkPreferencesBridge",
+                true, XWalkView.class.getClassLoader());
+        Method method = bridgeClass.getMethod("getValue", String.class);
+        Field field = Class.forName("org.xwalk.core.XWalkSdkVersion")
+                .getDeclaredField("EMBEDDED_MODE");
+        field.setAccessible(true);
+        boolean directCall = field.getBoolean(null) &&
+                bridgeClass.getClassLoader() == XWalkPreferences.class.getClassLoader();
+
+        long wrapperTime = Long.MAX_VALUE;
+        long reflectTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALL_COUNT; ++i) {
+                XWalkPreferences.getValue(key);
+            }
+            wrapperTime = Math.min(wrapperTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < CALL_COUNT; ++i) {
+                method.invoke(null, key);
+            }
+            reflectTime = Math.min(reflectTime, System.nanoTime() - start);
+        }
+
+        String times = "wrapper " + wrapperTime / CALL_COUNT + " ns/call, reflection " +
+                reflectTime / CALL_COUNT + " ns/call";
+        if (directCall) {
+            assertTrue("The direct calls should be faster than reflection: " + times,
+                    wrapperTime < reflectTime);
+        } else {
+            assertTrue("The wrapper should add little to reflection: " + times,
+                    wrapperTime < reflectTime * 2);
+        }
+    }
+}
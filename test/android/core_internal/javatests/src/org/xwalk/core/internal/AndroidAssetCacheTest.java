@@ -0,0 +1,163 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.chromium.base.test.util.Feature;
+
+/**
+ * Test suite for AndroidAssetCache. It lives in the package of the cache to
+ * read its package-private counters. The assets are stood in for by byte
+ * array streams, whose available() is the remaining length like the one of
+ * an asset stream.
+ */
+public class AndroidAssetCacheTest extends InstrumentationTestCase {
+    private static final int CAPACITY = 800;
+    // The largest asset the cache takes, an eighth of the capacity.
+    private static final int MAX_ENTRY_SIZE = CAPACITY / 8;
+
+    private AndroidAssetCache mCache;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mCache = new AndroidAssetCache();
+        mCache.setCapacity(CAPACITY);
+    }
+
+    private static byte[] createData(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        byte[] data = new byte[stream.available()];
+        assertEquals(data.length, stream.read(data, 0, data.length));
+        assertEquals(-1, stream.read());
+        return data;
+    }
+
+    private void put(String path, byte[] data) throws IOException {
+        assertTrue(Arrays.equals(data, readAll(mCache.put(path, new ByteArrayInputStream(data)))));
+    }
+
+    private void assertHit(String path, byte[] data) throws IOException {
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+        InputStream stream = mCache.get(path);
+        assertNotNull(path + " should be cached", stream);
+        assertTrue(Arrays.equals(data, readAll(stream)));
+        assertEquals(hits + 1, mCache.getHitCount());
+        assertEquals(misses, mCache.getMissCount());
+    }
+
+    private void assertMiss(String path) {
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+        assertNull(path + " should not be cached", mCache.get(path));
+        assertEquals(hits, mCache.getHitCount());
+        assertEquals(misses + 1, mCache.getMissCount());
+    }
+
+    @SmallTest
+    @Feature({"AndroidAssetCache"})
+    public void testHitsAndMisses() throws Throwable {
+        byte[] data = createData(MAX_ENTRY_SIZE, 1);
+        assertMiss("www/index.html");
+        put("www/index.html", data);
+        assertEquals(data.length, mCache.getSize());
+
+        // Every read gets a stream of its own.
+        assertHit("www/index.html", data);
+        assertHit("www/index.html", data);
+        assertMiss("www/other.html");
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(2, mCache.getMissCount());
+
+        // Putting the asset again replaces it.
+        byte[] newData = createData(MAX_ENTRY_SIZE / 2, 2);
+        put("www/index.html", newData);
+        assertEquals(newData.length, mCache.getSize());
+        assertHit("www/index.html", newData);
+    }
+
+    @SmallTest
+    @Feature({"AndroidAssetCache"})
+    public void testTooLarge() throws Throwable {
+        byte[] data = createData(MAX_ENTRY_SIZE + 1, 1);
+        InputStream stream = new ByteArrayInputStream(data);
+        // The stream is handed back untouched.
+        assertSame(stream, mCache.put("www/large.bin", stream));
+        assertEquals(data.length, stream.available());
+        assertEquals(0, mCache.getSize());
+        assertMiss("www/large.bin");
+    }
+
+    @SmallTest
+    @Feature({"AndroidAssetCache"})
+    public void testEviction() throws Throwable {
+        byte[][] data = new byte[CAPACITY / MAX_ENTRY_SIZE + 1][];
+        for (int i = 0; i < data.length - 1; ++i) {
+            data[i] = createData(MAX_ENTRY_SIZE, i);
+            put("www/" + i, data[i]);
+        }
+        assertEquals(CAPACITY, mCache.getSize());
+
+        // The least recently used asset is evicted, reads count as uses.
+        assertHit("www/0", data[0]);
+        int last = data.length - 1;
+        data[last] = createData(MAX_ENTRY_SIZE, last);
+        put("www/" + last, data[last]);
+        assertEquals(CAPACITY, mCache.getSize());
+        assertMiss("www/1");
+        assertHit("www/0", data[0]);
+        assertHit("www/" + last, data[last]);
+    }
+
+    @SmallTest
+    @Feature({"AndroidAssetCache"})
+    public void testInvalidation() throws Throwable {
+        byte[] data = createData(MAX_ENTRY_SIZE, 1);
+        put("www/index.html", data);
+        mCache.clear();
+        assertEquals(0, mCache.getSize());
+        assertMiss("www/index.html");
+
+        // Shrinking the budget drops the least recently used assets.
+        put("www/index.html", data);
+        put("www/other.html", data);
+        mCache.setCapacity(MAX_ENTRY_SIZE * 3 / 2);
+        assertEquals(data.length, mCache.getSize());
+        assertMiss("www/index.html");
+        assertHit("www/other.html", data);
+
+        // Disabling the cache drops everything. The reads are neither hits
+        // nor misses while it's disabled, and nothing is put.
+        mCache.setCapacity(0);
+        assertFalse(mCache.isEnabled());
+        assertEquals(0, mCache.getSize());
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+        InputStream stream = new ByteArrayInputStream(data);
+        assertSame(stream, mCache.put("www/index.html", stream));
+        assertNull(mCache.get("www/other.html"));
+        assertEquals(hits, mCache.getHitCount());
+        assertEquals(misses, mCache.getMissCount());
+
+        mCache.setCapacity(CAPACITY);
+        assertMiss("www/other.html");
+        assertMiss("www/index.html");
+    }
+}
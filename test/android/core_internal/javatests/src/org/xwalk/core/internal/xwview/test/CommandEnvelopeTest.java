@@ -0,0 +1,148 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashMap;
+
+import org.chromium.base.test.util.Feature;
+import org.json.JSONObject;
+import org.xwalk.core.internal.extension.CommandEnvelope;
+
+/**
+ * Test suite for CommandEnvelope.
+ */
+public class CommandEnvelopeTest extends InstrumentationTestCase {
+    private static final String FIND_MESSAGES =
+            "{\"cmd\":\"msg_findMessages\",\"asyncCallId\":42,\"data\":{" +
+            "\"filter\":{\"type\":\"sms\",\"read\":false,\"from\":\"+34600000000\"}," +
+            "\"options\":{\"sortBy\":\"date\",\"sortOrder\":\"descending\",\"limit\":20}}}";
+
+    private static final String GET_CONTACTS =
+            "{\"cmd\":\"find\",\"asyncCallId\":\"7\",\"fields\":[\"name\",null]," +
+            "\"limit\":-1,\"ratio\":0.5,\"big\":12345678901234567890,\"none\":null}";
+
+    private static final String ADD_LISTENER =
+            "{\"data\":{\"type\":\"onchange\"},\"cmd\":\"addEventListener\"}";
+
+    private static final int PARSE_COUNT = 2000;
+    // The best of the rounds is compared, to keep out the noise.
+    private static final int ROUNDS = 3;
+
+    // Records the payloads by command, like the extensions dispatch them.
+    private static class Dispatcher {
+        final HashMap<String, JSONObject> mPayloads = new HashMap<String, JSONObject>();
+
+        void onMessage(String message) {
+            CommandEnvelope envelope = CommandEnvelope.parse(message);
+            assertNotNull(envelope);
+            assertNull(mPayloads.put(envelope.getCommand(), envelope.getPayload()));
+        }
+    }
+
+    @SmallTest
+    @Feature({"CommandEnvelope"})
+    public void testParse() throws Throwable {
+        CommandEnvelope envelope = CommandEnvelope.parse(FIND_MESSAGES);
+        assertNotNull(envelope);
+        assertEquals("msg_findMessages", envelope.getCommand());
+        assertEquals("42", envelope.getAsyncCallId());
+
+        JSONObject payload = envelope.getPayload();
+        assertEquals("42", payload.getString("asyncCallId"));
+        JSONObject data = payload.getJSONObject("data");
+        assertEquals("sms", data.getJSONObject("filter").getString("type"));
+        assertFalse(data.getJSONObject("filter").getBoolean("read"));
+        assertEquals(20, data.getJSONObject("options").getLong("limit"));
+        // The result is the same as parsing with JSONObject.
+        assertEquals(new JSONObject(FIND_MESSAGES).getJSONObject("data").toString(),
+                data.toString());
+    }
+
+    @SmallTest
+    @Feature({"CommandEnvelope"})
+    public void testInvalidMessages() throws Throwable {
+        assertNull(CommandEnvelope.parse(""));
+        assertNull(CommandEnvelope.parse("[\"cmd\"]"));
+        assertNull(CommandEnvelope.parse("{\"asyncCallId\":1}"));
+        assertNull(CommandEnvelope.parse("{\"cmd\":\"find\""));
+
+        CommandEnvelope envelope = CommandEnvelope.parse("{\"cmd\":\"addEventListener\"}");
+        assertNotNull(envelope);
+        assertNull(envelope.getAsyncCallId());
+    }
+
+    @SmallTest
+    @Feature({"CommandEnvelope"})
+    public void testDispatch() throws Throwable {
+        Dispatcher dispatcher = new Dispatcher();
+        String[] messages = { FIND_MESSAGES, GET_CONTACTS, ADD_LISTENER };
+        for (String message : messages) dispatcher.onMessage(message);
+        assertEquals(messages.length, dispatcher.mPayloads.size());
+
+        // The handlers get the same members as they did by parsing the
+        // message again with JSONObject, except that the envelope members
+        // are strings.
+        for (String message : messages) {
+            JSONObject expected = new JSONObject(message);
+            JSONObject payload = dispatcher.mPayloads.get(expected.getString("cmd"));
+            assertNotNull(payload);
+            assertEquals(expected.length(), payload.length());
+            for (String name : new String[] { "cmd", "asyncCallId" }) {
+                assertEquals(expected.optString(name, null), payload.optString(name, null));
+                expected.remove(name);
+                payload.remove(name);
+            }
+            assertEquals(expected.toString(), payload.toString());
+        }
+    }
+
+    // A message with a large payload, like a batch of contacts to save.
+    private static String createLargeMessage() {
+        StringBuilder builder = new StringBuilder("{\"cmd\":\"save\",\"asyncCallId\":1," +
+                "\"contacts\":[");
+        for (int i = 0; i < 100; ++i) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"name\":{\"givenNames\":[\"Name").append(i)
+                    .append("\"]},\"phoneNumbers\":[{\"types\":[\"home\"],\"value\":\"+3460000")
+                    .append(i).append("\",\"preferred\":true}],\"ratio\":0.").append(i)
+                    .append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    @LargeTest
+    @Feature({"CommandEnvelope", "Perf"})
+    public void testParseThroughput() throws Throwable {
+        String message = createLargeMessage();
+        // The payload is still there when it's asked for.
+        assertEquals(new JSONObject(message).getJSONArray("contacts").toString(),
+                CommandEnvelope.parse(message).getPayload().getJSONArray("contacts").toString());
+
+        long envelopeTime = Long.MAX_VALUE;
+        long jsonTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < PARSE_COUNT; ++i) {
+                assertEquals("save", CommandEnvelope.parse(message).getCommand());
+            }
+            envelopeTime = Math.min(envelopeTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < PARSE_COUNT; ++i) {
+                assertEquals("save", new JSONObject(message).getString("cmd"));
+            }
+            jsonTime = Math.min(jsonTime, System.nanoTime() - start);
+        }
+
+        // Routing by the command skips the payload instead of building it.
+        assertTrue("Parsed " + message.length() + " chars: CommandEnvelope " +
+                envelopeTime / PARSE_COUNT + " ns, JSONObject " + jsonTime / PARSE_COUNT + " ns",
+                envelopeTime < jsonTime);
+    }
+}
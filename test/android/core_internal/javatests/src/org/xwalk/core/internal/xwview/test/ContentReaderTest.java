@@ -0,0 +1,107 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.chromium.base.test.util.Feature;
+import org.xwalk.core.internal.ContentReader;
+
+/**
+ * Test suite for ContentReader.
+ */
+public class ContentReaderTest extends InstrumentationTestCase {
+    // A stream which returns at most 1024 bytes per read, like the asset
+    // streams did with the old reading loop.
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+        ChunkedInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            return super.read(buffer, offset, Math.min(length, 1024));
+        }
+    }
+
+    private static String createContent(int size, String unit) {
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) builder.append(unit);
+        return builder.toString();
+    }
+
+    // The reading loop used before ContentReader.
+    private static String readByConcatenation(InputStream stream) throws IOException {
+        String content = "";
+        final int bufferSize = 1024;
+        byte[] buffer = new byte[bufferSize];
+        int actualSize = 0;
+        while ((actualSize = stream.read(buffer, 0, bufferSize)) > 0) {
+            content += new String(buffer, 0, actualSize);
+        }
+        return content;
+    }
+
+    @SmallTest
+    @Feature({"ContentReader"})
+    public void testMultiByteCharactersAcrossChunks() throws Throwable {
+        // Each character takes 3 bytes in UTF-8, so the characters are split
+        // at every 1024 bytes boundary.
+        String expected = createContent(4096, "中");
+        byte[] data = expected.getBytes("UTF-8");
+        assertEquals(expected, ContentReader.readString(new ChunkedInputStream(data)));
+    }
+
+    @SmallTest
+    @Feature({"ContentReader"})
+    public void testEmptyStream() throws Throwable {
+        assertEquals("", ContentReader.readString(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @MediumTest
+    @Feature({"ContentReader"})
+    public void testLargeContent() throws Throwable {
+        // Larger than the initial buffer, with the sizes not a multiple of
+        // the chunk size, so the buffer grows and the last read is partial.
+        int[] sizes = { 100 * 1024 + 7, 512 * 1024 + 1, 2 * 1024 * 1024 + 1023 };
+        for (int size : sizes) {
+            String expected = createContent(size, "var a = '\u00e9';\n");
+            byte[] data = expected.getBytes("UTF-8");
+            assertEquals(expected, ContentReader.readString(new ChunkedInputStream(data)));
+            assertEquals(expected, ContentReader.readString(new ByteArrayInputStream(data)));
+        }
+    }
+
+    @LargeTest
+    @Feature({"ContentReader", "Perf"})
+    public void testReadThroughput() throws Throwable {
+        int[] sizes = { 100 * 1024, 512 * 1024, 2 * 1024 * 1024 };
+        for (int size : sizes) {
+            byte[] data = createContent(size, "var a = 1;\n").getBytes("UTF-8");
+
+            long start = SystemClock.elapsedRealtime();
+            String oldResult = readByConcatenation(new ChunkedInputStream(data));
+            long oldTime = SystemClock.elapsedRealtime() - start;
+
+            start = SystemClock.elapsedRealtime();
+            String newResult = ContentReader.readString(new ChunkedInputStream(data));
+            long newTime = SystemClock.elapsedRealtime() - start;
+
+            assertEquals(oldResult, newResult);
+            // The concatenation copies the content read so far for each
+            // chunk, while ContentReader copies it a few times at most.
+            assertTrue("Read " + data.length + " bytes: concatenation " + oldTime +
+                    " ms, ContentReader " + newTime + " ms", newTime < oldTime);
+        }
+    }
+}
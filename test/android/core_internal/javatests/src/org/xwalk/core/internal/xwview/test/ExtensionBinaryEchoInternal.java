@@ -0,0 +1,65 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.xwalk.core.internal.extensions.XWalkExtensionAndroid;
+
+/**
+ * Echoes both the string and the binary messages, and keeps the report
+ * posted by the page.
+ */
+public class ExtensionBinaryEchoInternal extends XWalkExtensionAndroid {
+    private static final String REPORT_PREFIX = "report:";
+
+    private final CountDownLatch mReported = new CountDownLatch(1);
+    private volatile String mReport;
+
+    public ExtensionBinaryEchoInternal() {
+        super("binaryEcho",
+              "var echoListener = null;"
+              + "extension.setMessageListener(function(msg) {"
+              + "  if (echoListener instanceof Function) {"
+              + "    echoListener(msg);"
+              + "  };"
+              + "});"
+              + "exports.echo = function(msg, callback) {"
+              + "  echoListener = callback;"
+              + "  extension.postMessage(msg);"
+              + "};"
+              + "exports.report = function(msg) {"
+              + "  extension.postMessage('" + REPORT_PREFIX + "' + msg);"
+              + "};"
+             );
+    }
+
+    public String waitForReport(long timeoutSeconds) throws InterruptedException {
+        mReported.await(timeoutSeconds, TimeUnit.SECONDS);
+        return mReport;
+    }
+
+    @Override
+    public void onMessage(int instanceID, String message) {
+        if (message.startsWith(REPORT_PREFIX)) {
+            mReport = message.substring(REPORT_PREFIX.length());
+            mReported.countDown();
+            return;
+        }
+        postMessage(instanceID, message);
+    }
+
+    @Override
+    public void onBinaryMessage(int instanceID, ByteBuffer message) {
+        postBinaryMessage(instanceID, message);
+    }
+
+    @Override
+    public String onSyncMessage(int instanceID, String message) {
+        return "";
+    }
+}
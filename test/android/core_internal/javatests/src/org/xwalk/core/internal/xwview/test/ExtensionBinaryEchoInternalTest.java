@@ -0,0 +1,75 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.chromium.base.test.util.Feature;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Test suite for the binary messages of the extensions.
+ */
+public class ExtensionBinaryEchoInternalTest extends XWalkViewInternalTestBase {
+    private final static String PASS_STRING = "Pass";
+    private final static long BENCHMARK_TIMEOUT_SECONDS = 120;
+    // The binary messages of this size or larger must be faster than the
+    // strings.
+    private final static int MIN_BINARY_FASTER_SIZE = 64 * 1024;
+
+    @SmallTest
+    @Feature({"ExtensionBinaryEchoInternal"})
+    public void testBinaryEcho() throws Throwable {
+        ExtensionBinaryEchoInternal echo = new ExtensionBinaryEchoInternal();
+
+        loadAssetFileAndWaitForTitle("binaryEcho.html");
+        assertEquals(PASS_STRING, getTitleOnUiThread());
+    }
+
+    // Compare the throughput of the binary messages with the base64 strings
+    // carrying the same bytes, at 1 KB, 64 KB and 1 MB.
+    @LargeTest
+    @Feature({"ExtensionBinaryEchoInternal", "Perf"})
+    public void testBinaryEchoThroughput() throws Throwable {
+        ExtensionBinaryEchoInternal echo = new ExtensionBinaryEchoInternal();
+
+        loadAssetFile("binaryEchoBenchmark.html");
+        String report = echo.waitForReport(BENCHMARK_TIMEOUT_SECONDS);
+        assertNotNull(report);
+
+        JSONArray results = new JSONArray(report);
+        assertEquals(6, results.length());
+        // The time of a round trip by size, for the binary and the strings.
+        Map<Integer, Double> binaryTimes = new HashMap<Integer, Double>();
+        Map<Integer, Double> stringTimes = new HashMap<Integer, Double>();
+        for (int i = 0; i < results.length(); ++i) {
+            JSONObject result = results.getJSONObject(i);
+            int size = result.getInt("size");
+            double time = result.getDouble("ms") / result.getInt("count");
+            (result.getBoolean("binary") ? binaryTimes : stringTimes).put(size, time);
+        }
+        assertEquals(3, binaryTimes.size());
+        assertEquals(binaryTimes.keySet(), stringTimes.keySet());
+
+        for (int size : binaryTimes.keySet()) {
+            double binaryTime = binaryTimes.get(size);
+            double stringTime = stringTimes.get(size);
+            String times = size + " bytes: binary " + String.format("%.2f", binaryTime) +
+                    " ms, string " + String.format("%.2f", stringTime) + " ms per round trip";
+            // The small messages are dominated by the IPC, the large ones by
+            // the base64 encoding and the string copies the binary ones skip.
+            if (size < MIN_BINARY_FASTER_SIZE) {
+                assertTrue(times, binaryTime < stringTime * 2);
+            } else {
+                assertTrue(times, binaryTime < stringTime);
+            }
+        }
+    }
+}
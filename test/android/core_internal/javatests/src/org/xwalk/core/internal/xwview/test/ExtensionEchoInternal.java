@@ -4,9 +4,9 @@
 
 package org.xwalk.core.internal.xwview.test;
 
-import org.xwalk.core.internal.extensions.XWalkExtensionAndroid;
+import org.xwalk.core.internal.XWalkExtensionInternal;
 
-public class ExtensionEchoInternal extends XWalkExtensionAndroid {
+public class ExtensionEchoInternal extends XWalkExtensionInternal {
 
     public ExtensionEchoInternal() {
         super("echo",
@@ -6,6 +6,8 @@ package org.xwalk.core.internal.xwview.test;
 
 import android.test.suitebuilder.annotation.SmallTest;
 import org.chromium.base.test.util.Feature;
+import org.xwalk.core.internal.XWalkExtensionSyncReplyInternal;
+import org.xwalk.core.internal.extensions.XWalkExtensionAndroid;
 import org.xwalk.core.internal.xwview.test.ExtensionEchoInternal;
 
 /**
@@ -45,4 +47,82 @@ public class ExtensionEchoInternalTest extends XWalkViewInternalTestBase {
         loadAssetFileAndWaitForTitle("framesEcho.html");
         assertEquals(PASS_STRING, getTitleOnUiThread());
     }
+
+    @SmallTest
+    @Feature({"ExtensionEchoInternal"})
+    public void testAsyncOnExtensionThreads() throws Throwable {
+        ExtensionEchoInternal echo = new ExtensionEchoInternal();
+        echo.setThreadingPolicy(XWalkExtensionAndroid.THREADING_SERIAL_PER_INSTANCE, 2);
+
+        loadAssetFileAndWaitForTitle("echo.html");
+        assertEquals(PASS_STRING, getTitleOnUiThread());
+        assertTrue(echo.getHandledMessageCount() > 0);
+        assertEquals(0, echo.getPendingMessageCount());
+    }
+
+    @SmallTest
+    @Feature({"ExtensionEchoInternal"})
+    public void testSyncOnExtensionThreads() throws Throwable {
+        ExtensionEchoInternal echo = new ExtensionEchoInternal();
+        echo.setThreadingPolicy(XWalkExtensionAndroid.THREADING_SERIAL_PER_EXTENSION, 1);
+
+        loadAssetFile("echoSync.html");
+        assertEquals(PASS_STRING, getTitleOnUiThread());
+        assertTrue(echo.getHandledMessageCount() > 0);
+    }
+
+    @SmallTest
+    @Feature({"ExtensionEchoInternal"})
+    public void testSyncDeferred() throws Throwable {
+        ExtensionEchoInternal echo = new ExtensionEchoInternal() {
+            @Override
+            public void onSyncMessageAsync(final int instanceID, final String message,
+                    final XWalkExtensionSyncReplyInternal reply) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        reply.complete(onSyncMessage(instanceID, message));
+                    }
+                }).start();
+            }
+        };
+        echo.setSyncMessageTimeout(10000, "");
+
+        loadAssetFile("echoSync.html");
+        assertEquals(PASS_STRING, getTitleOnUiThread());
+    }
+
+    @SmallTest
+    @Feature({"ExtensionEchoInternal"})
+    public void testSyncDeferredTimeout() throws Throwable {
+        final XWalkExtensionSyncReplyInternal[] first = new XWalkExtensionSyncReplyInternal[1];
+        ExtensionEchoInternal echo = new ExtensionEchoInternal() {
+            @Override
+            public void onSyncMessageAsync(int instanceID, String message,
+                    XWalkExtensionSyncReplyInternal reply) {
+                // The first one is never replied in time, it's replied while
+                // the second one is handled, which is too late.
+                if (first[0] == null) {
+                    first[0] = reply;
+                    return;
+                }
+                first[0].complete("late");
+                reply.complete(onSyncMessage(instanceID, message));
+            }
+        };
+        echo.setSyncMessageTimeout(500, "timeout");
+
+        loadAssetFile("echoSyncTimeout.html");
+        assertEquals("timeout|From java sync:second", getTitleOnUiThread());
+    }
+
+    @SmallTest
+    @Feature({"ExtensionEchoInternal"})
+    public void testMultiFramesConcurrently() throws Throwable {
+        ExtensionEchoInternal echo = new ExtensionEchoInternal();
+        echo.setThreadingPolicy(XWalkExtensionAndroid.THREADING_CONCURRENT, 4);
+
+        loadAssetFileAndWaitForTitle("framesEcho.html");
+        assertEquals(PASS_STRING, getTitleOnUiThread());
+    }
 }
@@ -0,0 +1,60 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xwalk.core.internal.extensions.XWalkExtensionAndroid;
+
+/**
+ * Posts the given messages through the outbound queue once the page starts,
+ * and records the backpressure notifications.
+ */
+public class ExtensionOutboundInternal extends XWalkExtensionAndroid {
+    // Pairs of key, null for none, and message.
+    private final String[][] mMessages;
+    private final List<Boolean> mBackpressure = new ArrayList<Boolean>();
+    private volatile int mInstanceID;
+
+    public ExtensionOutboundInternal(String[][] messages) {
+        super("outbound",
+              "exports.listen = function(listener) {"
+              + "  extension.setMessageListener(listener);"
+              + "};"
+              + "exports.start = function() {"
+              + "  extension.postMessage('start');"
+              + "};"
+             );
+        mMessages = messages;
+    }
+
+    public void onMessage(int instanceID, String message) {
+        mInstanceID = instanceID;
+        for (String[] keyed : mMessages) postKeyedMessage(instanceID, keyed[0], keyed[1]);
+    }
+
+    public String onSyncMessage(int instanceID, String message) {
+        return "";
+    }
+
+    @Override
+    public void onOutboundBackpressure(int instanceID, boolean behind) {
+        synchronized (mBackpressure) {
+            mBackpressure.add(behind);
+        }
+    }
+
+    // The instance of the last page started.
+    public int getInstanceID() {
+        return mInstanceID;
+    }
+
+    public List<Boolean> getBackpressure() {
+        synchronized (mBackpressure) {
+            return new ArrayList<Boolean>(mBackpressure);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.chromium.base.test.util.Feature;
+import org.xwalk.core.internal.extensions.XWalkExtensionAndroid;
+
+/**
+ * Test suite for the outbound policies of XWalkExtensionAndroid.
+ */
+public class ExtensionOutboundInternalTest extends XWalkViewInternalTestBase {
+    private static final int BURST_SIZE = 100;
+    private static final int HIGH_WATERMARK = 10;
+
+    private boolean pollForTitle(final String title) throws Exception {
+        return pollOnUiThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return title.equals(getXWalkView().getTitle());
+            }
+        });
+    }
+
+    @SmallTest
+    @Feature({"ExtensionOutboundInternal"})
+    public void testKeepLatest() throws Throwable {
+        ExtensionOutboundInternal outbound = new ExtensionOutboundInternal(new String[][] {
+            {"a", "v1"}, {null, "u1"}, {"a", "v2"}, {null, "u2"},
+        });
+        outbound.setOutboundPolicy(XWalkExtensionAndroid.OUTBOUND_KEEP_LATEST, HIGH_WATERMARK);
+
+        loadAssetFile("outbound.html");
+        // The latest message of the key takes its own position.
+        assertTrue(pollForTitle("u1|v2|u2"));
+        assertEquals(1, outbound.getCoalescedMessageCount());
+        assertEquals(0, outbound.getDroppedMessageCount());
+    }
+
+    @SmallTest
+    @Feature({"ExtensionOutboundInternal"})
+    public void testBatch() throws Throwable {
+        ExtensionOutboundInternal outbound = new ExtensionOutboundInternal(new String[][] {
+            {null, "m1"}, {null, "m2"}, {null, "m3"},
+        });
+        outbound.setOutboundPolicy(XWalkExtensionAndroid.OUTBOUND_BATCH, HIGH_WATERMARK);
+
+        loadAssetFile("outbound.html");
+        assertTrue(pollForTitle("[\"m1\",\"m2\",\"m3\"]"));
+        assertEquals(2, outbound.getCoalescedMessageCount());
+        assertEquals(0, outbound.getDroppedMessageCount());
+    }
+
+    @SmallTest
+    @Feature({"ExtensionOutboundInternal"})
+    public void testDropOldest() throws Throwable {
+        String[][] messages = new String[BURST_SIZE][];
+        for (int i = 0; i < BURST_SIZE; ++i) messages[i] = new String[] {null, "m" + i};
+        final ExtensionOutboundInternal outbound = new ExtensionOutboundInternal(messages);
+        outbound.setOutboundPolicy(XWalkExtensionAndroid.OUTBOUND_QUEUED, HIGH_WATERMARK);
+
+        loadAssetFile("outbound.html");
+        // The burst fills the messages in flight, the page catches up once
+        // it has handled them.
+        assertTrue(pollOnUiThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                List<Boolean> backpressure = outbound.getBackpressure();
+                return getXWalkView().getTitle().endsWith("m" + (BURST_SIZE - 1)) &&
+                        outbound.getOutboundInFlightCount(outbound.getInstanceID()) == 0 &&
+                        !backpressure.isEmpty() &&
+                        !backpressure.get(backpressure.size() - 1);
+            }
+        }));
+
+        String[] received = getTitleOnUiThread().split("\\|");
+        assertTrue(received.length >= HIGH_WATERMARK);
+        assertEquals(BURST_SIZE - received.length, outbound.getDroppedMessageCount());
+        for (int i = 1; i < received.length; ++i) {
+            int previous = Integer.parseInt(received[i - 1].substring(1));
+            assertTrue(Integer.parseInt(received[i].substring(1)) > previous);
+        }
+
+        List<Boolean> backpressure = outbound.getBackpressure();
+        for (int i = 0; i < backpressure.size(); ++i) {
+            assertEquals(i % 2 == 0, (boolean) backpressure.get(i));
+        }
+        assertFalse(outbound.isOutboundBehind(outbound.getInstanceID()));
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import org.xwalk.core.internal.extensions.XWalkExtensionAndroid;
+
+public class ExtensionTopicInternal extends XWalkExtensionAndroid {
+    private static final String SUBSCRIBE = "subscribe:";
+    private static final String PUBLISH = "publish:";
+
+    public ExtensionTopicInternal() {
+        super("topic",
+              "exports.setHandler = function(handler) {"
+              + "  extension.setMessageListener(handler);"
+              + "};"
+              + "exports.subscribe = function(topic) {"
+              + "  extension.postMessage('" + SUBSCRIBE + "' + topic);"
+              + "};"
+              + "exports.publish = function(topic, msg) {"
+              + "  extension.postMessage('" + PUBLISH + "' + topic + ':' + msg);"
+              + "};"
+             );
+    }
+
+    public void onMessage(int instanceID, String message) {
+        if (message.startsWith(SUBSCRIBE)) {
+            subscribe(instanceID, message.substring(SUBSCRIBE.length()));
+            postMessage(instanceID, "subscribed");
+        } else if (message.startsWith(PUBLISH)) {
+            String[] parts = message.substring(PUBLISH.length()).split(":", 2);
+            publishMessage(parts[0], "From java publish:" + parts[1]);
+            // Every instance gets it after the published message.
+            broadcastMessage("done");
+        }
+    }
+
+    public String onSyncMessage(int instanceID, String message) {
+        return "";
+    }
+}
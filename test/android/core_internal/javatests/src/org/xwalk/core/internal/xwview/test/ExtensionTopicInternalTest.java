@@ -0,0 +1,22 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.chromium.base.test.util.Feature;
+
+/**
+ * Test suite for ExtensionTopicInternal().
+ */
+public class ExtensionTopicInternalTest extends XWalkViewInternalTestBase {
+    @SmallTest
+    @Feature({"ExtensionTopicInternal"})
+    public void testPublishToSubscribers() throws Throwable {
+        ExtensionTopicInternal topic = new ExtensionTopicInternal();
+
+        loadAssetFileAndWaitForTitle("topic.html");
+        assertEquals("Pass", getTitleOnUiThread());
+    }
+}
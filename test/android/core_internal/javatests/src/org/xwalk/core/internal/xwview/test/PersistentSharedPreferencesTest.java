@@ -0,0 +1,254 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.chromium.base.test.util.Feature;
+import org.xwalk.core.internal.PersistentSharedPreferences;
+
+/**
+ * Test suite for PersistentSharedPreferences.
+ */
+public class PersistentSharedPreferencesTest extends InstrumentationTestCase {
+    private static final String TAG = "PersistentSharedPreferencesTest";
+    private static final int KEY_COUNT = 100;
+    private static final int WRITE_COUNT = 1000;
+    private static final int THREAD_COUNT = 4;
+    private static final int READS_PER_THREAD = 200000;
+
+    private String mProfile;
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // getInstance() keeps the instance of a profile for the process, so
+        // each test has its own profile.
+        mProfile = TAG + "-" + getName();
+        Context context = getInstrumentation().getTargetContext();
+        mFile = new File(new File(context.getApplicationInfo().dataDir, "xwalk_preferences"),
+                mProfile + ".log");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    private SharedPreferences getPreferences() {
+        return PersistentSharedPreferences.getInstance(
+                getInstrumentation().getTargetContext(), mProfile);
+    }
+
+    // Read the file of the profile in a new instance, like getInstance() does
+    // after the process restarts.
+    private SharedPreferences reload() throws Exception {
+        return createPersistent(mFile);
+    }
+
+    // The constructors are package private, the instances are got from
+    // getInstance() in the code.
+    private static SharedPreferences createPersistent(File file) throws Exception {
+        Constructor<PersistentSharedPreferences> constructor =
+                PersistentSharedPreferences.class.getDeclaredConstructor(File.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(file);
+    }
+
+    private static SharedPreferences createInMemory() throws Exception {
+        Constructor<?> constructor = Class.forName(
+                "org.xwalk.core.internal.InMemorySharedPreferences").getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return (SharedPreferences) constructor.newInstance();
+    }
+
+    // Returns the reads per second on THREAD_COUNT threads.
+    private static long measureReads(final SharedPreferences preferences) throws Exception {
+        final String[] keys = new String[KEY_COUNT];
+        SharedPreferences.Editor editor = preferences.edit();
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            keys[i] = "key" + i;
+            editor.putBoolean(keys[i], i % 2 == 0);
+        }
+        assertTrue(editor.commit());
+
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < READS_PER_THREAD; ++j) {
+                        preferences.getBoolean(keys[j % KEY_COUNT], false);
+                    }
+                }
+            });
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        long time = Math.max(1, SystemClock.elapsedRealtime() - start);
+        return THREAD_COUNT * READS_PER_THREAD * 1000L / time;
+    }
+
+    @SmallTest
+    @Feature({"PersistentSharedPreferences"})
+    public void testPersistence() throws Throwable {
+        SharedPreferences preferences = getPreferences();
+        assertSame(preferences, getPreferences());
+        assertFalse(preferences.contains("a"));
+        assertFalse(preferences.getBoolean(null, false));
+
+        preferences.edit().putBoolean("a", true).putInt("b", 2).putString("c", "c").apply();
+        preferences.edit().remove("b").putLong("d", 4L).apply();
+        assertTrue(preferences.edit().putFloat("e", 5.0f).commit());
+        assertTrue(preferences.getBoolean("a", false));
+        assertFalse(preferences.contains("b"));
+
+        // Read the log back in a new instance.
+        SharedPreferences reloaded = reload();
+        assertTrue(reloaded.getBoolean("a", false));
+        assertFalse(reloaded.contains("b"));
+        assertEquals("c", reloaded.getString("c", null));
+        assertEquals(4L, reloaded.getLong("d", 0L));
+        assertEquals(5.0f, reloaded.getFloat("e", 0.0f));
+
+        assertTrue(reloaded.edit().clear().putBoolean("f", true).commit());
+        SharedPreferences cleared = reload();
+        assertEquals(1, cleared.getAll().size());
+        assertTrue(cleared.getBoolean("f", false));
+    }
+
+    @SmallTest
+    @Feature({"PersistentSharedPreferences"})
+    public void testCompaction() throws Throwable {
+        SharedPreferences preferences = getPreferences();
+        for (int i = 0; i < 1000; ++i) {
+            preferences.edit().putInt("key", i).commit();
+        }
+        // The log holds far fewer records than the number of writes.
+        assertTrue(mFile.length() < 100 * 16);
+        assertEquals(999, reload().getInt("key", -1));
+    }
+
+    @SmallTest
+    @Feature({"PersistentSharedPreferences"})
+    public void testCommitFailure() throws Throwable {
+        // The log can't be created under a regular file.
+        File parent = new File(mFile.getPath() + ".file");
+        parent.getParentFile().mkdirs();
+        assertTrue(parent.createNewFile() || parent.isFile());
+        try {
+            SharedPreferences preferences = createPersistent(new File(parent, "failed.log"));
+            assertFalse(preferences.edit().putInt("a", 1).commit());
+            // The value is still applied in memory.
+            assertEquals(1, preferences.getInt("a", 0));
+        } finally {
+            parent.delete();
+        }
+    }
+
+    @MediumTest
+    @Feature({"PersistentSharedPreferences"})
+    public void testConcurrentReads() throws Throwable {
+        final SharedPreferences preferences = getPreferences();
+        final String[] keys = new String[KEY_COUNT];
+        SharedPreferences.Editor editor = preferences.edit();
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            keys[i] = "key" + i;
+            editor.putInt(keys[i], 0);
+        }
+        assertTrue(editor.commit());
+
+        // The readers don't lock, they must never see a key missing or its
+        // value going back while the values are being replaced.
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int[] last = new int[KEY_COUNT];
+                    while (true) {
+                        boolean finished = done.get();
+                        for (int j = 0; j < KEY_COUNT; ++j) {
+                            int value = preferences.getInt(keys[j], -1);
+                            if (value < last[j]) errors.incrementAndGet();
+                            last[j] = value;
+                        }
+                        if (finished) break;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (int i = 1; i <= WRITE_COUNT; ++i) {
+            preferences.edit().putInt(keys[i % KEY_COUNT], i).apply();
+        }
+        done.set(true);
+        for (Thread thread : threads) thread.join();
+        assertEquals(0, errors.get());
+
+        // The applied changes are all written before the commit.
+        assertTrue(preferences.edit().putBoolean("done", true).commit());
+        SharedPreferences reloaded = reload();
+        for (int i = WRITE_COUNT - KEY_COUNT + 1; i <= WRITE_COUNT; ++i) {
+            assertEquals(i, reloaded.getInt(keys[i % KEY_COUNT], -1));
+        }
+    }
+
+    @LargeTest
+    @Feature({"PersistentSharedPreferences", "Perf"})
+    public void testReadThroughput() throws Throwable {
+        long inMemoryReads = measureReads(createInMemory());
+        long persistentReads = measureReads(getPreferences());
+        // The reads don't lock, so they keep up with the in-memory ones, which
+        // all take the same lock.
+        assertTrue("Reads on " + THREAD_COUNT + " threads: InMemorySharedPreferences " +
+                inMemoryReads + "/s, PersistentSharedPreferences " + persistentReads + "/s",
+                persistentReads * 5 >= inMemoryReads * 4);
+    }
+
+    @LargeTest
+    @Feature({"PersistentSharedPreferences", "Perf"})
+    public void testApplyThroughput() throws Throwable {
+        SharedPreferences preferences = getPreferences();
+
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < WRITE_COUNT; ++i) {
+            assertTrue(preferences.edit().putInt("key" + i % KEY_COUNT, i).commit());
+        }
+        long commitTime = SystemClock.elapsedRealtime() - start;
+
+        // The changes applied while a write is pending are coalesced, so they
+        // take far fewer writes than one commit each.
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < WRITE_COUNT; ++i) {
+            preferences.edit().putInt("key" + i % KEY_COUNT, -i).apply();
+        }
+        assertTrue(preferences.edit().putBoolean("done", true).commit());
+        long applyTime = SystemClock.elapsedRealtime() - start;
+
+        assertTrue(WRITE_COUNT + " writes: commit " + commitTime + " ms, apply " +
+                applyTime + " ms", applyTime < commitTime);
+        assertEquals(-(WRITE_COUNT - 1), reload().getInt("key" + (WRITE_COUNT - 1) % KEY_COUNT, 0));
+    }
+}
@@ -0,0 +1,161 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.chromium.base.test.util.Feature;
+import org.chromium.content.browser.test.util.CallbackHelper;
+
+import org.xwalk.core.internal.XWalkViewInternal;
+
+/**
+ * Test suite for the delivery of onLoadStarted(), which is sent from the IO
+ * thread for every resource. The events are queued and delivered together
+ * about once per frame, always before any other callback.
+ */
+public class ResourceEventsTest extends XWalkViewInternalTestBase {
+    private static final String BASE_URL = "http://resource.test/";
+    private static final String PAGE_FINISHED = "pageFinished";
+    private static final String LOAD_ERROR = "loadError";
+    private static final int IMAGE_COUNT = 50;
+
+    // The events in the order they reached the UI thread, each with the
+    // number of the batch it was delivered in.
+    private final List<String> mEvents = new ArrayList<String>();
+    private final List<Integer> mBatches = new ArrayList<Integer>();
+    private final CallbackHelper mLoadErrorHelper = new CallbackHelper();
+    private Handler mHandler;
+    private int mBatch;
+    private boolean mBatchEnded = true;
+
+    private void record(String event) {
+        mEvents.add(event);
+        mBatches.add(mBatch);
+        if (!mBatchEnded) return;
+
+        // Runs right after the message which delivers this event, so all the
+        // events delivered together get the same batch number.
+        mBatchEnded = false;
+        mHandler.postAtFrontOfQueue(new Runnable() {
+            @Override
+            public void run() {
+                ++mBatch;
+                mBatchEnded = true;
+            }
+        });
+    }
+
+    private static String getImageUrl(int i) {
+        return BASE_URL + "image" + i + ".png";
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mHandler = new Handler(Looper.getMainLooper());
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                getXWalkView().setUIClient(new TestXWalkUIClientInternal() {
+                    @Override
+                    public void onPageLoadStopped(XWalkViewInternal view, String url,
+                            LoadStatusInternal status) {
+                        record(PAGE_FINISHED);
+                        super.onPageLoadStopped(view, url, status);
+                    }
+                });
+                getXWalkView().setResourceClient(new TestXWalkResourceClient() {
+                    @Override
+                    public void onLoadStarted(XWalkViewInternal view, String url) {
+                        record(url);
+                        super.onLoadStarted(view, url);
+                    }
+
+                    @Override
+                    public void onReceivedLoadError(XWalkViewInternal view, int errorCode,
+                            String description, String failingUrl) {
+                        record(LOAD_ERROR);
+                        mLoadErrorHelper.notifyCalled();
+                    }
+
+                    @Override
+                    public WebResourceResponse shouldInterceptLoadRequest(
+                            XWalkViewInternal view, String url) {
+                        if (!url.startsWith(BASE_URL)) return null;
+                        // A main frame response without data is a load error.
+                        return new WebResourceResponse("image/png", null,
+                                url.endsWith(".png") ?
+                                        new ByteArrayInputStream(new byte[0]) : null);
+                    }
+                });
+            }
+        });
+    }
+
+    @MediumTest
+    @Feature({"ResourceEvents"})
+    public void testCoalescedBeforePageFinished() throws Throwable {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < IMAGE_COUNT; ++i) {
+            html.append("<img src=\"" + getImageUrl(i) + "\">");
+        }
+        html.append("</body></html>");
+        loadDataSync(null, html.toString(), "text/html", false);
+        getInstrumentation().waitForIdleSync();
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                int finished = mEvents.indexOf(PAGE_FINISHED);
+                assertTrue(finished >= 0);
+                // The queued events are flushed when the page is finished.
+                Set<Integer> batches = new HashSet<Integer>();
+                for (int i = 0; i < IMAGE_COUNT; ++i) {
+                    int index = mEvents.indexOf(getImageUrl(i));
+                    assertTrue(getImageUrl(i) + " should be started", index >= 0);
+                    assertTrue(getImageUrl(i) + " should be started before the page finished",
+                            index < finished);
+                    batches.add(mBatches.get(index));
+                }
+                // The events of the resources requested within a frame come
+                // together, not one message each.
+                assertTrue(IMAGE_COUNT + " resources were delivered in " + batches.size() +
+                        " batches", batches.size() < IMAGE_COUNT);
+            }
+        });
+    }
+
+    @MediumTest
+    @Feature({"ResourceEvents"})
+    public void testDeliveredBeforeOtherCallbacks() throws Throwable {
+        final String url = BASE_URL + "error.html";
+        int count = mLoadErrorHelper.getCallCount();
+        loadUrlAsync(url);
+        mLoadErrorHelper.waitForCallback(count);
+
+        // The error is posted right after the load is started, while the
+        // event is still waiting for its frame.
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                int started = mEvents.indexOf(url);
+                int error = mEvents.indexOf(LOAD_ERROR);
+                assertTrue(started >= 0);
+                assertTrue(url + " should be started before the load error", started < error);
+                assertEquals(mBatches.get(started), mBatches.get(error));
+            }
+        });
+    }
+}
@@ -0,0 +1,145 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.util.concurrent.Callable;
+
+import org.chromium.base.test.util.Feature;
+import org.xwalk.core.internal.XWalkSettings;
+
+/**
+ * Test suite for beginUpdate(), commit() and setAsyncUpdatesEnabled() of
+ * XWalkSettings. The setters are called on the instrumentation thread, which
+ * is not the UI thread, so each of them blocks until the UI thread pushes the
+ * change to the native side, unless the changes are batched or asynchronous.
+ */
+public class SettingsBatchUpdateTest extends XWalkViewInternalTestBase {
+    private static final int ROUNDS = 20;
+    private static final int SETTERS = 10;
+
+    private XWalkSettings getSettingsOnUiThread() throws Exception {
+        return runTestOnUiThreadAndGetResult(new Callable<XWalkSettings>() {
+            @Override
+            public XWalkSettings call() throws Exception {
+                return getXWalkView().getSettings();
+            }
+        });
+    }
+
+    // Each of these setters pushes the webkit preferences to the native side.
+    private static void setAll(XWalkSettings settings, boolean flag) {
+        settings.setJavaScriptCanOpenWindowsAutomatically(flag);
+        settings.setSupportMultipleWindows(flag);
+        settings.setUseWideViewPort(flag);
+        settings.setDomStorageEnabled(flag);
+        settings.setDatabaseEnabled(flag);
+        settings.setMediaPlaybackRequiresUserGesture(flag);
+        settings.setLoadsImagesAutomatically(flag);
+        settings.setImagesEnabled(flag);
+        settings.setAllowFileAccessFromFileURLs(flag);
+        settings.setAllowUniversalAccessFromFileURLs(flag);
+    }
+
+    private static void assertAll(XWalkSettings settings, boolean flag) {
+        assertEquals(flag, settings.supportMultipleWindows());
+        assertEquals(flag, settings.getDomStorageEnabled());
+        assertEquals(flag, settings.getDatabaseEnabled());
+        assertEquals(flag, settings.getMediaPlaybackRequiresUserGesture());
+        assertEquals(flag, settings.getImagesEnabled());
+    }
+
+    // Returns the number of pushes made by the rounds, each of which flips
+    // all the values, starting from true.
+    private static int runRounds(XWalkSettings settings, boolean batch) {
+        int start = settings.getWebkitPreferencesUpdateCountForTesting();
+        for (int i = 0; i < ROUNDS; ++i) {
+            if (batch) settings.beginUpdate();
+            setAll(settings, i % 2 == 1);
+            if (batch) settings.commit();
+        }
+        return settings.getWebkitPreferencesUpdateCountForTesting() - start;
+    }
+
+    @MediumTest
+    @Feature({"XWalkSettings"})
+    public void testBatchUpdate() throws Throwable {
+        XWalkSettings settings = getSettingsOnUiThread();
+        setAll(settings, true);
+        int count = settings.getWebkitPreferencesUpdateCountForTesting();
+
+        settings.beginUpdate();
+        settings.beginUpdate();
+        setAll(settings, false);
+        // The values are set right away, only pushing them is deferred.
+        assertAll(settings, false);
+        assertEquals(count, settings.getWebkitPreferencesUpdateCountForTesting());
+        settings.commit();
+        assertEquals(count, settings.getWebkitPreferencesUpdateCountForTesting());
+        settings.commit();
+        // The outermost commit() blocks until all the changes are pushed at once.
+        assertEquals(count + 1, settings.getWebkitPreferencesUpdateCountForTesting());
+        assertAll(settings, false);
+
+        // Nothing to push for an empty batch.
+        settings.beginUpdate();
+        settings.commit();
+        assertEquals(count + 1, settings.getWebkitPreferencesUpdateCountForTesting());
+
+        try {
+            settings.commit();
+            fail("commit() without beginUpdate() should throw");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @MediumTest
+    @Feature({"XWalkSettings"})
+    public void testBackgroundSetterPushes() throws Throwable {
+        XWalkSettings settings = getSettingsOnUiThread();
+        setAll(settings, true);
+
+        // Each setter blocks until its own push is done.
+        assertEquals(ROUNDS * SETTERS, runRounds(settings, false));
+        assertEquals(ROUNDS, runRounds(settings, true));
+
+        // The asynchronous pushes made while one is pending are merged into
+        // it, the settings are read when it runs.
+        settings.setAsyncUpdatesEnabled(true);
+        int start = settings.getWebkitPreferencesUpdateCountForTesting();
+        runRounds(settings, false);
+        runRounds(settings, true);
+        settings.setAsyncUpdatesEnabled(false);
+        getInstrumentation().waitForIdleSync();
+        int asyncCount = settings.getWebkitPreferencesUpdateCountForTesting() - start;
+        assertTrue(asyncCount >= 1);
+        assertTrue(asyncCount <= ROUNDS * SETTERS + ROUNDS);
+
+        // The last round set everything to false.
+        assertAll(settings, false);
+    }
+
+    @LargeTest
+    @Feature({"XWalkSettings", "Perf"})
+    public void testBatchUpdateTime() throws Throwable {
+        XWalkSettings settings = getSettingsOnUiThread();
+        setAll(settings, true);
+
+        long start = SystemClock.elapsedRealtime();
+        assertEquals(ROUNDS * SETTERS, runRounds(settings, false));
+        long unbatchedTime = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        assertEquals(ROUNDS, runRounds(settings, true));
+        long batchedTime = SystemClock.elapsedRealtime() - start;
+
+        // A batch waits for the UI thread once instead of once per setter.
+        assertTrue(ROUNDS + " rounds of " + SETTERS + " setters: unbatched " + unbatchedTime +
+                " ms, batched " + batchedTime + " ms", batchedTime < unbatchedTime);
+    }
+}
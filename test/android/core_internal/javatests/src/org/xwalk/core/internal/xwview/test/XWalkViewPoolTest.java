@@ -0,0 +1,132 @@
+// Copyright (c) 2015 Intel Corporation. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.xwalk.core.internal.xwview.test;
+
+import android.app.Activity;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.util.concurrent.Callable;
+
+import org.chromium.base.test.util.Feature;
+import org.xwalk.core.internal.XWalkViewInternal;
+import org.xwalk.core.internal.XWalkViewPool;
+
+/**
+ * Test suite for XWalkViewPool.
+ */
+public class XWalkViewPoolTest extends XWalkViewInternalTestBase {
+    private static final String URL = "file:///android_asset/www/index.html";
+    private static final String TITLE = "Crosswalk Sample Application";
+
+    private XWalkViewPool mPool;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        final Activity activity = getActivity();
+        mPool = runTestOnUiThreadAndGetResult(new Callable<XWalkViewPool>() {
+            @Override
+            public XWalkViewPool call() throws Exception {
+                return new XWalkViewPool(activity, activity, 2);
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPool.destroy();
+            }
+        });
+        super.tearDown();
+    }
+
+    private void waitForSpareViews(final int count) throws Exception {
+        assertTrue(pollOnUiThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mPool.getSpareCount() == count;
+            }
+        }));
+    }
+
+    private XWalkViewInternal acquireOnUiThread() throws Exception {
+        return runTestOnUiThreadAndGetResult(new Callable<XWalkViewInternal>() {
+            @Override
+            public XWalkViewInternal call() {
+                XWalkViewInternal view = mPool.acquire();
+                getActivity().addView(view);
+                return view;
+            }
+        });
+    }
+
+    private void loadAndCheckTitle(final XWalkViewInternal view) throws Exception {
+        final TestHelperBridge helperBridge = new TestHelperBridge();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view.setUIClient(new TestXWalkUIClientInternalBase(helperBridge));
+                view.setResourceClient(new TestXWalkResourceClientBase(helperBridge));
+            }
+        });
+        loadUrlSyncByContent(view, helperBridge, URL);
+        assertEquals(TITLE, getTitleOnUiThreadByContent(view));
+    }
+
+    @MediumTest
+    @Feature({"XWalkViewPool"})
+    public void testAcquireAndRelease() throws Throwable {
+        waitForSpareViews(2);
+
+        XWalkViewInternal view = acquireOnUiThread();
+        assertEquals(1, mPool.getHitCount());
+        assertEquals(0, mPool.getMissCount());
+        loadAndCheckTitle(view);
+
+        // The pool is filled again in idle time. Empty it and release the view
+        // created for the miss within one task, so that nothing is prepared
+        // between them.
+        waitForSpareViews(2);
+        final XWalkViewInternal missed = runTestOnUiThreadAndGetResult(
+                new Callable<XWalkViewInternal>() {
+            @Override
+            public XWalkViewInternal call() {
+                mPool.acquire();
+                mPool.acquire();
+                XWalkViewInternal created = mPool.acquire();
+                mPool.release(created);
+                return created;
+            }
+        });
+        assertEquals(3, mPool.getHitCount());
+        assertEquals(1, mPool.getMissCount());
+
+        // The released view gets new contents and is handed out again.
+        waitForSpareViews(2);
+        assertEquals(1, mPool.getRecycleCount());
+        XWalkViewInternal recycled = null;
+        for (int i = 0; i < 2; ++i) {
+            XWalkViewInternal spare = acquireOnUiThread();
+            if (spare == missed) recycled = spare;
+        }
+        assertNotNull(recycled);
+        assertEquals(0, (int) runTestOnUiThreadAndGetResult(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return missed.getNavigationHistory().size();
+            }
+        }));
+        loadAndCheckTitle(recycled);
+
+        // Both views were taken from the spare ones, and only the released
+        // one was recycled.
+        assertEquals(5, mPool.getHitCount());
+        assertEquals(1, mPool.getMissCount());
+        assertEquals(1, mPool.getRecycleCount());
+    }
+}
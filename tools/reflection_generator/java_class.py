@@ -14,9 +14,10 @@ from java_method import Method
 
 class JavaClassLoader(object):
   """Manager class maintains all loaded java classes."""
-  def __init__(self, src_path, class_list):
+  def __init__(self, src_path, class_list, embedded_mode=False):
     self._src_path = src_path
     self._class_list = class_list
+    self._embedded_mode = embedded_mode
     self._java_data_map = {}
 
     for clazz in self._class_list:
@@ -26,6 +27,10 @@ class JavaClassLoader(object):
       for method in java_data._methods:
         method.PrepareStrings()
 
+  @property
+  def embedded_mode(self):
+    return self._embedded_mode
+
   def IsInternalClass(self, clazz):
     return clazz in self._class_list
 
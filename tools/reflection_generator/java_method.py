@@ -9,6 +9,8 @@ import re
 from collections import OrderedDict
 from string import Template
 
+BRIDGE_PACKAGE = 'org.xwalk.core.internal'
+
 def ConvertClassExpressionToClassType(class_name):
   """ Turn "final HashMap<String>" to HashMap.class. """
   return '%s.class' % class_name.split()[-1].split('<')[0]
@@ -654,13 +656,42 @@ ${POST_WRAP_LINES}
 
     return ret
 
+  def CanCallBridgeDirectly(self):
+    """ Whether the wrapper can call the bridge method directly in embedded
+        mode, i.e. the params and the return value are passed as they are,
+        without conversion between the wrapper and the bridge objects.
+    """
+    if not self._class_loader.embedded_mode or self._is_abstract:
+      return False
+    if self.IsInternalClass(self._method_return):
+      return False
+    for param_name in self._params:
+      param_type = self._params[param_name]
+      if (self.IsInternalClass(param_type) or
+          param_type in self._class_java_data.enums or
+          self._typed_params[param_name].contains_internal_class):
+        return False
+    return True
+
   def GenerateWrapperStaticMethod(self):
+    if self.CanCallBridgeDirectly():
+      # The bridge class is the same as the one the wrapper is compiled
+      # against unless the library is loaded from the shared library APK.
+      direct_call = Template("""\
+        if (!coreWrapper.isSharedMode()) {
+            ${RETURN}${BRIDGE_PACKAGE}.${BRIDGE_NAME}.${NAME}(${PARAMS_PASSING});${RETURN_VOID}
+        }
+""")
+    else:
+      direct_call = Template('')
+
     template = Template("""\
 ${DOC}
     public static ${RETURN_TYPE} ${NAME}(${PARAMS}) {
         XWalkCoreWrapper.initEmbeddedMode();
         XWalkCoreWrapper coreWrapper = \
 XWalkCoreWrapper.getInstance();
+${DIRECT_CALL}\
         ReflectMethod method = new ReflectMethod(coreWrapper,
                 coreWrapper.getBridgeClass("${BRIDGE_NAME}"),
                 "${NAME}"${PARAMS_DECLARE_FOR_BRIDGE});
@@ -676,9 +707,19 @@ XWalkCoreWrapper.getInstance();
       return_state = 'return (%s) ' % return_type
       return_null = 'return (%s) null;' % return_type
 
+    value = {'RETURN': 'return ' if self._method_return != 'void' else '',
+             'RETURN_VOID':
+                 '\n            return;' if self._method_return == 'void' else '',
+             'BRIDGE_PACKAGE': BRIDGE_PACKAGE,
+             'BRIDGE_NAME': self._class_java_data.GetBridgeName(),
+             'NAME': self.method_name,
+             'PARAMS_PASSING': self._wrapper_params_pass_to_bridge}
+    direct_call_string = direct_call.substitute(value)
+
     value = {'RETURN_TYPE': self.method_return,
              'DOC': self.GenerateDoc(self.method_doc),
              'NAME': self.method_name,
+             'DIRECT_CALL': direct_call_string,
              'BRIDGE_NAME': self._class_java_data.GetBridgeName(),
              'PARAMS_DECLARE_FOR_BRIDGE':
                  self._wrapper_params_declare_for_bridge,
@@ -698,6 +739,32 @@ XWalkCoreWrapper.getInstance();
       template = Template(
           '${DOC}\n' +
           '    public abstract ${RETURN_TYPE} ${NAME}(${PARAMS});\n\n')
+    elif self.CanCallBridgeDirectly():
+      # In embedded mode, the bridge is usually an instance of the bridge
+      # class the wrapper is compiled against, so call it without reflection.
+      # Otherwise, e.g. the object is reserved before the core is ready, go
+      # through reflection as usual.
+      if self.is_reservable:
+        reflection_call = """\
+        if (${METHOD_DECLARE_NAME}.isNull() &&
+                XWalkCoreWrapper.reserveReflectMethod(${METHOD_DECLARE_NAME})) {
+            ${METHOD_DECLARE_NAME}.setArguments(${PARAMS_RESERVING});
+            return;
+        }
+"""
+      else:
+        reflection_call = ''
+      template = Template("""\
+${DOC}
+    public ${RETURN_TYPE} ${NAME}(${PARAMS}) {
+        if (bridge instanceof ${BRIDGE_PACKAGE}.${BRIDGE_NAME}) {
+            ${DIRECT_RETURN}((${BRIDGE_PACKAGE}.${BRIDGE_NAME}) bridge).\
+${NAME}Super(${PARAMS_PASSING});${DIRECT_RETURN_VOID}
+        }
+""" + reflection_call + """\
+        ${RETURN}${METHOD_DECLARE_NAME}.invoke(${PARAMS_PASSING});
+    }
+""")
     elif return_is_internal:
       template = Template("""\
 ${DOC}
@@ -751,7 +818,12 @@ ${DOC}
                   r'ValueCallback<\1>',self._wrapper_params_declare),
              'METHOD_DECLARE_NAME': self._method_declare_name,
              'PARAMS_RESERVING': ', '.join(params_reserving),
-             'PARAMS_PASSING': self._wrapper_params_pass_to_bridge}
+             'PARAMS_PASSING': self._wrapper_params_pass_to_bridge,
+             'BRIDGE_PACKAGE': BRIDGE_PACKAGE,
+             'BRIDGE_NAME': self._class_java_data.bridge_name,
+             'DIRECT_RETURN': '' if no_return_value else 'return ',
+             'DIRECT_RETURN_VOID':
+                 '\n            return;' if no_return_value else ''}
 
     return template.substitute(value)
 
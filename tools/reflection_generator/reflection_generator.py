@@ -26,6 +26,8 @@ CLASSES_TO_BE_PROCESS = [
     'XWalkNavigationHistoryInternal',
     'XWalkJavascriptResultHandlerInternal',
     'XWalkJavascriptResultInternal',
+    'XWalkExtensionSyncReplyHandlerInternal',
+    'XWalkExtensionSyncReplyInternal',
 ]
 
 REFLECTION_HERLPER = [
@@ -33,6 +35,7 @@ REFLECTION_HERLPER = [
     'ReflectField.java',
     'ReflectConstructor.java',
     'ReflectExceptionHandler.java',
+    'ReflectCache.java',
 ]
 
 WRAPPER_PACKAGE = 'org.xwalk.core'
@@ -48,8 +51,9 @@ def PerformSerialize(output_path, generator):
   print('%s has been generated!' % file_name)
 
 
-def GenerateJavaBindingClass(input_dir):
-  class_loader = JavaClassLoader(input_dir, CLASSES_TO_BE_PROCESS)
+def GenerateJavaBindingClass(input_dir, embedded_mode):
+  class_loader = JavaClassLoader(input_dir, CLASSES_TO_BE_PROCESS,
+                                 embedded_mode)
   for input_class in CLASSES_TO_BE_PROCESS:
     print('Generate bridge and wrapper code for %s' % input_class)
     java_data = class_loader.GetJavaData(input_class)
@@ -80,7 +84,7 @@ def GenerateJavaReflectClass(input_dir):
 
 
 def GenerateJavaTemplateClass(template_dir,
-    target_arch, sdk_version, min_sdk_version, verify_xwalk_apk):
+    target_arch, sdk_version, min_sdk_version, verify_xwalk_apk, embedded_mode):
   template_file = os.path.join(template_dir, 'XWalkCoreVersion.template')
   template = Template(open(template_file, 'r').read())
   value = {'TARGET_ARCH': target_arch,
@@ -94,7 +98,8 @@ def GenerateJavaTemplateClass(template_dir,
   template = Template(open(template_file, 'r').read())
 
   value = {'SDK_VERSION': sdk_version,
-           'VERIFY_XWALK_APK': 'true' if verify_xwalk_apk == 1 else 'false'}
+           'VERIFY_XWALK_APK': 'true' if verify_xwalk_apk == 1 else 'false',
+           'EMBEDDED_MODE': 'true' if embedded_mode == 1 else 'false'}
   output_file = os.path.join(wrapper_path, "XWalkSdkVersion.java")
   with open(output_file, 'w') as f:
     f.write(template.substitute(value))
@@ -131,6 +136,9 @@ This script can generate bridge and wrap source files for given directory.
   option_parser.add_option('--min-sdk-version', help='Min API Version')
   option_parser.add_option('--verify-xwalk-apk', default=0, type='int',
       help='Verify Crosswalk library APK before loading')
+  option_parser.add_option('--embedded-mode', default=0, type='int',
+      help=('Generate wrapper code calling the bridge directly when both are '
+            'loaded by the same class loader, for embedded mode only builds'))
 
   options, _ = option_parser.parse_args(argv)
   if (not options.input_dir or
@@ -155,12 +163,13 @@ This script can generate bridge and wrap source files for given directory.
   os.makedirs(wrapper_path)
 
   if options.input_dir:
-    GenerateJavaBindingClass(options.input_dir)
+    GenerateJavaBindingClass(options.input_dir, options.embedded_mode == 1)
     GenerateJavaReflectClass(options.input_dir)
 
   if options.template_dir:
     GenerateJavaTemplateClass(options.template_dir, options.target_arch,
-        options.sdk_version, options.min_sdk_version, options.verify_xwalk_apk)
+        options.sdk_version, options.min_sdk_version, options.verify_xwalk_apk,
+        options.embedded_mode)
 
   if options.stamp:
     Touch(options.stamp)
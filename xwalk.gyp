@@ -13,6 +13,9 @@
         'min_sdk_version': '<!(python ../build/util/version.py -f SDK_VERSION -t "@MIN_SDK@")',
         # Whether we should verify package integrity before loading Crosswalk runtime libraray in shared mode
         'verify_xwalk_apk%': 0,
+        # Whether the wrapper calls the bridge directly instead of through
+        # reflection. Only for builds which ship the embedded mode library.
+        'reflection_embedded_mode%': 0,
       }],
       ['OS=="tizen"', {
         'use_webui_file_picker': 1,